@@ -1,11 +1,25 @@
 package com.ainovel.app.admin;
 
 import com.ainovel.app.admin.dto.*;
+import com.ainovel.app.ai.AiRateLimiter;
+import com.ainovel.app.ai.AiService;
+import com.ainovel.app.ai.ModelPoolRouter;
+import com.ainovel.app.ai.RefineCache;
+import com.ainovel.app.ai.UpstreamCircuitBreaker;
+import com.ainovel.app.ai.UpstreamConcurrencyLimiter;
 import com.ainovel.app.ai.model.ModelConfigEntity;
+import com.ainovel.app.ai.model.ModelPoolEndpoint;
 import com.ainovel.app.ai.repo.ModelConfigRepository;
+import com.ainovel.app.ai.repo.ModelPoolEndpointRepository;
+import com.ainovel.app.ai.telemetry.LlmTelemetry;
+import com.ainovel.app.economy.CheckInStore;
+import com.ainovel.app.economy.CreditLogWriter;
 import com.ainovel.app.economy.EconomyService;
+import com.ainovel.app.economy.RedeemCodeService;
 import com.ainovel.app.economy.model.RedeemCode;
 import com.ainovel.app.economy.repo.CreditLogRepository;
+import com.ainovel.app.economy.repo.CreditUsageDailyRepository;
+import com.ainovel.app.economy.repo.CreditUsageDayTotalRepository;
 import com.ainovel.app.economy.repo.RedeemCodeRepository;
 import com.ainovel.app.material.repo.MaterialRepository;
 import com.ainovel.app.settings.SettingsService;
@@ -14,14 +28,20 @@ import com.ainovel.app.user.User;
 import com.ainovel.app.user.UserRepository;
 import com.ainovel.app.settings.model.GlobalSettings;
 import com.ainovel.app.settings.repo.GlobalSettingsRepository;
+import com.ainovel.app.story.OutlineCache;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
@@ -39,6 +59,14 @@ public class AdminController {
     @Autowired
     private CreditLogRepository creditLogRepository;
     @Autowired
+    private CreditUsageDayTotalRepository creditUsageDayTotalRepository;
+    @Autowired
+    private CreditUsageDailyRepository creditUsageDailyRepository;
+    @Autowired
+    private CreditLogWriter creditLogWriter;
+    @Autowired
+    private CheckInStore checkInStore;
+    @Autowired
     private MaterialRepository materialRepository;
     @Autowired
     private ModelConfigRepository modelConfigRepository;
@@ -47,22 +75,48 @@ public class AdminController {
     @Autowired
     private EconomyService economyService;
     @Autowired
+    private RedeemCodeService redeemCodeService;
+    @Autowired
     private SmtpService smtpService;
     @Autowired
     private SettingsService settingsService;
     @Autowired
     private GlobalSettingsRepository globalSettingsRepository;
+    @Autowired
+    private ModelPoolEndpointRepository modelPoolEndpointRepository;
+    @Autowired
+    private ModelPoolRouter modelPoolRouter;
+    @Autowired
+    private RefineCache refineCache;
+    @Autowired
+    private OutlineCache outlineCache;
+    @Autowired
+    private AiRateLimiter aiRateLimiter;
+    @Autowired
+    private UpstreamCircuitBreaker upstreamCircuitBreaker;
+    @Autowired
+    private UpstreamConcurrencyLimiter upstreamConcurrencyLimiter;
+    @Autowired
+    private AiService aiService;
+    @Autowired
+    private LlmTelemetry llmTelemetry;
 
     @GetMapping("/dashboard")
     public ResponseEntity<AdminDashboardStatsResponse> dashboard() {
-        Instant todayStart = LocalDate.now(ZONE).atStartOfDay(ZONE).toInstant();
+        LocalDate today = LocalDate.now(ZONE);
+        Instant todayStart = today.atStartOfDay(ZONE).toInstant();
         long totalUsers = userRepository.count();
         long todayNewUsers = userRepository.countByCreatedAtAfter(todayStart);
-        double totalConsumed = creditLogRepository.totalConsumed();
-        double todayConsumed = creditLogRepository.consumedSince(todayStart);
+        // 积分消耗取自按日预聚合的汇总表，不扫描流水
+        double totalConsumed = creditUsageDayTotalRepository.totalConsumed();
+        double todayConsumed = creditUsageDayTotalRepository.findById(today).map(t -> t.getConsumed()).orElse(0.0);
         long pendingReviews = materialRepository.countByStatusIgnoreCase("pending");
-        double apiErrorRate = 0.0;
-        return ResponseEntity.ok(new AdminDashboardStatsResponse(totalUsers, todayNewUsers, totalConsumed, todayConsumed, apiErrorRate, pendingReviews));
+        LlmTelemetry.Summary api = llmTelemetry.summary();
+        long todayCheckIns = checkInStore.activeUsers(today, today);
+        long weeklyCheckInUsers = checkInStore.activeUsers(today.minusDays(6), today);
+        return ResponseEntity.ok(new AdminDashboardStatsResponse(totalUsers, todayNewUsers, totalConsumed, todayConsumed,
+                api.errorRate(), api.calls(), api.latencyMs().p50(), api.latencyMs().p95(), api.latencyMs().p99(), pendingReviews,
+                todayCheckIns, weeklyCheckInUsers));
     }
 
     @GetMapping("/models")
@@ -79,10 +133,87 @@ public class AdminController {
         entity.setOutputMultiplier(dto.outputMultiplier());
         if (dto.poolId() != null) entity.setPoolId(dto.poolId());
         entity.setEnabled(dto.isEnabled());
+        if (dto.contextTokenBudget() != null) entity.setContextTokenBudget(dto.contextTokenBudget() > 0 ? dto.contextTokenBudget() : null);
         modelConfigRepository.save(entity);
         return ResponseEntity.ok(true);
     }
 
+    @GetMapping("/model-pools/endpoints")
+    public List<ModelPoolEndpointDto> poolEndpoints() {
+        return modelPoolEndpointRepository.findAllByOrderByPoolIdAscCreatedAtAsc().stream().map(this::toPoolEndpointDto).toList();
+    }
+
+    @PostMapping("/model-pools/endpoints")
+    public ModelPoolEndpointDto createPoolEndpoint(@Valid @RequestBody ModelPoolEndpointRequest request) {
+        ModelPoolEndpoint endpoint = new ModelPoolEndpoint();
+        applyPoolEndpoint(endpoint, request);
+        modelPoolEndpointRepository.save(endpoint);
+        modelPoolRouter.reload();
+        return toPoolEndpointDto(endpoint);
+    }
+
+    @PutMapping("/model-pools/endpoints/{id}")
+    public ModelPoolEndpointDto updatePoolEndpoint(@PathVariable UUID id, @Valid @RequestBody ModelPoolEndpointRequest request) {
+        ModelPoolEndpoint endpoint = modelPoolEndpointRepository.findById(id).orElseThrow(() -> new RuntimeException("端点不存在"));
+        applyPoolEndpoint(endpoint, request);
+        modelPoolEndpointRepository.save(endpoint);
+        modelPoolRouter.reload();
+        return toPoolEndpointDto(endpoint);
+    }
+
+    @DeleteMapping("/model-pools/endpoints/{id}")
+    public ResponseEntity<Boolean> deletePoolEndpoint(@PathVariable UUID id) {
+        modelPoolEndpointRepository.deleteById(id);
+        modelPoolRouter.reload();
+        return ResponseEntity.ok(true);
+    }
+
+    @GetMapping("/ai-cache")
+    public RefineCache.Stats aiCacheStats() {
+        return refineCache.stats();
+    }
+
+    @DeleteMapping("/ai-cache")
+    public ResponseEntity<Boolean> clearAiCache() {
+        refineCache.clear();
+        return ResponseEntity.ok(true);
+    }
+
+    @GetMapping("/outline-cache")
+    public OutlineCache.Stats outlineCacheStats() {
+        return outlineCache.stats();
+    }
+
+    @DeleteMapping("/outline-cache")
+    public ResponseEntity<Boolean> clearOutlineCache() {
+        outlineCache.clear();
+        return ResponseEntity.ok(true);
+    }
+
+    @GetMapping("/upstream")
+    public AdminUpstreamStatsResponse upstreamStats() {
+        return new AdminUpstreamStatsResponse(upstreamCircuitBreaker.stats(), upstreamConcurrencyLimiter.stats(), aiService.hedgeStats(),
+                llmTelemetry.series());
+    }
+
+    @GetMapping("/usage")
+    public AdminUsageStatsResponse usage(@RequestParam(defaultValue = "30") int days) {
+        LocalDate from = LocalDate.now(ZONE).minusDays(Math.min(366, Math.max(1, days)) - 1L);
+        List<AdminUsageStatsResponse.DayUsage> daily = creditUsageDayTotalRepository.findByUsageDateGreaterThanEqualOrderByUsageDateAsc(from).stream()
+                .map(t -> new AdminUsageStatsResponse.DayUsage(t.getUsageDate(), t.getConsumed(), t.getGranted(), t.getEntries()))
+                .toList();
+        return new AdminUsageStatsResponse(from, daily,
+                creditUsageDailyRepository.sumByModelSince(from),
+                creditUsageDailyRepository.sumByReasonSince(from),
+                creditUsageDailyRepository.sumByUserSince(from, PageRequest.of(0, 20)));
+    }
+
+    @PostMapping("/usage/rebuild")
+    public ResponseEntity<Boolean> rebuildUsage() {
+        creditLogWriter.rebuildRollups();
+        return ResponseEntity.ok(true);
+    }
+
     @GetMapping("/users")
     public List<AdminUserDto> users() {
         return userRepository.findAll().stream().map(this::toUserDto).toList();
@@ -121,16 +252,21 @@ public class AdminController {
     }
 
     @GetMapping("/redeem-codes")
-    public List<RedeemCodeDto> codes() {
-        return redeemCodeRepository.findAll().stream()
-                .map(c -> new RedeemCodeDto(c.getId(), c.getCode(), c.getAmount(), c.isUsed(), c.getUsedBy() == null ? null : c.getUsedBy().getUsername(), c.getExpiresAt()))
+    public List<RedeemCodeDto> codes(@RequestParam(defaultValue = "200") int limit) {
+        return redeemCodeRepository.findAll(PageRequest.of(0, Math.min(1000, Math.max(1, limit)), Sort.by(Sort.Direction.DESC, "createdAt")))
+                .getContent()
+                .stream()
+                .map(c -> new RedeemCodeDto(c.getId(), c.getCode(), c.getAmount(), c.isUsed(), c.getUsedBy() == null ? null : c.getUsedBy().getUsername(), c.getExpiresAt(), c.getBatchId()))
                 .toList();
     }
 
     @PostMapping("/redeem-codes")
     public ResponseEntity<Boolean> createCode(@Valid @RequestBody CreateRedeemCodeRequest request) {
+        if (redeemCodeRepository.existsByCode(request.code().trim())) {
+            throw new RuntimeException("兑换码已存在");
+        }
         RedeemCode code = new RedeemCode();
-        code.setCode(request.code());
+        code.setCode(request.code().trim());
         code.setAmount(request.amount());
         code.setUsed(false);
         code.setExpiresAt(Instant.now().plusSeconds(3600L * 24 * 365));
@@ -138,6 +274,28 @@ public class AdminController {
         return ResponseEntity.ok(true);
     }
 
+    @PostMapping("/redeem-codes/batches")
+    public RedeemCodeService.BatchResult createCodeBatch(@Valid @RequestBody CreateRedeemCodeBatchRequest request) {
+        Instant expiresAt = request.expiresAt() != null ? request.expiresAt() : Instant.now().plusSeconds(3600L * 24 * 365);
+        return redeemCodeService.generateBatch(request.count(), request.amount(), expiresAt);
+    }
+
+    @GetMapping("/redeem-codes/batches/{batchId}")
+    public RedeemCodeBatchStatsResponse codeBatch(@PathVariable String batchId) {
+        long total = redeemCodeRepository.countByBatchId(batchId);
+        if (total == 0) throw new RuntimeException("批次不存在");
+        return new RedeemCodeBatchStatsResponse(batchId, total, redeemCodeRepository.countByBatchIdAndUsedTrue(batchId));
+    }
+
+    @GetMapping(value = "/redeem-codes/batches/{batchId}/export", produces = "text/csv")
+    public ResponseEntity<StreamingResponseBody> exportCodeBatch(@PathVariable String batchId) {
+        StreamingResponseBody body = out -> redeemCodeService.exportBatch(batchId, new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"redeem-codes-" + batchId + ".csv\"")
+                .contentType(MediaType.parseMediaType("text/csv; charset=UTF-8"))
+                .body(body);
+    }
+
     @GetMapping("/email/smtp")
     public SmtpStatusResponse smtpStatus() {
         var g = settingsService.getGlobalSettings();
@@ -162,7 +320,11 @@ public class AdminController {
                 g.getSmtpPassword() != null && !g.getSmtpPassword().isBlank(),
                 g.getLlmBaseUrl(),
                 g.getLlmModelName(),
-                g.getLlmApiKeyEncrypted() != null && !g.getLlmApiKeyEncrypted().isBlank()
+                g.getLlmApiKeyEncrypted() != null && !g.getLlmApiKeyEncrypted().isBlank(),
+                g.getAiUserRatePerMinute(),
+                g.getAiUserBurst(),
+                g.getAiPoolRatePerMinute(),
+                g.getAiPoolBurst()
         );
     }
 
@@ -183,7 +345,13 @@ public class AdminController {
         if (request.llmModelName() != null) g.setLlmModelName(request.llmModelName());
         if (request.llmApiKey() != null && !request.llmApiKey().isBlank()) g.setLlmApiKeyEncrypted(request.llmApiKey());
 
+        if (request.aiUserRatePerMinute() != null) g.setAiUserRatePerMinute(Math.max(0, request.aiUserRatePerMinute()));
+        if (request.aiUserBurst() != null) g.setAiUserBurst(Math.max(0, request.aiUserBurst()));
+        if (request.aiPoolRatePerMinute() != null) g.setAiPoolRatePerMinute(Math.max(0, request.aiPoolRatePerMinute()));
+        if (request.aiPoolBurst() != null) g.setAiPoolBurst(Math.max(0, request.aiPoolBurst()));
+
         globalSettingsRepository.save(g);
+        aiRateLimiter.refresh();
         return systemConfig();
     }
 
@@ -194,7 +362,23 @@ public class AdminController {
     }
 
     private ModelConfigDto toModelDto(ModelConfigEntity entity) {
-        return new ModelConfigDto(entity.getId(), entity.getName(), entity.getDisplayName(), entity.getInputMultiplier(), entity.getOutputMultiplier(), entity.getPoolId(), entity.isEnabled());
+        return new ModelConfigDto(entity.getId(), entity.getName(), entity.getDisplayName(), entity.getInputMultiplier(), entity.getOutputMultiplier(), entity.getPoolId(), entity.isEnabled(), entity.getContextTokenBudget());
+    }
+
+    private void applyPoolEndpoint(ModelPoolEndpoint endpoint, ModelPoolEndpointRequest request) {
+        endpoint.setPoolId(request.poolId().trim());
+        endpoint.setBaseUrl(request.baseUrl().trim());
+        if (request.name() != null) endpoint.setName(request.name());
+        if (request.apiKey() != null && !request.apiKey().isBlank()) endpoint.setApiKeyEncrypted(request.apiKey());
+        if (request.weight() != null) endpoint.setWeight(Math.max(1, request.weight()));
+        if (request.isEnabled() != null) endpoint.setEnabled(request.isEnabled());
+    }
+
+    private ModelPoolEndpointDto toPoolEndpointDto(ModelPoolEndpoint endpoint) {
+        ModelPoolRouter.MemberSnapshot s = modelPoolRouter.snapshot(endpoint.getId());
+        return new ModelPoolEndpointDto(endpoint.getId(), endpoint.getPoolId(), endpoint.getName(), endpoint.getBaseUrl(),
+                endpoint.getApiKeyEncrypted() != null && !endpoint.getApiKeyEncrypted().isBlank(), endpoint.getWeight(), endpoint.isEnabled(),
+                s.ewmaLatencyMs(), s.inFlight(), s.consecutiveFailures(), s.ejected());
     }
 
     private AdminUserDto toUserDto(User user) {
@@ -6,6 +6,12 @@ public record AdminDashboardStatsResponse(
         double totalCreditsConsumed,
         double todayCreditsConsumed,
         double apiErrorRate,
-        long pendingReviews
+        long apiCalls,
+        long apiLatencyP50Ms,
+        long apiLatencyP95Ms,
+        long apiLatencyP99Ms,
+        long pendingReviews,
+        long todayCheckIns,
+        long weeklyCheckInUsers
 ) {}
 
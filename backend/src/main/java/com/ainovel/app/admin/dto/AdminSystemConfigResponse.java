@@ -11,6 +11,10 @@ public record AdminSystemConfigResponse(
         boolean smtpPasswordIsSet,
         String llmBaseUrl,
         String llmModelName,
-        boolean llmApiKeyIsSet
+        boolean llmApiKeyIsSet,
+        int aiUserRatePerMinute,
+        int aiUserBurst,
+        int aiPoolRatePerMinute,
+        int aiPoolBurst
 ) {}
 
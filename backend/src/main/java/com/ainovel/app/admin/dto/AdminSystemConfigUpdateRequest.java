@@ -11,6 +11,10 @@ public record AdminSystemConfigUpdateRequest(
         String smtpPassword,
         String llmBaseUrl,
         String llmModelName,
-        String llmApiKey
+        String llmApiKey,
+        Integer aiUserRatePerMinute,
+        Integer aiUserBurst,
+        Integer aiPoolRatePerMinute,
+        Integer aiPoolBurst
 ) {}
 
@@ -0,0 +1,15 @@
+package com.ainovel.app.admin.dto;
+
+import com.ainovel.app.ai.AiService;
+import com.ainovel.app.ai.UpstreamCircuitBreaker;
+import com.ainovel.app.ai.UpstreamConcurrencyLimiter;
+import com.ainovel.app.ai.telemetry.LlmTelemetry;
+
+import java.util.List;
+
+public record AdminUpstreamStatsResponse(
+        List<UpstreamCircuitBreaker.BreakerStats> breakers,
+        List<UpstreamConcurrencyLimiter.LaneStats> lanes,
+        AiService.HedgeStats hedge,
+        List<LlmTelemetry.SeriesStats> series
+) {}
@@ -0,0 +1,16 @@
+package com.ainovel.app.admin.dto;
+
+import com.ainovel.app.economy.repo.CreditUsageDailyRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public record AdminUsageStatsResponse(
+        LocalDate from,
+        List<DayUsage> daily,
+        List<CreditUsageDailyRepository.Breakdown> models,
+        List<CreditUsageDailyRepository.Breakdown> reasons,
+        List<CreditUsageDailyRepository.Breakdown> topUsers
+) {
+    public record DayUsage(LocalDate date, double consumed, double granted, long entries) {}
+}
@@ -0,0 +1,7 @@
+package com.ainovel.app.admin.dto;
+
+import jakarta.validation.constraints.Positive;
+
+import java.time.Instant;
+
+public record CreateRedeemCodeBatchRequest(@Positive int count, @Positive int amount, Instant expiresAt) {}
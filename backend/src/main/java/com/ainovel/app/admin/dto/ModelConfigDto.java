@@ -9,6 +9,7 @@ public record ModelConfigDto(
         double inputMultiplier,
         double outputMultiplier,
         String poolId,
-        boolean isEnabled
+        boolean isEnabled,
+        Integer contextTokenBudget
 ) {}
 
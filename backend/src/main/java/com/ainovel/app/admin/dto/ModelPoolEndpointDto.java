@@ -0,0 +1,17 @@
+package com.ainovel.app.admin.dto;
+
+import java.util.UUID;
+
+public record ModelPoolEndpointDto(
+        UUID id,
+        String poolId,
+        String name,
+        String baseUrl,
+        boolean apiKeySet,
+        int weight,
+        boolean isEnabled,
+        double ewmaLatencyMs,
+        int inFlight,
+        int consecutiveFailures,
+        boolean ejected
+) {}
@@ -0,0 +1,5 @@
+package com.ainovel.app.admin.dto;
+
+import jakarta.validation.constraints.NotBlank;
+
+public record ModelPoolEndpointRequest(@NotBlank String poolId, String name, @NotBlank String baseUrl, String apiKey, Integer weight, Boolean isEnabled) {}
@@ -0,0 +1,3 @@
+package com.ainovel.app.admin.dto;
+
+public record RedeemCodeBatchStatsResponse(String batchId, long total, long used) {}
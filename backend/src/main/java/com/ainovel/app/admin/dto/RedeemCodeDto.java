@@ -9,6 +9,7 @@ public record RedeemCodeDto(
         int amount,
         boolean isUsed,
         String usedBy,
-        Instant expiresAt
+        Instant expiresAt,
+        String batchId
 ) {}
 
@@ -1,16 +1,20 @@
 package com.ainovel.app.ai;
 
 import com.ainovel.app.ai.dto.*;
+import com.ainovel.app.common.SseStreams;
 import com.ainovel.app.user.User;
 import com.ainovel.app.user.UserRepository;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/v1/ai")
@@ -30,13 +34,30 @@ public class AiController {
     }
 
     @PostMapping("/chat")
-    public ResponseEntity<AiChatResponse> chat(@AuthenticationPrincipal UserDetails principal, @Valid @RequestBody AiChatRequest request) {
-        return ResponseEntity.ok(aiService.chat(currentUser(principal), request));
+    public CompletableFuture<ResponseEntity<AiChatResponse>> chat(@AuthenticationPrincipal UserDetails principal, @Valid @RequestBody AiChatRequest request) {
+        return aiService.chatAsync(currentUser(principal), request).thenApply(ResponseEntity::ok);
+    }
+
+    // 事件格式见 SseStreams，done 为用量/积分/首字耗时
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> chatStream(@AuthenticationPrincipal UserDetails principal, @Valid @RequestBody AiChatRequest request) {
+        User user = currentUser(principal);
+        return SseStreams.stream(onDelta -> aiService.chatStreamAsync(user, request, onDelta));
+    }
+
+    @PostMapping("/estimate")
+    public AiEstimateResponse estimate(@AuthenticationPrincipal UserDetails principal, @RequestBody AiChatRequest request) {
+        return aiService.estimate(currentUser(principal), request);
     }
 
     @PostMapping("/refine")
-    public ResponseEntity<AiRefineResponse> refine(@AuthenticationPrincipal UserDetails principal, @Valid @RequestBody AiRefineRequest request) {
-        return ResponseEntity.ok(aiService.refine(currentUser(principal), request));
+    public CompletableFuture<ResponseEntity<AiRefineResponse>> refine(@AuthenticationPrincipal UserDetails principal, @Valid @RequestBody AiRefineRequest request) {
+        return aiService.refineAsync(currentUser(principal), request).thenApply(ResponseEntity::ok);
     }
-}
 
+    @PostMapping(value = "/refine/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> refineStream(@AuthenticationPrincipal UserDetails principal, @Valid @RequestBody AiRefineRequest request) {
+        User user = currentUser(principal);
+        return SseStreams.stream(onDelta -> aiService.refineStreamAsync(user, request, onDelta));
+    }
+}
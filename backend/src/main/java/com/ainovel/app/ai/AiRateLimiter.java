@@ -0,0 +1,154 @@
+package com.ainovel.app.ai;
+
+import com.ainovel.app.common.TooManyRequestsException;
+import com.ainovel.app.settings.SettingsService;
+import com.ainovel.app.settings.model.GlobalSettings;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AI 接口限流：按用户、按模型池各一个令牌桶。限额来自 GlobalSettings，缓存在内存中定期刷新，
+ * 每次请求不访问数据库。store=redis 时令牌桶保存在 Redis（Lua 脚本原子更新，以 Redis 服务器时间为准），
+ * 多实例共享额度；Redis 不可用时退回本机令牌桶。
+ */
+@Component
+public class AiRateLimiter {
+    private static final String REDIS_PREFIX = "ainovel:ratelimit:";
+    private static final int MAX_LOCAL_BUCKETS = 100_000;
+    // 返回需等待的毫秒数，0 表示放行
+    private static final DefaultRedisScript<Long> TOKEN_BUCKET = new DefaultRedisScript<>("""
+            local capacity = tonumber(ARGV[1])
+            local rate = tonumber(ARGV[2])
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+            local b = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local tokens = tonumber(b[1])
+            local ts = tonumber(b[2])
+            if tokens == nil or ts == nil then
+              tokens = capacity
+              ts = now
+            end
+            tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate)
+            local wait = 0
+            if tokens >= 1 then
+              tokens = tokens - 1
+            else
+              wait = math.ceil((1 - tokens) / rate)
+            end
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now))
+            redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate) + 1000)
+            return wait
+            """, Long.class);
+
+    @Autowired
+    private SettingsService settingsService;
+    @Autowired
+    private ObjectProvider<StringRedisTemplate> redisTemplate;
+    @Value("${app.ai.rate-limit.store:memory}")
+    private String storeType;
+    @Value("${app.ai.rate-limit.refresh-seconds:30}")
+    private long refreshSeconds;
+
+    private volatile Limits limits = new Limits(0, 0, 0, 0);
+    private volatile long limitsLoadedAtMs;
+    private StringRedisTemplate redis;
+    private final Map<String, Bucket> localBuckets = new ConcurrentHashMap<>();
+
+    record Limits(int userRatePerMinute, int userBurst, int poolRatePerMinute, int poolBurst) {}
+
+    @PostConstruct
+    void init() {
+        if ("redis".equalsIgnoreCase(storeType)) redis = redisTemplate.getObject();
+    }
+
+    /**
+     * 先检查用户额度，再检查模型池额度；poolKey 为 null 时（用户自带 Key）只限制用户。
+     */
+    public void check(UUID userId, String poolKey) {
+        Limits l = currentLimits();
+        acquire("user:" + userId, l.userRatePerMinute(), l.userBurst(), "请求过于频繁，请稍后再试");
+        if (poolKey != null) {
+            acquire("pool:" + poolKey, l.poolRatePerMinute(), l.poolBurst(), "当前模型请求繁忙，请稍后再试");
+        }
+    }
+
+    /** 管理员修改全局配置后调用，立即生效。 */
+    public void refresh() {
+        GlobalSettings g = settingsService.getGlobalSettings();
+        limits = new Limits(g.getAiUserRatePerMinute(), g.getAiUserBurst(), g.getAiPoolRatePerMinute(), g.getAiPoolBurst());
+        limitsLoadedAtMs = System.currentTimeMillis();
+    }
+
+    private Limits currentLimits() {
+        if (System.currentTimeMillis() - limitsLoadedAtMs > refreshSeconds * 1000) {
+            refresh();
+        }
+        return limits;
+    }
+
+    private void acquire(String key, int ratePerMinute, int burst, String message) {
+        if (ratePerMinute <= 0) return;
+        int capacity = Math.max(1, burst);
+        double ratePerMs = ratePerMinute / 60_000.0;
+        long waitMs = redis != null ? acquireRedis(key, capacity, ratePerMs) : acquireLocal(key, capacity, ratePerMs);
+        if (waitMs > 0) {
+            throw new TooManyRequestsException(message, Math.max(1, (waitMs + 999) / 1000));
+        }
+    }
+
+    private long acquireRedis(String key, int capacity, double ratePerMs) {
+        try {
+            Long wait = redis.execute(TOKEN_BUCKET, List.of(REDIS_PREFIX + key), String.valueOf(capacity), String.valueOf(ratePerMs));
+            return wait == null ? 0 : wait;
+        } catch (RuntimeException e) {
+            return acquireLocal(key, capacity, ratePerMs);
+        }
+    }
+
+    long acquireLocal(String key, int capacity, double ratePerMs) {
+        if (localBuckets.size() > MAX_LOCAL_BUCKETS) evictIdleBuckets();
+        return localBuckets.computeIfAbsent(key, k -> new Bucket(capacity)).tryAcquire(capacity, ratePerMs, System.currentTimeMillis());
+    }
+
+    // 已回满的桶与新建桶等价，可以直接丢弃
+    private void evictIdleBuckets() {
+        long now = System.currentTimeMillis();
+        localBuckets.entrySet().removeIf(e -> e.getValue().isIdle(now));
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long updatedAtMs;
+        private long fullAtMs;
+
+        Bucket(int capacity) {
+            this.tokens = capacity;
+            this.updatedAtMs = System.currentTimeMillis();
+        }
+
+        synchronized long tryAcquire(int capacity, double ratePerMs, long now) {
+            tokens = Math.min(capacity, tokens + Math.max(0, now - updatedAtMs) * ratePerMs);
+            updatedAtMs = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                fullAtMs = now + (long) Math.ceil((capacity - tokens) / ratePerMs);
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / ratePerMs);
+        }
+
+        synchronized boolean isIdle(long now) {
+            return now >= fullAtMs;
+        }
+    }
+}
@@ -3,16 +3,35 @@ package com.ainovel.app.ai;
 import com.ainovel.app.ai.dto.*;
 import com.ainovel.app.ai.model.ModelConfigEntity;
 import com.ainovel.app.ai.repo.ModelConfigRepository;
+import com.ainovel.app.ai.tokenizer.TokenCounter;
+import com.ainovel.app.economy.CreditReservationService;
 import com.ainovel.app.economy.EconomyService;
 import com.ainovel.app.settings.SettingsService;
 import com.ainovel.app.settings.model.SystemSettings;
 import com.ainovel.app.settings.repo.SystemSettingsRepository;
 import com.ainovel.app.user.User;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 public class AiService {
@@ -28,6 +47,71 @@ public class AiService {
     private OpenAiCompatClient openAiCompatClient;
     @Autowired
     private ObjectMapper objectMapper;
+    @Autowired
+    private ModelPoolRouter modelPoolRouter;
+    @Autowired
+    private RefineCache refineCache;
+    @Autowired
+    private TokenCounter tokenCounter;
+    @Autowired
+    private ContextPacker contextPacker;
+    @Autowired
+    private AiRateLimiter rateLimiter;
+    @Autowired
+    private CreditReservationService creditReservationService;
+    @Value("${app.ai.context.default-budget-tokens:6000}")
+    private int defaultContextBudget;
+    @Value("${app.ai.reserve-output-tokens:1024}")
+    private int reserveOutputTokens;
+    @Value("${app.ai.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+    @Value("${app.ai.hedge.min-delay-ms:500}")
+    private long hedgeMinDelayMs;
+    @Value("${app.ai.hedge.min-samples:20}")
+    private int hedgeMinSamples;
+    @Value("${app.ai.settlement.threads:8}")
+    private int settlementThreads = 8;
+    @Value("${app.ai.settlement.queue-capacity:1000}")
+    private int settlementQueueCapacity = 1000;
+
+    // 结算（扣费事务、SSE 完成事件）不能占用上游 HTTP 客户端的 llm-io 线程，否则数据库变慢会拖住所有上游读取
+    private ExecutorService settlementExecutor;
+
+    private final SingleFlight<String, AiChatResponse> inFlightChats = new SingleFlight<>();
+    private final LongAdder hedgesLaunched = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+
+    @PostConstruct
+    void startSettlement() {
+        AtomicInteger seq = new AtomicInteger();
+        int threads = Math.max(1, settlementThreads);
+        // 队列满时由完成上游调用的线程自己结算：宁可拖慢 IO 也不丢扣费
+        settlementExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, settlementQueueCapacity)), r -> {
+                    Thread t = new Thread(r, "ai-settle-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    void stopSettlement() {
+        settlementExecutor.shutdown();
+    }
+
+    public record HedgeStats(boolean enabled, long launched, long won) {}
+
+    public HedgeStats hedgeStats() {
+        return new HedgeStats(hedgeEnabled, hedgesLaunched.sum(), hedgesWon.sum());
+    }
+
+    public int inFlightChats() {
+        return inFlightChats.inFlight();
+    }
+
+    public long coalescedChats() {
+        return inFlightChats.coalesced();
+    }
 
     public List<AiModelDto> listModels() {
         List<ModelConfigEntity> enabled = modelConfigRepository.findByEnabledTrueOrderByDisplayNameAsc();
@@ -38,6 +122,247 @@ public class AiService {
     }
 
     public AiChatResponse chat(User user, AiChatRequest request) {
+        return OpenAiCompatClient.join(chatAsync(user, request));
+    }
+
+    public CompletableFuture<AiChatResponse> chatAsync(User user, AiChatRequest request) {
+        return execute(user, admit(user, prepare(user, request)));
+    }
+
+    public CompletableFuture<AiStreamDone> chatStreamAsync(User user, AiChatRequest request, Consumer<String> onDelta) {
+        return executeStream(user, admit(user, prepare(user, request)), onDelta);
+    }
+
+    public AiRefineResponse refine(User user, AiRefineRequest request) {
+        return OpenAiCompatClient.join(refineAsync(user, request));
+    }
+
+    public CompletableFuture<AiRefineResponse> refineAsync(User user, AiRefineRequest request) {
+        PreparedChat prepared = prepare(user, toRefineChat(request));
+        String cacheKey = refineCacheKey(user, prepared, request);
+        if (cacheKey != null) {
+            Optional<String> cached = refineCache.get(cacheKey);
+            if (cached.isPresent()) {
+                return CompletableFuture.completedFuture(new AiRefineResponse(cached.get(), new AiUsageDto(0, 0, 0), user.getCredits()));
+            }
+        }
+        admit(user, prepared);
+        return execute(user, prepared).thenApply(resp -> {
+            if (cacheKey != null) refineCache.put(cacheKey, resp.content());
+            return new AiRefineResponse(resp.content(), resp.usage(), resp.remainingCredits());
+        });
+    }
+
+    public CompletableFuture<AiStreamDone> refineStreamAsync(User user, AiRefineRequest request, Consumer<String> onDelta) {
+        PreparedChat prepared = prepare(user, toRefineChat(request));
+        String cacheKey = refineCacheKey(user, prepared, request);
+        if (cacheKey == null) {
+            return executeStream(user, admit(user, prepared), onDelta);
+        }
+        Optional<String> cached = refineCache.get(cacheKey);
+        if (cached.isPresent()) {
+            onDelta.accept(cached.get());
+            return CompletableFuture.completedFuture(new AiStreamDone(new AiUsageDto(0, 0, 0), user.getCredits(), 0, 0, null));
+        }
+        admit(user, prepared);
+        // 下游中途断开时只拿到部分内容，不能写入缓存
+        StringBuilder content = new StringBuilder();
+        AtomicBoolean aborted = new AtomicBoolean();
+        return executeStream(user, prepared, delta -> {
+            try {
+                onDelta.accept(delta);
+                content.append(delta);
+            } catch (RuntimeException e) {
+                aborted.set(true);
+                throw e;
+            }
+        }).thenApply(done -> {
+            if (!aborted.get()) refineCache.put(cacheKey, content.toString());
+            return done;
+        });
+    }
+
+    /**
+     * 请求准备（读取设置/模型配置）在调用线程完成，上游调用在 HTTP 客户端的 IO 线程上异步完成，
+     * 结算在独立的 ai-settle 线程池上完成，都不占用 Servlet 请求线程。同一用户同时发起的相同请求（重复点击、前端重试）合并为一次上游调用，只扣一次费。
+     * 调用前按预估费用预占积分，结算（按实际用量扣费）后或失败时释放。
+     */
+    private CompletableFuture<AiChatResponse> execute(User user, PreparedChat prepared) {
+        return inFlightChats.run(flightKey(user, prepared), () -> {
+            CreditReservationService.Reservation hold = reserve(user, prepared);
+            try {
+                return dispatchHedged(prepared, route -> openAiCompatClient.chatCompletionsAsync(route.baseUrl(), route.apiKey(), prepared.payload()))
+                        .thenApplyAsync(result -> settle(user, prepared, result), settlementExecutor)
+                        .whenComplete((r, ex) -> hold.release());
+            } catch (RuntimeException e) {
+                hold.release();
+                throw e;
+            }
+        });
+    }
+
+    private CompletableFuture<AiStreamDone> executeStream(User user, PreparedChat prepared, Consumer<String> onDelta) {
+        CreditReservationService.Reservation hold = reserve(user, prepared);
+        long start = System.nanoTime();
+        AtomicLong firstTokenAt = new AtomicLong(-1);
+        AtomicLong endAt = new AtomicLong();
+        try {
+            return dispatch(prepared, route -> openAiCompatClient.streamChatCompletionsAsync(route.baseUrl(), route.apiKey(), prepared.payload(), delta -> {
+                firstTokenAt.compareAndSet(-1, System.nanoTime());
+                route.firstByte();
+                onDelta.accept(delta);
+            })).whenComplete((r, ex) -> endAt.set(System.nanoTime())).thenApplyAsync(result -> {
+                AiChatResponse resp = settle(user, prepared, result);
+                long ttftMs = firstTokenAt.get() < 0 ? -1 : (firstTokenAt.get() - start) / 1_000_000;
+                return new AiStreamDone(resp.usage(), resp.remainingCredits(), ttftMs, (endAt.get() - start) / 1_000_000, resp.context());
+            }, settlementExecutor).whenComplete((r, ex) -> hold.release());
+        } catch (RuntimeException e) {
+            hold.release();
+            throw e;
+        }
+    }
+
+    // 预估费用 = 本地计数的输入 token + 预留的输出 token（reserve-output-tokens）
+    private CreditReservationService.Reservation reserve(User user, PreparedChat prepared) {
+        int promptTokens = tokenCounter.countMessages(prepared.modelName(), prepared.messages());
+        double estimate = round4((promptTokens * prepared.inMult() + reserveOutputTokens * prepared.outMult()) / 100000.0);
+        return creditReservationService.reserve(user, estimate);
+    }
+
+    // payload 已包含模型名、消息与采样参数
+    private String flightKey(User user, PreparedChat prepared) {
+        String raw = user.getId() + "\u0000" + safeJson(prepared.payload());
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(raw.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String refineCacheKey(User user, PreparedChat prepared, AiRefineRequest request) {
+        if (!refineCache.isEnabled() || Boolean.TRUE.equals(request.noCache())) return null;
+        return refineCache.key(user.getId(), prepared.modelName(), request.instruction(), request.text());
+    }
+
+    private AiChatRequest toRefineChat(AiRefineRequest request) {
+        String instruction = request.instruction() == null ? "" : request.instruction();
+        return new AiChatRequest(
+                List.of(new AiChatRequest.Message("user", "请根据以下指令润色文本。\n\n指令:\n" + instruction + "\n\n文本:\n" + request.text())),
+                request.modelId(),
+                null
+        );
+    }
+
+    // limitPool：模型池限流的键，用户自带 Key 时为 null（只限制用户）
+    private record PreparedChat(String modelName, double inMult, double outMult, String baseUrl, String apiKey, String poolId, String limitPool,
+                                List<Map<String, Object>> messages, Map<String, Object> payload, AiContextReport contextReport) {}
+
+    private record Route(String baseUrl, String apiKey, ModelPoolRouter.Lease lease) {
+        void firstByte() {
+            if (lease != null) lease.firstByte();
+        }
+    }
+
+    /**
+     * 模型配置了 poolId 且池内有可用端点时，每次调用从池中选一个端点并回报结果；否则走用户/全局配置的 baseUrl。
+     */
+    private <T> CompletableFuture<T> dispatch(PreparedChat prepared, Function<Route, CompletableFuture<T>> call) {
+        ModelPoolRouter.Lease lease = modelPoolRouter.pick(prepared.poolId()).orElse(null);
+        if (lease == null) {
+            return call.apply(new Route(prepared.baseUrl(), prepared.apiKey(), null));
+        }
+        return attempt(lease, call);
+    }
+
+    private <T> CompletableFuture<T> attempt(ModelPoolRouter.Lease lease, Function<Route, CompletableFuture<T>> call) {
+        CompletableFuture<T> future;
+        try {
+            future = call.apply(new Route(lease.baseUrl(), lease.apiKey(), lease));
+        } catch (RuntimeException e) {
+            lease.complete(e);
+            throw e;
+        }
+        return future.whenComplete((r, ex) -> lease.complete(ex));
+    }
+
+    /**
+     * 对冲请求（仅非流式）：主请求超过池内近期 p95 耗时仍未返回时，向池内另一端点再发一次，取先成功的结果，只结算一次。
+     * 主请求在对冲发出前失败则直接失败（重试不是对冲的职责）；两者都失败才失败。落后的请求不中断，其结果只用于端点统计。
+     */
+    private <T> CompletableFuture<T> dispatchHedged(PreparedChat prepared, Function<Route, CompletableFuture<T>> call) {
+        long p95 = hedgeEnabled ? modelPoolRouter.hedgeDelayMs(prepared.poolId(), hedgeMinSamples) : -1;
+        if (p95 < 0) return dispatch(prepared, call);
+        ModelPoolRouter.Lease primary = modelPoolRouter.pick(prepared.poolId()).orElse(null);
+        if (primary == null) return dispatch(prepared, call);
+
+        HedgedCall<T> hedged = new HedgedCall<>();
+        attempt(primary, call).whenComplete((r, ex) -> hedged.done(r, ex, false));
+        CompletableFuture.delayedExecutor(Math.max(hedgeMinDelayMs, p95), TimeUnit.MILLISECONDS).execute(() -> {
+            if (!hedged.startHedge()) return;
+            ModelPoolRouter.Lease backup = modelPoolRouter.pick(prepared.poolId(), Set.of(primary.member().id())).orElse(null);
+            if (backup == null) {
+                hedged.done(null, null, true);
+                return;
+            }
+            hedgesLaunched.increment();
+            try {
+                attempt(backup, call).whenComplete((r, ex) -> hedged.done(r, ex, true));
+            } catch (RuntimeException e) {
+                hedged.done(null, e, true);
+            }
+        });
+        return hedged.result;
+    }
+
+    final class HedgedCall<T> {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        private int running = 1;
+        private boolean hedgeAllowed = true;
+        private Throwable firstError;
+
+        synchronized boolean startHedge() {
+            if (result.isDone() || !hedgeAllowed) return false;
+            hedgeAllowed = false;
+            running++;
+            return true;
+        }
+
+        // 备用端点不可用时以 (null, null) 回报，只减少计数；最后一个结束且没有结果时以最先记下的错误失败
+        void done(T value, Throwable error, boolean hedge) {
+            if (error == null && value != null) {
+                if (result.complete(value) && hedge) hedgesWon.increment();
+                return;
+            }
+            Throwable failure;
+            synchronized (this) {
+                running--;
+                hedgeAllowed = false;
+                if (firstError == null) firstError = error;
+                if (running > 0) return;
+                failure = firstError;
+            }
+            result.completeExceptionally(failure != null ? failure : new IllegalStateException("LLM 请求没有返回结果"));
+        }
+    }
+
+    /**
+     * 预估本次请求的输入 token 与输入部分费用（本地分词，不调用上游、不扣费）。
+     */
+    public AiEstimateResponse estimate(User user, AiChatRequest request) {
+        PreparedChat prepared = prepare(user, request, false);
+        int promptTokens = tokenCounter.countMessages(prepared.modelName(), prepared.messages());
+        double promptCost = round4(promptTokens * prepared.inMult() / 100000.0);
+        double costPer1kOutput = round4(1000 * prepared.outMult() / 100000.0);
+        return new AiEstimateResponse(prepared.modelName(), tokenCounter.encodingFor(prepared.modelName()).name(),
+                promptTokens, promptCost, costPer1kOutput, user.getCredits(), round4(creditReservationService.reserved(user.getId())),
+                prepared.contextReport());
+    }
+
+    private PreparedChat prepare(User user, AiChatRequest request) {
+        return prepare(user, request, true);
+    }
+
+    private PreparedChat prepare(User user, AiChatRequest request, boolean requireApiKey) {
         SystemSettings settings = systemSettingsRepository.findByUser(user).orElseGet(() -> {
             settingsService.getSettings(user);
             return systemSettingsRepository.findByUser(user).orElseThrow();
@@ -53,17 +378,26 @@ public class AiService {
         String baseUrl = settings.getBaseUrl() != null && !settings.getBaseUrl().isBlank() ? settings.getBaseUrl() : global.getLlmBaseUrl();
         if (baseUrl == null || baseUrl.isBlank()) baseUrl = "https://api.openai.com/v1";
         String apiKey = settings.getApiKeyEncrypted();
+        // 用户自带 Key 时始终走用户自己的上游，不参与模型池路由与模型池限流
+        boolean sharedUpstream = apiKey == null || apiKey.isBlank();
+        String poolId = sharedUpstream && model != null ? model.getPoolId() : null;
+        String limitPool = sharedUpstream ? (poolId != null && !poolId.isBlank() ? poolId : "default") : null;
         if (apiKey == null || apiKey.isBlank()) apiKey = global.getLlmApiKeyEncrypted();
-        if (apiKey == null || apiKey.isBlank()) {
+        if (requireApiKey && (apiKey == null || apiKey.isBlank()) && !modelPoolRouter.hasMembers(poolId)) {
             throw new RuntimeException("未配置 API Key，请联系管理员在后台配置，或前往设置页配置");
         }
         if (modelName == null || modelName.isBlank()) modelName = "gpt-4o";
 
         List<Map<String, Object>> messages = new ArrayList<>();
+        AiContextReport contextReport = null;
         if (request.context() != null) {
+            int budget = model != null && model.getContextTokenBudget() != null && model.getContextTokenBudget() > 0
+                    ? model.getContextTokenBudget() : defaultContextBudget;
+            ContextPacker.Packed packed = contextPacker.pack(request.context(), modelName, budget);
+            contextReport = packed.report();
             messages.add(Map.of(
                     "role", "system",
-                    "content", "你是一个专业的中文小说写作助手。以下是当前上下文(JSON)：\n" + safeJson(request.context())
+                    "content", "你是一个专业的中文小说写作助手。以下是当前上下文(JSON)：\n" + packed.json()
             ));
         } else {
             messages.add(Map.of("role", "system", "content", "你是一个专业的中文小说写作助手。"));
@@ -80,27 +414,25 @@ public class AiService {
         payload.put("model", modelName);
         payload.put("messages", messages);
         payload.put("temperature", 0.7);
+        return new PreparedChat(modelName, inMult, outMult, baseUrl, apiKey, poolId, limitPool, messages, payload, contextReport);
+    }
 
-        OpenAiCompatClient.ChatResult result = openAiCompatClient.chatCompletions(baseUrl, apiKey, payload);
-        int promptTokens = result.promptTokens() != null ? result.promptTokens() : estimateTokens(messages);
-        int completionTokens = result.completionTokens() != null ? result.completionTokens() : Math.max(1, result.content().length() / 4);
+    // 限流只针对真正发往上游的调用：命中润色缓存的请求不消耗令牌
+    private PreparedChat admit(User user, PreparedChat prepared) {
+        rateLimiter.check(user.getId(), prepared.limitPool());
+        return prepared;
+    }
+
+    private AiChatResponse settle(User user, PreparedChat prepared, OpenAiCompatClient.ChatResult result) {
+        // 上游未返回 usage 时（部分兼容实现/流式中断）按本地分词计
+        int promptTokens = result.promptTokens() != null ? result.promptTokens() : tokenCounter.countMessages(prepared.modelName(), prepared.messages());
+        int completionTokens = result.completionTokens() != null ? result.completionTokens() : Math.max(1, tokenCounter.count(prepared.modelName(), result.content()));
 
-        double cost = (promptTokens * inMult + completionTokens * outMult) / 100000.0;
+        double cost = (promptTokens * prepared.inMult() + completionTokens * prepared.outMult()) / 100000.0;
         cost = round4(cost);
-        economyService.deduct(user, cost, "Model: " + modelName + ", In: " + promptTokens + ", Out: " + completionTokens);
+        economyService.deduct(user, cost, prepared.modelName(), "Model: " + prepared.modelName() + ", In: " + promptTokens + ", Out: " + completionTokens);
 
-        return new AiChatResponse("assistant", result.content(), new AiUsageDto(promptTokens, completionTokens, cost), user.getCredits());
-    }
-
-    public AiRefineResponse refine(User user, AiRefineRequest request) {
-        String instruction = request.instruction() == null ? "" : request.instruction();
-        AiChatRequest chatRequest = new AiChatRequest(
-                List.of(new AiChatRequest.Message("user", "请根据以下指令润色文本。\n\n指令:\n" + instruction + "\n\n文本:\n" + request.text())),
-                request.modelId(),
-                null
-        );
-        AiChatResponse resp = chat(user, chatRequest);
-        return new AiRefineResponse(resp.content(), resp.usage(), resp.remainingCredits());
+        return new AiChatResponse("assistant", result.content(), new AiUsageDto(promptTokens, completionTokens, cost), user.getCredits(), prepared.contextReport());
     }
 
     private Optional<ModelConfigEntity> resolveModel(String modelId) {
@@ -124,15 +456,6 @@ public class AiService {
         }
     }
 
-    private int estimateTokens(List<Map<String, Object>> messages) {
-        int chars = 0;
-        for (Map<String, Object> m : messages) {
-            Object c = m.get("content");
-            if (c != null) chars += c.toString().length();
-        }
-        return Math.max(1, chars / 4);
-    }
-
     private double round4(double v) {
         return Math.round(v * 10000.0) / 10000.0;
     }
@@ -0,0 +1,204 @@
+package com.ainovel.app.ai;
+
+import com.ainovel.app.ai.dto.AiContextReport;
+import com.ainovel.app.ai.tokenizer.BpeEncoding;
+import com.ainovel.app.ai.tokenizer.TokenCounter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 把前端传入的上下文（任意 JSON）压缩到模型的 token 预算内再放进 system prompt。
+ * 顶层字段按与当前写作位置的相关度排序（场景 > 正文/上下文 > 章节 > 角色 > 世界观 > 故事/大纲 > 其他），
+ * 依次装入；放不下的字符串截断（正文类保留末尾，其余保留开头），数组/对象逐项装入，剩余项丢弃。
+ * 输出保持原字段顺序，并返回被丢弃/截断的字段路径。
+ */
+@Component
+public class ContextPacker {
+    private static final List<String> PRIORITY_KEYWORDS = List.of("scene", "content", "context", "chapter", "character", "world", "story", "outline");
+    private static final String TRUNCATED_MARK = "…（已截断）";
+    // 剩余预算太小时不再尝试部分装入，避免塞进只有几个字的碎片
+    private static final int MIN_PARTIAL_TOKENS = 24;
+    private static final int SMALL_FIELD_TOKENS = 64;
+    private static final int MAX_REPORTED_PATHS = 50;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private TokenCounter tokenCounter;
+
+    public record Packed(String json, AiContextReport report) {}
+
+    public Packed pack(Object context, String modelName, int budgetTokens) {
+        BpeEncoding encoding = tokenCounter.encodingFor(modelName);
+        Report report = new Report();
+        JsonNode root = objectMapper.valueToTree(context);
+        if (!root.isObject()) {
+            ObjectNode wrapped = JsonNodeFactory.instance.objectNode();
+            wrapped.set("context", root);
+            root = wrapped;
+        }
+
+        List<Map.Entry<String, JsonNode>> fields = new ArrayList<>();
+        root.fields().forEachRemaining(fields::add);
+        List<Map.Entry<String, JsonNode>> ranked = new ArrayList<>(fields);
+        ranked.sort(Comparator.comparingInt(e -> priority(e.getKey())));
+
+        int[] costs = new int[ranked.size()];
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = tokens(encoding, ranked.get(i).getValue());
+        }
+
+        Map<String, JsonNode> kept = new HashMap<>();
+        int remaining = budgetTokens - 2;
+        for (int i = 0; i < ranked.size(); i++) {
+            Map.Entry<String, JsonNode> e = ranked.get(i);
+            String key = e.getKey();
+            int prefix = tokens(encoding, fieldPrefix(key)) + 1;
+            int available = remaining - prefix;
+            JsonNode fitted;
+            if (costs[i] <= available) {
+                fitted = e.getValue();
+            } else {
+                // 截断大字段前，先给后面的小字段（标题等）留出位置，避免被整段正文挤掉
+                int reserve = 0;
+                for (int j = i + 1; j < ranked.size(); j++) {
+                    if (costs[j] <= SMALL_FIELD_TOKENS) reserve += costs[j] + tokens(encoding, fieldPrefix(ranked.get(j).getKey())) + 1;
+                }
+                int partial = available - reserve;
+                fitted = partial >= MIN_PARTIAL_TOKENS ? fit(encoding, key, e.getValue(), partial, keepTail(key), report) : null;
+            }
+            if (fitted == null) {
+                report.dropped(key);
+                continue;
+            }
+            kept.put(key, fitted);
+            remaining = available - tokens(encoding, fitted);
+        }
+
+        ObjectNode out = JsonNodeFactory.instance.objectNode();
+        for (Map.Entry<String, JsonNode> e : fields) {
+            JsonNode v = kept.get(e.getKey());
+            if (v != null) out.set(e.getKey(), v);
+        }
+        String json = write(out);
+        return new Packed(json, new AiContextReport(budgetTokens, encoding.count(json), report.dropped, report.truncated));
+    }
+
+    private JsonNode fit(BpeEncoding encoding, String path, JsonNode node, int budget, boolean keepTail, Report report) {
+        if (budget <= 0) return null;
+        if (tokens(encoding, node) <= budget) return node;
+        if (node.isTextual()) {
+            String text = truncate(encoding, node.asText(), budget - 2, keepTail);
+            if (text == null) return null;
+            report.truncated(path);
+            return TextNode.valueOf(text);
+        }
+        if (node.isArray()) {
+            ArrayNode out = JsonNodeFactory.instance.arrayNode();
+            int remaining = budget - 2;
+            for (int i = 0; i < node.size(); i++) {
+                JsonNode fitted = fit(encoding, path + "[" + i + "]", node.get(i), remaining - 1, keepTail, report);
+                if (fitted == null) {
+                    report.dropped(path + "[" + i + "]");
+                    continue;
+                }
+                out.add(fitted);
+                remaining -= tokens(encoding, fitted) + 1;
+            }
+            return out.isEmpty() ? null : out;
+        }
+        if (node.isObject()) {
+            ObjectNode out = JsonNodeFactory.instance.objectNode();
+            int remaining = budget - 2;
+            for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> e = it.next();
+                String childPath = path + "." + e.getKey();
+                int overhead = tokens(encoding, fieldPrefix(e.getKey())) + 1;
+                JsonNode fitted = fit(encoding, childPath, e.getValue(), remaining - overhead, keepTail, report);
+                if (fitted == null) {
+                    report.dropped(childPath);
+                    continue;
+                }
+                out.set(e.getKey(), fitted);
+                remaining -= overhead + tokens(encoding, fitted);
+            }
+            return out.isEmpty() ? null : out;
+        }
+        return null;
+    }
+
+    // 二分查找能放进预算的最长前缀/后缀；按码点计长度，不会把 emoji 等代理对切成半个字符
+    private String truncate(BpeEncoding encoding, String text, int budget, boolean keepTail) {
+        int markTokens = encoding.count(TRUNCATED_MARK);
+        if (budget - markTokens <= 0) return null;
+        int lo = 0;
+        int hi = text.codePointCount(0, text.length());
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (encoding.count(slice(text, mid, keepTail)) + markTokens <= budget) lo = mid;
+            else hi = mid - 1;
+        }
+        if (lo == 0) return null;
+        return keepTail ? TRUNCATED_MARK + slice(text, lo, true) : slice(text, lo, false) + TRUNCATED_MARK;
+    }
+
+    private static String slice(String text, int codePoints, boolean keepTail) {
+        return keepTail ? text.substring(text.offsetByCodePoints(text.length(), -codePoints))
+                : text.substring(0, text.offsetByCodePoints(0, codePoints));
+    }
+
+    private static int priority(String key) {
+        String k = key.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < PRIORITY_KEYWORDS.size(); i++) {
+            if (k.contains(PRIORITY_KEYWORDS.get(i))) return i;
+        }
+        return PRIORITY_KEYWORDS.size();
+    }
+
+    // 正文/续写上下文离光标最近的是末尾
+    private static boolean keepTail(String key) {
+        String k = key.toLowerCase(Locale.ROOT);
+        return k.contains("content") || k.contains("context");
+    }
+
+    private String fieldPrefix(String key) {
+        return write(TextNode.valueOf(key)) + ":";
+    }
+
+    private int tokens(BpeEncoding encoding, JsonNode node) {
+        return encoding.count(write(node));
+    }
+
+    private int tokens(BpeEncoding encoding, String s) {
+        return encoding.count(s);
+    }
+
+    private String write(JsonNode node) {
+        try {
+            return objectMapper.writeValueAsString(node);
+        } catch (Exception e) {
+            return String.valueOf(node);
+        }
+    }
+
+    private static final class Report {
+        final List<String> dropped = new ArrayList<>();
+        final List<String> truncated = new ArrayList<>();
+
+        void dropped(String path) {
+            if (dropped.size() < MAX_REPORTED_PATHS) dropped.add(path);
+        }
+
+        void truncated(String path) {
+            if (truncated.size() < MAX_REPORTED_PATHS) truncated.add(path);
+        }
+    }
+}
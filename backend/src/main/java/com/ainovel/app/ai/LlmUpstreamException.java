@@ -0,0 +1,25 @@
+package com.ainovel.app.ai;
+
+/**
+ * 上游 LLM 调用失败。statusCode 为上游 HTTP 状态码，网络错误/超时为 0。
+ */
+public class LlmUpstreamException extends RuntimeException {
+    private final int statusCode;
+
+    public LlmUpstreamException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public LlmUpstreamException(int statusCode, String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() { return statusCode; }
+
+    /** 网络错误、超时、限流与 5xx 视为上游不健康；其余 4xx 多为请求本身的问题。 */
+    public boolean isUpstreamFault() {
+        return statusCode == 0 || statusCode == 429 || statusCode >= 500;
+    }
+}
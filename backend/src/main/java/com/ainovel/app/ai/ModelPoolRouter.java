@@ -0,0 +1,255 @@
+package com.ainovel.app.ai;
+
+import com.ainovel.app.ai.model.ModelPoolEndpoint;
+import com.ainovel.app.ai.repo.ModelPoolEndpointRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 模型池路由：ModelConfigEntity.poolId 对应一组上游端点（各自的 baseUrl/Key），
+ * 每次调用按 EWMA 延迟 × 在途请求数 / 权重 做 power-of-two-choices 选择；连续失败的端点暂时摘除，到期后重新参与选择。
+ * 另按池记录最近的非流式调用耗时，供对冲请求计算等待时间。
+ * 端点列表每 refresh-seconds 在后台刷新一次（同一时刻只有一个刷新），刷新期间请求继续使用旧列表；只有首次加载在调用线程同步完成。
+ */
+@Component
+public class ModelPoolRouter {
+    private static final double EWMA_ALPHA = 0.3;
+    private static final int LATENCY_WINDOW = 256;
+
+    @Autowired
+    private ModelPoolEndpointRepository endpointRepository;
+    @Value("${app.ai.pool.refresh-seconds:30}")
+    private long refreshSeconds;
+    @Value("${app.ai.pool.eject-after-failures:3}")
+    private int ejectAfterFailures;
+    @Value("${app.ai.pool.eject-seconds:30}")
+    private long ejectSeconds;
+    @Value("${app.ai.pool.max-eject-seconds:300}")
+    private long maxEjectSeconds;
+
+    private volatile Map<String, List<Member>> pools = Map.of();
+    private volatile long loadedAtMs;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "model-pool-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<UUID, MemberStats> stats = new ConcurrentHashMap<>();
+    private final Map<String, LatencyWindow> poolLatencies = new ConcurrentHashMap<>();
+
+    public record Member(UUID id, String poolId, String name, String baseUrl, String apiKey, int weight) {}
+
+    public record MemberSnapshot(double ewmaLatencyMs, int inFlight, int consecutiveFailures, boolean ejected, long ejections) {}
+
+    public boolean hasMembers(String poolId) {
+        return poolId != null && !members(poolId).isEmpty();
+    }
+
+    public Optional<Lease> pick(String poolId) {
+        return pick(poolId, Set.of());
+    }
+
+    public Optional<Lease> pick(String poolId, Set<UUID> exclude) {
+        if (poolId == null) return Optional.empty();
+        List<Member> candidates = members(poolId).stream().filter(m -> !exclude.contains(m.id())).toList();
+        if (candidates.isEmpty()) return Optional.empty();
+
+        long now = System.currentTimeMillis();
+        List<Member> healthy = candidates.stream().filter(m -> statsOf(m).ejectedUntilMs <= now).toList();
+        Member chosen;
+        if (healthy.isEmpty()) {
+            // 全部被摘除时，选最早到期的一个作为探测，避免整个池不可用
+            chosen = candidates.stream().min(Comparator.comparingLong(m -> statsOf(m).ejectedUntilMs)).orElseThrow();
+        } else if (healthy.size() == 1) {
+            chosen = healthy.get(0);
+        } else {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int i = random.nextInt(healthy.size());
+            int j = random.nextInt(healthy.size() - 1);
+            if (j >= i) j++;
+            Member a = healthy.get(i);
+            Member b = healthy.get(j);
+            chosen = score(a) <= score(b) ? a : b;
+        }
+        MemberStats st = statsOf(chosen);
+        st.inFlight.incrementAndGet();
+        return Optional.of(new Lease(chosen, st));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    public synchronized void reload() {
+        Map<String, List<Member>> loaded = endpointRepository.findByEnabledTrue().stream()
+                .filter(e -> e.getPoolId() != null && !e.getPoolId().isBlank() && e.getBaseUrl() != null && !e.getBaseUrl().isBlank())
+                .map(this::toMember)
+                .collect(Collectors.groupingBy(Member::poolId, Collectors.toUnmodifiableList()));
+        pools = Map.copyOf(loaded);
+        loadedAtMs = System.currentTimeMillis();
+        // 已删除/停用端点的统计不再需要；仍在途的 Lease 直接持有自己的统计对象，不受影响
+        Set<UUID> ids = loaded.values().stream().flatMap(List::stream).map(Member::id).collect(Collectors.toSet());
+        stats.keySet().retainAll(ids);
+        poolLatencies.keySet().retainAll(loaded.keySet());
+    }
+
+    public MemberSnapshot snapshot(UUID endpointId) {
+        MemberStats st = stats.get(endpointId);
+        if (st == null) return new MemberSnapshot(0, 0, 0, false, 0);
+        synchronized (st) {
+            return new MemberSnapshot(round2(st.ewmaMs), st.inFlight.get(), st.consecutiveFailures,
+                    st.ejectedUntilMs > System.currentTimeMillis(), st.ejections);
+        }
+    }
+
+    /**
+     * 池内最近非流式调用耗时的 p95（毫秒）；样本不足或池内不足两个端点时返回 -1（无法对冲）。
+     */
+    public long hedgeDelayMs(String poolId, int minSamples) {
+        if (poolId == null || members(poolId).size() < 2) return -1;
+        LatencyWindow w = poolLatencies.get(poolId);
+        return w == null ? -1 : w.p95(minSamples);
+    }
+
+    private List<Member> members(String poolId) {
+        if (loadedAtMs == 0) {
+            synchronized (this) {
+                if (loadedAtMs == 0) reload();
+            }
+        } else if (System.currentTimeMillis() - loadedAtMs > refreshSeconds * 1000 && refreshing.compareAndSet(false, true)) {
+            try {
+                refresher.execute(() -> {
+                    try {
+                        reload();
+                    } catch (RuntimeException e) {
+                        // 刷新失败时继续使用旧列表，下次过期再试
+                    } finally {
+                        refreshing.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                refreshing.set(false);
+            }
+        }
+        return pools.getOrDefault(poolId, List.of());
+    }
+
+    private Member toMember(ModelPoolEndpoint e) {
+        return new Member(e.getId(), e.getPoolId(), e.getName(), e.getBaseUrl(), e.getApiKeyEncrypted(), Math.max(1, e.getWeight()));
+    }
+
+    private MemberStats statsOf(Member m) {
+        return stats.computeIfAbsent(m.id(), id -> new MemberStats());
+    }
+
+    private double score(Member m) {
+        MemberStats st = statsOf(m);
+        return (st.ewmaMs + 1.0) * (st.inFlight.get() + 1) / m.weight();
+    }
+
+    private static double round2(double v) {
+        return Math.round(v * 100.0) / 100.0;
+    }
+
+    private static final class MemberStats {
+        final AtomicInteger inFlight = new AtomicInteger();
+        double ewmaMs;
+        boolean sampled;
+        int consecutiveFailures;
+        long ejections;
+        volatile long ejectedUntilMs;
+    }
+
+    private static final class LatencyWindow {
+        private final long[] samples = new long[LATENCY_WINDOW];
+        private int size;
+        private int next;
+        private long version;
+        private long p95Version = -1;
+        private long p95;
+
+        synchronized void add(long ms) {
+            samples[next] = ms;
+            next = (next + 1) % samples.length;
+            if (size < samples.length) size++;
+            version++;
+        }
+
+        // 每 16 个新样本才重新排序一次
+        synchronized long p95(int minSamples) {
+            if (size < Math.max(1, minSamples)) return -1;
+            if (p95Version < 0 || version - p95Version >= 16) {
+                long[] sorted = Arrays.copyOf(samples, size);
+                Arrays.sort(sorted);
+                p95 = sorted[Math.min(size - 1, (int) Math.ceil(size * 0.95) - 1)];
+                p95Version = version;
+            }
+            return p95;
+        }
+    }
+
+    public final class Lease {
+        private final Member member;
+        private final MemberStats st;
+        private final long startNanos = System.nanoTime();
+        private volatile long firstByteNanos;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Lease(Member member, MemberStats st) {
+            this.member = member;
+            this.st = st;
+        }
+
+        public Member member() { return member; }
+        public String baseUrl() { return member.baseUrl(); }
+        public String apiKey() { return member.apiKey(); }
+
+        /** 流式调用以首字耗时作为延迟样本，避免长输出拉高 EWMA。 */
+        public void firstByte() {
+            if (firstByteNanos == 0) firstByteNanos = System.nanoTime();
+        }
+
+        public void complete(Throwable error) {
+            if (!completed.compareAndSet(false, true)) return;
+            st.inFlight.decrementAndGet();
+            Throwable cause = error == null ? null : OpenAiCompatClient.wrap(error);
+            boolean fault = cause instanceof LlmUpstreamException ue && ue.isUpstreamFault();
+            if (cause != null && !fault) return;
+
+            long end = firstByteNanos != 0 ? firstByteNanos : System.nanoTime();
+            double latencyMs = (end - startNanos) / 1_000_000.0;
+            synchronized (st) {
+                if (fault) {
+                    st.consecutiveFailures++;
+                    if (st.consecutiveFailures >= ejectAfterFailures) {
+                        int extra = Math.min(10, st.consecutiveFailures - ejectAfterFailures);
+                        long seconds = Math.min(maxEjectSeconds, ejectSeconds << extra);
+                        st.ejectedUntilMs = System.currentTimeMillis() + seconds * 1000;
+                        st.ejections++;
+                    }
+                    return;
+                }
+                st.consecutiveFailures = 0;
+                st.ejectedUntilMs = 0;
+                st.ewmaMs = st.sampled ? EWMA_ALPHA * latencyMs + (1 - EWMA_ALPHA) * st.ewmaMs : latencyMs;
+                st.sampled = true;
+            }
+            if (firstByteNanos == 0) {
+                poolLatencies.computeIfAbsent(member.poolId(), k -> new LatencyWindow()).add((long) latencyMs);
+            }
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package com.ainovel.app.ai;
 
+import com.ainovel.app.ai.telemetry.LlmTelemetry;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Component;
 
@@ -10,47 +14,274 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 @Component
 public class OpenAiCompatClient {
-    private final HttpClient httpClient = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(15))
-            .build();
+    private final ExecutorService ioExecutor;
+    private final HttpClient httpClient;
 
     @Autowired
     private ObjectMapper objectMapper;
+    @Autowired
+    private UpstreamConcurrencyLimiter concurrencyLimiter;
+    @Autowired
+    private UpstreamCircuitBreaker circuitBreaker;
+    @Autowired
+    private LlmTelemetry telemetry;
+    @Value("${app.ai.upstream.request-timeout-seconds:60}")
+    private long requestTimeoutSeconds = 60;
+
+    public OpenAiCompatClient(@Value("${app.ai.upstream.io-threads:16}") int ioThreads) {
+        AtomicInteger seq = new AtomicInteger();
+        this.ioExecutor = Executors.newFixedThreadPool(Math.max(2, ioThreads), r -> {
+            Thread t = new Thread(r, "llm-io-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(15))
+                .executor(ioExecutor)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ioExecutor.shutdown();
+    }
 
     public record ChatResult(String content, Integer promptTokens, Integer completionTokens) {}
 
     public ChatResult chatCompletions(String baseUrl, String apiKey, Map<String, Object> payload) {
+        return join(chatCompletionsAsync(baseUrl, apiKey, payload));
+    }
+
+    public CompletableFuture<ChatResult> chatCompletionsAsync(String baseUrl, String apiKey, Map<String, Object> payload) {
+        LlmTelemetry.Sample sample = telemetry.start(modelOf(payload), normalizeBaseUrl(baseUrl));
+        HttpRequest req;
+        try {
+            req = buildRequest(baseUrl, apiKey, payload, "application/json");
+        } catch (LlmUpstreamException e) {
+            sample.failure(e);
+            return CompletableFuture.failedFuture(e);
+        } catch (Exception e) {
+            sample.failure(LlmTelemetry.ErrorClass.OTHER);
+            return CompletableFuture.failedFuture(new RuntimeException("LLM 请求异常: " + e.getMessage(), e));
+        }
+        return acquirePermit(baseUrl, sample).thenCompose(permit -> {
+            UpstreamCircuitBreaker.Call call = acquireCall(baseUrl, permit);
+            return httpClient.sendAsync(req, HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((r, ex) -> permit.release())
+                    .handle((resp, ex) -> {
+                        if (ex != null) throw wrap(ex);
+                        return parseCompletion(resp);
+                    })
+                    .whenComplete((r, ex) -> call.complete(ex));
+        }).whenComplete((r, ex) -> record(sample, r, ex));
+    }
+
+    public ChatResult streamChatCompletions(String baseUrl, String apiKey, Map<String, Object> payload, Consumer<String> onDelta) {
+        return join(streamChatCompletionsAsync(baseUrl, apiKey, payload, onDelta));
+    }
+
+    /**
+     * 以 stream 模式请求上游，逐个 delta 回调 onDelta（在 HTTP 客户端的 IO 线程上），结束后返回完整内容与 usage（上游支持 include_usage 时）。
+     * onDelta 抛出异常（如下游连接已断开）时停止读取上游，但仍返回已生成的内容，便于调用方按实际生成量计费。
+     */
+    public CompletableFuture<ChatResult> streamChatCompletionsAsync(String baseUrl, String apiKey, Map<String, Object> payload, Consumer<String> onDelta) {
+        Map<String, Object> streamPayload = new HashMap<>(payload);
+        streamPayload.put("stream", true);
+        streamPayload.put("stream_options", Map.of("include_usage", true));
+        LlmTelemetry.Sample sample = telemetry.start(modelOf(payload), normalizeBaseUrl(baseUrl));
+        HttpRequest req;
         try {
-            String url = normalizeBaseUrl(baseUrl) + "/chat/completions";
-            String body = objectMapper.writeValueAsString(payload);
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .timeout(Duration.ofSeconds(60))
-                    .header(HttpHeaders.CONTENT_TYPE, "application/json")
-                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
-                    .POST(HttpRequest.BodyPublishers.ofString(body))
-                    .build();
-            HttpResponse<String> resp = httpClient.send(req, HttpResponse.BodyHandlers.ofString());
-            if (resp.statusCode() < 200 || resp.statusCode() >= 300) {
-                throw new RuntimeException("LLM 请求失败: HTTP " + resp.statusCode() + " " + safeSnippet(resp.body()));
+            req = buildRequest(baseUrl, apiKey, streamPayload, "text/event-stream");
+        } catch (LlmUpstreamException e) {
+            sample.failure(e);
+            return CompletableFuture.failedFuture(e);
+        } catch (Exception e) {
+            sample.failure(LlmTelemetry.ErrorClass.OTHER);
+            return CompletableFuture.failedFuture(new RuntimeException("LLM 请求异常: " + e.getMessage(), e));
+        }
+        // 流式调用以收到响应头为准记录熔断结果，生成耗时不计入慢调用
+        return acquirePermit(baseUrl, sample).thenCompose(permit -> {
+            UpstreamCircuitBreaker.Call call = acquireCall(baseUrl, permit);
+            SseChunkSubscriber subscriber = new SseChunkSubscriber(delta -> {
+                sample.firstToken();
+                onDelta.accept(delta);
+            });
+            HttpResponse.BodyHandler<Void> handler = info -> {
+                if (info.statusCode() < 200 || info.statusCode() >= 300) {
+                    LlmUpstreamException failure = new LlmUpstreamException(info.statusCode(), "LLM 请求失败: HTTP " + info.statusCode());
+                    call.complete(failure);
+                    return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8), body -> {
+                        subscriber.fail(new LlmUpstreamException(info.statusCode(), failure.getMessage() + " " + safeSnippet(body)));
+                        return null;
+                    });
+                }
+                call.complete(null);
+                return HttpResponse.BodySubscribers.fromLineSubscriber(subscriber);
+            };
+            httpClient.sendAsync(req, handler).whenComplete((r, ex) -> {
+                if (ex != null) subscriber.fail(wrap(ex));
+            });
+            return subscriber.result().whenComplete((r, ex) -> {
+                permit.release();
+                call.complete(ex);
+            });
+        }).whenComplete((r, ex) -> record(sample, r, ex));
+    }
+
+    // 排队满/排队超时归为 QUEUE_FULL，与上游返回的错误区分开
+    private CompletableFuture<UpstreamConcurrencyLimiter.Permit> acquirePermit(String baseUrl, LlmTelemetry.Sample sample) {
+        return concurrencyLimiter.acquire(normalizeBaseUrl(baseUrl)).whenComplete((p, ex) -> {
+            if (ex != null) sample.failure(LlmTelemetry.ErrorClass.QUEUE_FULL);
+        });
+    }
+
+    // 拿到并发许可后才向熔断器申请：本地排队的时间不计入慢调用，HALF_OPEN 的探测名额也不会在排队时被占着；熔断拒绝时归还许可
+    private UpstreamCircuitBreaker.Call acquireCall(String baseUrl, UpstreamConcurrencyLimiter.Permit permit) {
+        try {
+            return circuitBreaker.acquire(normalizeBaseUrl(baseUrl));
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    private static void record(LlmTelemetry.Sample sample, ChatResult result, Throwable error) {
+        if (error != null) sample.failure(error);
+        else sample.success(result.completionTokens());
+    }
+
+    private static String modelOf(Map<String, Object> payload) {
+        Object model = payload.get("model");
+        return model == null ? null : model.toString();
+    }
+
+    private final class SseChunkSubscriber implements Flow.Subscriber<String> {
+        private final Consumer<String> onDelta;
+        private final CompletableFuture<ChatResult> result = new CompletableFuture<>();
+        private final StringBuilder content = new StringBuilder();
+        private Flow.Subscription subscription;
+        private Integer prompt;
+        private Integer completion;
+
+        SseChunkSubscriber(Consumer<String> onDelta) {
+            this.onDelta = onDelta;
+        }
+
+        CompletableFuture<ChatResult> result() {
+            return result;
+        }
+
+        void fail(RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (result.isDone() || !line.startsWith("data:")) return;
+            String data = line.substring(5).trim();
+            if (data.isEmpty()) return;
+            if ("[DONE]".equals(data)) {
+                result.complete(new ChatResult(content.toString(), prompt, completion));
+                return;
             }
+            JsonNode chunk;
+            try {
+                chunk = objectMapper.readTree(data);
+            } catch (JsonProcessingException e) {
+                return;
+            }
+            if (chunk.path("usage").isObject()) {
+                prompt = usageValue(chunk, "prompt_tokens");
+                completion = usageValue(chunk, "completion_tokens");
+            }
+            String delta = chunk.path("choices").path(0).path("delta").path("content").asText("");
+            if (delta.isEmpty()) return;
+            content.append(delta);
+            try {
+                onDelta.accept(delta);
+            } catch (RuntimeException e) {
+                subscription.cancel();
+                result.complete(new ChatResult(content.toString(), prompt, null));
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(wrap(throwable));
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(new ChatResult(content.toString(), prompt, completion));
+        }
+    }
 
+    private ChatResult parseCompletion(HttpResponse<String> resp) {
+        if (resp.statusCode() < 200 || resp.statusCode() >= 300) {
+            throw new LlmUpstreamException(resp.statusCode(), "LLM 请求失败: HTTP " + resp.statusCode() + " " + safeSnippet(resp.body()));
+        }
+        try {
             JsonNode root = objectMapper.readTree(resp.body());
             String content = root.path("choices").path(0).path("message").path("content").asText("");
-            Integer prompt = root.path("usage").path("prompt_tokens").isNumber() ? root.path("usage").path("prompt_tokens").asInt() : null;
-            Integer completion = root.path("usage").path("completion_tokens").isNumber() ? root.path("usage").path("completion_tokens").asInt() : null;
-            return new ChatResult(content, prompt, completion);
+            return new ChatResult(content, usageValue(root, "prompt_tokens"), usageValue(root, "completion_tokens"));
         } catch (Exception e) {
-            if (e instanceof RuntimeException) throw (RuntimeException) e;
-            throw new RuntimeException("LLM 请求异常: " + e.getMessage(), e);
+            throw new RuntimeException("LLM 响应解析失败: " + e.getMessage(), e);
         }
     }
 
+    private HttpRequest buildRequest(String baseUrl, String apiKey, Map<String, Object> payload, String accept) throws Exception {
+        String url = normalizeBaseUrl(baseUrl) + "/chat/completions";
+        String body = objectMapper.writeValueAsString(payload);
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(Duration.ofSeconds(requestTimeoutSeconds))
+                .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                .header(HttpHeaders.ACCEPT, accept)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw wrap(e);
+        }
+    }
+
+    public static RuntimeException wrap(Throwable ex) {
+        Throwable cause = ex;
+        while (cause instanceof CompletionException && cause.getCause() != null) cause = cause.getCause();
+        if (cause instanceof RuntimeException re) return re;
+        return new LlmUpstreamException(0, "LLM 请求异常: " + cause.getMessage(), cause);
+    }
+
+    private Integer usageValue(JsonNode root, String field) {
+        JsonNode node = root.path("usage").path(field);
+        return node.isNumber() ? node.asInt() : null;
+    }
+
     private String normalizeBaseUrl(String baseUrl) {
         if (baseUrl == null || baseUrl.isBlank()) return "https://api.openai.com/v1";
         String b = baseUrl.trim();
@@ -63,4 +294,3 @@ public class OpenAiCompatClient {
         return s.length() > 200 ? s.substring(0, 200) + "..." : s;
     }
 }
-
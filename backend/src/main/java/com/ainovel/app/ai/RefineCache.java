@@ -0,0 +1,209 @@
+package com.ainovel.app.ai;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 润色结果缓存：以 (用户, 模型, 指令, 文本) 规范化后的 SHA-256 为键，命中时不再调用上游也不扣费。
+ * 默认关闭；store=memory 为进程内 LRU，store=redis 时多实例共享，键带 TTL，并用一个 ZSET 索引限制总条数。
+ * Redis 不可用时按未命中处理，不影响润色本身。
+ */
+@Component
+public class RefineCache {
+    private static final String REDIS_PREFIX = "ainovel:refine:";
+    private static final String REDIS_INDEX = REDIS_PREFIX + "index";
+
+    @Value("${app.ai.cache.enabled:false}")
+    private boolean enabled;
+    @Value("${app.ai.cache.store:memory}")
+    private String storeType;
+    @Value("${app.ai.cache.ttl-seconds:86400}")
+    private long ttlSeconds;
+    @Value("${app.ai.cache.max-entries:10000}")
+    private int maxEntries;
+    @Autowired
+    private ObjectProvider<StringRedisTemplate> redisTemplate;
+
+    private Store store;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public record Stats(boolean enabled, String store, long size, long hits, long misses, long puts, long evictions, long errors, double hitRate) {}
+
+    @PostConstruct
+    void init() {
+        store = "redis".equalsIgnoreCase(storeType) ? new RedisStore(redisTemplate.getObject()) : new MemoryStore();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String key(UUID userId, String modelName, String instruction, String text) {
+        String raw = userId + "\u0000" + normalize(modelName) + "\u0000" + normalize(instruction) + "\u0000" + normalize(text);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(raw.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Optional<String> get(String key) {
+        if (!enabled) return Optional.empty();
+        Optional<String> value;
+        try {
+            value = store.get(key);
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+            value = Optional.empty();
+        }
+        (value.isPresent() ? hits : misses).incrementAndGet();
+        return value;
+    }
+
+    public void put(String key, String value) {
+        if (!enabled || value == null || value.isBlank()) return;
+        try {
+            store.put(key, value);
+            puts.incrementAndGet();
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+        }
+    }
+
+    public void clear() {
+        try {
+            store.clear();
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+        }
+    }
+
+    public Stats stats() {
+        long size;
+        try {
+            size = store.size();
+        } catch (RuntimeException e) {
+            size = -1;
+        }
+        long h = hits.get();
+        long total = h + misses.get();
+        double hitRate = total == 0 ? 0 : Math.round(h * 10000.0 / total) / 10000.0;
+        return new Stats(enabled, store instanceof RedisStore ? "redis" : "memory", size, h, misses.get(), puts.get(), evictions.get(), errors.get(), hitRate);
+    }
+
+    // 去掉首尾空白并统一换行，避免仅因编辑器换行风格不同而未命中
+    private static String normalize(String s) {
+        if (s == null) return "";
+        return s.replace("\r\n", "\n").replace('\r', '\n').strip();
+    }
+
+    private interface Store {
+        Optional<String> get(String key);
+
+        void put(String key, String value);
+
+        long size();
+
+        void clear();
+    }
+
+    private final class MemoryStore implements Store {
+        private record Entry(String value, long expiresAtMs) {}
+
+        private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= maxEntries) return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+
+        @Override
+        public synchronized Optional<String> get(String key) {
+            Entry e = map.get(key);
+            if (e == null) return Optional.empty();
+            if (e.expiresAtMs() <= System.currentTimeMillis()) {
+                map.remove(key);
+                return Optional.empty();
+            }
+            return Optional.of(e.value());
+        }
+
+        @Override
+        public synchronized void put(String key, String value) {
+            map.put(key, new Entry(value, System.currentTimeMillis() + ttlSeconds * 1000));
+        }
+
+        @Override
+        public synchronized long size() {
+            return map.size();
+        }
+
+        @Override
+        public synchronized void clear() {
+            map.clear();
+        }
+    }
+
+    private final class RedisStore implements Store {
+        private final StringRedisTemplate redis;
+
+        RedisStore(StringRedisTemplate redis) {
+            this.redis = redis;
+        }
+
+        @Override
+        public Optional<String> get(String key) {
+            return Optional.ofNullable(redis.opsForValue().get(REDIS_PREFIX + key));
+        }
+
+        @Override
+        public void put(String key, String value) {
+            long now = System.currentTimeMillis();
+            redis.opsForValue().set(REDIS_PREFIX + key, value, Duration.ofSeconds(ttlSeconds));
+            redis.opsForZSet().add(REDIS_INDEX, key, now);
+            // 索引中已过期的成员直接剔除，超出上限时按写入时间淘汰最旧的
+            redis.opsForZSet().removeRangeByScore(REDIS_INDEX, 0, now - ttlSeconds * 1000);
+            Long size = redis.opsForZSet().zCard(REDIS_INDEX);
+            if (size != null && size > maxEntries) {
+                var oldest = redis.opsForZSet().popMin(REDIS_INDEX, size - maxEntries);
+                if (oldest == null || oldest.isEmpty()) return;
+                List<String> keys = oldest.stream().map(t -> REDIS_PREFIX + t.getValue()).toList();
+                redis.delete(keys);
+                evictions.addAndGet(keys.size());
+            }
+        }
+
+        @Override
+        public long size() {
+            Long size = redis.opsForZSet().zCard(REDIS_INDEX);
+            return size == null ? 0 : size;
+        }
+
+        @Override
+        public void clear() {
+            Set<String> members = redis.opsForZSet().range(REDIS_INDEX, 0, -1);
+            if (members != null && !members.isEmpty()) {
+                redis.delete(members.stream().map(m -> REDIS_PREFIX + m).toList());
+            }
+            redis.delete(REDIS_INDEX);
+        }
+    }
+}
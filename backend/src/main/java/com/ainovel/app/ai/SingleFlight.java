@@ -0,0 +1,46 @@
+package com.ainovel.app.ai;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 合并同一时刻相同键的异步调用：第一个调用者真正执行，其余调用者共享同一结果；调用结束后键即被移除，
+ * 之后的新请求会重新执行（不是缓存）。
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public CompletableFuture<V> run(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            // 返回副本，避免跟随者 cancel/complete 影响其他调用者
+            return existing.thenApply(v -> v);
+        }
+        CompletableFuture<V> source;
+        try {
+            source = call.get();
+        } catch (RuntimeException e) {
+            source = CompletableFuture.failedFuture(e);
+        }
+        source.whenComplete((v, ex) -> {
+            inFlight.remove(key, mine);
+            if (ex != null) mine.completeExceptionally(ex);
+            else mine.complete(v);
+        });
+        return mine.thenApply(v -> v);
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    public long coalesced() {
+        return coalesced.get();
+    }
+}
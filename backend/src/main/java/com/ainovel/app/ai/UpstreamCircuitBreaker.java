@@ -0,0 +1,163 @@
+package com.ainovel.app.ai;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按上游 baseUrl 熔断。CLOSED 状态下统计最近 window-size 次调用，失败（网络错误/429/5xx）或慢调用占比达到阈值即 OPEN，
+ * OPEN 期间直接拒绝（不再等满超时）；open-seconds 后进入 HALF_OPEN，只放行少量探测请求，全部成功则恢复，任一失败重新 OPEN。
+ */
+@Component
+public class UpstreamCircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    @Value("${app.ai.circuit-breaker.enabled:true}")
+    private boolean enabled = true;
+    @Value("${app.ai.circuit-breaker.window-size:20}")
+    private int windowSize = 20;
+    @Value("${app.ai.circuit-breaker.min-calls:10}")
+    private int minCalls = 10;
+    @Value("${app.ai.circuit-breaker.failure-rate-threshold:0.5}")
+    private double failureRateThreshold = 0.5;
+    @Value("${app.ai.circuit-breaker.slow-call-ms:30000}")
+    private long slowCallMs = 30000;
+    @Value("${app.ai.circuit-breaker.open-seconds:30}")
+    private long openSeconds = 30;
+    @Value("${app.ai.circuit-breaker.half-open-probes:2}")
+    private int halfOpenProbes = 2;
+
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    public record BreakerStats(String key, State state, int calls, int failures, long rejected, long opened) {}
+
+    public static final class OpenException extends LlmUpstreamException {
+        OpenException() {
+            super(503, "上游暂时不可用（已熔断），请稍后重试");
+        }
+    }
+
+    /** 申请一次调用；熔断中抛出 LlmUpstreamException(503)。调用结束后必须 complete。 */
+    public Call acquire(String key) {
+        if (!enabled) return Call.NOOP;
+        Breaker b = breakers.computeIfAbsent(key, k -> new Breaker());
+        boolean probe = b.tryAcquire(System.currentTimeMillis());
+        return new Call(b, probe);
+    }
+
+    public List<BreakerStats> stats() {
+        return breakers.entrySet().stream().map(e -> e.getValue().stats(e.getKey())).toList();
+    }
+
+    public static class Call {
+        static final Call NOOP = new Call(null, false);
+
+        private final Breaker breaker;
+        private final boolean probe;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Call(Breaker breaker, boolean probe) {
+            this.breaker = breaker;
+            this.probe = probe;
+        }
+
+        public void complete(Throwable error) {
+            if (breaker == null || !done.compareAndSet(false, true)) return;
+            long latencyMs = (System.nanoTime() - startNanos) / 1_000_000;
+            Throwable cause = error == null ? null : OpenAiCompatClient.wrap(error);
+            boolean fault = cause instanceof LlmUpstreamException ue && ue.isUpstreamFault();
+            // 请求本身的错误（4xx）不代表上游不健康，只释放探测名额
+            if (cause != null && !fault) {
+                breaker.release(probe);
+                return;
+            }
+            breaker.record(probe, fault || latencyMs >= breaker.owner().slowCallMs, System.currentTimeMillis());
+        }
+    }
+
+    private final class Breaker {
+        private State state = State.CLOSED;
+        private final boolean[] window = new boolean[Math.max(1, windowSize)];
+        private int size;
+        private int next;
+        private int failures;
+        private long openUntilMs;
+        private int probesInFlight;
+        private int probeSuccesses;
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong opened = new AtomicLong();
+
+        UpstreamCircuitBreaker owner() {
+            return UpstreamCircuitBreaker.this;
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            if (state == State.OPEN) {
+                if (now < openUntilMs) throw reject();
+                state = State.HALF_OPEN;
+                probesInFlight = 0;
+                probeSuccesses = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesInFlight + probeSuccesses >= halfOpenProbes) throw reject();
+                probesInFlight++;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void release(boolean probe) {
+            if (probe && state == State.HALF_OPEN) probesInFlight--;
+        }
+
+        synchronized void record(boolean probe, boolean failure, long now) {
+            if (state == State.HALF_OPEN) {
+                if (!probe) return;
+                probesInFlight--;
+                if (failure) {
+                    open(now);
+                } else if (++probeSuccesses >= halfOpenProbes) {
+                    state = State.CLOSED;
+                    size = 0;
+                    next = 0;
+                    failures = 0;
+                }
+                return;
+            }
+            if (state != State.CLOSED) return;
+            if (size == window.length) {
+                if (window[next]) failures--;
+            } else {
+                size++;
+            }
+            window[next] = failure;
+            if (failure) failures++;
+            next = (next + 1) % window.length;
+            if (size >= minCalls && failures >= failureRateThreshold * size) {
+                open(now);
+            }
+        }
+
+        private void open(long now) {
+            state = State.OPEN;
+            openUntilMs = now + openSeconds * 1000;
+            opened.incrementAndGet();
+        }
+
+        private LlmUpstreamException reject() {
+            rejected.incrementAndGet();
+            return new OpenException();
+        }
+
+        synchronized BreakerStats stats(String key) {
+            State s = state == State.OPEN && System.currentTimeMillis() >= openUntilMs ? State.HALF_OPEN : state;
+            return new BreakerStats(key, s, size, failures, rejected.get(), opened.get());
+        }
+    }
+}
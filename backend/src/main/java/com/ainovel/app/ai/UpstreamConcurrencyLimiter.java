@@ -0,0 +1,104 @@
+package com.ainovel.app.ai;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 按上游 baseUrl 限制并发请求数。获取许可是非阻塞的：超过上限的请求在队列中等待一个 CompletableFuture，
+ * 不占用任何线程；队列满或等待超时则直接失败。
+ */
+@Component
+public class UpstreamConcurrencyLimiter {
+    @Value("${app.ai.upstream.max-concurrency-per-host:64}")
+    private int maxConcurrency;
+    @Value("${app.ai.upstream.max-queue-per-host:1000}")
+    private int maxQueue;
+    @Value("${app.ai.upstream.queue-timeout-seconds:30}")
+    private long queueTimeoutSeconds;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    public record LaneStats(String key, int active, int queued, int maxConcurrency) {}
+
+    public CompletableFuture<Permit> acquire(String key) {
+        return lanes.computeIfAbsent(key, k -> new Lane()).acquire();
+    }
+
+    public List<LaneStats> stats() {
+        return lanes.entrySet().stream()
+                .map(e -> e.getValue().stats(e.getKey()))
+                .toList();
+    }
+
+    public interface Permit {
+        void release();
+    }
+
+    private final class Lane {
+        private int active;
+        private final ArrayDeque<CompletableFuture<Permit>> waiters = new ArrayDeque<>();
+
+        CompletableFuture<Permit> acquire() {
+            CompletableFuture<Permit> waiter;
+            synchronized (this) {
+                if (active < maxConcurrency) {
+                    active++;
+                    return CompletableFuture.completedFuture(newPermit());
+                }
+                if (waiters.size() >= maxQueue) {
+                    return CompletableFuture.failedFuture(new RuntimeException("上游请求繁忙，请稍后重试"));
+                }
+                waiter = new CompletableFuture<>();
+                waiters.add(waiter);
+            }
+            return waiter.orTimeout(queueTimeoutSeconds, TimeUnit.SECONDS).exceptionallyCompose(ex -> {
+                if (ex instanceof TimeoutException) {
+                    return CompletableFuture.failedFuture(new RuntimeException("上游请求排队超时，请稍后重试"));
+                }
+                return CompletableFuture.failedFuture(ex);
+            });
+        }
+
+        private Permit newPermit() {
+            return new Permit() {
+                private boolean released;
+
+                @Override
+                public void release() {
+                    synchronized (this) {
+                        if (released) return;
+                        released = true;
+                    }
+                    handOff();
+                }
+            };
+        }
+
+        // 许可直接转交给队首仍在等待的请求；已超时/取消的等待者跳过
+        private void handOff() {
+            while (true) {
+                CompletableFuture<Permit> next;
+                synchronized (this) {
+                    next = waiters.poll();
+                    if (next == null) {
+                        active--;
+                        return;
+                    }
+                }
+                if (next.complete(newPermit())) return;
+            }
+        }
+
+        synchronized LaneStats stats(String key) {
+            return new LaneStats(key, active, waiters.size(), maxConcurrency);
+        }
+    }
+}
@@ -1,4 +1,3 @@
 package com.ainovel.app.ai.dto;
 
-public record AiChatResponse(String role, String content, AiUsageDto usage, double remainingCredits) {}
-
+public record AiChatResponse(String role, String content, AiUsageDto usage, double remainingCredits, AiContextReport context) {}
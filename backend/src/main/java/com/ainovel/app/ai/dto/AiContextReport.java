@@ -0,0 +1,5 @@
+package com.ainovel.app.ai.dto;
+
+import java.util.List;
+
+public record AiContextReport(int budgetTokens, int usedTokens, List<String> dropped, List<String> truncated) {}
@@ -0,0 +1,3 @@
+package com.ainovel.app.ai.dto;
+
+public record AiEstimateResponse(String model, String encoding, int promptTokens, double promptCost, double costPer1kOutputTokens, double remainingCredits, double reservedCredits, AiContextReport context) {}
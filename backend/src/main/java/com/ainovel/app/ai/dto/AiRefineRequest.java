@@ -1,4 +1,3 @@
 package com.ainovel.app.ai.dto;
 
-public record AiRefineRequest(String text, String instruction, String modelId) {}
-
+public record AiRefineRequest(String text, String instruction, String modelId, Boolean noCache) {}
@@ -0,0 +1,3 @@
+package com.ainovel.app.ai.dto;
+
+public record AiStreamDone(AiUsageDto usage, double remainingCredits, long ttftMs, long durationMs, AiContextReport context) {}
@@ -24,6 +24,7 @@ public class ModelConfigEntity {
     private double outputMultiplier;
     private String poolId;
     private boolean enabled = true;
+    private Integer contextTokenBudget;
 
     @CreationTimestamp
     private Instant createdAt;
@@ -45,6 +46,8 @@ public class ModelConfigEntity {
     public void setPoolId(String poolId) { this.poolId = poolId; }
     public boolean isEnabled() { return enabled; }
     public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public Integer getContextTokenBudget() { return contextTokenBudget; }
+    public void setContextTokenBudget(Integer contextTokenBudget) { this.contextTokenBudget = contextTokenBudget; }
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
     public Instant getUpdatedAt() { return updatedAt; }
@@ -0,0 +1,12 @@
+package com.ainovel.app.ai.repo;
+
+import com.ainovel.app.ai.model.ModelPoolEndpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface ModelPoolEndpointRepository extends JpaRepository<ModelPoolEndpoint, UUID> {
+    List<ModelPoolEndpoint> findByEnabledTrue();
+    List<ModelPoolEndpoint> findAllByOrderByPoolIdAscCreatedAtAsc();
+}
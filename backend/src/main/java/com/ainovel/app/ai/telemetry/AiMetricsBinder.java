@@ -0,0 +1,51 @@
+package com.ainovel.app.ai.telemetry;
+
+import com.ainovel.app.ai.AiService;
+import com.ainovel.app.ai.RefineCache;
+import com.ainovel.app.ai.UpstreamCircuitBreaker;
+import com.ainovel.app.ai.UpstreamConcurrencyLimiter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 把熔断、排队、对冲、请求合并与润色缓存的内部计数导出为 Micrometer 指标（每次采集时读取）。
+ */
+@Component
+public class AiMetricsBinder implements MeterBinder {
+    @Autowired
+    private UpstreamCircuitBreaker circuitBreaker;
+    @Autowired
+    private UpstreamConcurrencyLimiter concurrencyLimiter;
+    @Autowired
+    private AiService aiService;
+    @Autowired
+    private RefineCache refineCache;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ai.upstream.breakers.open", circuitBreaker, b -> b.stats().stream()
+                .filter(s -> s.state() == UpstreamCircuitBreaker.State.OPEN).count()).register(registry);
+        FunctionCounter.builder("ai.upstream.breaker.rejected", circuitBreaker, b -> b.stats().stream()
+                .mapToLong(UpstreamCircuitBreaker.BreakerStats::rejected).sum()).register(registry);
+        FunctionCounter.builder("ai.upstream.breaker.opened", circuitBreaker, b -> b.stats().stream()
+                .mapToLong(UpstreamCircuitBreaker.BreakerStats::opened).sum()).register(registry);
+
+        Gauge.builder("ai.upstream.active", concurrencyLimiter, l -> l.stats().stream()
+                .mapToInt(UpstreamConcurrencyLimiter.LaneStats::active).sum()).register(registry);
+        Gauge.builder("ai.upstream.queued", concurrencyLimiter, l -> l.stats().stream()
+                .mapToInt(UpstreamConcurrencyLimiter.LaneStats::queued).sum()).register(registry);
+
+        FunctionCounter.builder("ai.hedge.launched", aiService, s -> s.hedgeStats().launched()).register(registry);
+        FunctionCounter.builder("ai.hedge.won", aiService, s -> s.hedgeStats().won()).register(registry);
+        Gauge.builder("ai.chat.inflight", aiService, AiService::inFlightChats).register(registry);
+        FunctionCounter.builder("ai.chat.coalesced", aiService, AiService::coalescedChats).register(registry);
+
+        FunctionCounter.builder("ai.refine.cache.hits", refineCache, c -> c.stats().hits()).register(registry);
+        FunctionCounter.builder("ai.refine.cache.misses", refineCache, c -> c.stats().misses()).register(registry);
+        Gauge.builder("ai.refine.cache.size", refineCache, c -> c.stats().size()).register(registry);
+    }
+}
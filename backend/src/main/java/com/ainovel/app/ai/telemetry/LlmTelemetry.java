@@ -0,0 +1,216 @@
+package com.ainovel.app.ai.telemetry;
+
+import com.ainovel.app.ai.LlmUpstreamException;
+import com.ainovel.app.ai.UpstreamCircuitBreaker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 上游调用遥测：按 (模型, 端点) 记录耗时、首字耗时、输出速度与错误分类。
+ * 耗时只统计成功调用。近期数据保存在按分钟滚动的内存直方图中（window-minutes，默认 15 分钟），后台看板直接读取，不查数据库；
+ * 同时以 ai.llm.* 指标注册到 Micrometer（/actuator/metrics）。
+ */
+@Component
+public class LlmTelemetry {
+    public enum ErrorClass { TIMEOUT, NETWORK, RATE_LIMITED, SERVER_ERROR, CLIENT_ERROR, CIRCUIT_OPEN, QUEUE_FULL, OTHER }
+
+    private static final int SUCCESS = ErrorClass.values().length;
+    // 用户自带 baseUrl 时端点不可控，超出上限的组合合并到一个序列，避免指标基数失控
+    private static final int MAX_SERIES = 200;
+    private static final String OTHER = "other";
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+    @Value("${app.ai.telemetry.window-minutes:15}")
+    private int windowMinutes = 15;
+
+    private MeterRegistry registry;
+    private final Map<SeriesKey, Series> series = new ConcurrentHashMap<>();
+
+    public record SeriesKey(String model, String endpoint) {}
+
+    public record SeriesStats(String model, String endpoint, long calls, long errors, double errorRate,
+                              RollingHistogram.Snapshot latencyMs, RollingHistogram.Snapshot ttftMs,
+                              RollingHistogram.Snapshot tokensPerSecond, Map<ErrorClass, Long> errorClasses) {}
+
+    public record Summary(long calls, long errors, double errorRate, RollingHistogram.Snapshot latencyMs) {}
+
+    @PostConstruct
+    void init() {
+        if (meterRegistry != null) registry = meterRegistry.getIfAvailable();
+    }
+
+    public Sample start(String model, String endpoint) {
+        return new Sample(seriesFor(model == null || model.isBlank() ? "unknown" : model, endpoint));
+    }
+
+    /** 看板用：窗口内全部上游调用的错误率与耗时分位数。 */
+    public Summary summary() {
+        long now = System.currentTimeMillis();
+        long[] outcomes = new long[SUCCESS + 1];
+        long[] latency = RollingHistogram.newCounts();
+        for (Series s : series.values()) {
+            s.outcomes.sumInto(outcomes, now);
+            s.latency.sumInto(latency, now);
+        }
+        long errors = 0;
+        for (int i = 0; i < SUCCESS; i++) errors += outcomes[i];
+        long calls = errors + outcomes[SUCCESS];
+        return new Summary(calls, errors, rate(errors, calls), RollingHistogram.snapshot(latency));
+    }
+
+    public List<SeriesStats> series() {
+        long now = System.currentTimeMillis();
+        return series.entrySet().stream()
+                .map(e -> e.getValue().stats(e.getKey(), now))
+                .sorted(Comparator.comparing(SeriesStats::model).thenComparing(SeriesStats::endpoint))
+                .toList();
+    }
+
+    static ErrorClass classify(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof UpstreamCircuitBreaker.OpenException) return ErrorClass.CIRCUIT_OPEN;
+            if (t instanceof HttpConnectTimeoutException) return ErrorClass.NETWORK;
+            if (t instanceof HttpTimeoutException) return ErrorClass.TIMEOUT;
+            if (t instanceof LlmUpstreamException ue && ue.getStatusCode() != 0) {
+                int status = ue.getStatusCode();
+                if (status == 429) return ErrorClass.RATE_LIMITED;
+                if (status >= 500) return ErrorClass.SERVER_ERROR;
+                return ErrorClass.CLIENT_ERROR;
+            }
+            if (t instanceof java.io.IOException) return ErrorClass.NETWORK;
+        }
+        return ErrorClass.OTHER;
+    }
+
+    private Series seriesFor(String model, String endpoint) {
+        SeriesKey key = new SeriesKey(model, endpoint);
+        Series s = series.get(key);
+        if (s != null) return s;
+        if (series.size() >= MAX_SERIES) key = new SeriesKey(OTHER, OTHER);
+        return series.computeIfAbsent(key, this::newSeries);
+    }
+
+    private Series newSeries(SeriesKey key) {
+        Series s = new Series(windowMinutes);
+        if (registry != null) s.register(registry, key);
+        return s;
+    }
+
+    private static double rate(long part, long total) {
+        return total == 0 ? 0.0 : Math.round(part * 10000.0 / total) / 10000.0;
+    }
+
+    private static final class Series {
+        final RollingHistogram latency;
+        final RollingHistogram ttft;
+        final RollingHistogram tokensPerSecond;
+        final RollingWindow outcomes;
+        final LongAdder[] totals = new LongAdder[SUCCESS + 1];
+
+        Series(int windowMinutes) {
+            latency = new RollingHistogram(windowMinutes);
+            ttft = new RollingHistogram(windowMinutes);
+            tokensPerSecond = new RollingHistogram(windowMinutes);
+            outcomes = new RollingWindow(windowMinutes, SUCCESS + 1);
+            for (int i = 0; i < totals.length; i++) totals[i] = new LongAdder();
+        }
+
+        void outcome(int index, long now) {
+            outcomes.add(index, 1, now);
+            totals[index].increment();
+        }
+
+        SeriesStats stats(SeriesKey key, long now) {
+            long[] counts = new long[SUCCESS + 1];
+            outcomes.sumInto(counts, now);
+            Map<ErrorClass, Long> classes = new EnumMap<>(ErrorClass.class);
+            long errors = 0;
+            for (ErrorClass c : ErrorClass.values()) {
+                if (counts[c.ordinal()] > 0) classes.put(c, counts[c.ordinal()]);
+                errors += counts[c.ordinal()];
+            }
+            long calls = errors + counts[SUCCESS];
+            return new SeriesStats(key.model(), key.endpoint(), calls, errors, rate(errors, calls),
+                    latency.snapshot(now), ttft.snapshot(now), tokensPerSecond.snapshot(now), classes);
+        }
+
+        void register(MeterRegistry registry, SeriesKey key) {
+            gauge(registry, "ai.llm.latency", "0.5", key, "milliseconds", s -> s.latency.snapshot(System.currentTimeMillis()).p50());
+            gauge(registry, "ai.llm.latency", "0.95", key, "milliseconds", s -> s.latency.snapshot(System.currentTimeMillis()).p95());
+            gauge(registry, "ai.llm.latency", "0.99", key, "milliseconds", s -> s.latency.snapshot(System.currentTimeMillis()).p99());
+            gauge(registry, "ai.llm.ttft", "0.5", key, "milliseconds", s -> s.ttft.snapshot(System.currentTimeMillis()).p50());
+            gauge(registry, "ai.llm.ttft", "0.95", key, "milliseconds", s -> s.ttft.snapshot(System.currentTimeMillis()).p95());
+            gauge(registry, "ai.llm.tokens.per.second", "0.5", key, null, s -> s.tokensPerSecond.snapshot(System.currentTimeMillis()).p50());
+            Gauge.builder("ai.llm.error.rate", this, s -> s.stats(key, System.currentTimeMillis()).errorRate())
+                    .tag("model", key.model()).tag("endpoint", key.endpoint()).register(registry);
+            FunctionCounter.builder("ai.llm.calls", totals[SUCCESS], LongAdder::sum)
+                    .tag("model", key.model()).tag("endpoint", key.endpoint()).tag("outcome", "success").register(registry);
+            for (ErrorClass c : ErrorClass.values()) {
+                FunctionCounter.builder("ai.llm.calls", totals[c.ordinal()], LongAdder::sum)
+                        .tag("model", key.model()).tag("endpoint", key.endpoint()).tag("outcome", c.name().toLowerCase(Locale.ROOT))
+                        .register(registry);
+            }
+        }
+
+        private void gauge(MeterRegistry registry, String name, String quantile, SeriesKey key, String unit, ToDoubleFunction<Series> f) {
+            Gauge.builder(name, this, f).baseUnit(unit)
+                    .tag("model", key.model()).tag("endpoint", key.endpoint()).tag("quantile", quantile)
+                    .register(registry);
+        }
+    }
+
+    /** 一次上游调用的记录，结果只记一次（先到者为准）。 */
+    public static final class Sample {
+        private final Series series;
+        private final long startNanos = System.nanoTime();
+        private volatile long firstTokenNanos;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Sample(Series series) {
+            this.series = series;
+        }
+
+        public void firstToken() {
+            if (firstTokenNanos == 0) firstTokenNanos = System.nanoTime();
+        }
+
+        public void success(Integer completionTokens) {
+            if (!done.compareAndSet(false, true)) return;
+            long end = System.nanoTime();
+            long now = System.currentTimeMillis();
+            series.latency.record((end - startNanos) / 1_000_000, now);
+            long first = firstTokenNanos;
+            if (first != 0) series.ttft.record((first - startNanos) / 1_000_000, now);
+            long generatingNanos = end - (first != 0 ? first : startNanos);
+            if (completionTokens != null && completionTokens > 0 && generatingNanos >= 1_000_000) {
+                series.tokensPerSecond.record(Math.round(completionTokens * 1e9 / generatingNanos), now);
+            }
+            series.outcome(SUCCESS, now);
+        }
+
+        public void failure(Throwable error) {
+            failure(classify(error));
+        }
+
+        public void failure(ErrorClass errorClass) {
+            // 失败调用不进耗时直方图：熔断/排队拒绝接近 0ms，会把分位数拉低
+            if (!done.compareAndSet(false, true)) return;
+            series.outcome(errorClass.ordinal(), System.currentTimeMillis());
+        }
+    }
+}
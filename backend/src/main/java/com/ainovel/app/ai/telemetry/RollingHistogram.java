@@ -0,0 +1,93 @@
+package com.ainovel.app.ai.telemetry;
+
+/**
+ * 对数分桶直方图（HdrHistogram 的简化版）：每个 2 的幂区间再均分 8 个子桶，相对误差约 6%，
+ * 数据存放在 RollingWindow 中，只保留最近若干分钟。取值范围 [0, 2^24)，超出按上限计。
+ */
+public final class RollingHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_BITS = 24;
+    static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB;
+    private static final int SUM_INDEX = BUCKETS;
+
+    public record Snapshot(long count, double mean, long p50, long p95, long p99, long max) {
+        public static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, 0);
+    }
+
+    private final RollingWindow window;
+
+    public RollingHistogram(int windowMinutes) {
+        this.window = new RollingWindow(windowMinutes, BUCKETS + 1);
+    }
+
+    public void record(long value, long nowMs) {
+        long v = Math.max(0, Math.min(value, (1L << MAX_BITS) - 1));
+        window.add(bucket(v), 1, nowMs);
+        window.add(SUM_INDEX, v, nowMs);
+    }
+
+    public Snapshot snapshot(long nowMs) {
+        long[] counts = new long[BUCKETS + 1];
+        sumInto(counts, nowMs);
+        return snapshot(counts);
+    }
+
+    /** 多个直方图合并时先各自 sumInto 同一个数组，再调用 snapshot(long[])。 */
+    public void sumInto(long[] counts, long nowMs) {
+        window.sumInto(counts, nowMs);
+    }
+
+    public static long[] newCounts() {
+        return new long[BUCKETS + 1];
+    }
+
+    public static Snapshot snapshot(long[] counts) {
+        long total = 0;
+        int maxBucket = -1;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] > 0) {
+                total += counts[i];
+                maxBucket = i;
+            }
+        }
+        if (total == 0) return Snapshot.EMPTY;
+        return new Snapshot(total, (double) counts[SUM_INDEX] / total,
+                percentile(counts, total, 0.50), percentile(counts, total, 0.95), percentile(counts, total, 0.99),
+                upperBound(maxBucket));
+    }
+
+    private static long percentile(long[] counts, long total, double q) {
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return midpoint(i);
+        }
+        return midpoint(BUCKETS - 1);
+    }
+
+    static int bucket(long v) {
+        if (v < SUB) return (int) v;
+        int k = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (k - SUB_BITS)) & (SUB - 1);
+        return (k - SUB_BITS + 1) * SUB + sub;
+    }
+
+    private static long lowerBound(int bucket) {
+        if (bucket < SUB) return bucket;
+        int k = bucket / SUB + SUB_BITS - 1;
+        int sub = bucket % SUB;
+        return (long) (SUB + sub) << (k - SUB_BITS);
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB) return bucket;
+        int k = bucket / SUB + SUB_BITS - 1;
+        return lowerBound(bucket) + (1L << (k - SUB_BITS)) - 1;
+    }
+
+    private static long midpoint(int bucket) {
+        return (lowerBound(bucket) + upperBound(bucket)) / 2;
+    }
+}
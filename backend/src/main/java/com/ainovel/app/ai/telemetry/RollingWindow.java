@@ -0,0 +1,56 @@
+package com.ainovel.app.ai.telemetry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按分钟分槽的环形计数器：slots 个槽位，每槽 width 个计数。写入只用 CAS/原子加，不加锁；
+ * 槽位换到新的一分钟时清零，清零与并发写入之间可能丢失极少量样本，对统计用途可以接受。
+ */
+final class RollingWindow {
+    private static final long MINUTE_MS = 60_000;
+
+    private final int width;
+    private final AtomicLong[] minutes;
+    private final AtomicLongArray[] counts;
+
+    RollingWindow(int slots, int width) {
+        this.width = width;
+        this.minutes = new AtomicLong[Math.max(1, slots)];
+        this.counts = new AtomicLongArray[minutes.length];
+        for (int i = 0; i < minutes.length; i++) {
+            minutes[i] = new AtomicLong(-1);
+            counts[i] = new AtomicLongArray(width);
+        }
+    }
+
+    int width() {
+        return width;
+    }
+
+    void add(int index, long delta, long nowMs) {
+        long minute = nowMs / MINUTE_MS;
+        int slot = (int) (minute % minutes.length);
+        long current = minutes[slot].get();
+        if (current != minute) {
+            // 落后于槽位的写入（时钟回拨或线程长时间挂起）直接丢弃
+            if (current > minute) return;
+            if (minutes[slot].compareAndSet(current, minute)) {
+                AtomicLongArray c = counts[slot];
+                for (int i = 0; i < width; i++) c.set(i, 0);
+            }
+        }
+        counts[slot].addAndGet(index, delta);
+    }
+
+    /** 累加窗口内（最近 slots 分钟，含当前分钟）各槽的计数到 into。 */
+    void sumInto(long[] into, long nowMs) {
+        long minute = nowMs / MINUTE_MS;
+        for (int s = 0; s < minutes.length; s++) {
+            long m = minutes[s].get();
+            if (m < 0 || m > minute || minute - m >= minutes.length) continue;
+            AtomicLongArray c = counts[s];
+            for (int i = 0; i < width; i++) into[i] += c.get(i);
+        }
+    }
+}
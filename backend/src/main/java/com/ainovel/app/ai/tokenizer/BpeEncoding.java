@@ -0,0 +1,274 @@
+package com.ainovel.app.ai.tokenizer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * tiktoken 兼容的字节级 BPE 编码（词表格式为每行 "base64(token) rank"）。
+ * 词表加载后只保存在一个字节池 + 开放寻址哈希表（均为基本类型数组）中；计数时使用线程内复用的缓冲区，
+ * 不为每个 token 分配对象。合并过程用 (rank, 位置) 小顶堆，长片段（如整段中文）也是 O(n log n)。
+ */
+public final class BpeEncoding {
+    private final String name;
+    private final Pattern pattern;
+    private final byte[] pool;
+    private final int[] offsets;
+    private final int[] ranks;
+    private final int[] table;
+    private final int mask;
+    private final ThreadLocal<Scratch> scratch;
+
+    private BpeEncoding(String name, Pattern pattern, byte[] pool, int[] offsets, int[] ranks) {
+        this.name = name;
+        this.pattern = pattern;
+        this.pool = pool;
+        this.offsets = offsets;
+        this.ranks = ranks;
+        int size = ranks.length;
+        int capacity = Integer.highestOneBit(Math.max(16, size * 2) - 1) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(table, -1);
+        for (int i = 0; i < size; i++) {
+            int slot = hash(pool, offsets[i], offsets[i + 1]) & mask;
+            while (table[slot] >= 0) slot = (slot + 1) & mask;
+            table[slot] = i;
+        }
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(pattern));
+    }
+
+    public static BpeEncoding load(String name, String regex, InputStream gzipped) throws IOException {
+        ByteArrayOutputStream pool = new ByteArrayOutputStream(1 << 20);
+        int[] offsets = new int[1 << 17];
+        int[] ranks = new int[1 << 17];
+        int count = 0;
+        Base64.Decoder decoder = Base64.getDecoder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(gzipped), StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) continue;
+                if (count + 1 >= offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                    ranks = Arrays.copyOf(ranks, ranks.length * 2);
+                }
+                offsets[count] = pool.size();
+                pool.writeBytes(decoder.decode(line.substring(0, space)));
+                ranks[count] = Integer.parseInt(line, space + 1, line.length(), 10);
+                count++;
+            }
+        }
+        offsets[count] = pool.size();
+        return new BpeEncoding(name, Pattern.compile(regex, Pattern.UNICODE_CHARACTER_CLASS),
+                pool.toByteArray(), Arrays.copyOf(offsets, count + 1), Arrays.copyOf(ranks, count));
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public int vocabSize() {
+        return ranks.length;
+    }
+
+    public int count(CharSequence text) {
+        if (text == null || text.isEmpty()) return 0;
+        Scratch s = scratch.get();
+        Matcher m = s.matcher.reset(text);
+        int total = 0;
+        try {
+            while (m.find()) {
+                int n = s.utf8(text, m.start(), m.end());
+                total += lookup(s.bytes, 0, n) >= 0 ? 1 : merge(s, n);
+            }
+        } finally {
+            m.reset("");
+        }
+        return total;
+    }
+
+    public int[] encode(CharSequence text) {
+        if (text == null || text.isEmpty()) return new int[0];
+        Scratch s = scratch.get();
+        Matcher m = s.matcher.reset(text);
+        int[] out = new int[Math.max(16, text.length())];
+        int size = 0;
+        try {
+            while (m.find()) {
+                int n = s.utf8(text, m.start(), m.end());
+                int whole = lookup(s.bytes, 0, n);
+                int parts = whole >= 0 ? 1 : merge(s, n);
+                if (size + parts > out.length) out = Arrays.copyOf(out, Math.max(out.length * 2, size + parts));
+                if (whole >= 0) {
+                    out[size++] = whole;
+                    continue;
+                }
+                for (int i = 0; i < n; i = s.next[i]) {
+                    out[size++] = lookup(s.bytes, i, s.next[i]);
+                }
+            }
+        } finally {
+            m.reset("");
+        }
+        return Arrays.copyOf(out, size);
+    }
+
+    /**
+     * 对 s.bytes[0, n) 做 BPE 合并，返回片段数；合并结果留在 s.next（节点 i 覆盖 [i, next[i])）。
+     * pairRank[i] 为节点 i 与其后继组成的字节串的 rank，-1 表示不可合并，-2 表示节点已被并入前一个节点。
+     */
+    private int merge(Scratch s, int n) {
+        s.ensureNodes(n);
+        int[] next = s.next, prev = s.prev, pairRank = s.pairRank;
+        byte[] bytes = s.bytes;
+        s.heapSize = 0;
+        for (int i = 0; i < n; i++) {
+            next[i] = i + 1;
+            prev[i] = i - 1;
+        }
+        for (int i = 0; i < n - 1; i++) {
+            int r = lookup(bytes, i, i + 2);
+            pairRank[i] = r;
+            if (r >= 0) s.push(r, i);
+        }
+        pairRank[n - 1] = -1;
+        int parts = n;
+        while (s.heapSize > 0) {
+            long top = s.pop();
+            int r = (int) (top >>> 32);
+            int i = (int) top;
+            if (pairRank[i] != r) continue;
+            int j = next[i];
+            int k = next[j];
+            next[i] = k;
+            if (k < n) prev[k] = i;
+            pairRank[j] = -2;
+            parts--;
+
+            int ri = k < n ? lookup(bytes, i, next[k]) : -1;
+            pairRank[i] = ri;
+            if (ri >= 0) s.push(ri, i);
+            int p = prev[i];
+            if (p >= 0) {
+                int rp = lookup(bytes, p, k);
+                pairRank[p] = rp;
+                if (rp >= 0) s.push(rp, p);
+            }
+        }
+        return parts;
+    }
+
+    private int lookup(byte[] buf, int from, int to) {
+        int len = to - from;
+        int slot = hash(buf, from, to) & mask;
+        while (true) {
+            int t = table[slot];
+            if (t < 0) return -1;
+            int start = offsets[t];
+            if (offsets[t + 1] - start == len && Arrays.equals(pool, start, start + len, buf, from, to)) {
+                return ranks[t];
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int hash(byte[] buf, int from, int to) {
+        int h = 0x811c9dc5;
+        for (int i = from; i < to; i++) {
+            h ^= buf[i] & 0xff;
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Scratch {
+        final Matcher matcher;
+        byte[] bytes = new byte[256];
+        int[] next = new int[256];
+        int[] prev = new int[256];
+        int[] pairRank = new int[256];
+        long[] heap = new long[256];
+        int heapSize;
+
+        Scratch(Pattern pattern) {
+            this.matcher = pattern.matcher("");
+        }
+
+        // 非法的单个代理字符按 '?' 编码，与 String.getBytes(UTF_8) 一致
+        int utf8(CharSequence text, int from, int to) {
+            int max = (to - from) * 3;
+            if (bytes.length < max) bytes = new byte[Math.max(max, bytes.length * 2)];
+            int n = 0;
+            for (int i = from; i < to; i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    bytes[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[n++] = (byte) (0xc0 | (c >> 6));
+                    bytes[n++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, text.charAt(++i));
+                    bytes[n++] = (byte) (0xf0 | (cp >> 18));
+                    bytes[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    bytes[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    bytes[n++] = (byte) (0x80 | (cp & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    bytes[n++] = '?';
+                } else {
+                    bytes[n++] = (byte) (0xe0 | (c >> 12));
+                    bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    bytes[n++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            return n;
+        }
+
+        void ensureNodes(int n) {
+            if (next.length >= n) return;
+            int size = Math.max(n, next.length * 2);
+            next = new int[size];
+            prev = new int[size];
+            pairRank = new int[size];
+            heap = new long[size];
+        }
+
+        // 堆元素为 (rank << 32 | 位置)，rank 相同时位置靠左的先合并，与 tiktoken 一致
+        void push(int rank, int pos) {
+            if (heapSize == heap.length) heap = Arrays.copyOf(heap, heap.length * 2);
+            long v = ((long) rank << 32) | pos;
+            int i = heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= v) break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = v;
+        }
+
+        long pop() {
+            long top = heap[0];
+            long last = heap[--heapSize];
+            int i = 0;
+            int half = heapSize >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < heapSize && heap[child + 1] < heap[child]) child++;
+                if (last <= heap[child]) break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            if (heapSize > 0) heap[i] = last;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.ainovel.app.ai.tokenizer;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 本地 token 计数。词表随应用打包（resources/tokenizer），首次使用时加载一次。
+ * gpt-4o / o 系列 / gpt-4.1 及之后的模型使用 o200k_base，其余（包括非 OpenAI 的兼容模型）按 cl100k_base 近似。
+ */
+@Component
+public class TokenCounter {
+    private static final String CL100K_REGEX =
+            "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+";
+    private static final String O200K_REGEX = String.join("|",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+            "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*(?i:'s|'t|'re|'ve|'m|'ll|'d)?",
+            "\\p{N}{1,3}",
+            " ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*",
+            "\\s*[\\r\\n]+",
+            "\\s+(?!\\S)",
+            "\\s+");
+    // 参考 OpenAI 的计算方式：每条消息额外 3 个 token，回复引导 3 个 token
+    private static final int TOKENS_PER_MESSAGE = 3;
+    private static final int REPLY_PRIMING_TOKENS = 3;
+
+    private volatile BpeEncoding cl100k;
+    private volatile BpeEncoding o200k;
+
+    public int count(String modelName, String text) {
+        return encodingFor(modelName).count(text);
+    }
+
+    public int countMessages(String modelName, List<Map<String, Object>> messages) {
+        BpeEncoding encoding = encodingFor(modelName);
+        int total = REPLY_PRIMING_TOKENS;
+        for (Map<String, Object> m : messages) {
+            total += TOKENS_PER_MESSAGE;
+            Object role = m.get("role");
+            Object content = m.get("content");
+            if (role != null) total += encoding.count(role.toString());
+            if (content != null) total += encoding.count(content.toString());
+        }
+        return total;
+    }
+
+    public BpeEncoding encodingFor(String modelName) {
+        return usesO200k(modelName) ? o200k() : cl100k();
+    }
+
+    static boolean usesO200k(String modelName) {
+        if (modelName == null) return false;
+        String m = modelName.toLowerCase(Locale.ROOT);
+        int slash = m.lastIndexOf('/');
+        if (slash >= 0) m = m.substring(slash + 1);
+        return m.startsWith("gpt-4o") || m.startsWith("chatgpt-4o") || m.startsWith("gpt-4.1") || m.startsWith("gpt-4.5")
+                || m.startsWith("gpt-5") || m.startsWith("o1") || m.startsWith("o3") || m.startsWith("o4");
+    }
+
+    private BpeEncoding cl100k() {
+        BpeEncoding e = cl100k;
+        if (e == null) {
+            synchronized (this) {
+                if (cl100k == null) cl100k = load("cl100k_base", CL100K_REGEX);
+                e = cl100k;
+            }
+        }
+        return e;
+    }
+
+    private BpeEncoding o200k() {
+        BpeEncoding e = o200k;
+        if (e == null) {
+            synchronized (this) {
+                if (o200k == null) o200k = load("o200k_base", O200K_REGEX);
+                e = o200k;
+            }
+        }
+        return e;
+    }
+
+    private static BpeEncoding load(String name, String regex) {
+        try (InputStream in = new ClassPathResource("tokenizer/" + name + ".tiktoken.gz").getInputStream()) {
+            return BpeEncoding.load(name, regex, in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("词表加载失败: " + name, e);
+        }
+    }
+}
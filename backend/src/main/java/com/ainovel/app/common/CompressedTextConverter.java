@@ -0,0 +1,110 @@
+package com.ainovel.app.common;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 大文本 Lob 字段的透明压缩：写入时 deflate（带预置字典）后 Base64，前缀 "~z1:" 标明格式版本；
+ * 读取时按前缀解压，没有前缀的旧行原样返回，下次保存该字段时自然变为压缩格式（不需要停机迁移）。
+ * 仍存为文本是为了沿用现有 longtext 列、回滚到旧版本时旧行照常可读；Base64 的 4/3 膨胀远小于中文 UTF-8 的压缩收益。
+ * 短于 MIN_CHARS 或压缩后不变小的值保持原文。
+ */
+@Converter
+public class CompressedTextConverter implements AttributeConverter<String, String> {
+    static final String PREFIX = "~z";
+    static final int VERSION = 1;
+    static final int MIN_CHARS = 256;
+
+    // v1 预置字典：稿件 HTML 标签、JSON 结构与常见中文虚词/标点，越常见越靠后（deflate 优先匹配近距离）。
+    // 修改字典必须同时升级 VERSION，并保留旧版本的解码分支
+    private static final byte[] DICTIONARY_V1 = String.join("",
+            "<strong></strong><em></em><br><br/><h2></h2><h3></h3><blockquote></blockquote>",
+            "{\"id\":\"\",\"name\":\"\",\"title\":\"\",\"summary\":\"\",\"content\":\"\",\"order\":",
+            "\"chapters\":[],\"scenes\":[],\"fields\":{},\"description\":\"\",\"notes\":\"\"",
+            "一下子起来出来过来回来下来不知道怎么什么这样那样为什么已经还是可是但是因为所以如果虽然然后突然忽然",
+            "时候地方东西事情声音眼睛脸上心里身上手中身边面前身后一眼一声一个一些一样一直一起自己我们你们他们她们",
+            "没有不是就是只是还有看着看到听到想到知道觉得开始继续说道问道笑道低声轻声淡淡微微缓缓慢慢",
+            "……——“”‘’《》、：；？！。，",
+            "的时候。”“",
+            "。</p><p>",
+            "</p>\n<p>",
+            "，他",
+            "，她",
+            "了。",
+            "的",
+            "</p><p>“").getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    public String convertToDatabaseColumn(String attribute) {
+        if (attribute == null) return null;
+        // 恰好以 "~z<数字>:" 开头的原文也要压缩，否则读取时会被误当成压缩数据
+        boolean mustEncode = headerEnd(attribute) > 0;
+        if (attribute.length() < MIN_CHARS && !mustEncode) return attribute;
+        byte[] raw = attribute.getBytes(StandardCharsets.UTF_8);
+        String encoded = PREFIX + VERSION + ":" + Base64.getEncoder().encodeToString(deflate(raw));
+        return mustEncode || encoded.length() < raw.length ? encoded : attribute;
+    }
+
+    @Override
+    public String convertToEntityAttribute(String dbData) {
+        int colon = dbData == null ? -1 : headerEnd(dbData);
+        // 不是完整的 "~z<数字>:" 前缀（如以 "~zh" 开头的旧明文）原样返回
+        if (colon < 0) return dbData;
+        int version = Integer.parseInt(dbData.substring(PREFIX.length(), colon));
+        if (version != VERSION) throw new IllegalStateException("不支持的压缩格式: " + dbData.substring(0, colon + 1));
+        byte[] compressed = Base64.getDecoder().decode(dbData.substring(colon + 1));
+        return new String(inflate(compressed, DICTIONARY_V1), StandardCharsets.UTF_8);
+    }
+
+    /** 以 "~z<数字>:" 开头时返回冒号位置，否则返回 -1。版本号最多 9 位，避免溢出。 */
+    private static int headerEnd(String s) {
+        if (!s.startsWith(PREFIX)) return -1;
+        int i = PREFIX.length();
+        while (i < s.length() && i - PREFIX.length() < 9 && s.charAt(i) >= '0' && s.charAt(i) <= '9') i++;
+        return i > PREFIX.length() && i < s.length() && s.charAt(i) == ':' ? i : -1;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setDictionary(DICTIONARY_V1);
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 2));
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) out.write(buf, 0, deflater.deflate(buf));
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, byte[] dictionary) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 3);
+            byte[] buf = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) inflater.setDictionary(dictionary);
+                    else if (inflater.needsInput()) throw new IllegalStateException("压缩数据损坏");
+                }
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("压缩数据损坏", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.ainovel.app.common;
+
+/**
+ * 并发修改冲突（如 If-Match 版本不一致），由 GlobalExceptionHandler 转为 409。
+ */
+public class ConflictException extends RuntimeException {
+    public ConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,10 @@
+package com.ainovel.app.common;
+
+/**
+ * 按 id 访问的资源不存在，由 GlobalExceptionHandler 转为 404。
+ */
+public class NotFoundException extends RuntimeException {
+    public NotFoundException(String message) {
+        super(message);
+    }
+}
@@ -1,3 +1,3 @@
 package com.ainovel.app.common;
 
-public record RefineRequest(String text, String instruction, String contextType) {}
+public record RefineRequest(String text, String instruction, String contextType, Boolean noCache) {}
@@ -0,0 +1,67 @@
+package com.ainovel.app.common;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 流式接口共用的 SSE 事件流：delta {content} 逐段下发；done 为调用结果；error {message}。
+ * 发起调用时即被限流的直接返回 429（带 Retry-After），不建立事件流。
+ */
+public final class SseStreams {
+    public static final long TIMEOUT_MS = 5 * 60 * 1000L;
+
+    private SseStreams() {}
+
+    /** call 接收逐段下发的回调，返回调用结果；回调在下游已断开时抛出 UncheckedIOException。 */
+    public static <T> ResponseEntity<SseEmitter> stream(Function<Consumer<String>, CompletableFuture<T>> call) {
+        SseEmitter emitter = new SseEmitter(TIMEOUT_MS);
+        CompletableFuture<T> future;
+        try {
+            future = call.apply(delta -> send(emitter, "delta", Map.of("content", delta)));
+        } catch (TooManyRequestsException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .build();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((done, ex) -> {
+            try {
+                if (ex == null) {
+                    send(emitter, "done", done);
+                } else {
+                    send(emitter, "error", Map.of("message", String.valueOf(unwrap(ex).getMessage())));
+                }
+                emitter.complete();
+            } catch (RuntimeException e) {
+                emitter.completeWithError(e);
+            }
+        });
+        return ResponseEntity.ok(emitter);
+    }
+
+    public static void send(SseEmitter emitter, String event, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        Throwable cause = ex;
+        while (cause instanceof CompletionException && cause.getCause() != null) cause = cause.getCause();
+        return cause;
+    }
+}
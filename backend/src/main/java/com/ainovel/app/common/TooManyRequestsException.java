@@ -0,0 +1,15 @@
+package com.ainovel.app.common;
+
+/**
+ * 请求过于频繁，由 GlobalExceptionHandler 转为 429，并在 Retry-After 中给出建议等待秒数。
+ */
+public class TooManyRequestsException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() { return retryAfterSeconds; }
+}
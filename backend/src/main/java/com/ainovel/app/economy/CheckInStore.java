@@ -0,0 +1,222 @@
+package com.ainovel.app.economy;
+
+import com.ainovel.app.user.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 签到位图：每天一个位图，第 n 位表示序号为 n 的用户当天已签到（序号首次签到时分配，连续递增）。
+ * 判断是否已签到、置位均为 O(1)，置位返回旧值即可原子地“仅首次成功”；每日/多日活跃人数用 BITCOUNT / BITOP OR 统计。
+ * store=redis 时位图与序号保存在 Redis（键带 {checkin} 哈希标签，脚本涉及的键位于同一槽），多实例共享；
+ * Redis 不可用时退回本机位图。位图只是快速判断与统计，是否已签到仍以 users.last_check_in_at 的条件更新为准。
+ * store=memory（默认）时位图只在本进程内：启动时从签到流水的日汇总（credit_usage_daily）与 users.last_check_in_at
+ * 重建保留期内的数据，重启后连续天数与活跃人数不归零；但运行期间其他实例的签到不可见，多实例部署须设置 CHECK_IN_STORE=redis。
+ */
+@Component
+public class CheckInStore {
+    private static final String REDIS_PREFIX = "ainovel:{checkin}:";
+    private static final String ORDINALS_KEY = REDIS_PREFIX + "ordinals";
+    private static final String SEQ_KEY = REDIS_PREFIX + "seq";
+    private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final int STREAK_CHUNK = 31;
+    // 与 EconomyService.checkIn 写入的流水原因一致
+    private static final String CHECK_IN_REASON = "check_in";
+    // 返回置位前的旧值
+    private static final DefaultRedisScript<Long> MARK = new DefaultRedisScript<>("""
+            local o = redis.call('HGET', KEYS[1], ARGV[1])
+            if not o then
+              o = redis.call('INCR', KEYS[2]) - 1
+              redis.call('HSET', KEYS[1], ARGV[1], o)
+            end
+            local old = redis.call('SETBIT', KEYS[3], o, tonumber(ARGV[2]))
+            redis.call('EXPIRE', KEYS[3], ARGV[3])
+            return old
+            """, Long.class);
+    // KEYS[2..] 为从新到旧的日期位图，返回从第一天起连续置位的天数
+    private static final DefaultRedisScript<Long> RUN = new DefaultRedisScript<>("""
+            local o = redis.call('HGET', KEYS[1], ARGV[1])
+            if not o then return 0 end
+            local n = 0
+            for i = 2, #KEYS do
+              if redis.call('GETBIT', KEYS[i], o) == 0 then return n end
+              n = n + 1
+            end
+            return n
+            """, Long.class);
+    // KEYS[1] 为临时键，返回 KEYS[2..] 按位或之后的人数
+    private static final DefaultRedisScript<Long> UNION_COUNT = new DefaultRedisScript<>("""
+            redis.call('BITOP', 'OR', KEYS[1], unpack(KEYS, 2))
+            local c = redis.call('BITCOUNT', KEYS[1])
+            redis.call('DEL', KEYS[1])
+            return c
+            """, Long.class);
+
+    @Autowired
+    private ObjectProvider<StringRedisTemplate> redisTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private UserRepository userRepository;
+    @Value("${app.economy.check-in.store:memory}")
+    private String storeType;
+    @Value("${app.economy.check-in.retention-days:400}")
+    private int retentionDays = 400;
+
+    private StringRedisTemplate redis;
+    private final Map<UUID, Integer> localOrdinals = new ConcurrentHashMap<>();
+    private final AtomicInteger localSeq = new AtomicInteger();
+    private final Map<LocalDate, BitSet> localDays = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        if ("redis".equalsIgnoreCase(storeType)) redis = redisTemplate.getObject();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void rebuildLocal() {
+        if ("redis".equalsIgnoreCase(storeType)) return;
+        LocalDate from = LocalDate.now(CreditUsageRollup.ZONE).minusDays(retentionDays);
+        jdbcTemplate.query("SELECT usage_date, user_id FROM credit_usage_daily WHERE reason = ? AND usage_date >= ?",
+                (RowCallbackHandler) rs -> {
+                    String userId = rs.getString(2);
+                    if (!userId.isEmpty()) localSet(UUID.fromString(userId), rs.getObject(1, LocalDate.class), true);
+                }, CHECK_IN_REASON, from);
+        // 日汇总尚未回填或最近一批流水未写入时，至少保证最后一次签到可见
+        for (Object[] row : userRepository.findLastCheckInsSince(from.atStartOfDay(CreditUsageRollup.ZONE).toInstant())) {
+            localSet((UUID) row[0], ((Instant) row[1]).atZone(CreditUsageRollup.ZONE).toLocalDate(), true);
+        }
+    }
+
+    /** 置位；返回 true 表示当天首次签到。 */
+    public boolean markIfAbsent(UUID userId, LocalDate day) {
+        Long old = redisSet(userId, day, 1);
+        if (old != null) return old == 0;
+        return !localSet(userId, day, true);
+    }
+
+    /** 签到事务回滚时撤销置位。 */
+    public void clear(UUID userId, LocalDate day) {
+        if (redisSet(userId, day, 0) != null) return;
+        localSet(userId, day, false);
+    }
+
+    public boolean hasCheckedIn(UUID userId, LocalDate day) {
+        return run(userId, List.of(day)) > 0;
+    }
+
+    /** 截至 today 的连续签到天数；今天尚未签到时从昨天算起。 */
+    public int streak(UUID userId, LocalDate today) {
+        LocalDate start = hasCheckedIn(userId, today) ? today : today.minusDays(1);
+        int total = 0;
+        while (total < retentionDays) {
+            List<LocalDate> days = new ArrayList<>(STREAK_CHUNK);
+            for (int i = 0; i < STREAK_CHUNK; i++) days.add(start.minusDays(total + i));
+            int n = run(userId, days);
+            total += n;
+            if (n < STREAK_CHUNK) break;
+        }
+        return Math.min(total, retentionDays);
+    }
+
+    /** [from, to] 内至少签到一次的人数；单日即当天签到人数。 */
+    public long activeUsers(LocalDate from, LocalDate to) {
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) days.add(d);
+        if (days.isEmpty()) return 0;
+        if (redis != null) {
+            try {
+                List<String> keys = new ArrayList<>(days.size() + 1);
+                keys.add(REDIS_PREFIX + "tmp:" + UUID.randomUUID());
+                days.forEach(d -> keys.add(dayKey(d)));
+                Long count = redis.execute(UNION_COUNT, keys);
+                return count == null ? 0 : count;
+            } catch (RuntimeException e) {
+                // 退回本机
+            }
+        }
+        BitSet union = new BitSet();
+        for (LocalDate d : days) {
+            BitSet bits = localDays.get(d);
+            if (bits == null) continue;
+            synchronized (bits) {
+                union.or(bits);
+            }
+        }
+        return union.cardinality();
+    }
+
+    private Long redisSet(UUID userId, LocalDate day, int bit) {
+        if (redis == null) return null;
+        try {
+            return redis.execute(MARK, List.of(ORDINALS_KEY, SEQ_KEY, dayKey(day)),
+                    userId.toString(), String.valueOf(bit), String.valueOf(retentionDays * 86400L));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private int run(UUID userId, List<LocalDate> days) {
+        if (redis != null) {
+            try {
+                List<String> keys = new ArrayList<>(days.size() + 1);
+                keys.add(ORDINALS_KEY);
+                days.forEach(d -> keys.add(dayKey(d)));
+                Long n = redis.execute(RUN, keys, userId.toString());
+                return n == null ? 0 : n.intValue();
+            } catch (RuntimeException e) {
+                // 退回本机
+            }
+        }
+        Integer ordinal = localOrdinals.get(userId);
+        if (ordinal == null) return 0;
+        int n = 0;
+        for (LocalDate d : days) {
+            BitSet bits = localDays.get(d);
+            if (bits == null) return n;
+            synchronized (bits) {
+                if (!bits.get(ordinal)) return n;
+            }
+            n++;
+        }
+        return n;
+    }
+
+    // 返回置位前的旧值
+    private boolean localSet(UUID userId, LocalDate day, boolean value) {
+        int ordinal = localOrdinals.computeIfAbsent(userId, k -> localSeq.getAndIncrement());
+        if (localDays.size() > retentionDays) {
+            LocalDate oldest = day.minusDays(retentionDays);
+            localDays.keySet().removeIf(k -> k.isBefore(oldest));
+        }
+        BitSet bits = localDays.computeIfAbsent(day, d -> new BitSet());
+        synchronized (bits) {
+            boolean old = bits.get(ordinal);
+            bits.set(ordinal, value);
+            return old;
+        }
+    }
+
+    private static String dayKey(LocalDate day) {
+        return REDIS_PREFIX + day.format(DAY);
+    }
+}
@@ -0,0 +1,212 @@
+package com.ainovel.app.economy;
+
+import com.ainovel.app.economy.model.CreditLog;
+import com.ainovel.app.economy.repo.CreditLogRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 积分流水异步批量写入：请求线程只把记录放入有界队列（所在事务提交后才入队，回滚的变更不会留下流水），
+ * 后台线程每 flush-interval-ms 或攒满 batch-size 条时在一个事务内批量插入（hibernate.jdbc.batch_size）。
+ * 队列满时调用线程最多等待 offer-timeout-ms，仍放不进去则由调用线程同步写入，形成背压而不丢记录；
+ * 应用关闭时先写完队列中的剩余记录。每批流水与其用量汇总（CreditUsageRollup）在同一事务内写入。
+ */
+@Component
+public class CreditLogWriter {
+    @Autowired
+    private CreditLogRepository creditLogRepository;
+    @Autowired
+    private CreditUsageRollup usageRollup;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+    @Value("${app.economy.credit-log.async:true}")
+    private boolean async = true;
+    @Value("${app.economy.credit-log.queue-capacity:10000}")
+    private int queueCapacity = 10000;
+    @Value("${app.economy.credit-log.batch-size:500}")
+    private int batchSize = 500;
+    @Value("${app.economy.credit-log.flush-interval-ms:200}")
+    private long flushIntervalMs = 200;
+    @Value("${app.economy.credit-log.offer-timeout-ms:1000}")
+    private long offerTimeoutMs = 1000;
+
+    private BlockingQueue<CreditLog> queue;
+    private TransactionTemplate tx;
+    private Thread worker;
+    private volatile boolean running;
+    // 所有写入（后台线程、flush()、同步写入、重建汇总）互斥，flush 返回时此前入队的记录都已落库
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder syncWrites = new LongAdder();
+    private Timer flushTimer;
+
+    @PostConstruct
+    void start() {
+        tx = new TransactionTemplate(transactionManager);
+        // 同步写入发生在调用方事务的 afterCommit 中，此时旧事务资源仍绑定在线程上，必须开新事务才能真正提交
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        MeterRegistry registry = meterRegistry == null ? null : meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("economy.credit.log.queue.depth", queue, BlockingQueue::size).register(registry);
+            FunctionCounter.builder("economy.credit.log.written", written, LongAdder::sum).register(registry);
+            FunctionCounter.builder("economy.credit.log.failed", failed, LongAdder::sum).register(registry);
+            FunctionCounter.builder("economy.credit.log.sync.writes", syncWrites, LongAdder::sum).register(registry);
+            flushTimer = Timer.builder("economy.credit.log.flush").register(registry);
+        }
+        if (!async) return;
+        running = true;
+        worker = new Thread(this::run, "credit-log-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (worker != null) {
+            LockSupport.unpark(worker);
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    public void write(CreditLog log) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(log);
+                }
+            });
+        } else {
+            enqueue(log);
+        }
+    }
+
+    /** 立即写入队列中的全部记录（关闭时、测试及需要立刻读到流水的场景）。 */
+    public void flush() {
+        writeLock.lock();
+        try {
+            List<CreditLog> batch = new ArrayList<>();
+            while (queue.drainTo(batch, batchSize) > 0) {
+                persist(batch);
+                batch.clear();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** 写完队列后从流水全量重算用量汇总，期间暂停写入。 */
+    public void rebuildRollups() {
+        writeLock.lock();
+        try {
+            flush();
+            tx.executeWithoutResult(status -> usageRollup.rebuild());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 汇总表为空而已有流水（首次上线该功能）时补算一次历史数据
+    @EventListener(ApplicationReadyEvent.class)
+    void backfillRollups() {
+        if (usageRollup.needsBackfill()) rebuildRollups();
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    private void enqueue(CreditLog log) {
+        if (running) {
+            try {
+                if (queue.offer(log, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    if (queue.size() >= batchSize) LockSupport.unpark(worker);
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 未启用异步、已关闭或队列持续满（数据库跟不上）时由调用线程同步写入
+        syncWrites.increment();
+        writeLock.lock();
+        try {
+            persist(List.of(log));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 每个周期写出队列中已有的记录；攒满一批时 enqueue 会提前唤醒
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                // persist 已逐条重试并计数，这里只保证线程不退出
+            }
+        }
+    }
+
+    private void persist(List<CreditLog> batch) {
+        if (batch.isEmpty()) return;
+        long start = System.nanoTime();
+        try {
+            tx.executeWithoutResult(status -> {
+                creditLogRepository.saveAll(batch);
+                usageRollup.apply(batch);
+            });
+            written.add(batch.size());
+        } catch (RuntimeException e) {
+            // 批量失败时逐条重试，只丢弃本身无法写入的记录
+            for (CreditLog log : batch) {
+                try {
+                    tx.executeWithoutResult(status -> {
+                        creditLogRepository.save(log);
+                        usageRollup.apply(List.of(log));
+                    });
+                    written.increment();
+                } catch (RuntimeException single) {
+                    failed.increment();
+                }
+            }
+        } finally {
+            if (flushTimer != null) flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
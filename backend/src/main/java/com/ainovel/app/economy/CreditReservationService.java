@@ -0,0 +1,237 @@
+package com.ainovel.app.economy;
+
+import com.ainovel.app.user.User;
+import com.ainovel.app.user.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 积分预占：调用上游前按预估费用占用额度（可用额度 = 数据库余额 - 未结算的预占），调用结束后按实际用量扣费并释放。
+ * 预占只保存在内存或 Redis 中，调用期间不持有数据库事务或行锁；进程异常退出遗留的预占在 ttl-seconds 后自动失效。
+ * store=redis 时多实例共享预占（Lua 脚本原子判断并写入），Redis 不可用时退回本机。
+ * 余额在锁/脚本之外读取，避免每次预占都在锁内等一次数据库查询；每次释放（结算完成）递增版本号，
+ * 判断时版本号变了说明读到的余额可能已被扣减，重新读取后再判断；结算频繁时重读次数有上限，不会一直重试。
+ */
+@Service
+public class CreditReservationService {
+    private static final String REDIS_PREFIX = "ainovel:credit-holds:";
+    // 费用精确到 4 位小数，累加预占时容忍浮点误差
+    private static final double EPSILON = 1e-6;
+    // 与预占同存一个 hash 的释放版本号字段
+    private static final String VERSION_FIELD = "#v";
+    // 版本号变化时最多重读几次余额；之后本机预占改为在锁内读取，Redis 预占不再校验版本号，按最后读到的余额判断
+    private static final int BALANCE_RETRIES = 3;
+    // 返回 1 表示预占成功，0 表示额度不足，-1 表示读取余额后有预占被释放（余额可能已变），需重新读取；版本号传 * 时不校验
+    private static final DefaultRedisScript<Long> RESERVE = new DefaultRedisScript<>("""
+            if ARGV[5] ~= '*' and (redis.call('HGET', KEYS[1], '#v') or '0') ~= ARGV[5] then
+              return -1
+            end
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+            local held = 0
+            local entries = redis.call('HGETALL', KEYS[1])
+            for i = 1, #entries, 2 do
+              if entries[i] ~= '#v' then
+                local sep = string.find(entries[i + 1], '|', 1, true)
+                local amount = tonumber(string.sub(entries[i + 1], 1, sep - 1))
+                local expires = tonumber(string.sub(entries[i + 1], sep + 1))
+                if expires <= now then
+                  redis.call('HDEL', KEYS[1], entries[i])
+                else
+                  held = held + amount
+                end
+              end
+            end
+            local amount = tonumber(ARGV[2])
+            if tonumber(ARGV[3]) - held < amount - 0.000001 then
+              return 0
+            end
+            local ttl = tonumber(ARGV[4])
+            redis.call('HSET', KEYS[1], ARGV[1], ARGV[2] .. '|' .. (now + ttl))
+            redis.call('PEXPIRE', KEYS[1], ttl)
+            return 1
+            """, Long.class);
+    private static final DefaultRedisScript<Long> RELEASE = new DefaultRedisScript<>("""
+            local n = redis.call('HDEL', KEYS[1], ARGV[1])
+            if n == 1 then redis.call('HINCRBY', KEYS[1], '#v', 1) end
+            return n
+            """, Long.class);
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ObjectProvider<StringRedisTemplate> redisTemplate;
+    @Value("${app.economy.reservation.enabled:true}")
+    private boolean enabled = true;
+    @Value("${app.economy.reservation.store:memory}")
+    private String storeType;
+    @Value("${app.economy.reservation.ttl-seconds:900}")
+    private long ttlSeconds = 900;
+
+    private StringRedisTemplate redis;
+    private final Map<UUID, Holds> localHolds = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        if ("redis".equalsIgnoreCase(storeType)) redis = redisTemplate.getObject();
+    }
+
+    /**
+     * 预占 amount 积分；可用额度不足时抛出异常。amount ≤ 0 或未启用时返回不占额度的空预占。
+     */
+    public Reservation reserve(User user, double amount) {
+        if (!enabled || amount <= 0) return Reservation.NONE;
+        UUID holdId = UUID.randomUUID();
+        if (redis != null) {
+            String key = REDIS_PREFIX + user.getId();
+            for (int attempt = 0; ; attempt++) {
+                String version = "*";
+                if (attempt < BALANCE_RETRIES) {
+                    try {
+                        Object v = redis.opsForHash().get(key, VERSION_FIELD);
+                        version = v == null ? "0" : v.toString();
+                    } catch (RuntimeException e) {
+                        break;
+                    }
+                }
+                double balance = balance(user);
+                Long ok;
+                try {
+                    ok = redis.execute(RESERVE, List.of(key), holdId.toString(), String.valueOf(amount), String.valueOf(balance),
+                            String.valueOf(ttlSeconds * 1000), version);
+                } catch (RuntimeException e) {
+                    ok = null;
+                }
+                // ok 为 null 表示 Redis 不可用，退回本机预占
+                if (ok == null) break;
+                if (ok == -1) continue;
+                if (ok == 0) throw insufficient(amount);
+                return new Reservation(this, user.getId(), holdId, amount, true);
+            }
+        }
+        for (int attempt = 0; ; attempt++) {
+            Holds holds = localHolds.computeIfAbsent(user.getId(), k -> new Holds());
+            long version;
+            synchronized (holds) {
+                if (holds.dead) continue;
+                version = holds.version;
+            }
+            boolean readInLock = attempt >= BALANCE_RETRIES;
+            double balance = readInLock ? 0 : balance(user);
+            synchronized (holds) {
+                if (holds.dead) continue;
+                if (!readInLock && holds.version != version) continue;
+                if (readInLock) balance = balance(user);
+                long now = System.currentTimeMillis();
+                holds.entries.values().removeIf(h -> h.expiresAtMs <= now);
+                double held = holds.entries.values().stream().mapToDouble(h -> h.amount).sum();
+                if (balance - held < amount - EPSILON) throw insufficient(amount);
+                holds.entries.put(holdId, new Hold(amount, now + ttlSeconds * 1000));
+                return new Reservation(this, user.getId(), holdId, amount, false);
+            }
+        }
+    }
+
+    /** 当前未结算的预占总额（本机 + Redis）。 */
+    public double reserved(UUID userId) {
+        double total = 0;
+        Holds holds = localHolds.get(userId);
+        if (holds != null) {
+            synchronized (holds) {
+                long now = System.currentTimeMillis();
+                total += holds.entries.values().stream().filter(h -> h.expiresAtMs > now).mapToDouble(h -> h.amount).sum();
+            }
+        }
+        if (redis != null) {
+            try {
+                for (Map.Entry<Object, Object> e : redis.opsForHash().entries(REDIS_PREFIX + userId).entrySet()) {
+                    if (VERSION_FIELD.equals(e.getKey())) continue;
+                    String s = e.getValue().toString();
+                    int sep = s.indexOf('|');
+                    if (Long.parseLong(s.substring(sep + 1)) > System.currentTimeMillis()) total += Double.parseDouble(s.substring(0, sep));
+                }
+            } catch (RuntimeException e) {
+                // 只用于展示，忽略
+            }
+        }
+        return total;
+    }
+
+    private void release(Reservation r) {
+        if (r.redis) {
+            try {
+                redis.execute(RELEASE, List.of(REDIS_PREFIX + r.userId), r.holdId.toString());
+            } catch (RuntimeException e) {
+                // 释放失败时等待 TTL 过期
+            }
+            return;
+        }
+        Holds holds = localHolds.get(r.userId);
+        if (holds == null) return;
+        synchronized (holds) {
+            if (holds.entries.remove(r.holdId) != null) holds.version++;
+            if (holds.entries.isEmpty()) {
+                holds.dead = true;
+                localHolds.remove(r.userId, holds);
+            }
+        }
+    }
+
+    private double balance(User user) {
+        return userRepository.findCreditsById(user.getId()).orElse(user.getCredits());
+    }
+
+    private static RuntimeException insufficient(double amount) {
+        return new RuntimeException("积分不足，本次调用预计消耗 " + Math.round(amount * 10000.0) / 10000.0 + " 积分");
+    }
+
+    private record Hold(double amount, long expiresAtMs) {}
+
+    private static final class Holds {
+        final Map<UUID, Hold> entries = new HashMap<>();
+        // 每次释放递增，预占时据此判断锁外读到的余额是否仍可用
+        long version;
+        boolean dead;
+    }
+
+    /** 一次预占；结算后或调用失败时 release，重复 release 无副作用。 */
+    public static final class Reservation {
+        static final Reservation NONE = new Reservation(null, null, null, 0, false);
+
+        private final CreditReservationService owner;
+        private final UUID userId;
+        private final UUID holdId;
+        private final double amount;
+        private final boolean redis;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Reservation(CreditReservationService owner, UUID userId, UUID holdId, double amount, boolean redis) {
+            this.owner = owner;
+            this.userId = userId;
+            this.holdId = holdId;
+            this.amount = amount;
+            this.redis = redis;
+        }
+
+        public double amount() {
+            return amount;
+        }
+
+        public void release() {
+            if (owner == null || !released.compareAndSet(false, true)) return;
+            owner.release(this);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.ainovel.app.economy;
+
+import com.ainovel.app.economy.model.CreditLog;
+import com.ainovel.app.economy.repo.CreditLogRepository;
+import com.ainovel.app.economy.repo.CreditUsageDayTotalRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * 积分用量预聚合：CreditLogWriter 在插入流水的同一事务内调用 apply，把本批流水按（日, 用户, 模型, 原因）
+ * 与（日）合并后以 INSERT ... ON DUPLICATE KEY UPDATE 累加，语句数与批内不同键数相同，与表内行数无关。
+ * 多实例并发累加由数据库行锁保证正确。日期按 Asia/Shanghai 划分，与签到一致。
+ */
+@Component
+public class CreditUsageRollup {
+    static final ZoneId ZONE = ZoneId.of("Asia/Shanghai");
+
+    private static final String UPSERT_DAILY = """
+            INSERT INTO credit_usage_daily (usage_date, user_id, model, reason, consumed, granted, entries)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE consumed = consumed + VALUES(consumed), granted = granted + VALUES(granted), entries = entries + VALUES(entries)
+            """;
+    private static final String UPSERT_TOTAL = """
+            INSERT INTO credit_usage_day_totals (usage_date, consumed, granted, entries)
+            VALUES (?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE consumed = consumed + VALUES(consumed), granted = granted + VALUES(granted), entries = entries + VALUES(entries)
+            """;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private CreditLogRepository creditLogRepository;
+    @Autowired
+    private CreditUsageDayTotalRepository dayTotalRepository;
+
+    record DailyKey(LocalDate date, String userId, String model, String reason) {}
+
+    static final class Sums {
+        double consumed;
+        double granted;
+        long entries;
+
+        void add(double amount) {
+            if (amount < 0) consumed -= amount;
+            else granted += amount;
+            entries++;
+        }
+    }
+
+    /** 必须在插入流水的事务内调用，流水与汇总一起提交或回滚。 */
+    public void apply(Collection<CreditLog> logs) {
+        Map<DailyKey, Sums> daily = new LinkedHashMap<>();
+        for (CreditLog log : logs) {
+            UUID userId = log.getUser() == null ? null : log.getUser().getId();
+            add(daily, userId, log.getModel(), log.getReason(), log.getAmount(), log.getCreatedAt());
+        }
+        upsert(daily);
+    }
+
+    public boolean needsBackfill() {
+        return dayTotalRepository.count() == 0 && creditLogRepository.count() > 0;
+    }
+
+    /**
+     * 从流水全量重算（一次性，O(流水行数)）：上线前已有的历史流水或汇总被手工修改后使用。
+     * 调用方需保证期间没有并发写入（见 CreditLogWriter.rebuildRollups），并在事务内调用。
+     */
+    public void rebuild() {
+        jdbcTemplate.update("DELETE FROM credit_usage_daily");
+        jdbcTemplate.update("DELETE FROM credit_usage_day_totals");
+        Map<DailyKey, Sums> daily = new LinkedHashMap<>();
+        try (Stream<Object[]> rows = creditLogRepository.streamForRollup()) {
+            rows.forEach(r -> add(daily, (UUID) r[0], (String) r[1], (String) r[2], ((Number) r[3]).doubleValue(), (Instant) r[4]));
+        }
+        upsert(daily);
+    }
+
+    private static void add(Map<DailyKey, Sums> daily, UUID userId, String model, String reason, double amount, Instant createdAt) {
+        LocalDate date = (createdAt == null ? Instant.now() : createdAt).atZone(ZONE).toLocalDate();
+        DailyKey key = new DailyKey(date, userId == null ? "" : userId.toString(), model == null ? "" : model, reason == null ? "" : reason);
+        daily.computeIfAbsent(key, k -> new Sums()).add(amount);
+    }
+
+    private void upsert(Map<DailyKey, Sums> daily) {
+        if (daily.isEmpty()) return;
+        Map<LocalDate, Sums> totals = new LinkedHashMap<>();
+        List<Object[]> dailyArgs = new ArrayList<>(daily.size());
+        daily.forEach((k, s) -> {
+            dailyArgs.add(new Object[]{k.date(), k.userId(), k.model(), k.reason(), s.consumed, s.granted, s.entries});
+            Sums t = totals.computeIfAbsent(k.date(), d -> new Sums());
+            t.consumed += s.consumed;
+            t.granted += s.granted;
+            t.entries += s.entries;
+        });
+        List<Object[]> totalArgs = new ArrayList<>(totals.size());
+        totals.forEach((d, s) -> totalArgs.add(new Object[]{d, s.consumed, s.granted, s.entries}));
+        jdbcTemplate.batchUpdate(UPSERT_DAILY, dailyArgs);
+        jdbcTemplate.batchUpdate(UPSERT_TOTAL, totalArgs);
+    }
+}
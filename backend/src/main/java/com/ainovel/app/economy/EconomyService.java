@@ -9,99 +9,195 @@ import com.ainovel.app.settings.repo.GlobalSettingsRepository;
 import com.ainovel.app.user.User;
 import com.ainovel.app.user.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.Base64;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 @Service
 public class EconomyService {
     private static final ZoneId CHECK_IN_ZONE = ZoneId.of("Asia/Shanghai");
+    private static final int MAX_LOG_PAGE = 100;
 
-    @Autowired
-    private CreditLogRepository creditLogRepository;
     @Autowired
     private RedeemCodeRepository redeemCodeRepository;
     @Autowired
     private GlobalSettingsRepository globalSettingsRepository;
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private CreditLogWriter creditLogWriter;
+    @Autowired
+    private CreditLogRepository creditLogRepository;
+    @Autowired
+    private CheckInStore checkInStore;
 
     public record CreditChangeResult(boolean success, double points, double newTotal) {}
 
+    public record CreditLogPage(List<CreditLog> items, String nextCursor) {}
+
     @Transactional
     public CreditChangeResult checkIn(User user) {
-        if (hasCheckedInToday(user)) {
+        Instant now = Instant.now();
+        LocalDate today = now.atZone(CHECK_IN_ZONE).toLocalDate();
+        // 位图置位是 O(1) 的原子去重，重复签到不访问数据库；事务回滚时撤销置位
+        if (checkedInOn(user, today) || !checkInStore.markIfAbsent(user.getId(), today)) {
             return new CreditChangeResult(false, 0, user.getCredits());
         }
+        clearOnRollback(user.getId(), today);
 
         GlobalSettings global = globalSettingsRepository.findTopByOrderByUpdatedAtDesc().orElseGet(GlobalSettings::new);
         int min = Math.max(0, global.getCheckInMinPoints());
         int max = Math.max(min, global.getCheckInMaxPoints());
         int points = min + (int) Math.floor(Math.random() * (max - min + 1));
 
-        user.setCredits(user.getCredits() + points);
-        user.setLastCheckInAt(Instant.now());
-        userRepository.save(user);
-        log(user, points, "check_in", "每日签到");
+        Instant dayStart = today.atStartOfDay(CHECK_IN_ZONE).toInstant();
+        if (userRepository.markCheckedIn(user.getId(), now, dayStart) == 0) {
+            return new CreditChangeResult(false, 0, refreshCredits(user));
+        }
+        user.setLastCheckInAt(now);
+        userRepository.addCredits(user.getId(), points);
+        log(user, points, "check_in", null, "每日签到");
 
-        return new CreditChangeResult(true, points, user.getCredits());
+        return new CreditChangeResult(true, points, refreshCredits(user));
     }
 
+    private void clearOnRollback(UUID userId, LocalDate day) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) checkInStore.clear(userId, day);
+            }
+        });
+    }
+
+    /** 截至今天的连续签到天数（今天未签到时从昨天算起）。 */
+    public int checkInStreak(User user) {
+        return checkInStore.streak(user.getId(), LocalDate.now(CHECK_IN_ZONE));
+    }
+
+    /**
+     * 领取通过条件 UPDATE（未使用且未过期）原子完成，并发兑换同一码只有一个成功，不依赖先读后写。
+     */
     @Transactional
     public CreditChangeResult redeem(User user, String code) {
-        RedeemCode redeem = redeemCodeRepository.findByCodeIgnoreCase(code)
+        String input = code == null ? "" : code.trim();
+        RedeemCode redeem = redeemCodeRepository.findByCode(input)
+                .or(() -> redeemCodeRepository.findByCode(RedeemCodeService.normalize(input)))
                 .orElseThrow(() -> new RuntimeException("兑换码不存在"));
         if (redeem.isUsed()) {
             throw new RuntimeException("兑换码已使用");
         }
-        if (redeem.getExpiresAt() != null && redeem.getExpiresAt().isBefore(Instant.now())) {
+        Instant now = Instant.now();
+        if (redeem.getExpiresAt() != null && !redeem.getExpiresAt().isAfter(now)) {
             throw new RuntimeException("兑换码已过期");
         }
+        if (redeemCodeRepository.claim(redeem.getId(), user, now) == 0) {
+            throw new RuntimeException("兑换码已使用");
+        }
 
-        redeem.setUsed(true);
-        redeem.setUsedBy(user);
-        redeem.setUsedAt(Instant.now());
-        redeemCodeRepository.save(redeem);
-
-        user.setCredits(user.getCredits() + redeem.getAmount());
-        userRepository.save(user);
-        log(user, redeem.getAmount(), "redeem", "兑换码: " + redeem.getCode());
+        userRepository.addCredits(user.getId(), redeem.getAmount());
+        log(user, redeem.getAmount(), "redeem", null, "兑换码: " + redeem.getCode());
 
-        return new CreditChangeResult(true, redeem.getAmount(), user.getCredits());
+        return new CreditChangeResult(true, redeem.getAmount(), refreshCredits(user));
     }
 
     @Transactional
     public void grant(User user, double amount, String details) {
-        user.setCredits(user.getCredits() + amount);
-        userRepository.save(user);
-        log(user, amount, "admin_grant", details == null ? "管理员手动调整" : details);
+        userRepository.addCredits(user.getId(), amount);
+        refreshCredits(user);
+        log(user, amount, "admin_grant", null, details == null ? "管理员手动调整" : details);
     }
 
+    /**
+     * 余额在数据库中原子扣减（不读-改-写实体），并发扣费不会丢失更新。
+     * 先按“余额充足”条件扣减；不足时调用已经完成（后付费），仍照实扣除，余额可为负，返回 success=false。
+     */
     @Transactional
-    public void deduct(User user, double amount, String details) {
-        user.setCredits(user.getCredits() - amount);
-        userRepository.save(user);
-        log(user, -amount, "generation", details);
+    public CreditChangeResult deduct(User user, double amount, String details) {
+        return deduct(user, amount, null, details);
     }
 
-    private void log(User user, double amount, String reason, String details) {
+    @Transactional
+    public CreditChangeResult deduct(User user, double amount, String model, String details) {
+        boolean sufficient = userRepository.deductIfSufficient(user.getId(), amount) == 1;
+        if (!sufficient) {
+            userRepository.addCredits(user.getId(), -amount);
+        }
+        log(user, -amount, "generation", model, details);
+        return new CreditChangeResult(sufficient, -amount, refreshCredits(user));
+    }
+
+    // 同步内存中的 User，便于调用方直接返回最新余额
+    private double refreshCredits(User user) {
+        double credits = userRepository.findCreditsById(user.getId()).orElse(user.getCredits());
+        user.setCredits(credits);
+        return credits;
+    }
+
+    private void log(User user, double amount, String reason, String model, String details) {
         CreditLog log = new CreditLog();
         log.setUser(user);
         log.setAmount(amount);
         log.setReason(reason);
+        log.setModel(model);
         log.setDetails(details);
-        creditLogRepository.save(log);
+        creditLogWriter.write(log);
+    }
+
+    /**
+     * 当前用户的积分流水，按时间倒序键集分页。cursor 为上一页返回的 nextCursor（编码最后一条的 createdAt 与 id），
+     * 每页只沿索引读取 limit+1 行，与历史长度和翻页深度无关；没有下一页时 nextCursor 为 null。
+     */
+    public CreditLogPage creditLogs(User user, String reason, Instant from, Instant to, String cursor, int limit) {
+        int size = Math.min(MAX_LOG_PAGE, Math.max(1, limit));
+        String r = reason == null || reason.isBlank() ? null : reason.trim();
+        Instant lower = from == null ? Instant.EPOCH : from;
+        Instant upper = to == null ? Instant.now().plusSeconds(60) : to;
+        Cursor after = cursor == null || cursor.isBlank() ? null : Cursor.decode(cursor);
+        List<CreditLog> rows = after == null || after.createdAt().isAfter(upper)
+                ? creditLogRepository.findPage(user.getId(), r, lower, upper, Limit.of(size + 1))
+                : creditLogRepository.findPageAfter(user.getId(), r, lower, after.createdAt(), after.id(), Limit.of(size + 1));
+        if (rows.size() <= size) return new CreditLogPage(rows, null);
+        List<CreditLog> page = rows.subList(0, size);
+        CreditLog last = page.get(size - 1);
+        return new CreditLogPage(page, new Cursor(last.getCreatedAt(), last.getId()).encode());
+    }
+
+    record Cursor(Instant createdAt, UUID id) {
+        String encode() {
+            String raw = createdAt.getEpochSecond() + ":" + createdAt.getNano() + ":" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String value) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8).split(":");
+                return new Cursor(Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1])), UUID.fromString(parts[2]));
+            } catch (RuntimeException e) {
+                throw new RuntimeException("无效的分页游标");
+            }
+        }
     }
 
     public boolean hasCheckedInToday(User user) {
-        if (user.getLastCheckInAt() == null) return false;
-        LocalDate last = user.getLastCheckInAt().atZone(CHECK_IN_ZONE).toLocalDate();
         LocalDate today = Instant.now().atZone(CHECK_IN_ZONE).toLocalDate();
-        return today.equals(last);
+        return checkedInOn(user, today) || checkInStore.hasCheckedIn(user.getId(), today);
+    }
+
+    private static boolean checkedInOn(User user, LocalDate day) {
+        return user.getLastCheckInAt() != null && day.equals(user.getLastCheckInAt().atZone(CHECK_IN_ZONE).toLocalDate());
     }
 
     public Optional<GlobalSettings> globalSettings() {
@@ -0,0 +1,123 @@
+package com.ainovel.app.economy;
+
+import com.ainovel.app.economy.model.RedeemCode;
+import com.ainovel.app.economy.repo.RedeemCodeRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * 批量生成兑换码：SecureRandom 取 80 位随机数，编码为 16 位 Crockford Base32（不含 I/L/O/U，不区分大小写），
+ * 每 chunk-size 条一个事务 saveAll（配合 hibernate.jdbc.batch_size 批量插入）；极小概率的撞码由唯一索引拦下，
+ * 整块重新生成。领取见 EconomyService.redeem（条件 UPDATE）。
+ */
+@Service
+public class RedeemCodeService {
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int CODE_LENGTH = 16;
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Autowired
+    private RedeemCodeRepository redeemCodeRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Value("${app.economy.redeem.max-batch:500000}")
+    private int maxBatch = 500000;
+    @Value("${app.economy.redeem.chunk-size:1000}")
+    private int chunkSize = 1000;
+
+    private final SecureRandom random = new SecureRandom();
+    private TransactionTemplate tx;
+
+    public record BatchResult(String batchId, int count) {}
+
+    @PostConstruct
+    void init() {
+        tx = new TransactionTemplate(transactionManager);
+    }
+
+    public BatchResult generateBatch(int count, int amount, Instant expiresAt) {
+        if (count <= 0 || count > maxBatch) throw new RuntimeException("单批数量需在 1~" + maxBatch + " 之间");
+        if (amount <= 0) throw new RuntimeException("面额必须大于 0");
+        String batchId = UUID.randomUUID().toString();
+        int written = 0;
+        while (written < count) {
+            int size = Math.min(chunkSize, count - written);
+            insertChunk(batchId, size, amount, expiresAt);
+            written += size;
+        }
+        return new BatchResult(batchId, written);
+    }
+
+    private void insertChunk(String batchId, int size, int amount, Instant expiresAt) {
+        for (int attempt = 1; ; attempt++) {
+            List<RedeemCode> chunk = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                RedeemCode code = new RedeemCode();
+                code.setCode(newCode());
+                code.setAmount(amount);
+                code.setBatchId(batchId);
+                code.setExpiresAt(expiresAt);
+                chunk.add(code);
+            }
+            try {
+                tx.executeWithoutResult(status -> redeemCodeRepository.saveAll(chunk));
+                return;
+            } catch (DataIntegrityViolationException e) {
+                if (attempt >= MAX_ATTEMPTS) throw new RuntimeException("兑换码生成失败，请重试");
+            }
+        }
+    }
+
+    /** 以 CSV 写出整批兑换码，按 code 键集分页读取，内存占用与批次大小无关。 */
+    public void exportBatch(String batchId, Writer out) throws IOException {
+        out.write("code,amount,used,expires_at\n");
+        String after = "";
+        while (true) {
+            List<RedeemCode> page = redeemCodeRepository.findByBatchIdAndCodeGreaterThanOrderByCodeAsc(batchId, after, Limit.of(chunkSize));
+            for (RedeemCode c : page) {
+                out.write(c.getCode() + "," + c.getAmount() + "," + c.isUsed() + "," + (c.getExpiresAt() == null ? "" : c.getExpiresAt()) + "\n");
+            }
+            if (page.size() < chunkSize) break;
+            after = page.get(page.size() - 1).getCode();
+        }
+        out.flush();
+    }
+
+    String newCode() {
+        byte[] bytes = new byte[CODE_LENGTH * 5 / 8];
+        random.nextBytes(bytes);
+        StringBuilder sb = new StringBuilder(CODE_LENGTH);
+        int buffer = 0;
+        int bits = 0;
+        for (byte b : bytes) {
+            buffer = (buffer << 8) | (b & 0xff);
+            bits += 8;
+            while (bits >= 5) {
+                sb.append(ALPHABET[(buffer >> (bits - 5)) & 31]);
+                bits -= 5;
+            }
+        }
+        return sb.toString();
+    }
+
+    /** 用户输入规范化：去掉空白与连字符、转大写，并按 Crockford 规则把 I/L 视为 1、O 视为 0。 */
+    public static String normalize(String input) {
+        String s = input.replaceAll("[\\s-]", "").toUpperCase(Locale.ROOT);
+        return s.replace('I', '1').replace('L', '1').replace('O', '0');
+    }
+}
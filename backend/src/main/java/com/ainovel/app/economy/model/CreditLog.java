@@ -6,6 +6,7 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
@@ -15,7 +16,8 @@ import java.time.Instant;
 import java.util.UUID;
 
 @Entity
-@Table(name = "credit_logs")
+// 个人流水按 (user_id, created_at, id) 键集分页，见 EconomyService.creditLogs
+@Table(name = "credit_logs", indexes = @Index(name = "idx_credit_logs_user_created", columnList = "user_id, createdAt, id"))
 public class CreditLog {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
@@ -27,6 +29,8 @@ public class CreditLog {
 
     private double amount;
     private String reason;
+    // 生成类流水的模型名，用于按模型汇总用量
+    private String model;
     private String details;
 
     @CreationTimestamp
@@ -40,6 +44,8 @@ public class CreditLog {
     public void setAmount(double amount) { this.amount = amount; }
     public String getReason() { return reason; }
     public void setReason(String reason) { this.reason = reason; }
+    public String getModel() { return model; }
+    public void setModel(String model) { this.model = model; }
     public String getDetails() { return details; }
     public void setDetails(String details) { this.details = details; }
     public Instant getCreatedAt() { return createdAt; }
@@ -0,0 +1,49 @@
+package com.ainovel.app.economy.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 积分流水按（日, 用户, 模型, 原因）的预聚合，写流水时增量更新（见 CreditUsageRollup）。
+ * userId 以字符串保存，便于原生 upsert 在 MySQL/H2 上一致绑定；model/reason 缺省为空串。
+ */
+@Entity
+@Table(name = "credit_usage_daily")
+@IdClass(CreditUsageDaily.Key.class)
+public class CreditUsageDaily {
+    @Id
+    private LocalDate usageDate;
+    @Id
+    @Column(length = 36)
+    private String userId;
+    @Id
+    @Column(length = 128)
+    private String model;
+    @Id
+    @Column(length = 64)
+    private String reason;
+
+    private double consumed;
+    private double granted;
+    private long entries;
+
+    public record Key(LocalDate usageDate, String userId, String model, String reason) implements Serializable {
+        public Key() {
+            this(null, null, null, null);
+        }
+    }
+
+    public LocalDate getUsageDate() { return usageDate; }
+    public String getUserId() { return userId; }
+    public String getModel() { return model; }
+    public String getReason() { return reason; }
+    public double getConsumed() { return consumed; }
+    public double getGranted() { return granted; }
+    public long getEntries() { return entries; }
+}
@@ -0,0 +1,24 @@
+package com.ainovel.app.economy.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.LocalDate;
+
+/** 每日积分消耗/发放合计，仪表盘只需扫描天数行。 */
+@Entity
+@Table(name = "credit_usage_day_totals")
+public class CreditUsageDayTotal {
+    @Id
+    private LocalDate usageDate;
+
+    private double consumed;
+    private double granted;
+    private long entries;
+
+    public LocalDate getUsageDate() { return usageDate; }
+    public double getConsumed() { return consumed; }
+    public double getGranted() { return granted; }
+    public long getEntries() { return entries; }
+}
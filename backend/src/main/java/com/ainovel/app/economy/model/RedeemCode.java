@@ -6,16 +6,20 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.Instant;
 import java.util.UUID;
 
 @Entity
-@Table(name = "redeem_codes")
+@Table(name = "redeem_codes",
+        uniqueConstraints = @UniqueConstraint(name = "uk_redeem_codes_code", columnNames = "code"),
+        indexes = @Index(name = "idx_redeem_codes_batch", columnList = "batchId, code"))
 public class RedeemCode {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
@@ -24,6 +28,8 @@ public class RedeemCode {
     private String code;
     private int amount;
     private boolean used = false;
+    // 批量生成的兑换码所属批次，手工创建的为 null
+    private String batchId;
 
     @ManyToOne(fetch = FetchType.EAGER)
     @JoinColumn(name = "used_by_user_id")
@@ -43,6 +49,8 @@ public class RedeemCode {
     public void setAmount(int amount) { this.amount = amount; }
     public boolean isUsed() { return used; }
     public void setUsed(boolean used) { this.used = used; }
+    public String getBatchId() { return batchId; }
+    public void setBatchId(String batchId) { this.batchId = batchId; }
     public User getUsedBy() { return usedBy; }
     public void setUsedBy(User usedBy) { this.usedBy = usedBy; }
     public Instant getExpiresAt() { return expiresAt; }
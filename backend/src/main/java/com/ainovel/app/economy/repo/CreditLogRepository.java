@@ -2,22 +2,39 @@ package com.ainovel.app.economy.repo;
 
 import com.ainovel.app.economy.model.CreditLog;
 import com.ainovel.app.user.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 public interface CreditLogRepository extends JpaRepository<CreditLog, UUID> {
     Page<CreditLog> findByUser(User user, Pageable pageable);
 
-    @Query("select coalesce(sum(case when c.amount < 0 then -c.amount else 0 end), 0) from CreditLog c")
-    double totalConsumed();
+    // 键集分页：沿 (user_id, created_at, id) 索引倒序读取，不随翻页深度变慢；reason 为 null 时不过滤
+    @Query("select c from CreditLog c where c.user.id = :userId and (:reason is null or c.reason = :reason) " +
+            "and c.createdAt >= :from and c.createdAt < :to order by c.createdAt desc, c.id desc")
+    List<CreditLog> findPage(@Param("userId") UUID userId, @Param("reason") String reason,
+                             @Param("from") Instant from, @Param("to") Instant to, Limit limit);
 
-    @Query("select coalesce(sum(case when c.amount < 0 then -c.amount else 0 end), 0) from CreditLog c where c.createdAt >= :since")
-    double consumedSince(@Param("since") Instant since);
+    @Query("select c from CreditLog c where c.user.id = :userId and (:reason is null or c.reason = :reason) " +
+            "and c.createdAt >= :from and (c.createdAt < :afterAt or (c.createdAt = :afterAt and c.id < :afterId)) " +
+            "order by c.createdAt desc, c.id desc")
+    List<CreditLog> findPageAfter(@Param("userId") UUID userId, @Param("reason") String reason, @Param("from") Instant from,
+                                  @Param("afterAt") Instant afterAt, @Param("afterId") UUID afterId, Limit limit);
+
+    // 仅供重建用量汇总（CreditUsageRollup.rebuild）按行流式读取，需在事务内消费
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select u.id, c.model, c.reason, c.amount, c.createdAt from CreditLog c left join c.user u")
+    Stream<Object[]> streamForRollup();
 }
 
@@ -0,0 +1,26 @@
+package com.ainovel.app.economy.repo;
+
+import com.ainovel.app.economy.model.CreditUsageDaily;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface CreditUsageDailyRepository extends JpaRepository<CreditUsageDaily, CreditUsageDaily.Key> {
+    record Breakdown(String key, double consumed, double granted, long entries) {}
+
+    @Query("select new com.ainovel.app.economy.repo.CreditUsageDailyRepository$Breakdown(u.model, sum(u.consumed), sum(u.granted), sum(u.entries)) " +
+            "from CreditUsageDaily u where u.usageDate >= :from group by u.model order by sum(u.consumed) desc")
+    List<Breakdown> sumByModelSince(@Param("from") LocalDate from);
+
+    @Query("select new com.ainovel.app.economy.repo.CreditUsageDailyRepository$Breakdown(u.reason, sum(u.consumed), sum(u.granted), sum(u.entries)) " +
+            "from CreditUsageDaily u where u.usageDate >= :from group by u.reason order by sum(u.consumed) desc")
+    List<Breakdown> sumByReasonSince(@Param("from") LocalDate from);
+
+    @Query("select new com.ainovel.app.economy.repo.CreditUsageDailyRepository$Breakdown(u.userId, sum(u.consumed), sum(u.granted), sum(u.entries)) " +
+            "from CreditUsageDaily u where u.usageDate >= :from group by u.userId order by sum(u.consumed) desc")
+    List<Breakdown> sumByUserSince(@Param("from") LocalDate from, Pageable pageable);
+}
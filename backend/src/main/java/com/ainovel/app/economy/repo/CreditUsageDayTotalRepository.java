@@ -0,0 +1,15 @@
+package com.ainovel.app.economy.repo;
+
+import com.ainovel.app.economy.model.CreditUsageDayTotal;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface CreditUsageDayTotalRepository extends JpaRepository<CreditUsageDayTotal, LocalDate> {
+    @Query("select coalesce(sum(t.consumed), 0) from CreditUsageDayTotal t")
+    double totalConsumed();
+
+    List<CreditUsageDayTotal> findByUsageDateGreaterThanEqualOrderByUsageDateAsc(LocalDate from);
+}
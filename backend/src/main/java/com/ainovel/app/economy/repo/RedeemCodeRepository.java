@@ -1,12 +1,33 @@
 package com.ainovel.app.economy.repo;
 
 import com.ainovel.app.economy.model.RedeemCode;
+import com.ainovel.app.user.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface RedeemCodeRepository extends JpaRepository<RedeemCode, UUID> {
-    Optional<RedeemCode> findByCodeIgnoreCase(String code);
-}
+    Optional<RedeemCode> findByCode(String code);
+
+    boolean existsByCode(String code);
+
+    /** 原子领取：只有未使用且未过期时才会更新，返回 1 表示领取成功。 */
+    @Modifying
+    @Query("update RedeemCode r set r.used = true, r.usedBy = :user, r.usedAt = :now " +
+            "where r.id = :id and r.used = false and (r.expiresAt is null or r.expiresAt > :now)")
+    int claim(@Param("id") UUID id, @Param("user") User user, @Param("now") Instant now);
 
+    // 导出时按 code 键集分页
+    List<RedeemCode> findByBatchIdAndCodeGreaterThanOrderByCodeAsc(String batchId, String after, Limit limit);
+
+    long countByBatchId(String batchId);
+
+    long countByBatchIdAndUsedTrue(String batchId);
+}
@@ -1,20 +1,35 @@
 package com.ainovel.app.manuscript;
 
 import com.ainovel.app.common.RefineRequest;
+import com.ainovel.app.common.SseStreams;
 import com.ainovel.app.manuscript.dto.*;
+import com.ainovel.app.user.User;
+import com.ainovel.app.user.UserRepository;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/v1")
 public class ManuscriptController {
     @Autowired
     private ManuscriptService manuscriptService;
+    @Autowired
+    private UserRepository userRepository;
+
+    private User currentUser(UserDetails details) {
+        return userRepository.findByUsername(details.getUsername()).orElseThrow();
+    }
 
     @GetMapping("/outlines/{outlineId}/manuscripts")
     public List<ManuscriptDto> list(@PathVariable UUID outlineId) { return manuscriptService.listByOutline(outlineId); }
@@ -30,21 +45,60 @@ public class ManuscriptController {
     @GetMapping("/manuscripts/{id}")
     public ManuscriptDto get(@PathVariable UUID id) { return manuscriptService.get(id); }
 
+    @GetMapping("/manuscripts/{id}/sections/{sceneId}")
+    public ManuscriptSectionDto getSection(@PathVariable UUID id, @PathVariable UUID sceneId) {
+        return manuscriptService.getSection(id, sceneId);
+    }
+
     @PostMapping("/manuscripts/{id}/scenes/{sceneId}/generate")
-    public ManuscriptDto generateSceneForManuscript(@PathVariable UUID id, @PathVariable UUID sceneId) {
-        return manuscriptService.generateForScene(id, sceneId);
+    public CompletableFuture<ManuscriptSectionDto> generateSceneForManuscript(@AuthenticationPrincipal UserDetails principal, @PathVariable UUID id,
+                                                                             @PathVariable UUID sceneId, @RequestBody(required = false) SceneGenerateRequest request) {
+        return manuscriptService.generateForScene(currentUser(principal), id, sceneId, request);
+    }
+
+    // 事件格式见 SseStreams，done 为 SceneGenerateDone（保存后的场景、用量、耗时）
+    @PostMapping(value = "/manuscripts/{id}/scenes/{sceneId}/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> generateSceneStream(@AuthenticationPrincipal UserDetails principal, @PathVariable UUID id,
+                                                          @PathVariable UUID sceneId, @RequestBody(required = false) SceneGenerateRequest request) {
+        User user = currentUser(principal);
+        return SseStreams.stream(onDelta -> manuscriptService.generateForSceneStream(user, id, sceneId, request, onDelta));
     }
 
     @PutMapping("/manuscripts/{id}/sections/{sceneId}")
-    public ManuscriptDto saveSectionForManuscript(@PathVariable UUID id, @PathVariable UUID sceneId, @RequestBody SectionUpdateRequest request) {
+    public ManuscriptSectionDto saveSectionForManuscript(@PathVariable UUID id, @PathVariable UUID sceneId, @RequestBody SectionUpdateRequest request) {
         return manuscriptService.updateSection(id, sceneId, request);
     }
 
+    @PatchMapping("/manuscripts/{id}/sections/{sceneId}")
+    public ManuscriptSectionDto saveSectionDelta(@PathVariable UUID id, @PathVariable UUID sceneId, @RequestBody SectionDeltaRequest request) {
+        return manuscriptService.applyDelta(id, sceneId, request);
+    }
+
+    @GetMapping("/manuscripts/{id}/sections/{sceneId}/revisions")
+    public List<SectionRevisionDto> revisions(@PathVariable UUID id, @PathVariable UUID sceneId,
+                                              @RequestParam(required = false) Integer before,
+                                              @RequestParam(required = false) Instant at,
+                                              @RequestParam(defaultValue = "20") int limit) {
+        return manuscriptService.listRevisions(id, sceneId, before, at, limit);
+    }
+
+    @GetMapping("/manuscripts/{id}/sections/{sceneId}/revisions/{revision}")
+    public SectionRevisionDto revision(@PathVariable UUID id, @PathVariable UUID sceneId, @PathVariable int revision) {
+        return manuscriptService.getRevision(id, sceneId, revision);
+    }
+
+    @PostMapping("/manuscripts/{id}/sections/{sceneId}/revisions/{revision}/restore")
+    public ManuscriptSectionDto restoreRevision(@PathVariable UUID id, @PathVariable UUID sceneId, @PathVariable int revision) {
+        return manuscriptService.restoreRevision(id, sceneId, revision);
+    }
+
     @PostMapping("/manuscript/scenes/{sceneId}/generate")
-    public ManuscriptDto generateScene(@PathVariable UUID sceneId) { return manuscriptService.generateForScene(sceneId); }
+    public CompletableFuture<ManuscriptSectionDto> generateScene(@AuthenticationPrincipal UserDetails principal, @PathVariable UUID sceneId) {
+        return manuscriptService.generateForScene(currentUser(principal), sceneId, null);
+    }
 
     @PutMapping("/manuscript/sections/{sectionId}")
-    public ManuscriptDto saveSection(@PathVariable UUID sectionId, @RequestBody SectionUpdateRequest request) { return manuscriptService.updateSection(sectionId, request); }
+    public ManuscriptSectionDto saveSection(@PathVariable UUID sectionId, @RequestBody SectionUpdateRequest request) { return manuscriptService.updateSection(sectionId, request); }
 
     @PostMapping("/manuscripts/{id}/sections/analyze-character-changes")
     public List<CharacterChangeLogDto> analyze(@PathVariable UUID id, @RequestBody AnalyzeCharacterChangeRequest request) { return manuscriptService.analyzeCharacterChanges(id, request); }
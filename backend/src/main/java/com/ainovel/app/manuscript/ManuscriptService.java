@@ -1,31 +1,77 @@
 package com.ainovel.app.manuscript;
 
+import com.ainovel.app.ai.AiService;
+import com.ainovel.app.ai.dto.AiChatRequest;
+import com.ainovel.app.common.ConflictException;
 import com.ainovel.app.common.RefineRequest;
 import com.ainovel.app.manuscript.dto.*;
 import com.ainovel.app.manuscript.model.Manuscript;
+import com.ainovel.app.manuscript.model.ManuscriptSection;
 import com.ainovel.app.manuscript.repo.ManuscriptRepository;
+import com.ainovel.app.manuscript.repo.ManuscriptSectionRepository;
 import com.ainovel.app.story.model.Outline;
 import com.ainovel.app.story.repo.OutlineRepository;
+import com.ainovel.app.user.User;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.util.HtmlUtils;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * 稿件正文按场景存为 manuscript_sections 行，保存/读取单个场景只访问该行。
+ * 旧版把全部正文存在 manuscripts.sections_json 中：启动后逐个迁移为行，访问到尚未迁移的稿件时也会先迁移。
+ * 每次写入同时记录修订历史（见 SectionRevisionStore）。
+ */
 @Service
 public class ManuscriptService {
     @Autowired
     private ManuscriptRepository manuscriptRepository;
     @Autowired
+    private ManuscriptSectionRepository sectionRepository;
+    @Autowired
     private OutlineRepository outlineRepository;
+    @Autowired
+    private SectionRevisionStore revisionStore;
+    @Autowired
+    private SceneContextAssembler contextAssembler;
+    @Autowired
+    private AiService aiService;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private TransactionTemplate tx;
+
+    @PostConstruct
+    void init() {
+        tx = new TransactionTemplate(transactionManager);
+    }
 
+    @Transactional
     public List<ManuscriptDto> listByOutline(UUID outlineId) {
         Outline outline = outlineRepository.findById(outlineId).orElseThrow(() -> new RuntimeException("大纲不存在"));
-        return manuscriptRepository.findByOutline(outline).stream().map(this::toDto).toList();
+        List<Manuscript> manuscripts = manuscriptRepository.findByOutline(outline);
+        if (manuscripts.isEmpty()) return List.of();
+        manuscripts.forEach(this::migrateLegacy);
+        Map<UUID, List<ManuscriptSection>> sections = new HashMap<>();
+        for (ManuscriptSection section : sectionRepository.findByManuscript_IdIn(manuscripts.stream().map(Manuscript::getId).toList())) {
+            sections.computeIfAbsent(section.getManuscript().getId(), k -> new ArrayList<>()).add(section);
+        }
+        return manuscripts.stream().map(m -> toDto(m, sections.getOrDefault(m.getId(), List.of()))).toList();
     }
 
     @Transactional
@@ -35,51 +81,229 @@ public class ManuscriptService {
         manuscript.setOutline(outline);
         manuscript.setTitle(request.title());
         manuscript.setWorldId(request.worldId());
-        manuscript.setSectionsJson(writeJson(new HashMap<String, String>()));
         manuscript.setCharacterLogsJson(writeJson(new ArrayList<>()));
         manuscriptRepository.save(manuscript);
-        return toDto(manuscript);
+        return toDto(manuscript, List.of());
     }
 
+    @Transactional
     public ManuscriptDto get(UUID id) {
-        return toDto(manuscriptRepository.findById(id).orElseThrow(() -> new RuntimeException("稿件不存在")));
+        Manuscript manuscript = load(id);
+        return toDto(manuscript, sectionRepository.findByManuscript_Id(id));
     }
 
     @Transactional
-    public void delete(UUID id) { manuscriptRepository.deleteById(id); }
+    public ManuscriptSectionDto getSection(UUID manuscriptId, UUID sceneId) {
+        reference(manuscriptId);
+        return sectionRepository.findByManuscript_IdAndSceneId(manuscriptId, sceneId)
+                .map(this::toSectionDto)
+                .orElseGet(() -> new ManuscriptSectionDto(manuscriptId, sceneId, "", 0, TextDelta.hash(""), null));
+    }
 
     @Transactional
-    public ManuscriptDto generateForScene(UUID manuscriptId, UUID sceneId) {
-        Manuscript manuscript = manuscriptRepository.findById(manuscriptId).orElseThrow(() -> new RuntimeException("稿件不存在"));
-        Map<String, String> sections = readSectionMap(manuscript.getSectionsJson());
-        sections.put(sceneId.toString(), "自动生成的场景正文: " + sceneId);
-        manuscript.setSectionsJson(writeJson(sections));
-        manuscriptRepository.save(manuscript);
-        return toDto(manuscript);
+    public void delete(UUID id) {
+        revisionStore.deleteByManuscript(id);
+        sectionRepository.deleteByManuscriptId(id);
+        manuscriptRepository.deleteById(id);
     }
 
-    @Transactional
-    public ManuscriptDto updateSection(UUID manuscriptId, UUID sceneId, SectionUpdateRequest request) {
-        Manuscript manuscript = manuscriptRepository.findById(manuscriptId).orElseThrow(() -> new RuntimeException("稿件不存在"));
-        Map<String, String> sections = readSectionMap(manuscript.getSectionsJson());
-        sections.put(sceneId.toString(), request.content());
-        manuscript.setSectionsJson(writeJson(sections));
-        manuscriptRepository.save(manuscript);
-        return toDto(manuscript);
+    /**
+     * 生成场景正文：组装上下文（见 SceneContextAssembler）后调用模型，完成后把结果写入该场景（记为一次修订）。
+     * 上游调用期间不占用数据库连接和事务，只在写入时开启一个短事务；写入在 scene-context 线程池上执行，不占用上游 IO 线程。
+     */
+    public CompletableFuture<ManuscriptSectionDto> generateForScene(User user, UUID manuscriptId, UUID sceneId, SceneGenerateRequest request) {
+        SceneContextAssembler.SceneContext context = contextAssembler.assemble(user, manuscriptId, sceneId, request == null ? null : request.instruction());
+        return aiService.chatAsync(user, toChat(context, request))
+                .thenApplyAsync(resp -> saveGenerated(manuscriptId, sceneId, resp.content()), contextAssembler.executor());
+    }
+
+    /** 流式生成：逐段回调 onDelta，结束后保存；下游中途断开时不保存不完整的正文。 */
+    public CompletableFuture<SceneGenerateDone> generateForSceneStream(User user, UUID manuscriptId, UUID sceneId, SceneGenerateRequest request,
+                                                                       Consumer<String> onDelta) {
+        SceneContextAssembler.SceneContext context = contextAssembler.assemble(user, manuscriptId, sceneId, request == null ? null : request.instruction());
+        StringBuilder content = new StringBuilder();
+        AtomicBoolean aborted = new AtomicBoolean();
+        return aiService.chatStreamAsync(user, toChat(context, request), delta -> {
+            try {
+                onDelta.accept(delta);
+                content.append(delta);
+            } catch (RuntimeException e) {
+                aborted.set(true);
+                throw e;
+            }
+        }).thenApplyAsync(done -> new SceneGenerateDone(
+                aborted.get() ? null : saveGenerated(manuscriptId, sceneId, content.toString()),
+                done.usage(), done.remainingCredits(), done.ttftMs(), done.durationMs(), context.assembleMicros(), done.context()),
+                contextAssembler.executor());
     }
 
+    public ManuscriptSectionDto updateSection(UUID manuscriptId, UUID sceneId, SectionUpdateRequest request) {
+        return inTransaction(() -> saveSection(reference(manuscriptId), sceneId, request.content()));
+    }
+
+    /**
+     * 增量保存：锁定该场景行，校验 baseHash 与当前正文一致后应用 ops；不一致返回 409，客户端应重新读取或整段保存。
+     * 返回的 DTO 不含正文（客户端已持有），只带新的 hash 与字数。
+     */
+    public ManuscriptSectionDto applyDelta(UUID manuscriptId, UUID sceneId, SectionDeltaRequest request) {
+        return inTransaction(() -> applyDeltaLocked(manuscriptId, sceneId, request));
+    }
+
+    private ManuscriptSectionDto applyDeltaLocked(UUID manuscriptId, UUID sceneId, SectionDeltaRequest request) {
+        Manuscript manuscript = reference(manuscriptId);
+        ManuscriptSection section = sectionRepository.findForUpdate(manuscriptId, sceneId).orElse(null);
+        String current = section == null ? "" : section.getContent();
+        if (request.baseHash() == null || !request.baseHash().equals(TextDelta.hash(current))) {
+            throw new ConflictException("正文已被修改，请重新加载后再保存");
+        }
+        ManuscriptSectionDto saved = write(manuscript, section, sceneId, TextDelta.apply(current, request.ops()));
+        return new ManuscriptSectionDto(saved.manuscriptId(), saved.sceneId(), null, saved.wordCount(), saved.hash(), saved.updatedAt());
+    }
+
+    /** 场景正文的修订列表（倒序、不含正文），before 为翻页游标，at 用于查看某一时刻的版本。 */
+    @Transactional(readOnly = true)
+    public List<SectionRevisionDto> listRevisions(UUID manuscriptId, UUID sceneId, Integer before, Instant at, int limit) {
+        return sectionRepository.findByManuscript_IdAndSceneId(manuscriptId, sceneId)
+                .map(section -> revisionStore.list(section.getId(), before, at, limit))
+                .orElseGet(List::of);
+    }
+
+    @Transactional(readOnly = true)
+    public SectionRevisionDto getRevision(UUID manuscriptId, UUID sceneId, int revision) {
+        return revisionStore.get(requireSection(manuscriptId, sceneId).getId(), revision);
+    }
+
+    /** 把指定修订的正文作为新的一次保存写回（本身也会记为新修订，可再次撤销）。 */
     @Transactional
-    public ManuscriptDto generateForScene(UUID sceneId) {
+    public ManuscriptSectionDto restoreRevision(UUID manuscriptId, UUID sceneId, int revision) {
+        Manuscript manuscript = reference(manuscriptId);
+        ManuscriptSection section = sectionRepository.findForUpdate(manuscriptId, sceneId).orElseThrow(() -> new RuntimeException("场景正文不存在"));
+        return write(manuscript, section, sceneId, revisionStore.get(section.getId(), revision).content());
+    }
+
+    public CompletableFuture<ManuscriptSectionDto> generateForScene(User user, UUID sceneId, SceneGenerateRequest request) {
         Manuscript manuscript = manuscriptRepository.findAll().stream().findFirst().orElseThrow(() -> new RuntimeException("请先创建稿件"));
-        return generateForScene(manuscript.getId(), sceneId);
+        return generateForScene(user, manuscript.getId(), sceneId, request);
     }
 
-    @Transactional
-    public ManuscriptDto updateSection(UUID sectionId, SectionUpdateRequest request) {
+    public ManuscriptSectionDto updateSection(UUID sectionId, SectionUpdateRequest request) {
         Manuscript manuscript = manuscriptRepository.findAll().stream().findFirst().orElseThrow(() -> new RuntimeException("请先创建稿件"));
         return updateSection(manuscript.getId(), sectionId, request);
     }
 
+    /** 启动后把仍保存在 sections_json 中的旧稿件迁移为行，每份稿件一个事务；返回迁移数量。 */
+    @EventListener(ApplicationReadyEvent.class)
+    public int migrateAllLegacy() {
+        int migrated = 0;
+        for (UUID id : manuscriptRepository.findIdsWithLegacySections()) {
+            Boolean done = tx.execute(status -> manuscriptRepository.findById(id).map(this::migrateLegacy).orElse(false));
+            if (Boolean.TRUE.equals(done)) migrated++;
+        }
+        return migrated;
+    }
+
+    /** 去掉 HTML 标签后的字数。 */
+    public static int countWords(String html) {
+        if (html == null) return 0;
+        return html.replaceAll("<[^>]*>", "").trim().length();
+    }
+
+    private Manuscript load(UUID id) {
+        Manuscript manuscript = manuscriptRepository.findById(id).orElseThrow(() -> new RuntimeException("稿件不存在"));
+        migrateLegacy(manuscript);
+        return manuscript;
+    }
+
+    /**
+     * 读写单个场景时只按 id 确认稿件存在，不加载 sections_json/character_logs_json 等大字段，返回仅用于关联的引用；
+     * 仍有旧版 sections_json 时才加载整行迁移。
+     */
+    private Manuscript reference(UUID id) {
+        boolean legacy = manuscriptRepository.findLegacyFlagById(id).orElseThrow(() -> new RuntimeException("稿件不存在"));
+        return legacy ? load(id) : manuscriptRepository.getReferenceById(id);
+    }
+
+    private boolean migrateLegacy(Manuscript manuscript) {
+        if (manuscript.getSectionsJson() == null) return false;
+        List<ManuscriptSection> rows = new ArrayList<>();
+        readSectionMap(manuscript.getSectionsJson()).forEach((key, content) -> {
+            UUID sceneId;
+            try {
+                sceneId = UUID.fromString(key);
+            } catch (IllegalArgumentException e) {
+                return;
+            }
+            rows.add(newSection(manuscript, sceneId, content));
+        });
+        sectionRepository.saveAll(rows);
+        manuscript.setSectionsJson(null);
+        return true;
+    }
+
+    private static AiChatRequest toChat(SceneContextAssembler.SceneContext context, SceneGenerateRequest request) {
+        return new AiChatRequest(List.of(new AiChatRequest.Message("user", context.prompt())),
+                request == null ? null : request.modelId(), context.context());
+    }
+
+    private ManuscriptSectionDto saveGenerated(UUID manuscriptId, UUID sceneId, String text) {
+        return inTransaction(() -> saveSection(reference(manuscriptId), sceneId, toHtml(text)));
+    }
+
+    /**
+     * 场景行还不存在时加锁锁不到任何行，同一场景并发的首次保存会有一方撞上 (manuscript_id, scene_id) 唯一键；
+     * 这时整个事务回滚后重试一次，重试时能锁到对方已提交的行（增量保存会按新正文重新校验 baseHash）。
+     */
+    private ManuscriptSectionDto inTransaction(Supplier<ManuscriptSectionDto> work) {
+        try {
+            return tx.execute(status -> work.get());
+        } catch (DataIntegrityViolationException e) {
+            return tx.execute(status -> work.get());
+        }
+    }
+
+    /** 模型输出的纯文本按行转为段落；已经是 HTML 段落时原样保存。 */
+    static String toHtml(String text) {
+        String trimmed = text == null ? "" : text.trim();
+        if (trimmed.startsWith("<p")) return trimmed;
+        StringBuilder html = new StringBuilder();
+        for (String line : trimmed.split("\\r?\\n")) {
+            if (!line.isBlank()) html.append("<p>").append(HtmlUtils.htmlEscape(line.trim())).append("</p>");
+        }
+        return html.toString();
+    }
+
+    private ManuscriptSection requireSection(UUID manuscriptId, UUID sceneId) {
+        return sectionRepository.findByManuscript_IdAndSceneId(manuscriptId, sceneId).orElseThrow(() -> new RuntimeException("场景正文不存在"));
+    }
+
+    private ManuscriptSectionDto saveSection(Manuscript manuscript, UUID sceneId, String content) {
+        // 加锁保证同一场景的修订号按保存顺序递增
+        return write(manuscript, sectionRepository.findForUpdate(manuscript.getId(), sceneId).orElse(null), sceneId, content);
+    }
+
+    private ManuscriptSectionDto write(Manuscript manuscript, ManuscriptSection section, UUID sceneId, String content) {
+        String previous = section == null ? null : section.getContent();
+        if (section == null) {
+            section = sectionRepository.save(newSection(manuscript, sceneId, content));
+        } else {
+            section.setContent(content);
+            section.setWordCount(countWords(content));
+        }
+        manuscriptRepository.touch(manuscript.getId(), Instant.now());
+        revisionStore.record(section, previous, content);
+        sectionRepository.flush();
+        return toSectionDto(section);
+    }
+
+    private static ManuscriptSection newSection(Manuscript manuscript, UUID sceneId, String content) {
+        ManuscriptSection section = new ManuscriptSection();
+        section.setManuscript(manuscript);
+        section.setSceneId(sceneId);
+        section.setContent(content);
+        section.setWordCount(countWords(content));
+        return section;
+    }
+
     @Transactional
     public List<CharacterChangeLogDto> analyzeCharacterChanges(UUID manuscriptId, AnalyzeCharacterChangeRequest request) {
         Manuscript manuscript = manuscriptRepository.findById(manuscriptId).orElseThrow();
@@ -111,17 +335,24 @@ public class ManuscriptService {
         return "【记忆对话】" + request.text();
     }
 
-    private ManuscriptDto toDto(Manuscript manuscript) {
+    private ManuscriptDto toDto(Manuscript manuscript, List<ManuscriptSection> sections) {
+        Map<String, String> map = new HashMap<>();
+        for (ManuscriptSection section : sections) map.put(section.getSceneId().toString(), section.getContent());
         return new ManuscriptDto(
                 manuscript.getId(),
                 manuscript.getOutline().getId(),
                 manuscript.getTitle(),
                 manuscript.getWorldId(),
-                readSectionMap(manuscript.getSectionsJson()),
+                map,
                 manuscript.getUpdatedAt()
         );
     }
 
+    private ManuscriptSectionDto toSectionDto(ManuscriptSection section) {
+        return new ManuscriptSectionDto(section.getManuscript().getId(), section.getSceneId(), section.getContent(),
+                section.getWordCount(), TextDelta.hash(section.getContent()), section.getUpdatedAt());
+    }
+
     private Map<String, String> readSectionMap(String json) {
         if (json == null || json.isBlank()) return new HashMap<>();
         try {
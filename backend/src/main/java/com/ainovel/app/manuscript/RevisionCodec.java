@@ -0,0 +1,184 @@
+package com.ainovel.app.manuscript;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 修订内容编码：快照为整段正文，差异为相对上一修订的 COPY(偏移, 长度) / INSERT(文本) 指令序列（xdelta 风格：
+ * 先去掉公共前后缀，中间部分按 16 字符分块建索引查找可复用的片段），两者都以 deflate 压缩后保存。
+ * 偏移与长度按 UTF-16 码元计；INSERT 按 UTF-8 保存，所以切分点都要落在代理对之外，否则半个 emoji 会被编码成 '?'。
+ */
+final class RevisionCodec {
+    private static final int BLOCK = 16;
+    private static final int COPY = 0;
+    private static final int INSERT = 1;
+
+    private RevisionCodec() {}
+
+    static byte[] snapshot(String content) {
+        return deflate(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String restore(byte[] snapshot) {
+        return new String(inflate(snapshot), StandardCharsets.UTF_8);
+    }
+
+    static byte[] diff(String base, String target) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeVarInt(out, base.length());
+            writeVarInt(out, target.length());
+            int prefix = 0;
+            int max = Math.min(base.length(), target.length());
+            while (prefix < max && base.charAt(prefix) == target.charAt(prefix)) prefix++;
+            if (splitsPair(target, prefix)) prefix--;
+            int suffix = 0;
+            while (suffix < max - prefix && base.charAt(base.length() - 1 - suffix) == target.charAt(target.length() - 1 - suffix)) suffix++;
+            if (splitsPair(target, target.length() - suffix)) suffix--;
+            if (prefix > 0) writeCopy(out, 0, prefix);
+            encodeMiddle(out, base, prefix, base.length() - suffix, target, prefix, target.length() - suffix);
+            if (suffix > 0) writeCopy(out, base.length() - suffix, suffix);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return deflate(bytes.toByteArray());
+    }
+
+    static String patch(String base, byte[] delta) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(inflate(delta)))) {
+            int baseLength = readVarInt(in);
+            int targetLength = readVarInt(in);
+            if (baseLength != base.length()) throw new IllegalStateException("修订基准长度不一致");
+            StringBuilder out = new StringBuilder(targetLength);
+            while (in.available() > 0) {
+                int op = in.readUnsignedByte();
+                if (op == COPY) {
+                    int offset = readVarInt(in);
+                    out.append(base, offset, offset + readVarInt(in));
+                } else {
+                    byte[] text = new byte[readVarInt(in)];
+                    in.readFully(text);
+                    out.append(new String(text, StandardCharsets.UTF_8));
+                }
+            }
+            if (out.length() != targetLength) throw new IllegalStateException("修订内容长度不一致");
+            return out.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // 中间段：base[bs, be) 按块建索引，target[ts, te) 逐位置查找匹配块并向后延伸，匹配不到的字符累积为 INSERT
+    private static void encodeMiddle(DataOutputStream out, String base, int bs, int be, String target, int ts, int te) throws IOException {
+        Map<String, Integer> blocks = new HashMap<>();
+        for (int i = bs; i + BLOCK <= be; i += BLOCK) blocks.putIfAbsent(base.substring(i, i + BLOCK), i);
+        int pending = ts;
+        int p = ts;
+        while (p + BLOCK <= te) {
+            Integer at = blocks.isEmpty() ? null : blocks.get(target.substring(p, p + BLOCK));
+            if (at == null) {
+                p++;
+                continue;
+            }
+            int start = at;
+            int len = BLOCK;
+            while (start + len < be && p + len < te && base.charAt(start + len) == target.charAt(p + len)) len++;
+            // 向前吞掉待插入文本中同样可以复用的部分
+            int back = 0;
+            while (p - back > pending && start - back > bs && base.charAt(start - back - 1) == target.charAt(p - back - 1)) back++;
+            int from = p - back;
+            int offset = start - back;
+            int copyLen = len + back;
+            // 复制段的起止若切开代理对，就把那半个字符让给相邻的 INSERT（copyLen 至少为 BLOCK，收缩后仍为正）
+            if (splitsPair(target, from)) {
+                from++;
+                offset++;
+                copyLen--;
+            }
+            if (splitsPair(target, from + copyLen)) copyLen--;
+            writeInsert(out, target, pending, from);
+            writeCopy(out, offset, copyLen);
+            p = from + copyLen;
+            pending = p;
+        }
+        writeInsert(out, target, pending, te);
+    }
+
+    private static boolean splitsPair(String s, int i) {
+        return i > 0 && i < s.length() && Character.isHighSurrogate(s.charAt(i - 1)) && Character.isLowSurrogate(s.charAt(i));
+    }
+
+    private static void writeCopy(DataOutputStream out, int offset, int len) throws IOException {
+        out.writeByte(COPY);
+        writeVarInt(out, offset);
+        writeVarInt(out, len);
+    }
+
+    private static void writeInsert(DataOutputStream out, String target, int from, int to) throws IOException {
+        if (to <= from) return;
+        byte[] text = target.substring(from, to).getBytes(StandardCharsets.UTF_8);
+        out.writeByte(INSERT);
+        writeVarInt(out, text.length);
+        out.write(text);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) out.write(buf, 0, deflater.deflate(buf));
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+            byte[] buf = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) throw new IllegalStateException("修订数据损坏");
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("修订数据损坏", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.ainovel.app.manuscript;
+
+import com.ainovel.app.manuscript.model.Manuscript;
+import com.ainovel.app.manuscript.repo.ManuscriptRepository;
+import com.ainovel.app.manuscript.repo.ManuscriptSectionRepository;
+import com.ainovel.app.settings.model.PromptTemplatesEntity;
+import com.ainovel.app.settings.repo.PromptTemplatesRepository;
+import com.ainovel.app.story.OutlineService;
+import com.ainovel.app.story.dto.OutlineDto;
+import com.ainovel.app.story.model.CharacterCard;
+import com.ainovel.app.story.model.Outline;
+import com.ainovel.app.story.model.Story;
+import com.ainovel.app.story.repo.CharacterCardRepository;
+import com.ainovel.app.user.User;
+import com.ainovel.app.world.model.World;
+import com.ainovel.app.world.repo.WorldRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 生成场景正文前组装上下文：场景/章节摘要（来自大纲缓存）、上一场景正文末尾、相关角色卡、世界观模块，
+ * 以及用户的 manuscriptSection 提示词模板。读取稿件（连同大纲、故事）后，其余几项在 scene-context 线程池上并行读取；
+ * 角色卡与世界观按 cache-ttl-seconds 缓存，连续生成同一故事的多个场景时只读一次。
+ */
+@Component
+public class SceneContextAssembler {
+    static final String DEFAULT_TEMPLATE = "根据场景描述撰写正文，保持语气 {tone}。";
+    private static final String OUTPUT_RULES = "请直接输出该场景的正文，按段落分行，不要输出标题、说明或 Markdown。";
+    private static final Pattern VARIABLE = Pattern.compile("\\{(\\w+)}");
+    private static final int MAX_CACHED = 1000;
+
+    @Value("${app.manuscript.generation.previous-tail-chars:1500}")
+    private int previousTailChars = 1500;
+    @Value("${app.manuscript.generation.cache-ttl-seconds:30}")
+    private long cacheTtlSeconds = 30;
+    @Value("${app.manuscript.generation.context-threads:8}")
+    private int contextThreads = 8;
+    @Autowired
+    private ManuscriptRepository manuscriptRepository;
+    @Autowired
+    private ManuscriptSectionRepository sectionRepository;
+    @Autowired
+    private OutlineService outlineService;
+    @Autowired
+    private CharacterCardRepository characterCardRepository;
+    @Autowired
+    private WorldRepository worldRepository;
+    @Autowired
+    private PromptTemplatesRepository promptTemplatesRepository;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private record Cached(long expiresAt, Object value) {}
+
+    private record ScenePosition(OutlineDto.ChapterDto chapter, OutlineDto.SceneDto scene, UUID previousSceneId) {}
+
+    /** context 交给 AiService 按 token 预算装入 system prompt；prompt 为渲染后的用户消息；assembleMicros 为组装耗时。 */
+    public record SceneContext(Map<String, Object> context, String prompt, long assembleMicros) {}
+
+    private final Map<String, Cached> cache = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger seq = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(2, contextThreads), r -> {
+            Thread t = new Thread(r, "scene-context-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /** 供生成完成后的保存使用，避免在上游 HTTP 客户端的 IO 线程上开事务写库。 */
+    Executor executor() {
+        return executor;
+    }
+
+    public SceneContext assemble(User user, UUID manuscriptId, UUID sceneId, String instruction) {
+        long start = System.nanoTime();
+        Manuscript manuscript = manuscriptRepository.findWithStoryById(manuscriptId).orElseThrow(() -> new RuntimeException("稿件不存在"));
+        Outline outline = manuscript.getOutline();
+        Story story = outline.getStory();
+        String worldId = firstNonBlank(manuscript.getWorldId(), outline.getWorldId(), story.getWorldId());
+
+        CompletableFuture<ScenePosition> position = CompletableFuture.supplyAsync(() -> locate(outlineService.get(outline.getId()), sceneId), executor);
+        CompletableFuture<String> previousTail = position.thenApplyAsync(p -> p.previousSceneId() == null ? "" : tail(manuscriptId, p.previousSceneId()), executor);
+        CompletableFuture<List<Map<String, String>>> characters = CompletableFuture.supplyAsync(
+                () -> cached("characters:" + story.getId(), () -> loadCharacters(story)), executor);
+        CompletableFuture<Map<String, Object>> world = CompletableFuture.supplyAsync(
+                () -> worldId == null ? Map.<String, Object>of() : cached("world:" + worldId, () -> loadWorld(worldId)), executor);
+        CompletableFuture<String> template = CompletableFuture.supplyAsync(() -> promptTemplatesRepository.findByUser(user)
+                .map(PromptTemplatesEntity::getManuscriptSection)
+                .filter(t -> !t.isBlank())
+                .orElse(DEFAULT_TEMPLATE), executor);
+
+        ScenePosition at = join(position);
+        OutlineDto.SceneDto scene = at.scene();
+        OutlineDto.ChapterDto chapter = at.chapter();
+        String tail = join(previousTail);
+        Map<String, Object> worldContext = join(world);
+
+        Map<String, Object> context = new LinkedHashMap<>();
+        context.put("scene", compact("title", scene.title(), "summary", scene.summary(), "notes", scene.content()));
+        if (!tail.isEmpty()) context.put("previousContent", tail);
+        context.put("chapter", compact("title", chapter.title(), "summary", chapter.summary()));
+        String focus = String.join("\n", nullToEmpty(scene.title()), nullToEmpty(scene.summary()), nullToEmpty(chapter.summary()), tail, nullToEmpty(instruction));
+        List<Map<String, String>> relevant = relevantFirst(join(characters), focus);
+        if (!relevant.isEmpty()) context.put("characters", relevant);
+        if (!worldContext.isEmpty()) context.put("world", worldContext);
+        context.put("story", compact("title", story.getTitle(), "synopsis", story.getSynopsis(), "genre", story.getGenre(), "tone", story.getTone()));
+
+        Map<String, String> variables = new HashMap<>();
+        variables.put("sceneTitle", nullToEmpty(scene.title()));
+        variables.put("sceneSummary", nullToEmpty(scene.summary()));
+        variables.put("chapterTitle", nullToEmpty(chapter.title()));
+        variables.put("chapterSummary", nullToEmpty(chapter.summary()));
+        variables.put("storyTitle", nullToEmpty(story.getTitle()));
+        variables.put("genre", nullToEmpty(story.getGenre()));
+        variables.put("tone", nullToEmpty(story.getTone()));
+        variables.put("worldContext", String.join("：", nonBlank(worldContext.get("name"), worldContext.get("tagline"))));
+        variables.put("previousContent", tail);
+        variables.put("instruction", nullToEmpty(instruction));
+        StringBuilder prompt = new StringBuilder(render(join(template), variables)).append("\n\n").append(OUTPUT_RULES);
+        if (instruction != null && !instruction.isBlank()) prompt.append("\n补充要求：").append(instruction.trim());
+
+        return new SceneContext(context, prompt.toString(), (System.nanoTime() - start) / 1000);
+    }
+
+    /** 替换模板中的 {变量}；未知变量原样保留，避免吞掉用户写在模板里的花括号。 */
+    static String render(String template, Map<String, String> variables) {
+        Matcher m = VARIABLE.matcher(template);
+        StringBuilder out = new StringBuilder();
+        while (m.find()) {
+            String value = variables.get(m.group(1));
+            m.appendReplacement(out, Matcher.quoteReplacement(value != null ? value : m.group()));
+        }
+        m.appendTail(out);
+        return out.toString();
+    }
+
+    // 按大纲顺序展开所有场景，上一场景可能在上一章
+    private static ScenePosition locate(OutlineDto outline, UUID sceneId) {
+        UUID previous = null;
+        for (OutlineDto.ChapterDto chapter : outline.chapters()) {
+            for (OutlineDto.SceneDto scene : chapter.scenes()) {
+                if (scene.id().equals(sceneId)) return new ScenePosition(chapter, scene, previous);
+                previous = scene.id();
+            }
+        }
+        throw new RuntimeException("场景不存在");
+    }
+
+    private String tail(UUID manuscriptId, UUID sceneId) {
+        String html = sectionRepository.findByManuscript_IdAndSceneId(manuscriptId, sceneId).map(s -> s.getContent()).orElse(null);
+        if (html == null) return "";
+        String text = html.replaceAll("(?i)</p>|<br\\s*/?>", "\n").replaceAll("<[^>]*>", "").trim();
+        if (text.length() <= previousTailChars) return text;
+        int from = text.length() - previousTailChars;
+        // 不从代理对的后半个字符开始截取
+        if (Character.isLowSurrogate(text.charAt(from))) from++;
+        return text.substring(from);
+    }
+
+    private List<Map<String, String>> loadCharacters(Story story) {
+        List<Map<String, String>> cards = new ArrayList<>();
+        for (CharacterCard card : characterCardRepository.findByStory(story)) {
+            cards.add(compact("name", card.getName(), "synopsis", card.getSynopsis(), "details", card.getDetails(), "relationships", card.getRelationships()));
+        }
+        return List.copyOf(cards);
+    }
+
+    private Map<String, Object> loadWorld(String worldId) {
+        UUID id;
+        try {
+            id = UUID.fromString(worldId);
+        } catch (IllegalArgumentException e) {
+            return Map.of();
+        }
+        World world = worldRepository.findById(id).orElse(null);
+        if (world == null) return Map.of();
+        Map<String, Object> out = new LinkedHashMap<>(compact("name", world.getName(), "tagline", world.getTagline()));
+        Map<String, Map<String, String>> modules = readModules(world.getModulesJson());
+        Map<String, Map<String, String>> filled = new LinkedHashMap<>();
+        modules.forEach((key, fields) -> {
+            if (fields == null) return;
+            Map<String, String> kept = new LinkedHashMap<>();
+            fields.forEach((k, v) -> {
+                if (v != null && !v.isBlank()) kept.put(k, v);
+            });
+            if (!kept.isEmpty()) filled.put(key, kept);
+        });
+        if (!filled.isEmpty()) out.put("modules", filled);
+        return Collections.unmodifiableMap(out);
+    }
+
+    // 名字出现在场景/章节摘要、上一场景末尾或补充要求中的角色排在前面，预算不足时优先保留
+    private static List<Map<String, String>> relevantFirst(List<Map<String, String>> cards, String focus) {
+        List<Map<String, String>> mentioned = new ArrayList<>();
+        List<Map<String, String>> others = new ArrayList<>();
+        for (Map<String, String> card : cards) {
+            String name = card.get("name");
+            (name != null && !name.isBlank() && focus.contains(name) ? mentioned : others).add(card);
+        }
+        mentioned.addAll(others);
+        return mentioned;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cached(String key, Supplier<T> loader) {
+        long now = System.currentTimeMillis();
+        Cached hit = cache.get(key);
+        if (hit != null && hit.expiresAt() > now) return (T) hit.value();
+        T value = loader.get();
+        if (cache.size() >= MAX_CACHED) cache.values().removeIf(c -> c.expiresAt() <= now);
+        if (cache.size() < MAX_CACHED) cache.put(key, new Cached(now + cacheTtlSeconds * 1000, value));
+        return value;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    private Map<String, Map<String, String>> readModules(String json) {
+        if (json == null || json.isBlank()) return Map.of();
+        try {
+            return objectMapper.readValue(json, new TypeReference<>() {});
+        } catch (Exception e) {
+            return Map.of();
+        }
+    }
+
+    // 去掉空值，键值成对传入
+    private static Map<String, String> compact(String... pairs) {
+        Map<String, String> out = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (pairs[i + 1] != null && !pairs[i + 1].isBlank()) out.put(pairs[i], pairs[i + 1]);
+        }
+        return out;
+    }
+
+    private static List<String> nonBlank(Object... values) {
+        List<String> out = new ArrayList<>();
+        for (Object v : values) {
+            if (v != null && !v.toString().isBlank()) out.add(v.toString());
+        }
+        return out;
+    }
+
+    private static String firstNonBlank(String... values) {
+        for (String v : values) {
+            if (v != null && !v.isBlank()) return v;
+        }
+        return null;
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+}
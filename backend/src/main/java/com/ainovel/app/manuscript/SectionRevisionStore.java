@@ -0,0 +1,142 @@
+package com.ainovel.app.manuscript;
+
+import com.ainovel.app.manuscript.dto.SectionRevisionDto;
+import com.ainovel.app.manuscript.model.ManuscriptSection;
+import com.ainovel.app.manuscript.model.ManuscriptSectionRevision;
+import com.ainovel.app.manuscript.repo.ManuscriptSectionRevisionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 场景正文的修订历史：每隔 snapshot-interval 个修订存一次完整快照，其间每个修订只存相对上一修订的压缩差异，
+ * 因此读取任意修订最多应用 snapshot-interval - 1 次差异，存储增长与编辑量相当而非正文长度。
+ * coalesce-seconds 内的连续保存（自动保存）合并到同一修订，避免逐次按键产生大量修订。
+ * 调用方需持有场景行的写锁，保证修订号连续。
+ */
+@Component
+public class SectionRevisionStore {
+    private static final int MAX_LIMIT = 100;
+    // 差异超过该字节数时才与快照比较大小，较小的差异总是比快照便宜
+    private static final int SNAPSHOT_CHECK_BYTES = 256;
+
+    @Value("${app.manuscript.revisions.enabled:true}")
+    private boolean enabled = true;
+    @Value("${app.manuscript.revisions.snapshot-interval:32}")
+    private int snapshotInterval = 32;
+    @Value("${app.manuscript.revisions.coalesce-seconds:120}")
+    private long coalesceSeconds = 120;
+    @Autowired
+    private ManuscriptSectionRevisionRepository revisionRepository;
+
+    /** 在 section 写入 content 之后调用；previous 为写入前的正文（新建场景为 null）。 */
+    public void record(ManuscriptSection section, String previous, String content) {
+        if (!enabled) return;
+        String text = content == null ? "" : content;
+        Instant now = Instant.now();
+        ManuscriptSectionRevision last = revisionRepository.findTopBySection_IdOrderByRevisionDesc(section.getId()).orElse(null);
+        if (last == null && previous != null && !previous.equals(text)) {
+            // 启用历史前已有的正文先记为基线，才能撤销本次修改
+            last = insert(section, 1, true, RevisionCodec.snapshot(previous), ManuscriptService.countWords(previous), now);
+        }
+        if (last == null) {
+            insert(section, 1, true, RevisionCodec.snapshot(text), section.getWordCount(), now);
+            return;
+        }
+        if (text.equals(previous == null ? "" : previous)) return;
+
+        if (!last.isSnapshot() && last.getCreatedAt().isAfter(now.minusSeconds(coalesceSeconds))) {
+            int revision = last.getRevision();
+            String base = reconstruct(section.getId(), revision - 1);
+            encode(last, base, text, revision - snapshotBefore(section.getId(), revision));
+            last.setWordCount(section.getWordCount());
+            last.setUpdatedAt(now);
+            revisionRepository.save(last);
+            return;
+        }
+        int revision = last.getRevision() + 1;
+        ManuscriptSectionRevision next = new ManuscriptSectionRevision();
+        next.setSection(section);
+        next.setRevision(revision);
+        next.setWordCount(section.getWordCount());
+        next.setCreatedAt(now);
+        next.setUpdatedAt(now);
+        encode(next, previous == null ? "" : previous, text, revision - snapshotBefore(section.getId(), last.getRevision()));
+        revisionRepository.save(next);
+    }
+
+    /** 按修订号倒序列出（不含正文）；before 为上一页最后一个修订号，at 只返回该时刻及之前保存的修订。 */
+    public List<SectionRevisionDto> list(UUID sectionId, Integer before, Instant at, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_LIMIT));
+        return revisionRepository.findBySection_IdAndRevisionLessThanAndUpdatedAtLessThanEqualOrderByRevisionDesc(
+                        sectionId, before == null ? Integer.MAX_VALUE : before, at == null ? Instant.now() : at, PageRequest.of(0, size))
+                .stream().map(r -> toDto(r, null)).toList();
+    }
+
+    public SectionRevisionDto get(UUID sectionId, int revision) {
+        ManuscriptSectionRevision row = revisionRepository.findBySection_IdAndRevision(sectionId, revision)
+                .orElseThrow(() -> new RuntimeException("修订不存在"));
+        return toDto(row, reconstruct(sectionId, revision));
+    }
+
+    public void deleteByManuscript(UUID manuscriptId) {
+        revisionRepository.deleteByManuscriptId(manuscriptId);
+    }
+
+    /** 从最近的快照开始依次应用差异。 */
+    String reconstruct(UUID sectionId, int revision) {
+        Integer snapshot = revisionRepository.findSnapshotRevision(sectionId, revision);
+        if (snapshot == null) throw new RuntimeException("修订不存在");
+        List<ManuscriptSectionRevision> chain = revisionRepository.findBySection_IdAndRevisionBetweenOrderByRevisionAsc(sectionId, snapshot, revision);
+        String text = RevisionCodec.restore(chain.get(0).getData());
+        for (int i = 1; i < chain.size(); i++) text = RevisionCodec.patch(text, chain.get(i).getData());
+        return text;
+    }
+
+    private int snapshotBefore(UUID sectionId, int revision) {
+        Integer snapshot = revisionRepository.findSnapshotRevision(sectionId, revision);
+        return snapshot == null ? 0 : snapshot;
+    }
+
+    // distance 为该修订与所在链快照的距离，达到间隔或差异不比快照小时改存快照
+    private void encode(ManuscriptSectionRevision row, String base, String text, int distance) {
+        if (distance >= snapshotInterval) {
+            row.setSnapshot(true);
+            row.setData(RevisionCodec.snapshot(text));
+            return;
+        }
+        byte[] delta = RevisionCodec.diff(base, text);
+        if (delta.length > SNAPSHOT_CHECK_BYTES) {
+            byte[] full = RevisionCodec.snapshot(text);
+            if (full.length <= delta.length) {
+                row.setSnapshot(true);
+                row.setData(full);
+                return;
+            }
+        }
+        row.setSnapshot(false);
+        row.setData(delta);
+    }
+
+    private ManuscriptSectionRevision insert(ManuscriptSection section, int revision, boolean snapshot, byte[] data, int wordCount, Instant now) {
+        ManuscriptSectionRevision row = new ManuscriptSectionRevision();
+        row.setSection(section);
+        row.setRevision(revision);
+        row.setSnapshot(snapshot);
+        row.setData(data);
+        row.setWordCount(wordCount);
+        row.setCreatedAt(now);
+        row.setUpdatedAt(now);
+        return revisionRepository.save(row);
+    }
+
+    private static SectionRevisionDto toDto(ManuscriptSectionRevision row, String content) {
+        return new SectionRevisionDto(row.getRevision(), row.isSnapshot(), row.getWordCount(), row.getData().length,
+                content, row.getCreatedAt(), row.getUpdatedAt());
+    }
+}
@@ -0,0 +1,48 @@
+package com.ainovel.app.manuscript;
+
+import com.ainovel.app.manuscript.dto.SectionDeltaRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/** 场景正文的增量（retain/insert/delete）应用与版本哈希。 */
+final class TextDelta {
+    static final int MAX_OPS = 10000;
+
+    private TextDelta() {}
+
+    /** 正文的 SHA-256（UTF-8），不存在的场景按空串计算。 */
+    static String hash(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest((content == null ? "" : content).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String apply(String base, List<SectionDeltaRequest.Op> ops) {
+        String text = base == null ? "" : base;
+        if (ops == null || ops.isEmpty()) return text;
+        if (ops.size() > MAX_OPS) throw new RuntimeException("增量操作过多");
+        StringBuilder out = new StringBuilder(text.length());
+        int cursor = 0;
+        for (SectionDeltaRequest.Op op : ops) {
+            int set = (op.retain() != null ? 1 : 0) + (op.delete() != null ? 1 : 0) + (op.insert() != null ? 1 : 0);
+            if (set != 1) throw new RuntimeException("增量操作无效：每个操作只能是 retain、delete、insert 之一");
+            if (op.insert() != null) {
+                out.append(op.insert());
+                continue;
+            }
+            int n = op.retain() != null ? op.retain() : op.delete();
+            if (n < 0 || n > text.length() - cursor) throw new RuntimeException("增量超出正文长度");
+            if (op.retain() != null) out.append(text, cursor, cursor + n);
+            cursor += n;
+        }
+        out.append(text, cursor, text.length());
+        return out.toString();
+    }
+}
@@ -0,0 +1,11 @@
+package com.ainovel.app.manuscript.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public record ManuscriptSectionDto(UUID manuscriptId,
+                                   UUID sceneId,
+                                   String content,
+                                   int wordCount,
+                                   String hash,
+                                   Instant updatedAt) {}
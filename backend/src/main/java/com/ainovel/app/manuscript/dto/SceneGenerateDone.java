@@ -0,0 +1,12 @@
+package com.ainovel.app.manuscript.dto;
+
+import com.ainovel.app.ai.dto.AiContextReport;
+import com.ainovel.app.ai.dto.AiUsageDto;
+
+public record SceneGenerateDone(ManuscriptSectionDto section,
+                                AiUsageDto usage,
+                                double remainingCredits,
+                                long ttftMs,
+                                long durationMs,
+                                long contextMicros,
+                                AiContextReport context) {}
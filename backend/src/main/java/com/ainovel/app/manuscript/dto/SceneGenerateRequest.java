@@ -0,0 +1,3 @@
+package com.ainovel.app.manuscript.dto;
+
+public record SceneGenerateRequest(String modelId, String instruction) {}
@@ -0,0 +1,11 @@
+package com.ainovel.app.manuscript.dto;
+
+import java.util.List;
+
+/**
+ * 增量保存：ops 依次作用于 baseHash 对应的正文，每个 op 只设置 retain / delete / insert 之一；
+ * 长度按 UTF-16 码元计（与 JS 字符串下标一致），最后一个 op 之后的内容保持不变。
+ */
+public record SectionDeltaRequest(String baseHash, List<Op> ops) {
+    public record Op(Integer retain, Integer delete, String insert) {}
+}
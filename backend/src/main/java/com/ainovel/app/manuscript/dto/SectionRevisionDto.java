@@ -0,0 +1,11 @@
+package com.ainovel.app.manuscript.dto;
+
+import java.time.Instant;
+
+public record SectionRevisionDto(int revision,
+                                 boolean snapshot,
+                                 int wordCount,
+                                 int storedBytes,
+                                 String content,
+                                 Instant createdAt,
+                                 Instant updatedAt) {}
@@ -1,5 +1,6 @@
 package com.ainovel.app.manuscript.model;
 
+import com.ainovel.app.common.CompressedTextConverter;
 import com.ainovel.app.story.model.Outline;
 import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
@@ -23,7 +24,8 @@ public class Manuscript {
     private String worldId;
 
     @Lob
-    private String sectionsJson; // sceneId -> content
+    @Convert(converter = CompressedTextConverter.class)
+    private String sectionsJson; // 旧版 sceneId -> content，迁移到 manuscript_sections 后置空
 
     @Lob
     private String characterLogsJson; // optional
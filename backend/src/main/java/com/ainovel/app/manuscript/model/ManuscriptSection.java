@@ -0,0 +1,55 @@
+package com.ainovel.app.manuscript.model;
+
+import com.ainovel.app.common.CompressedTextConverter;
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/** 稿件中一个场景的正文，按 (manuscript_id, scene_id) 唯一，单独读写。 */
+@Entity
+@Table(name = "manuscript_sections", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_manuscript_sections_scene", columnNames = {"manuscript_id", "scene_id"})
+})
+public class ManuscriptSection {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "manuscript_id", nullable = false)
+    private Manuscript manuscript;
+
+    @Column(name = "scene_id", nullable = false)
+    private UUID sceneId;
+
+    @Lob
+    @Convert(converter = CompressedTextConverter.class)
+    private String content; // html
+
+    private int wordCount; // 去掉标签后的字数，用于统计
+
+    @CreationTimestamp
+    private Instant createdAt;
+    @UpdateTimestamp
+    private Instant updatedAt;
+
+    public ManuscriptSection() {}
+
+    public UUID getId() { return id; }
+    public void setId(UUID id) { this.id = id; }
+    public Manuscript getManuscript() { return manuscript; }
+    public void setManuscript(Manuscript manuscript) { this.manuscript = manuscript; }
+    public UUID getSceneId() { return sceneId; }
+    public void setSceneId(UUID sceneId) { this.sceneId = sceneId; }
+    public String getContent() { return content; }
+    public void setContent(String content) { this.content = content; }
+    public int getWordCount() { return wordCount; }
+    public void setWordCount(int wordCount) { this.wordCount = wordCount; }
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,56 @@
+package com.ainovel.app.manuscript.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * 场景正文的一个历史修订，按 (section_id, revision) 唯一、revision 从 1 连续递增。
+ * snapshot 为 true 时 data 是整段正文，否则是相对上一修订的差异，均为 deflate 压缩后的字节（见 RevisionCodec）。
+ */
+@Entity
+@Table(name = "manuscript_section_revisions", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_manuscript_section_revisions_revision", columnNames = {"section_id", "revision"})
+})
+public class ManuscriptSectionRevision {
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "section_id", nullable = false)
+    private ManuscriptSection section;
+
+    private int revision;
+
+    private boolean snapshot;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] data;
+
+    private int wordCount;
+
+    private Instant createdAt;
+    private Instant updatedAt; // 短时间内的连续保存合并到同一修订时更新
+
+    public ManuscriptSectionRevision() {}
+
+    public UUID getId() { return id; }
+    public void setId(UUID id) { this.id = id; }
+    public ManuscriptSection getSection() { return section; }
+    public void setSection(ManuscriptSection section) { this.section = section; }
+    public int getRevision() { return revision; }
+    public void setRevision(int revision) { this.revision = revision; }
+    public boolean isSnapshot() { return snapshot; }
+    public void setSnapshot(boolean snapshot) { this.snapshot = snapshot; }
+    public byte[] getData() { return data; }
+    public void setData(byte[] data) { this.data = data; }
+    public int getWordCount() { return wordCount; }
+    public void setWordCount(int wordCount) { this.wordCount = wordCount; }
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -3,10 +3,31 @@ package com.ainovel.app.manuscript.repo;
 import com.ainovel.app.manuscript.model.Manuscript;
 import com.ainovel.app.story.model.Outline;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface ManuscriptRepository extends JpaRepository<Manuscript, UUID> {
     List<Manuscript> findByOutline(Outline outline);
+
+    /** 连同大纲与故事一起读取，供生成正文时组装上下文。 */
+    @Query("select m from Manuscript m join fetch m.outline o join fetch o.story where m.id = :id")
+    Optional<Manuscript> findWithStoryById(@Param("id") UUID id);
+
+    @Query("select m.id from Manuscript m where m.sectionsJson is not null")
+    List<UUID> findIdsWithLegacySections();
+
+    /** 稿件是否仍有旧版 sections_json；稿件不存在时为空。不读取大字段，供保存正文时确认稿件存在。 */
+    @Query("select case when m.sectionsJson is null then false else true end from Manuscript m where m.id = :id")
+    Optional<Boolean> findLegacyFlagById(@Param("id") UUID id);
+
+    /** 只更新修改时间，不重写整行。 */
+    @Modifying
+    @Query("update Manuscript m set m.updatedAt = :now where m.id = :id")
+    int touch(@Param("id") UUID id, @Param("now") Instant now);
 }
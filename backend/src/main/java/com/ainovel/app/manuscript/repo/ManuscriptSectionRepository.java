@@ -0,0 +1,34 @@
+package com.ainovel.app.manuscript.repo;
+
+import com.ainovel.app.manuscript.model.ManuscriptSection;
+import com.ainovel.app.user.User;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface ManuscriptSectionRepository extends JpaRepository<ManuscriptSection, UUID> {
+    Optional<ManuscriptSection> findByManuscript_IdAndSceneId(UUID manuscriptId, UUID sceneId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from ManuscriptSection s where s.manuscript.id = :manuscriptId and s.sceneId = :sceneId")
+    Optional<ManuscriptSection> findForUpdate(@Param("manuscriptId") UUID manuscriptId, @Param("sceneId") UUID sceneId);
+
+    List<ManuscriptSection> findByManuscript_Id(UUID manuscriptId);
+
+    List<ManuscriptSection> findByManuscript_IdIn(Collection<UUID> manuscriptIds);
+
+    @Modifying
+    @Query("delete from ManuscriptSection s where s.manuscript.id = :manuscriptId")
+    int deleteByManuscriptId(@Param("manuscriptId") UUID manuscriptId);
+
+    @Query("select coalesce(sum(s.wordCount), 0) from ManuscriptSection s where s.manuscript.outline.story.user = :user")
+    long sumWordCountByUser(@Param("user") User user);
+}
@@ -0,0 +1,32 @@
+package com.ainovel.app.manuscript.repo;
+
+import com.ainovel.app.manuscript.model.ManuscriptSectionRevision;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface ManuscriptSectionRevisionRepository extends JpaRepository<ManuscriptSectionRevision, UUID> {
+    Optional<ManuscriptSectionRevision> findTopBySection_IdOrderByRevisionDesc(UUID sectionId);
+
+    /** 不晚于 revision 的最近一个快照。 */
+    @Query("select max(r.revision) from ManuscriptSectionRevision r where r.section.id = :sectionId and r.snapshot = true and r.revision <= :revision")
+    Integer findSnapshotRevision(@Param("sectionId") UUID sectionId, @Param("revision") int revision);
+
+    List<ManuscriptSectionRevision> findBySection_IdAndRevisionBetweenOrderByRevisionAsc(UUID sectionId, int from, int to);
+
+    Optional<ManuscriptSectionRevision> findBySection_IdAndRevision(UUID sectionId, int revision);
+
+    List<ManuscriptSectionRevision> findBySection_IdAndRevisionLessThanAndUpdatedAtLessThanEqualOrderByRevisionDesc(
+            UUID sectionId, int before, Instant at, Pageable pageable);
+
+    @Modifying
+    @Query("delete from ManuscriptSectionRevision r where r.section.id in (select s.id from ManuscriptSection s where s.manuscript.id = :manuscriptId)")
+    int deleteByManuscriptId(@Param("manuscriptId") UUID manuscriptId);
+}
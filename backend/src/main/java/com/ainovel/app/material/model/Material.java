@@ -1,5 +1,6 @@
 package com.ainovel.app.material.model;
 
+import com.ainovel.app.common.CompressedTextConverter;
 import com.ainovel.app.user.User;
 import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
@@ -22,6 +23,7 @@ public class Material {
     private String title;
     private String type;
     @Lob
+    @Convert(converter = CompressedTextConverter.class)
     private String content;
     private String summary;
     @Lob
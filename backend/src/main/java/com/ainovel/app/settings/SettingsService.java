@@ -207,8 +207,16 @@ public class SettingsService {
                                 new PromptMetadataResponse.Variable("tone", "string", "基调")
                         )),
                         new PromptMetadataResponse.TemplateMetadata("manuscriptSection", java.util.List.of(
+                                new PromptMetadataResponse.Variable("sceneTitle", "string", "场景标题"),
                                 new PromptMetadataResponse.Variable("sceneSummary", "string", "场景摘要"),
-                                new PromptMetadataResponse.Variable("worldContext", "string", "世界观描述")
+                                new PromptMetadataResponse.Variable("chapterTitle", "string", "章节标题"),
+                                new PromptMetadataResponse.Variable("chapterSummary", "string", "章节摘要"),
+                                new PromptMetadataResponse.Variable("storyTitle", "string", "故事标题"),
+                                new PromptMetadataResponse.Variable("genre", "string", "体裁"),
+                                new PromptMetadataResponse.Variable("tone", "string", "基调"),
+                                new PromptMetadataResponse.Variable("worldContext", "string", "世界观描述"),
+                                new PromptMetadataResponse.Variable("previousContent", "string", "上一场景正文末尾"),
+                                new PromptMetadataResponse.Variable("instruction", "string", "本次生成的补充要求")
                         ))
                 ),
                 java.util.List.of(
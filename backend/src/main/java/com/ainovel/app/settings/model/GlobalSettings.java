@@ -33,6 +33,12 @@ public class GlobalSettings {
     private String llmModelName;
     private String llmApiKeyEncrypted;
 
+    // AI 接口限流（令牌桶）：每分钟补充速率与突发容量，0 表示不限制
+    private int aiUserRatePerMinute = 30;
+    private int aiUserBurst = 10;
+    private int aiPoolRatePerMinute = 600;
+    private int aiPoolBurst = 60;
+
     @CreationTimestamp
     private Instant createdAt;
 
@@ -63,6 +69,14 @@ public class GlobalSettings {
     public void setLlmModelName(String llmModelName) { this.llmModelName = llmModelName; }
     public String getLlmApiKeyEncrypted() { return llmApiKeyEncrypted; }
     public void setLlmApiKeyEncrypted(String llmApiKeyEncrypted) { this.llmApiKeyEncrypted = llmApiKeyEncrypted; }
+    public int getAiUserRatePerMinute() { return aiUserRatePerMinute; }
+    public void setAiUserRatePerMinute(int aiUserRatePerMinute) { this.aiUserRatePerMinute = aiUserRatePerMinute; }
+    public int getAiUserBurst() { return aiUserBurst; }
+    public void setAiUserBurst(int aiUserBurst) { this.aiUserBurst = aiUserBurst; }
+    public int getAiPoolRatePerMinute() { return aiPoolRatePerMinute; }
+    public void setAiPoolRatePerMinute(int aiPoolRatePerMinute) { this.aiPoolRatePerMinute = aiPoolRatePerMinute; }
+    public int getAiPoolBurst() { return aiPoolBurst; }
+    public void setAiPoolBurst(int aiPoolBurst) { this.aiPoolBurst = aiPoolBurst; }
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
     public Instant getUpdatedAt() { return updatedAt; }
@@ -0,0 +1,179 @@
+package com.ainovel.app.story;
+
+import com.ainovel.app.story.dto.OutlineDto;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 组装好的 OutlineDto 进程内缓存（按访问顺序 LRU，最多 max-entries 个大纲），按 (大纲 id, version) 命中：
+ * 读取时先按主键查当前 version，不一致即视为未命中，因此任何节点的写入都不会读到旧树。
+ * 写入提交后本机立即淘汰；invalidation=redis 时再通过 Redis 发布/订阅通知其他节点淘汰，尽早释放旧条目。
+ */
+@Component
+public class OutlineCache {
+    private static final String CHANNEL = "ainovel:outline-cache:invalidate";
+
+    @Value("${app.story.outline-cache.enabled:true}")
+    private boolean enabled = true;
+    @Value("${app.story.outline-cache.max-entries:2000}")
+    private int maxEntries = 2000;
+    @Value("${app.story.outline-cache.invalidation:local}")
+    private String invalidation = "local";
+    @Autowired
+    private ObjectProvider<StringRedisTemplate> redisTemplate;
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    private record Entry(long version, OutlineDto dto) {}
+
+    public record Stats(boolean enabled, String invalidation, long size, long hits, long misses, long evictions,
+                        long invalidations, long remoteInvalidations, long errors, double hitRate) {}
+
+    private final LinkedHashMap<UUID, Entry> map = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+            if (size() <= maxEntries) return false;
+            evictions.incrementAndGet();
+            return true;
+        }
+    };
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong remoteInvalidations = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private StringRedisTemplate redis;
+    private RedisMessageListenerContainer listener;
+
+    @PostConstruct
+    void init() {
+        MeterRegistry registry = meterRegistry == null ? null : meterRegistry.getIfAvailable();
+        if (registry != null) {
+            FunctionCounter.builder("story.outline.cache.hits", hits, AtomicLong::get).register(registry);
+            FunctionCounter.builder("story.outline.cache.misses", misses, AtomicLong::get).register(registry);
+            FunctionCounter.builder("story.outline.cache.evictions", evictions, AtomicLong::get).register(registry);
+            Gauge.builder("story.outline.cache.size", this, c -> c.size()).register(registry);
+        }
+        if (!enabled || !"redis".equalsIgnoreCase(invalidation)) return;
+        redis = redisTemplate.getObject();
+        try {
+            listener = new RedisMessageListenerContainer();
+            listener.setConnectionFactory(redis.getRequiredConnectionFactory());
+            listener.addMessageListener((message, pattern) -> {
+                try {
+                    UUID id = UUID.fromString(new String(message.getBody(), StandardCharsets.UTF_8));
+                    remoteInvalidations.incrementAndGet();
+                    evictLocal(id);
+                } catch (IllegalArgumentException e) {
+                    errors.incrementAndGet();
+                }
+            }, new ChannelTopic(CHANNEL));
+            listener.afterPropertiesSet();
+            listener.start();
+        } catch (RuntimeException e) {
+            // 订阅失败时仍可用：命中前的 version 校验保证不会返回旧树
+            errors.incrementAndGet();
+            listener = null;
+        }
+    }
+
+    @PreDestroy
+    void stop() throws Exception {
+        if (listener != null) listener.destroy();
+    }
+
+    public OutlineDto get(UUID id, long version) {
+        if (!enabled) return null;
+        Entry e;
+        synchronized (map) {
+            e = map.get(id);
+        }
+        if (e != null && e.version() == version) {
+            hits.incrementAndGet();
+            return e.dto();
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(OutlineDto dto) {
+        if (!enabled) return;
+        synchronized (map) {
+            Entry old = map.get(dto.id());
+            // 并发读取时不用较旧的版本覆盖较新的
+            if (old == null || old.version() <= dto.version()) map.put(dto.id(), new Entry(dto.version(), dto));
+        }
+    }
+
+    /** 写入大纲后调用：在事务内时等提交后再淘汰（回滚则不动），并广播给其他节点。 */
+    public void invalidate(UUID id) {
+        if (!enabled) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictAndPublish(id);
+                }
+            });
+        } else {
+            evictAndPublish(id);
+        }
+    }
+
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    public Stats stats() {
+        long h = hits.get();
+        long total = h + misses.get();
+        double hitRate = total == 0 ? 0 : Math.round(h * 10000.0 / total) / 10000.0;
+        return new Stats(enabled, listener != null ? "redis" : "local", size(), h, misses.get(), evictions.get(),
+                invalidations.get(), remoteInvalidations.get(), errors.get(), hitRate);
+    }
+
+    private long size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    private void evictAndPublish(UUID id) {
+        invalidations.incrementAndGet();
+        evictLocal(id);
+        if (redis == null) return;
+        try {
+            redis.convertAndSend(CHANNEL, id.toString());
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+        }
+    }
+
+    private void evictLocal(UUID id) {
+        synchronized (map) {
+            map.remove(id);
+        }
+    }
+}
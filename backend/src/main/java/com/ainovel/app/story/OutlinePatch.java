@@ -0,0 +1,133 @@
+package com.ainovel.app.story;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 在大纲 JSON 视图 {title, worldId, chapters:[{id,title,summary,order,scenes:[...]}]} 上应用补丁：
+ * JSON 数组按 RFC 6902（add/remove/replace/move/copy/test），JSON 对象按 RFC 7396 merge patch。
+ */
+final class OutlinePatch {
+    private OutlinePatch() {}
+
+    static JsonNode apply(JsonNode doc, JsonNode patch) {
+        if (patch == null || patch.isNull()) throw new RuntimeException("补丁不能为空");
+        return patch.isArray() ? applyJsonPatch(doc, patch) : applyMergePatch(doc, patch);
+    }
+
+    static JsonNode applyJsonPatch(JsonNode doc, JsonNode ops) {
+        JsonNode root = doc.deepCopy();
+        int index = 0;
+        for (JsonNode op : ops) {
+            String name = op.path("op").asText("");
+            List<String> path = pointer(op, "path", index);
+            switch (name) {
+                case "add" -> root = add(root, path, value(op, index));
+                case "remove" -> remove(root, path);
+                case "replace" -> {
+                    remove(root, path);
+                    root = add(root, path, value(op, index));
+                }
+                case "move" -> {
+                    List<String> from = pointer(op, "from", index);
+                    if (path.size() > from.size() && path.subList(0, from.size()).equals(from)) {
+                        throw new RuntimeException("补丁第 " + (index + 1) + " 步无效：不能移动到自身内部");
+                    }
+                    root = add(root, path, remove(root, from));
+                }
+                case "copy" -> root = add(root, path, get(root, pointer(op, "from", index)).deepCopy());
+                case "test" -> {
+                    if (!get(root, path).equals(value(op, index))) {
+                        throw new RuntimeException("补丁第 " + (index + 1) + " 步 test 未通过：" + op.path("path").asText());
+                    }
+                }
+                default -> throw new RuntimeException("补丁第 " + (index + 1) + " 步无效：不支持的操作 " + name);
+            }
+            index++;
+        }
+        return root;
+    }
+
+    static JsonNode applyMergePatch(JsonNode target, JsonNode patch) {
+        if (!patch.isObject()) return patch.deepCopy();
+        ObjectNode result = target != null && target.isObject() ? ((ObjectNode) target).deepCopy() : JsonNodeFactory.instance.objectNode();
+        patch.fields().forEachRemaining(e -> {
+            if (e.getValue().isNull()) result.remove(e.getKey());
+            else result.set(e.getKey(), applyMergePatch(result.get(e.getKey()), e.getValue()));
+        });
+        return result;
+    }
+
+    private static JsonNode add(JsonNode root, List<String> path, JsonNode value) {
+        if (path.isEmpty()) return value;
+        JsonNode parent = get(root, path.subList(0, path.size() - 1));
+        String key = path.get(path.size() - 1);
+        if (parent instanceof ObjectNode object) {
+            object.set(key, value);
+        } else if (parent instanceof ArrayNode array) {
+            array.insert("-".equals(key) ? array.size() : arrayIndex(key, array.size() + 1), value);
+        } else {
+            throw new RuntimeException("补丁路径不存在：" + join(path));
+        }
+        return root;
+    }
+
+    private static JsonNode remove(JsonNode root, List<String> path) {
+        if (path.isEmpty()) throw new RuntimeException("补丁不能删除整个大纲");
+        JsonNode parent = get(root, path.subList(0, path.size() - 1));
+        String key = path.get(path.size() - 1);
+        JsonNode removed = null;
+        if (parent instanceof ObjectNode object) {
+            removed = object.remove(key);
+        } else if (parent instanceof ArrayNode array) {
+            removed = array.remove(arrayIndex(key, array.size()));
+        }
+        if (removed == null) throw new RuntimeException("补丁路径不存在：" + join(path));
+        return removed;
+    }
+
+    private static JsonNode get(JsonNode root, List<String> path) {
+        JsonNode node = root;
+        for (String token : path) {
+            if (node instanceof ArrayNode array) node = array.get(arrayIndex(token, array.size()));
+            else node = node == null ? null : node.get(token);
+            if (node == null) throw new RuntimeException("补丁路径不存在：" + join(path));
+        }
+        return node;
+    }
+
+    private static int arrayIndex(String token, int bound) {
+        if (!token.matches("0|[1-9][0-9]{0,8}")) throw new RuntimeException("补丁数组下标无效：" + token);
+        int i = Integer.parseInt(token);
+        if (i >= bound) throw new RuntimeException("补丁数组下标越界：" + token);
+        return i;
+    }
+
+    private static JsonNode value(JsonNode op, int index) {
+        if (!op.has("value")) throw new RuntimeException("补丁第 " + (index + 1) + " 步缺少 value");
+        return op.get("value").deepCopy();
+    }
+
+    // JSON Pointer（RFC 6901）：按 / 切分，~1 还原为 /，~0 还原为 ~
+    private static List<String> pointer(JsonNode op, String field, int index) {
+        JsonNode node = op.get(field);
+        if (node == null || !node.isTextual()) throw new RuntimeException("补丁第 " + (index + 1) + " 步缺少 " + field);
+        String text = node.asText();
+        List<String> tokens = new ArrayList<>();
+        if (text.isEmpty()) return tokens;
+        if (!text.startsWith("/")) throw new RuntimeException("补丁路径无效：" + text);
+        for (String raw : text.substring(1).split("/", -1)) {
+            tokens.add(raw.replace("~1", "/").replace("~0", "~"));
+        }
+        return tokens;
+    }
+
+    private static String join(List<String> path) {
+        return "/" + String.join("/", path);
+    }
+}
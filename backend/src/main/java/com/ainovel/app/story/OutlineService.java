@@ -1,160 +1,340 @@
 package com.ainovel.app.story;
 
+import com.ainovel.app.common.ConflictException;
+import com.ainovel.app.common.NotFoundException;
 import com.ainovel.app.story.dto.*;
 import com.ainovel.app.story.model.Outline;
+import com.ainovel.app.story.model.OutlineChapter;
+import com.ainovel.app.story.model.OutlineScene;
 import com.ainovel.app.story.model.Story;
+import com.ainovel.app.story.repo.OutlineChapterRepository;
 import com.ainovel.app.story.repo.OutlineRepository;
+import com.ainovel.app.story.repo.OutlineSceneRepository;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Instant;
 import java.util.*;
 
+/**
+ * 章节与场景保存为 outline_chapters / outline_scenes 行（按 id 主键直接定位，按 outline_id 索引整体读取），
+ * 保存大纲时与现有行逐条比对，只插入/更新/删除有变化的行。
+ * 旧版把整棵树存在 outlines.content_json 中：启动后逐个迁移为行，读写到尚未迁移的大纲时也会先迁移。
+ */
 @Service
 public class OutlineService {
     @Autowired
     private OutlineRepository outlineRepository;
+    @Autowired
+    private OutlineChapterRepository chapterRepository;
+    @Autowired
+    private OutlineSceneRepository sceneRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private OutlineCache outlineCache;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private TransactionTemplate tx;
+
+    @PostConstruct
+    void init() {
+        tx = new TransactionTemplate(transactionManager);
+    }
 
+    @Transactional
     public List<OutlineDto> listByStory(Story story) {
-        return outlineRepository.findByStory(story).stream().map(this::toDto).toList();
+        List<Outline> outlines = outlineRepository.findByStory(story);
+        if (outlines.isEmpty()) return List.of();
+        Map<UUID, OutlineDto> cached = new HashMap<>();
+        List<Outline> missing = new ArrayList<>();
+        for (Outline o : outlines) {
+            OutlineDto dto = o.getContentJson() == null ? outlineCache.get(o.getId(), o.getVersion()) : null;
+            if (dto != null) cached.put(o.getId(), dto);
+            else missing.add(o);
+        }
+        if (!missing.isEmpty()) {
+            Set<UUID> migrated = new HashSet<>();
+            for (Outline o : missing) {
+                if (migrateLegacy(o)) migrated.add(o.getId());
+            }
+            List<UUID> ids = missing.stream().map(Outline::getId).toList();
+            Map<UUID, List<OutlineChapter>> chapters = new HashMap<>();
+            for (OutlineChapter c : chapterRepository.findByOutline_IdInOrderByPositionAsc(ids)) {
+                chapters.computeIfAbsent(c.getOutline().getId(), k -> new ArrayList<>()).add(c);
+            }
+            Map<UUID, List<OutlineScene>> scenes = new HashMap<>();
+            for (OutlineScene sc : sceneRepository.findByOutline_IdInOrderByPositionAsc(ids)) {
+                scenes.computeIfAbsent(sc.getOutline().getId(), k -> new ArrayList<>()).add(sc);
+            }
+            for (Outline o : missing) {
+                OutlineDto dto = toDto(o, chapters.getOrDefault(o.getId(), List.of()), scenes.getOrDefault(o.getId(), List.of()));
+                // 本事务内刚迁移的大纲尚未提交，不缓存
+                if (!migrated.contains(o.getId())) outlineCache.put(dto);
+                cached.put(o.getId(), dto);
+            }
+        }
+        return outlines.stream().map(o -> cached.get(o.getId())).toList();
     }
 
+    /** 先按主键读 version，命中缓存时不再读取章节/场景。 */
+    @Transactional
     public OutlineDto get(UUID id) {
-        return toDto(outlineRepository.findById(id).orElseThrow(() -> new RuntimeException("大纲不存在")));
+        long version = outlineRepository.findVersionById(id).orElseThrow(() -> new RuntimeException("大纲不存在"));
+        OutlineDto cached = outlineCache.get(id, version);
+        if (cached != null) return cached;
+        Outline outline = load(id);
+        OutlineDto dto = toDto(outline);
+        if (outline.getVersion() == version) outlineCache.put(dto);
+        return dto;
     }
 
     @Transactional
     public OutlineDto createOutline(Story story, OutlineCreateRequest request) {
-        Map<String, Object> content = new HashMap<>();
-        content.put("chapters", new ArrayList<>());
         Outline outline = new Outline();
         outline.setStory(story);
         outline.setTitle(request.title() == null ? "新大纲" : request.title());
         outline.setWorldId(request.worldId());
-        outline.setContentJson(writeJson(content));
         outlineRepository.save(outline);
-        return toDto(outline);
+        return toDto(outline, List.of(), List.of());
     }
 
     @Transactional
     public OutlineDto saveOutline(UUID outlineId, OutlineSaveRequest request) {
-        Outline outline = outlineRepository.findById(outlineId).orElseThrow(() -> new RuntimeException("大纲不存在"));
+        return saveOutline(outlineId, request, null);
+    }
+
+    /** expectedVersion 非空时须与当前版本一致，否则 409。 */
+    @Transactional
+    public OutlineDto saveOutline(UUID outlineId, OutlineSaveRequest request, Long expectedVersion) {
+        Outline outline = load(outlineId);
+        checkVersion(outline, expectedVersion);
+        save(outline, request);
+        return toDto(outline);
+    }
+
+    /**
+     * 局部修改：在当前树上应用 JSON Patch（数组）或 merge patch（对象），再按 id 与已有行比对，
+     * 只有被改动的章节/场景会写回数据库（移动节点时同级节点的位置也会更新）。
+     */
+    @Transactional
+    public OutlineDto patchOutline(UUID outlineId, JsonNode patch, Long expectedVersion) {
+        Outline outline = load(outlineId);
+        checkVersion(outline, expectedVersion);
+        OutlineDto current = toDto(outline);
+        ObjectNode doc = objectMapper.createObjectNode();
+        doc.put("title", current.title());
+        doc.put("worldId", current.worldId());
+        doc.set("chapters", objectMapper.valueToTree(current.chapters()));
+        OutlineSaveRequest request;
+        try {
+            request = objectMapper.convertValue(OutlinePatch.apply(doc, patch), OutlineSaveRequest.class);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("补丁结果不是有效的大纲");
+        }
+        save(outline, request);
+        return toDto(outline);
+    }
+
+    private void save(Outline outline, OutlineSaveRequest request) {
         outline.setTitle(request.title() != null ? request.title() : outline.getTitle());
         outline.setWorldId(request.worldId());
-        List<OutlineSaveRequest.ChapterPayload> normalized = normalizeChapters(request.chapters());
-        Map<String, Object> content = new HashMap<>();
-        content.put("chapters", normalized);
-        outline.setContentJson(writeJson(content));
-        outlineRepository.save(outline);
-        return toDto(outline);
+        applyTree(outline, normalizeChapters(request.chapters()));
+        touch(outline);
+    }
+
+    private static void checkVersion(Outline outline, Long expectedVersion) {
+        if (expectedVersion != null && expectedVersion != outline.getVersion()) {
+            throw new ConflictException("大纲已被修改（当前版本 " + outline.getVersion() + "），请刷新后重试");
+        }
+    }
+
+    // 立即 flush：返回的 version 即提交后的版本，并发修改在此以乐观锁冲突失败
+    private void touch(Outline outline) {
+        outline.setUpdatedAt(Instant.now());
+        outlineRepository.saveAndFlush(outline);
+        outlineCache.invalidate(outline.getId());
     }
 
     @Transactional
     public OutlineDto updateChapter(UUID chapterId, ChapterUpdateRequest request) {
-        Outline outline = findOutlineContainingChapter(chapterId);
-        Map<String, Object> content = readJson(outline.getContentJson());
-        List<OutlineSaveRequest.ChapterPayload> chapters = objectMapper.convertValue(
-                content.getOrDefault("chapters", new ArrayList<>()),
-                new TypeReference<List<OutlineSaveRequest.ChapterPayload>>() {}
-        );
-        List<OutlineSaveRequest.ChapterPayload> updated = new ArrayList<>();
-        for (OutlineSaveRequest.ChapterPayload c : chapters) {
-            if (c.id() != null && c.id().equals(chapterId)) {
-                updated.add(new OutlineSaveRequest.ChapterPayload(
-                        c.id(),
-                        request.title() != null ? request.title() : c.title(),
-                        request.summary() != null ? request.summary() : c.summary(),
-                        request.order() != null ? request.order() : c.order(),
-                        c.scenes()
-                ));
-            } else {
-                updated.add(c);
-            }
-        }
-        OutlineSaveRequest saveRequest = new OutlineSaveRequest(outline.getTitle(), outline.getWorldId(), normalizeChapters(updated));
-        return saveOutline(outline.getId(), saveRequest);
+        // 旧大纲在启动时或首次读取时已迁移为行，这里找不到即不存在
+        OutlineChapter chapter = chapterRepository.findById(chapterId).orElseThrow(() -> new NotFoundException("章节不存在"));
+        if (request.title() != null) chapter.setTitle(request.title());
+        if (request.summary() != null) chapter.setSummary(request.summary());
+        if (request.order() != null) chapter.setSortOrder(request.order());
+        Outline outline = chapter.getOutline();
+        touch(outline);
+        return toDto(outline);
     }
 
     @Transactional
     public OutlineDto updateScene(UUID sceneId, SceneUpdateRequest request) {
-        Outline outline = findOutlineContainingScene(sceneId);
-        Map<String, Object> content = readJson(outline.getContentJson());
-        List<OutlineSaveRequest.ChapterPayload> chapters = objectMapper.convertValue(
-                content.getOrDefault("chapters", new ArrayList<>()),
-                new TypeReference<List<OutlineSaveRequest.ChapterPayload>>() {}
-        );
-        List<OutlineSaveRequest.ChapterPayload> updatedChapters = new ArrayList<>();
-        for (OutlineSaveRequest.ChapterPayload c : chapters) {
-            List<OutlineSaveRequest.ScenePayload> scenes = c.scenes() == null ? new ArrayList<>() : new ArrayList<>(c.scenes());
-            List<OutlineSaveRequest.ScenePayload> updatedScenes = new ArrayList<>();
-            for (OutlineSaveRequest.ScenePayload s : scenes) {
-                if (s.id() != null && s.id().equals(sceneId)) {
-                    updatedScenes.add(new OutlineSaveRequest.ScenePayload(
-                            s.id(),
-                            request.title() != null ? request.title() : s.title(),
-                            request.summary() != null ? request.summary() : s.summary(),
-                            request.content() != null ? request.content() : s.content(),
-                            request.order() != null ? request.order() : s.order()
-                    ));
-                } else {
-                    updatedScenes.add(s);
-                }
-            }
-            updatedChapters.add(new OutlineSaveRequest.ChapterPayload(c.id(), c.title(), c.summary(), c.order(), updatedScenes));
-        }
-        OutlineSaveRequest saveRequest = new OutlineSaveRequest(outline.getTitle(), outline.getWorldId(), normalizeChapters(updatedChapters));
-        return saveOutline(outline.getId(), saveRequest);
+        OutlineScene scene = sceneRepository.findById(sceneId).orElseThrow(() -> new NotFoundException("场景不存在"));
+        if (request.title() != null) scene.setTitle(request.title());
+        if (request.summary() != null) scene.setSummary(request.summary());
+        if (request.content() != null) scene.setContent(request.content());
+        if (request.order() != null) scene.setSortOrder(request.order());
+        Outline outline = scene.getOutline();
+        touch(outline);
+        return toDto(outline);
     }
 
     @Transactional
     public void deleteOutline(UUID outlineId) {
+        outlineCache.invalidate(outlineId);
+        sceneRepository.deleteByOutlineId(outlineId);
+        chapterRepository.deleteByOutlineId(outlineId);
         outlineRepository.deleteById(outlineId);
     }
 
     @Transactional
     public OutlineDto addGeneratedChapter(UUID outlineId, OutlineChapterGenerateRequest request) {
-        Outline outline = outlineRepository.findById(outlineId).orElseThrow(() -> new RuntimeException("大纲不存在"));
-        OutlineDto dto = toDto(outline);
-        int order = dto.chapters() == null ? 1 : dto.chapters().size() + 1;
-        UUID chapterId = UUID.randomUUID();
-        List<OutlineDto.SceneDto> scenes = new ArrayList<>();
+        Outline outline = load(outlineId);
+        List<OutlineChapter> existing = chapterRepository.findByOutline_IdOrderByPositionAsc(outlineId);
+        int order = existing.size() + 1;
+        OutlineChapter chapter = new OutlineChapter(UUID.randomUUID(), outline);
+        chapter.setPosition(existing.isEmpty() ? 0 : existing.get(existing.size() - 1).getPosition() + 1);
+        chapter.setTitle("第" + (request.chapterNumber() != null ? request.chapterNumber() : order) + "章");
+        chapter.setSummary("AI 生成的章节摘要");
+        chapter.setSortOrder(order);
+        chapterRepository.save(chapter);
         int scenesCount = request.sectionsPerChapter() != null ? request.sectionsPerChapter() : 2;
+        List<OutlineScene> scenes = new ArrayList<>();
         for (int i = 1; i <= scenesCount; i++) {
-            scenes.add(new OutlineDto.SceneDto(UUID.randomUUID(), "场景 " + i, "根据第 " + i + " 段生成的摘要", null, i));
+            OutlineScene scene = new OutlineScene(UUID.randomUUID(), outline);
+            scene.setChapter(chapter);
+            scene.setPosition(i - 1);
+            scene.setTitle("场景 " + i);
+            scene.setSummary("根据第 " + i + " 段生成的摘要");
+            scene.setSortOrder(i);
+            scenes.add(scene);
         }
-        OutlineDto.ChapterDto newChapter = new OutlineDto.ChapterDto(
-                chapterId,
-                "第" + (request.chapterNumber() != null ? request.chapterNumber() : order) + "章",
-                "AI 生成的章节摘要",
-                order,
-                scenes
-        );
-        List<OutlineDto.ChapterDto> updated = new ArrayList<>(dto.chapters() != null ? dto.chapters() : List.of());
-        updated.add(newChapter);
-        OutlineSaveRequest saveRequest = new OutlineSaveRequest(outline.getTitle(), outline.getWorldId(),
-                updated.stream().map(c -> new OutlineSaveRequest.ChapterPayload(c.id(), c.title(), c.summary(), c.order(),
-                        c.scenes().stream().map(s -> new OutlineSaveRequest.ScenePayload(s.id(), s.title(), s.summary(), s.content(), s.order())).toList())).toList());
-        return saveOutline(outlineId, saveRequest);
+        sceneRepository.saveAll(scenes);
+        touch(outline);
+        return toDto(outline);
     }
 
-    private OutlineDto toDto(Outline outline) {
+    /** 启动后把仍保存在 content_json 中的旧大纲迁移为行，每个大纲一个事务；返回迁移数量。 */
+    @EventListener(ApplicationReadyEvent.class)
+    public int migrateAllLegacy() {
+        int migrated = 0;
+        for (UUID id : outlineRepository.findIdsWithLegacyContent()) {
+            Boolean done = tx.execute(status -> outlineRepository.findById(id).map(this::migrateLegacy).orElse(false));
+            if (Boolean.TRUE.equals(done)) migrated++;
+        }
+        return migrated;
+    }
+
+    private Outline load(UUID id) {
+        Outline outline = outlineRepository.findById(id).orElseThrow(() -> new RuntimeException("大纲不存在"));
+        migrateLegacy(outline);
+        return outline;
+    }
+
+    private boolean migrateLegacy(Outline outline) {
+        if (outline.getContentJson() == null) return false;
         Map<String, Object> content = readJson(outline.getContentJson());
         List<OutlineSaveRequest.ChapterPayload> chapters = objectMapper.convertValue(
                 content.getOrDefault("chapters", new ArrayList<>()),
                 new TypeReference<List<OutlineSaveRequest.ChapterPayload>>() {}
         );
+        applyTree(outline, normalizeChapters(chapters));
+        outline.setContentJson(null);
+        outlineRepository.saveAndFlush(outline);
+        return true;
+    }
+
+    /**
+     * 把整棵树同步到行：按 id 复用已有行（只有值变化的行会被 Hibernate 写回），新 id 插入，缺失的删除。
+     * 与其他大纲的章节/场景重复的 id（如复制粘贴）以及树内重复的 id 会换成新 id。
+     */
+    private void applyTree(Outline outline, List<OutlineSaveRequest.ChapterPayload> chapters) {
+        Map<UUID, OutlineChapter> oldChapters = new LinkedHashMap<>();
+        chapterRepository.findByOutline_IdOrderByPositionAsc(outline.getId()).forEach(c -> oldChapters.put(c.getId(), c));
+        Map<UUID, OutlineScene> oldScenes = new LinkedHashMap<>();
+        sceneRepository.findByOutline_IdOrderByPositionAsc(outline.getId()).forEach(s -> oldScenes.put(s.getId(), s));
+        Set<UUID> taken = foreignIds(chapters, oldChapters.keySet(), oldScenes.keySet());
+
+        List<OutlineChapter> newChapters = new ArrayList<>();
+        List<OutlineScene> newScenes = new ArrayList<>();
+        int chapterPosition = 0;
+        int scenePosition = 0;
+        for (OutlineSaveRequest.ChapterPayload c : chapters) {
+            UUID chapterId = taken.add(c.id()) ? c.id() : UUID.randomUUID();
+            OutlineChapter chapter = oldChapters.remove(chapterId);
+            if (chapter == null) {
+                chapter = new OutlineChapter(chapterId, outline);
+                newChapters.add(chapter);
+            }
+            chapter.setPosition(chapterPosition++);
+            chapter.setTitle(c.title());
+            chapter.setSummary(c.summary());
+            chapter.setSortOrder(c.order());
+            for (OutlineSaveRequest.ScenePayload s : c.scenes()) {
+                UUID sceneId = taken.add(s.id()) ? s.id() : UUID.randomUUID();
+                OutlineScene scene = oldScenes.remove(sceneId);
+                if (scene == null) {
+                    scene = new OutlineScene(sceneId, outline);
+                    newScenes.add(scene);
+                }
+                scene.setChapter(chapter);
+                scene.setPosition(scenePosition++);
+                scene.setTitle(s.title());
+                scene.setSummary(s.summary());
+                scene.setContent(s.content());
+                scene.setSortOrder(s.order());
+            }
+        }
+        chapterRepository.saveAll(newChapters);
+        sceneRepository.saveAll(newScenes);
+        sceneRepository.deleteAll(oldScenes.values());
+        chapterRepository.deleteAll(oldChapters.values());
+    }
+
+    // 返回不可使用的 id：已属于其他大纲的节点；本大纲已有的节点 id 在首次出现时可用
+    private Set<UUID> foreignIds(List<OutlineSaveRequest.ChapterPayload> chapters, Set<UUID> ownChapters, Set<UUID> ownScenes) {
+        Set<UUID> chapterIds = new HashSet<>();
+        Set<UUID> sceneIds = new HashSet<>();
+        for (OutlineSaveRequest.ChapterPayload c : chapters) {
+            if (!ownChapters.contains(c.id())) chapterIds.add(c.id());
+            for (OutlineSaveRequest.ScenePayload s : c.scenes()) {
+                if (!ownScenes.contains(s.id())) sceneIds.add(s.id());
+            }
+        }
+        Set<UUID> taken = new HashSet<>();
+        if (!chapterIds.isEmpty()) chapterRepository.findAllById(chapterIds).forEach(c -> taken.add(c.getId()));
+        if (!sceneIds.isEmpty()) sceneRepository.findAllById(sceneIds).forEach(s -> taken.add(s.getId()));
+        // 章节与场景 id 也不能互相重复
+        if (!chapterIds.isEmpty()) sceneRepository.findAllById(chapterIds).forEach(s -> taken.add(s.getId()));
+        if (!sceneIds.isEmpty()) chapterRepository.findAllById(sceneIds).forEach(c -> taken.add(c.getId()));
+        return taken;
+    }
+
+    private OutlineDto toDto(Outline outline) {
+        return toDto(outline, chapterRepository.findByOutline_IdOrderByPositionAsc(outline.getId()),
+                sceneRepository.findByOutline_IdOrderByPositionAsc(outline.getId()));
+    }
+
+    private OutlineDto toDto(Outline outline, List<OutlineChapter> chapters, List<OutlineScene> scenes) {
+        Map<UUID, List<OutlineDto.SceneDto>> byChapter = new HashMap<>();
+        for (OutlineScene s : scenes) {
+            byChapter.computeIfAbsent(s.getChapter().getId(), k -> new ArrayList<>())
+                    .add(new OutlineDto.SceneDto(s.getId(), s.getTitle(), s.getSummary(), s.getContent(), s.getSortOrder()));
+        }
         List<OutlineDto.ChapterDto> chapterDtos = chapters.stream().map(c -> new OutlineDto.ChapterDto(
-                c.id() != null ? c.id() : UUID.randomUUID(),
-                c.title(), c.summary(), c.order(),
-                c.scenes() == null ? List.of() : c.scenes().stream().map(s -> new OutlineDto.SceneDto(
-                        s.id() != null ? s.id() : UUID.randomUUID(),
-                        s.title(), s.summary(), s.content(), s.order()
-                )).toList()
+                c.getId(), c.getTitle(), c.getSummary(), c.getSortOrder(), List.copyOf(byChapter.getOrDefault(c.getId(), List.of()))
         )).toList();
-        return new OutlineDto(outline.getId(), outline.getStory().getId(), outline.getTitle(), outline.getWorldId(), chapterDtos, outline.getUpdatedAt());
+        return new OutlineDto(outline.getId(), outline.getStory().getId(), outline.getTitle(), outline.getWorldId(), chapterDtos, outline.getUpdatedAt(), outline.getVersion());
     }
 
     private List<OutlineSaveRequest.ChapterPayload> normalizeChapters(List<OutlineSaveRequest.ChapterPayload> chapters) {
@@ -180,35 +360,6 @@ public class OutlineService {
         return normalized;
     }
 
-    private Outline findOutlineContainingChapter(UUID chapterId) {
-        for (Outline outline : outlineRepository.findAll()) {
-            Map<String, Object> content = readJson(outline.getContentJson());
-            List<Map<String, Object>> chapters = objectMapper.convertValue(content.getOrDefault("chapters", new ArrayList<>()), List.class);
-            for (Map<String, Object> c : chapters) {
-                Object id = c.get("id");
-                if (id != null && chapterId.toString().equals(id.toString())) return outline;
-            }
-        }
-        throw new RuntimeException("章节不存在");
-    }
-
-    private Outline findOutlineContainingScene(UUID sceneId) {
-        for (Outline outline : outlineRepository.findAll()) {
-            Map<String, Object> content = readJson(outline.getContentJson());
-            List<Map<String, Object>> chapters = objectMapper.convertValue(content.getOrDefault("chapters", new ArrayList<>()), List.class);
-            for (Map<String, Object> c : chapters) {
-                Object scenesObj = c.get("scenes");
-                if (!(scenesObj instanceof List<?> scenes)) continue;
-                for (Object sObj : scenes) {
-                    if (!(sObj instanceof Map<?, ?> s)) continue;
-                    Object id = s.get("id");
-                    if (id != null && sceneId.toString().equals(id.toString())) return outline;
-                }
-            }
-        }
-        throw new RuntimeException("场景不存在");
-    }
-
     private Map<String, Object> readJson(String json) {
         if (json == null || json.isBlank()) return new HashMap<>();
         try {
@@ -217,12 +368,4 @@ public class OutlineService {
             return new HashMap<>();
         }
     }
-
-    private String writeJson(Object obj) {
-        try {
-            return objectMapper.writeValueAsString(obj);
-        } catch (Exception e) {
-            return "{}";
-        }
-    }
 }
@@ -8,8 +8,10 @@ import com.ainovel.app.user.User;
 import com.ainovel.app.user.UserRepository;
 import com.ainovel.app.ai.AiService;
 import com.ainovel.app.ai.dto.AiRefineRequest;
+import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -96,10 +98,22 @@ public class StoryController {
     }
 
     @GetMapping("/outlines/{id}")
-    public OutlineDto getOutline(@PathVariable UUID id) { return outlineService.get(id); }
+    public ResponseEntity<OutlineDto> getOutline(@PathVariable UUID id) { return withETag(outlineService.get(id)); }
 
     @PutMapping("/outlines/{id}")
-    public OutlineDto saveOutline(@PathVariable UUID id, @RequestBody OutlineSaveRequest request) { return outlineService.saveOutline(id, request); }
+    public ResponseEntity<OutlineDto> saveOutline(@PathVariable UUID id,
+                                                  @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                  @RequestBody OutlineSaveRequest request) {
+        return withETag(outlineService.saveOutline(id, request, parseVersion(ifMatch)));
+    }
+
+    /** Body 为数组时按 JSON Patch（RFC 6902），为对象时按 merge patch（RFC 7396）；If-Match 携带版本时做乐观并发校验。 */
+    @PatchMapping("/outlines/{id}")
+    public ResponseEntity<OutlineDto> patchOutline(@PathVariable UUID id,
+                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                   @RequestBody JsonNode patch) {
+        return withETag(outlineService.patchOutline(id, patch, parseVersion(ifMatch)));
+    }
 
     @DeleteMapping("/outlines/{id}")
     public ResponseEntity<Void> deleteOutline(@PathVariable UUID id) { outlineService.deleteOutline(id); return ResponseEntity.noContent().build(); }
@@ -119,9 +133,26 @@ public class StoryController {
         return ResponseEntity.ok(outlineService.updateScene(id, request));
     }
 
+    private static ResponseEntity<OutlineDto> withETag(OutlineDto dto) {
+        return ResponseEntity.ok().eTag(String.valueOf(dto.version())).body(dto);
+    }
+
+    // If-Match: "3"、W/"3" 或 3；* 与缺省表示不校验
+    private static Long parseVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || "*".equals(ifMatch.trim())) return null;
+        String v = ifMatch.trim();
+        if (v.startsWith("W/")) v = v.substring(2);
+        v = v.replace("\"", "");
+        try {
+            return Long.parseLong(v);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("If-Match 版本无效");
+        }
+    }
+
     @PostMapping("/outlines/scenes/{id}/refine")
     public ResponseEntity<String> refineScene(@AuthenticationPrincipal UserDetails principal, @PathVariable UUID id, @RequestBody RefineRequest request) {
         String instruction = request.instruction() == null ? "" : request.instruction();
-        return ResponseEntity.ok(aiService.refine(currentUser(principal), new AiRefineRequest(request.text(), instruction, null)).result());
+        return ResponseEntity.ok(aiService.refine(currentUser(principal), new AiRefineRequest(request.text(), instruction, null, request.noCache())).result());
     }
 }
@@ -105,12 +105,12 @@ public class StoryService {
 
     public String refineStory(User user, UUID storyId, RefineRequest request) {
         String instruction = request.instruction() == null ? "" : request.instruction();
-        return aiService.refine(user, new AiRefineRequest(request.text(), instruction, null)).result();
+        return aiService.refine(user, new AiRefineRequest(request.text(), instruction, null, request.noCache())).result();
     }
 
     public String refineCharacter(User user, UUID characterId, RefineRequest request) {
         String instruction = request.instruction() == null ? "" : request.instruction();
-        return aiService.refine(user, new AiRefineRequest(request.text(), instruction, null)).result();
+        return aiService.refine(user, new AiRefineRequest(request.text(), instruction, null, request.noCache())).result();
     }
 
     @Transactional
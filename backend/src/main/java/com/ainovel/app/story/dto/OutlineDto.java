@@ -9,7 +9,8 @@ public record OutlineDto(UUID id,
                          String title,
                          String worldId,
                          List<ChapterDto> chapters,
-                         Instant updatedAt) {
+                         Instant updatedAt,
+                         long version) {
     public record ChapterDto(UUID id, String title, String summary, Integer order, List<SceneDto> scenes) {}
     public record SceneDto(UUID id, String title, String summary, String content, Integer order) {}
 }
@@ -1,5 +1,6 @@
 package com.ainovel.app.story.model;
 
+import com.ainovel.app.common.CompressedTextConverter;
 import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
@@ -22,13 +23,18 @@ public class Outline {
     private String worldId;
 
     @Lob
-    private String contentJson; // chapters + scenes structure
+    @Convert(converter = CompressedTextConverter.class)
+    private String contentJson; // 旧版章节/场景树，迁移到 outline_chapters / outline_scenes 后置空
 
     @CreationTimestamp
     private Instant createdAt;
     @UpdateTimestamp
     private Instant updatedAt;
 
+    // 乐观锁版本：每次保存大纲或其章节/场景都会递增，对应 ETag / If-Match
+    @Version
+    private long version;
+
     public Outline() {}
 
     public UUID getId() { return id; }
@@ -45,4 +51,5 @@ public class Outline {
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
     public Instant getUpdatedAt() { return updatedAt; }
     public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+    public long getVersion() { return version; }
 }
@@ -0,0 +1,57 @@
+package com.ainovel.app.story.model;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.util.UUID;
+
+/**
+ * 大纲章节。id 即接口中的 chapterId（由服务端或客户端分配，不自动生成），position 为在大纲中的排列位置，
+ * sortOrder 为用户可见的 order 字段（两者可以不一致，兼容旧数据）。
+ */
+@Entity
+@Table(name = "outline_chapters", indexes = @Index(name = "idx_outline_chapters_outline", columnList = "outline_id, position"))
+public class OutlineChapter implements Persistable<UUID> {
+    @Id
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "outline_id", nullable = false)
+    private Outline outline;
+
+    private int position;
+    @Column(length = 1024)
+    private String title;
+    @Lob
+    private String summary;
+    private Integer sortOrder;
+
+    @Transient
+    private boolean isNew = true;
+
+    public OutlineChapter() {}
+
+    public OutlineChapter(UUID id, Outline outline) {
+        this.id = id;
+        this.outline = outline;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() { this.isNew = false; }
+
+    @Override
+    public boolean isNew() { return isNew; }
+
+    @Override
+    public UUID getId() { return id; }
+    public Outline getOutline() { return outline; }
+    public int getPosition() { return position; }
+    public void setPosition(int position) { this.position = position; }
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+    public String getSummary() { return summary; }
+    public void setSummary(String summary) { this.summary = summary; }
+    public Integer getSortOrder() { return sortOrder; }
+    public void setSortOrder(Integer sortOrder) { this.sortOrder = sortOrder; }
+}
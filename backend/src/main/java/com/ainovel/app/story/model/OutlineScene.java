@@ -0,0 +1,67 @@
+package com.ainovel.app.story.model;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.util.UUID;
+
+/** 大纲场景，字段含义同 OutlineChapter；outline_id 冗余保存，便于按大纲一次取出全部场景。 */
+@Entity
+@Table(name = "outline_scenes", indexes = {
+        @Index(name = "idx_outline_scenes_outline", columnList = "outline_id, position"),
+        @Index(name = "idx_outline_scenes_chapter", columnList = "chapter_id")
+})
+public class OutlineScene implements Persistable<UUID> {
+    @Id
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "outline_id", nullable = false)
+    private Outline outline;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "chapter_id", nullable = false)
+    private OutlineChapter chapter;
+
+    private int position;
+    @Column(length = 1024)
+    private String title;
+    @Lob
+    private String summary;
+    @Lob
+    private String content;
+    private Integer sortOrder;
+
+    @Transient
+    private boolean isNew = true;
+
+    public OutlineScene() {}
+
+    public OutlineScene(UUID id, Outline outline) {
+        this.id = id;
+        this.outline = outline;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() { this.isNew = false; }
+
+    @Override
+    public boolean isNew() { return isNew; }
+
+    @Override
+    public UUID getId() { return id; }
+    public Outline getOutline() { return outline; }
+    public OutlineChapter getChapter() { return chapter; }
+    public void setChapter(OutlineChapter chapter) { this.chapter = chapter; }
+    public int getPosition() { return position; }
+    public void setPosition(int position) { this.position = position; }
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+    public String getSummary() { return summary; }
+    public void setSummary(String summary) { this.summary = summary; }
+    public String getContent() { return content; }
+    public void setContent(String content) { this.content = content; }
+    public Integer getSortOrder() { return sortOrder; }
+    public void setSortOrder(Integer sortOrder) { this.sortOrder = sortOrder; }
+}
@@ -0,0 +1,21 @@
+package com.ainovel.app.story.repo;
+
+import com.ainovel.app.story.model.OutlineChapter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public interface OutlineChapterRepository extends JpaRepository<OutlineChapter, UUID> {
+    List<OutlineChapter> findByOutline_IdOrderByPositionAsc(UUID outlineId);
+
+    List<OutlineChapter> findByOutline_IdInOrderByPositionAsc(Collection<UUID> outlineIds);
+
+    @Modifying
+    @Query("delete from OutlineChapter c where c.outline.id = :outlineId")
+    int deleteByOutlineId(@Param("outlineId") UUID outlineId);
+}
@@ -3,10 +3,19 @@ package com.ainovel.app.story.repo;
 import com.ainovel.app.story.model.Outline;
 import com.ainovel.app.story.model.Story;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface OutlineRepository extends JpaRepository<Outline, UUID> {
     List<Outline> findByStory(Story story);
+
+    @Query("select o.id from Outline o where o.contentJson is not null")
+    List<UUID> findIdsWithLegacyContent();
+
+    @Query("select o.version from Outline o where o.id = :id")
+    Optional<Long> findVersionById(@Param("id") UUID id);
 }
@@ -25,7 +25,8 @@ public class User {
     @Column(nullable = false)
     private String passwordHash;
 
-    @Column(nullable = false)
+    // 余额与签到时间只通过 UserRepository 的条件更新修改，保存实体时不写回，避免并发覆盖
+    @Column(nullable = false, updatable = false)
     private double credits = 500.0;
 
     @Column(nullable = false)
@@ -34,6 +35,7 @@ public class User {
     @Column(name = "remote_uid", unique = true)
     private Long remoteUid;
 
+    @Column(updatable = false)
     private Instant lastCheckInAt;
 
     private String avatarUrl;
@@ -1,11 +1,7 @@
 package com.ainovel.app.user;
 
 import com.ainovel.app.economy.EconomyService;
-import com.ainovel.app.manuscript.model.Manuscript;
-import com.ainovel.app.manuscript.repo.ManuscriptRepository;
-import com.ainovel.app.story.model.Outline;
-import com.ainovel.app.story.model.Story;
-import com.ainovel.app.story.repo.OutlineRepository;
+import com.ainovel.app.manuscript.repo.ManuscriptSectionRepository;
 import com.ainovel.app.story.repo.StoryRepository;
 import com.ainovel.app.user.dto.*;
 import com.ainovel.app.world.model.World;
@@ -20,6 +16,7 @@ import org.springframework.web.bind.annotation.*;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.time.Instant;
 import java.util.Map;
 
 @RestController
@@ -34,9 +31,7 @@ public class UserController {
     @Autowired
     private WorldRepository worldRepository;
     @Autowired
-    private OutlineRepository outlineRepository;
-    @Autowired
-    private ManuscriptRepository manuscriptRepository;
+    private ManuscriptSectionRepository manuscriptSectionRepository;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     private User currentUser(UserDetails details) {
@@ -59,6 +54,12 @@ public class UserController {
         return ResponseEntity.ok(new UserSummaryResponse(novelCount, worldCount, totalWords, totalEntries));
     }
 
+    @GetMapping("/check-in")
+    public CheckInStatusResponse checkInStatus(@AuthenticationPrincipal UserDetails principal) {
+        User user = currentUser(principal);
+        return new CheckInStatusResponse(economyService.hasCheckedInToday(user), economyService.checkInStreak(user));
+    }
+
     @PostMapping("/check-in")
     public ResponseEntity<CreditChangeResponse> checkIn(@AuthenticationPrincipal UserDetails principal) {
         User user = currentUser(principal);
@@ -73,6 +74,20 @@ public class UserController {
         return ResponseEntity.ok(new CreditChangeResponse(result.success(), result.points(), result.newTotal()));
     }
 
+    @GetMapping("/credit-logs")
+    public CreditLogPageResponse creditLogs(@AuthenticationPrincipal UserDetails principal,
+                                            @RequestParam(required = false) String reason,
+                                            @RequestParam(required = false) Instant from,
+                                            @RequestParam(required = false) Instant to,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = "20") int limit) {
+        User user = currentUser(principal);
+        EconomyService.CreditLogPage page = economyService.creditLogs(user, reason, from, to, cursor, limit);
+        return new CreditLogPageResponse(page.items().stream()
+                .map(l -> new CreditLogPageResponse.Item(l.getId(), l.getAmount(), l.getReason(), l.getModel(), l.getDetails(), l.getCreatedAt()))
+                .toList(), page.nextCursor());
+    }
+
     @PostMapping("/password")
     public ResponseEntity<BasicResponse> updatePassword(@AuthenticationPrincipal UserDetails principal) {
         return ResponseEntity.status(501).body(new BasicResponse(false, "PASSWORD_MANAGED_BY_SSO"));
@@ -93,31 +108,7 @@ public class UserController {
     }
 
     private long estimateTotalWords(User user) {
-        long total = 0;
-        for (Story story : storyRepository.findByUser(user)) {
-            for (Outline outline : outlineRepository.findByStory(story)) {
-                for (Manuscript manuscript : manuscriptRepository.findByOutline(outline)) {
-                    total += estimateWordsFromSections(manuscript.getSectionsJson());
-                }
-            }
-        }
-        return total;
-    }
-
-    private long estimateWordsFromSections(String sectionsJson) {
-        if (sectionsJson == null || sectionsJson.isBlank()) return 0;
-        try {
-            Map<String, String> sections = objectMapper.readValue(sectionsJson, new TypeReference<>() {});
-            long total = 0;
-            for (String html : sections.values()) {
-                if (html == null) continue;
-                String plain = html.replaceAll("<[^>]*>", "");
-                total += plain.trim().length();
-            }
-            return total;
-        } catch (Exception ignored) {
-            return 0;
-        }
+        return manuscriptSectionRepository.sumWordCountByUser(user);
     }
 
     private long estimateWorldEntries(User user) {
@@ -1,8 +1,12 @@
 package com.ainovel.app.user;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -11,4 +15,24 @@ public interface UserRepository extends JpaRepository<User, UUID> {
     Optional<User> findByEmail(String email);
     Optional<User> findByRemoteUid(Long remoteUid);
     long countByCreatedAtAfter(Instant since);
+
+    @Query("select u.credits from User u where u.id = :id")
+    Optional<Double> findCreditsById(@Param("id") UUID id);
+
+    @Modifying
+    @Query("update User u set u.credits = u.credits + :amount where u.id = :id")
+    int addCredits(@Param("id") UUID id, @Param("amount") double amount);
+
+    /** 余额不足时不扣减，返回 0。 */
+    @Modifying
+    @Query("update User u set u.credits = u.credits - :amount where u.id = :id and u.credits >= :amount")
+    int deductIfSufficient(@Param("id") UUID id, @Param("amount") double amount);
+
+    /** 今天尚未签到时记录签到时间并返回 1，并发的重复签到只有一个成功。 */
+    @Modifying
+    @Query("update User u set u.lastCheckInAt = :now where u.id = :id and (u.lastCheckInAt is null or u.lastCheckInAt < :dayStart)")
+    int markCheckedIn(@Param("id") UUID id, @Param("now") Instant now, @Param("dayStart") Instant dayStart);
+
+    @Query("select u.id, u.lastCheckInAt from User u where u.lastCheckInAt >= :from")
+    List<Object[]> findLastCheckInsSince(@Param("from") Instant from);
 }
@@ -0,0 +1,3 @@
+package com.ainovel.app.user.dto;
+
+public record CheckInStatusResponse(boolean checkedInToday, int streak) {}
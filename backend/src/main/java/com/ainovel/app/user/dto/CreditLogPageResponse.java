@@ -0,0 +1,9 @@
+package com.ainovel.app.user.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public record CreditLogPageResponse(List<Item> items, String nextCursor) {
+    public record Item(UUID id, double amount, String reason, String model, String details, Instant createdAt) {}
+}
@@ -50,7 +50,7 @@ public class WorldController {
 
     @PostMapping("/{id}/modules/{moduleKey}/fields/{fieldKey}/refine")
     public ResponseEntity<AiRefineResponse> refineField(@AuthenticationPrincipal UserDetails principal, @PathVariable UUID id, @PathVariable String moduleKey, @PathVariable String fieldKey, @RequestBody RefineRequest request) {
-        return ResponseEntity.ok(worldService.refineField(currentUser(principal), id, moduleKey, fieldKey, request.text(), request.instruction()));
+        return ResponseEntity.ok(worldService.refineField(currentUser(principal), id, moduleKey, fieldKey, request.text(), request.instruction(), request.noCache()));
     }
 
     @GetMapping("/{id}/publish/preview")
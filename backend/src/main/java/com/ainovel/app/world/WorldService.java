@@ -112,12 +112,12 @@ public class WorldService {
     }
 
     @Transactional
-    public AiRefineResponse refineField(User user, UUID id, String moduleKey, String fieldKey, String text, String instruction) {
+    public AiRefineResponse refineField(User user, UUID id, String moduleKey, String fieldKey, String text, String instruction, Boolean noCache) {
         String prompt = (instruction == null ? "" : instruction).trim();
         if (prompt.isBlank()) {
             prompt = "请优化以下世界观字段表述，使其更清晰、更具细节且保持一致性。";
         }
-        return aiService.refine(user, new AiRefineRequest(text, prompt, null));
+        return aiService.refine(user, new AiRefineRequest(text, prompt, null, noCache));
     }
 
     public WorldPublishPreviewResponse preview(UUID id) {
@@ -1,5 +1,6 @@
 package com.ainovel.app.world.model;
 
+import com.ainovel.app.common.CompressedTextConverter;
 import com.ainovel.app.user.User;
 import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
@@ -30,6 +31,7 @@ public class World {
     @Lob
     private String notes;
     @Lob
+    @Convert(converter = CompressedTextConverter.class)
     private String modulesJson; // moduleKey -> fields map
     @Lob
     private String moduleProgressJson; // moduleKey -> status
@@ -0,0 +1,29 @@
+package com.ainovel.app.ai;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// 通过 application.yml 中的环境变量占位符设置，确认 app.ai.* 各块挂在正确的层级下
+@SpringBootTest(properties = {"AI_CONTEXT_BUDGET_TOKENS=4321", "AI_CACHE_ENABLED=true", "AI_RATE_LIMIT_STORE=memory"})
+@ActiveProfiles("test")
+class AiConfigBindingTests {
+    @Autowired
+    private AiService aiService;
+    @Autowired
+    private RefineCache refineCache;
+    @Autowired
+    private AiRateLimiter rateLimiter;
+
+    @Test
+    void aiBlocksBindFromEnvironmentOverrides() {
+        assertEquals(4321, ReflectionTestUtils.getField(aiService, "defaultContextBudget"));
+        assertTrue(refineCache.stats().enabled());
+        assertEquals("memory", ReflectionTestUtils.getField(rateLimiter, "storeType"));
+        assertEquals(30L, ReflectionTestUtils.getField(rateLimiter, "refreshSeconds"));
+    }
+}
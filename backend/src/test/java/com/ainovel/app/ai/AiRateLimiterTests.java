@@ -0,0 +1,60 @@
+package com.ainovel.app.ai;
+
+import com.ainovel.app.common.TooManyRequestsException;
+import com.ainovel.app.settings.SettingsService;
+import com.ainovel.app.settings.model.GlobalSettings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AiRateLimiterTests {
+    private final AiRateLimiter limiter = new AiRateLimiter();
+    private final GlobalSettings settings = new GlobalSettings();
+
+    @BeforeEach
+    void setUp() {
+        SettingsService settingsService = Mockito.mock(SettingsService.class);
+        Mockito.when(settingsService.getGlobalSettings()).thenReturn(settings);
+        ReflectionTestUtils.setField(limiter, "settingsService", settingsService);
+        ReflectionTestUtils.setField(limiter, "refreshSeconds", 3600L);
+    }
+
+    @Test
+    void rejectsBeyondUserBurstWithRetryAfter() {
+        settings.setAiUserRatePerMinute(6);
+        settings.setAiUserBurst(2);
+        settings.setAiPoolRatePerMinute(0);
+        UUID user = UUID.randomUUID();
+
+        limiter.check(user, "p1");
+        limiter.check(user, "p1");
+        TooManyRequestsException ex = assertThrows(TooManyRequestsException.class, () -> limiter.check(user, "p1"));
+        // 每分钟 6 个 => 10 秒补一个
+        assertEquals(10, ex.getRetryAfterSeconds());
+
+        limiter.check(UUID.randomUUID(), "p1");
+    }
+
+    @Test
+    void poolBucketIsSharedAcrossUsersAndSkippedForOwnKeys() {
+        settings.setAiUserRatePerMinute(0);
+        settings.setAiPoolRatePerMinute(60);
+        settings.setAiPoolBurst(1);
+
+        limiter.check(UUID.randomUUID(), "p1");
+        assertThrows(TooManyRequestsException.class, () -> limiter.check(UUID.randomUUID(), "p1"));
+        limiter.check(UUID.randomUUID(), "p2");
+        limiter.check(UUID.randomUUID(), null);
+    }
+
+    @Test
+    void refillsOverTime() {
+        assertEquals(0, limiter.acquireLocal("k", 1, 1.0 / 1000));
+        assertTrue(limiter.acquireLocal("k", 1, 1.0 / 1000) > 0);
+    }
+}
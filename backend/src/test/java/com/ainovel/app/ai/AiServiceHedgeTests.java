@@ -0,0 +1,37 @@
+package com.ainovel.app.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AiServiceHedgeTests {
+    private final AiService aiService = new AiService();
+
+    @Test
+    void failsWithPrimaryErrorWhenBackupTurnsOutUnavailable() {
+        AiService.HedgedCall<String> hedged = aiService.new HedgedCall<>();
+        assertTrue(hedged.startHedge());
+        RuntimeException primaryError = new LlmUpstreamException(502, "bad gateway");
+        hedged.done(null, primaryError, false);
+        assertFalse(hedged.result.isDone());
+        // 备用端点挑不出来，以 (null, null) 回报
+        hedged.done(null, null, true);
+
+        assertTrue(hedged.result.isCompletedExceptionally());
+        CompletionException e = assertThrows(CompletionException.class, hedged.result::join);
+        assertSame(primaryError, e.getCause());
+    }
+
+    @Test
+    void firstSuccessWinsAndLaterFailuresAreIgnored() {
+        AiService.HedgedCall<String> hedged = aiService.new HedgedCall<>();
+        assertTrue(hedged.startHedge());
+        hedged.done("backup", null, true);
+        hedged.done(null, new LlmUpstreamException(502, "bad gateway"), false);
+
+        assertEquals("backup", hedged.result.join());
+        assertEquals(1, aiService.hedgeStats().won());
+    }
+}
@@ -0,0 +1,102 @@
+package com.ainovel.app.ai;
+
+import com.ainovel.app.ai.dto.AiRefineRequest;
+import com.ainovel.app.common.TooManyRequestsException;
+import com.ainovel.app.settings.SettingsService;
+import com.ainovel.app.settings.model.SystemSettings;
+import com.ainovel.app.settings.repo.SystemSettingsRepository;
+import com.ainovel.app.user.User;
+import com.ainovel.app.user.UserRepository;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class AiServiceRefineCacheTests {
+    @Autowired
+    private AiService aiService;
+    @Autowired
+    private RefineCache refineCache;
+    @Autowired
+    private AiRateLimiter rateLimiter;
+    @Autowired
+    private SettingsService settingsService;
+    @Autowired
+    private SystemSettingsRepository systemSettingsRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    private HttpServer server;
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    private Object originalLimits;
+    private Object originalLimitsLoadedAt;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            upstreamCalls.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            byte[] bytes = "{\"choices\":[{\"message\":{\"content\":\"润色后\"}}],\"usage\":{\"prompt_tokens\":5,\"completion_tokens\":3}}"
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+        ReflectionTestUtils.setField(refineCache, "enabled", true);
+        originalLimits = ReflectionTestUtils.getField(rateLimiter, "limits");
+        originalLimitsLoadedAt = ReflectionTestUtils.getField(rateLimiter, "limitsLoadedAtMs");
+        // 每分钟 1 次、突发 1 次，且不从全局配置刷新
+        ReflectionTestUtils.setField(rateLimiter, "limits", new AiRateLimiter.Limits(1, 1, 0, 0));
+        ReflectionTestUtils.setField(rateLimiter, "limitsLoadedAtMs", Long.MAX_VALUE / 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        ReflectionTestUtils.setField(refineCache, "enabled", false);
+        ReflectionTestUtils.setField(rateLimiter, "limits", originalLimits);
+        ReflectionTestUtils.setField(rateLimiter, "limitsLoadedAtMs", originalLimitsLoadedAt);
+    }
+
+    @Test
+    void cacheHitsDoNotConsumeRateLimitTokens() {
+        User user = new User();
+        user.setUsername("refine_cache_limit");
+        user.setEmail("refine_cache_limit@example.com");
+        user.setPasswordHash("x");
+        user.setRoles(Set.of("ROLE_USER"));
+        user.setCredits(100);
+        userRepository.save(user);
+        settingsService.getSettings(user);
+        SystemSettings settings = systemSettingsRepository.findByUser(user).orElseThrow();
+        settings.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        settings.setApiKeyEncrypted("k");
+        systemSettingsRepository.save(settings);
+
+        AiRefineRequest request = new AiRefineRequest("他走了。", "润色", null, null);
+        assertEquals("润色后", aiService.refine(user, request).result());
+        for (int i = 0; i < 3; i++) assertEquals("润色后", aiService.refine(user, request).result());
+        assertEquals(1, upstreamCalls.get());
+
+        // 未命中缓存的请求仍受限流
+        assertThrows(TooManyRequestsException.class, () -> aiService.refine(user, new AiRefineRequest("另一段。", "润色", null, null)));
+    }
+}
@@ -0,0 +1,73 @@
+package com.ainovel.app.ai;
+
+import com.ainovel.app.ai.tokenizer.TokenCounter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextPackerTests {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ContextPacker packer = new ContextPacker();
+
+    ContextPackerTests() {
+        ReflectionTestUtils.setField(packer, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(packer, "tokenCounter", new TokenCounter());
+    }
+
+    @Test
+    void keepsSmallContextAsIs() throws Exception {
+        Map<String, Object> context = Map.of("storyTitle", "长夜", "currentScene", "雨夜重逢");
+        ContextPacker.Packed packed = packer.pack(context, "gpt-4o", 1000);
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(context)), objectMapper.readTree(packed.json()));
+        assertTrue(packed.report().dropped().isEmpty());
+        assertTrue(packed.report().truncated().isEmpty());
+    }
+
+    @Test
+    void packsByPriorityWithinBudget() throws Exception {
+        Map<String, Object> context = new LinkedHashMap<>();
+        context.put("storyTitle", "长夜");
+        context.put("worldModules", Map.of("geography", "群山".repeat(300)));
+        context.put("currentScene", "雨夜重逢");
+        context.put("sceneSummary", "主角在客栈与旧友重逢，得知师门覆灭的真相。");
+        context.put("characters", List.of("林远：沉默寡言的剑客", "苏晚：消息灵通的客栈老板"));
+        context.put("currentContent", "开头".repeat(500) + "雨越下越大，他推开了客栈的门。");
+
+        ContextPacker.Packed packed = packer.pack(context, "gpt-4o", 200);
+        JsonNode out = objectMapper.readTree(packed.json());
+
+        assertTrue(packed.report().usedTokens() <= 200);
+        assertEquals("雨夜重逢", out.path("currentScene").asText());
+        assertEquals(context.get("sceneSummary"), out.path("sceneSummary").asText());
+        // 正文保留离光标最近的末尾
+        assertTrue(out.path("currentContent").asText().endsWith("他推开了客栈的门。"));
+        assertTrue(packed.report().truncated().contains("currentContent"));
+        assertFalse(out.has("worldModules"));
+        assertTrue(packed.report().dropped().contains("worldModules"));
+        // 输出保持原字段顺序
+        assertEquals("storyTitle", out.fieldNames().next());
+    }
+
+    @Test
+    void truncationNeverSplitsSurrogatePairs() throws Exception {
+        String emojis = "他笑了😀😃😂🙂".repeat(40);
+        for (int budget = 20; budget < 60; budget++) {
+            Map<String, Object> context = new LinkedHashMap<>();
+            context.put("sceneSummary", emojis);
+            context.put("currentContent", emojis);
+            JsonNode out = objectMapper.readTree(packer.pack(context, "gpt-4o", budget).json());
+            for (String key : List.of("sceneSummary", "currentContent")) {
+                String value = out.path(key).asText();
+                assertTrue(value.codePoints().noneMatch(cp -> cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE),
+                        key + " @" + budget + ": " + value);
+            }
+        }
+    }
+}
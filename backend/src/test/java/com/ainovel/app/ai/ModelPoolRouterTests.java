@@ -0,0 +1,118 @@
+package com.ainovel.app.ai;
+
+import com.ainovel.app.ai.model.ModelPoolEndpoint;
+import com.ainovel.app.ai.repo.ModelPoolEndpointRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelPoolRouterTests {
+    private final ModelPoolRouter router = new ModelPoolRouter();
+    private final ModelPoolEndpoint fast = endpoint("fast");
+    private final ModelPoolEndpoint slow = endpoint("slow");
+    private final ModelPoolEndpointRepository repository = Mockito.mock(ModelPoolEndpointRepository.class);
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(repository.findByEnabledTrue()).thenReturn(List.of(fast, slow));
+        ReflectionTestUtils.setField(router, "endpointRepository", repository);
+        ReflectionTestUtils.setField(router, "refreshSeconds", 3600L);
+        ReflectionTestUtils.setField(router, "ejectAfterFailures", 2);
+        ReflectionTestUtils.setField(router, "ejectSeconds", 30L);
+        ReflectionTestUtils.setField(router, "maxEjectSeconds", 300L);
+        router.reload();
+    }
+
+    @Test
+    void prefersMemberWithFewerInFlightRequests() {
+        ModelPoolRouter.Lease first = router.pick("p1").orElseThrow();
+        // 两个成员时 P2C 总是比较二者，第二次一定选到在途更少的那个
+        ModelPoolRouter.Lease second = router.pick("p1").orElseThrow();
+        assertNotEquals(first.member().id(), second.member().id());
+        first.complete(null);
+        second.complete(null);
+        assertEquals(0, router.snapshot(first.member().id()).inFlight());
+    }
+
+    @Test
+    void ejectsMemberAfterConsecutiveFaultsButKeepsPoolUsable() {
+        for (int i = 0; i < 2; i++) {
+            ModelPoolRouter.Lease lease = leaseFor(slow.getId());
+            lease.complete(new LlmUpstreamException(503, "down"));
+        }
+        assertTrue(router.snapshot(slow.getId()).ejected());
+        for (int i = 0; i < 5; i++) {
+            ModelPoolRouter.Lease lease = router.pick("p1").orElseThrow();
+            assertEquals(fast.getId(), lease.member().id());
+            lease.complete(null);
+        }
+        // 请求本身的 4xx 不算端点故障
+        ModelPoolRouter.Lease lease = router.pick("p1").orElseThrow();
+        lease.complete(new LlmUpstreamException(400, "bad request"));
+        assertEquals(0, router.snapshot(fast.getId()).consecutiveFailures());
+
+        assertTrue(router.pick("missing").isEmpty());
+    }
+
+    @Test
+    void refreshesInBackgroundOnceAndPrunesRemovedEndpoints() throws Exception {
+        leaseFor(slow.getId()).complete(null);
+        @SuppressWarnings("unchecked")
+        Map<UUID, ?> stats = (Map<UUID, ?>) ReflectionTestUtils.getField(router, "stats");
+        AtomicBoolean refreshing = (AtomicBoolean) ReflectionTestUtils.getField(router, "refreshing");
+        assertTrue(stats.containsKey(slow.getId()));
+
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Mockito.when(repository.findByEnabledTrue()).thenAnswer(inv -> {
+            loads.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(fast);
+        });
+        ReflectionTestUtils.setField(router, "refreshSeconds", 0L);
+        ReflectionTestUtils.setField(router, "loadedAtMs", 1L);
+
+        // 刷新进行中：请求不等待数据库，继续使用旧列表，且只触发一次刷新
+        for (int i = 0; i < 20; i++) {
+            ModelPoolRouter.Lease l = router.pick("p1").orElseThrow();
+            l.complete(null);
+        }
+        assertTrue(router.hasMembers("p1"));
+        release.countDown();
+        for (int i = 0; i < 100 && refreshing.get(); i++) Thread.sleep(10);
+        assertEquals(1, loads.get());
+
+        ReflectionTestUtils.setField(router, "refreshSeconds", 3600L);
+        assertEquals(fast.getId(), router.pick("p1").orElseThrow().member().id());
+        assertFalse(stats.containsKey(slow.getId()));
+    }
+
+    private ModelPoolRouter.Lease leaseFor(UUID id) {
+        while (true) {
+            ModelPoolRouter.Lease lease = router.pick("p1").orElseThrow();
+            if (lease.member().id().equals(id)) return lease;
+            lease.complete(null);
+        }
+    }
+
+    private static ModelPoolEndpoint endpoint(String name) {
+        ModelPoolEndpoint e = new ModelPoolEndpoint();
+        e.setId(UUID.randomUUID());
+        e.setPoolId("p1");
+        e.setName(name);
+        e.setBaseUrl("http://" + name + ".local/v1");
+        e.setApiKeyEncrypted("sk-" + name);
+        return e;
+    }
+}
@@ -0,0 +1,137 @@
+package com.ainovel.app.ai;
+
+import com.ainovel.app.ai.telemetry.LlmTelemetry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenAiCompatClientStreamTests {
+    private HttpServer server;
+    private OpenAiCompatClient client;
+    private final UpstreamConcurrencyLimiter limiter = new UpstreamConcurrencyLimiter();
+    private final LlmTelemetry telemetry = new LlmTelemetry();
+    private final UpstreamCircuitBreaker breaker = new UpstreamCircuitBreaker();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            String sse = String.join("\n",
+                    "data: {\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}",
+                    "",
+                    "data: {\"choices\":[{\"delta\":{\"content\":\"雨夜\"}}]}",
+                    "",
+                    ": keep-alive",
+                    "data: {\"choices\":[{\"delta\":{\"content\":\"，霓虹\"}}]}",
+                    "",
+                    "data: {\"choices\":[],\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":5}}",
+                    "",
+                    "data: [DONE]",
+                    "");
+            byte[] bytes = sse.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+        ReflectionTestUtils.setField(limiter, "maxConcurrency", 1);
+        ReflectionTestUtils.setField(limiter, "maxQueue", 10);
+        ReflectionTestUtils.setField(limiter, "queueTimeoutSeconds", 5L);
+        client = new OpenAiCompatClient(2);
+        ReflectionTestUtils.setField(client, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(client, "concurrencyLimiter", limiter);
+        ReflectionTestUtils.setField(client, "circuitBreaker", breaker);
+        ReflectionTestUtils.setField(client, "telemetry", telemetry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        client.shutdown();
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/";
+    }
+
+    @Test
+    void streamsDeltasAndReportsUsage() {
+        List<String> deltas = new ArrayList<>();
+        OpenAiCompatClient.ChatResult result = client.streamChatCompletions(baseUrl(), "k", Map.of("model", "m"), deltas::add);
+
+        assertEquals(List.of("雨夜", "，霓虹"), deltas);
+        assertEquals("雨夜，霓虹", result.content());
+        assertEquals(12, result.promptTokens());
+        assertEquals(5, result.completionTokens());
+
+        LlmTelemetry.SeriesStats stats = telemetry.series().get(0);
+        assertEquals("m", stats.model());
+        assertEquals(1, stats.calls());
+        assertEquals(0, stats.errors());
+        assertEquals(1, stats.ttftMs().count());
+    }
+
+    @Test
+    void stopsReadingWhenListenerFailsButKeepsGeneratedContent() {
+        OpenAiCompatClient.ChatResult result = client.streamChatCompletions(baseUrl(), "k", Map.of("model", "m"), delta -> {
+            throw new IllegalStateException("client gone");
+        });
+
+        assertEquals("雨夜", result.content());
+        assertNull(result.completionTokens());
+    }
+
+    @Test
+    void releasesUpstreamPermitsAfterEachStream() {
+        for (int i = 0; i < 3; i++) {
+            client.streamChatCompletions(baseUrl(), "k", Map.of("model", "m"), delta -> {});
+        }
+        client.streamChatCompletions(baseUrl(), "k", Map.of("model", "m"), delta -> {
+            throw new IllegalStateException("client gone");
+        });
+
+        assertTrue(limiter.stats().stream().allMatch(s -> s.active() == 0 && s.queued() == 0));
+    }
+
+    @Test
+    void timeQueuedForAPermitIsNotCountedAsASlowCall() throws Exception {
+        ReflectionTestUtils.setField(breaker, "slowCallMs", 200L);
+        ReflectionTestUtils.setField(breaker, "minCalls", 1);
+        String key = baseUrl().substring(0, baseUrl().length() - 1);
+        UpstreamConcurrencyLimiter.Permit held = limiter.acquire(key).join();
+        CompletableFuture<OpenAiCompatClient.ChatResult> queued = client.streamChatCompletionsAsync(baseUrl(), "k", Map.of("model", "m"), delta -> {});
+        Thread.sleep(400);
+        held.release();
+
+        assertEquals("雨夜，霓虹", queued.join().content());
+        UpstreamCircuitBreaker.BreakerStats stats = breaker.stats().get(0);
+        assertEquals(UpstreamCircuitBreaker.State.CLOSED, stats.state());
+        assertEquals(0, stats.failures());
+    }
+
+    @Test
+    void releasesThePermitWhenTheBreakerRejects() {
+        ReflectionTestUtils.setField(breaker, "minCalls", 1);
+        String key = baseUrl().substring(0, baseUrl().length() - 1);
+        breaker.acquire(key).complete(new LlmUpstreamException(500, "boom"));
+
+        Throwable error = assertThrows(RuntimeException.class, () -> client.chatCompletions(baseUrl(), "k", Map.of("model", "m")));
+        assertInstanceOf(UpstreamCircuitBreaker.OpenException.class, OpenAiCompatClient.wrap(error));
+        assertTrue(limiter.stats().stream().allMatch(s -> s.active() == 0 && s.queued() == 0));
+    }
+}
@@ -0,0 +1,47 @@
+package com.ainovel.app.ai;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RefineCacheTests {
+    private final RefineCache cache = new RefineCache();
+    private final UUID user = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "storeType", "memory");
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        ReflectionTestUtils.invokeMethod(cache, "init");
+    }
+
+    @Test
+    void keyIgnoresSurroundingWhitespaceAndLineEndings() {
+        assertEquals(cache.key(user, "gpt-4o", "润色", "第一行\r\n第二行"), cache.key(user, "gpt-4o", " 润色\n", "第一行\n第二行\n"));
+        assertNotEquals(cache.key(user, "gpt-4o", "润色", "文本"), cache.key(user, "gpt-4o-mini", "润色", "文本"));
+        assertNotEquals(cache.key(user, "gpt-4o", "润色", "文本"), cache.key(UUID.randomUUID(), "gpt-4o", "润色", "文本"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedAndCountsHits() {
+        cache.put("a", "A");
+        cache.put("b", "B");
+        assertEquals("A", cache.get("a").orElseThrow());
+        cache.put("c", "C");
+
+        assertTrue(cache.get("b").isEmpty());
+        assertEquals("C", cache.get("c").orElseThrow());
+
+        RefineCache.Stats stats = cache.stats();
+        assertEquals(2, stats.size());
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.evictions());
+    }
+}
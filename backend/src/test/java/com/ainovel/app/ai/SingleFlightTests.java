@@ -0,0 +1,43 @@
+package com.ainovel.app.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTests {
+    @Test
+    void coalescesConcurrentCallsAndForgetsKeyWhenDone() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        CompletableFuture<String> a = flight.run("k", () -> { calls.incrementAndGet(); return upstream; });
+        CompletableFuture<String> b = flight.run("k", () -> { calls.incrementAndGet(); return upstream; });
+        assertEquals(1, calls.get());
+        assertEquals(1, flight.inFlight());
+
+        b.cancel(true);
+        upstream.complete("done");
+        assertEquals("done", a.join());
+        assertEquals(0, flight.inFlight());
+        assertEquals(1, flight.coalesced());
+
+        flight.run("k", () -> { calls.incrementAndGet(); return CompletableFuture.completedFuture("again"); }).join();
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void sharesFailureWithFollowers() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> a = flight.run("k", () -> upstream);
+        CompletableFuture<String> b = flight.run("k", () -> upstream);
+        upstream.completeExceptionally(new RuntimeException("boom"));
+        assertTrue(a.isCompletedExceptionally());
+        assertTrue(b.isCompletedExceptionally());
+        assertEquals(0, flight.inFlight());
+    }
+}
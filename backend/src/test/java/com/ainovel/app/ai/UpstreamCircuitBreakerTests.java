@@ -0,0 +1,59 @@
+package com.ainovel.app.ai;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamCircuitBreakerTests {
+    private static UpstreamCircuitBreaker breaker(long openSeconds) {
+        UpstreamCircuitBreaker b = new UpstreamCircuitBreaker();
+        ReflectionTestUtils.setField(b, "windowSize", 4);
+        ReflectionTestUtils.setField(b, "minCalls", 4);
+        ReflectionTestUtils.setField(b, "openSeconds", openSeconds);
+        ReflectionTestUtils.setField(b, "halfOpenProbes", 1);
+        return b;
+    }
+
+    private static UpstreamCircuitBreaker.BreakerStats stats(UpstreamCircuitBreaker b) {
+        return b.stats().get(0);
+    }
+
+    @Test
+    void opensOnUpstreamFaultsAndIgnoresClientErrors() {
+        UpstreamCircuitBreaker b = breaker(60);
+        for (int i = 0; i < 10; i++) {
+            b.acquire("h").complete(new LlmUpstreamException(400, "bad request"));
+        }
+        b.acquire("h").complete(null);
+        b.acquire("h").complete(null);
+        assertEquals(UpstreamCircuitBreaker.State.CLOSED, stats(b).state());
+
+        b.acquire("h").complete(new LlmUpstreamException(503, "down"));
+        b.acquire("h").complete(new LlmUpstreamException(0, "timeout"));
+        assertEquals(UpstreamCircuitBreaker.State.OPEN, stats(b).state());
+
+        LlmUpstreamException rejected = assertThrows(LlmUpstreamException.class, () -> b.acquire("h"));
+        assertTrue(rejected.isUpstreamFault());
+        assertEquals(1, stats(b).rejected());
+        assertNotNull(b.acquire("other"));
+    }
+
+    @Test
+    void halfOpenProbeClosesOnSuccessAndReopensOnFailure() {
+        UpstreamCircuitBreaker b = breaker(0);
+        for (int i = 0; i < 4; i++) {
+            b.acquire("h").complete(new LlmUpstreamException(502, "bad gateway"));
+        }
+        assertEquals(UpstreamCircuitBreaker.State.HALF_OPEN, stats(b).state());
+
+        UpstreamCircuitBreaker.Call probe = b.acquire("h");
+        assertThrows(LlmUpstreamException.class, () -> b.acquire("h"));
+        probe.complete(new LlmUpstreamException(500, "still down"));
+        assertEquals(2, stats(b).opened());
+
+        b.acquire("h").complete(null);
+        assertEquals(UpstreamCircuitBreaker.State.CLOSED, stats(b).state());
+        assertEquals(0, stats(b).failures());
+    }
+}
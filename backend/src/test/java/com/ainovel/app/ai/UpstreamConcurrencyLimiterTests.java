@@ -0,0 +1,49 @@
+package com.ainovel.app.ai;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamConcurrencyLimiterTests {
+    private final UpstreamConcurrencyLimiter limiter = new UpstreamConcurrencyLimiter();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(limiter, "maxConcurrency", 2);
+        ReflectionTestUtils.setField(limiter, "maxQueue", 1);
+        ReflectionTestUtils.setField(limiter, "queueTimeoutSeconds", 5L);
+    }
+
+    @Test
+    void queuesBeyondLimitAndHandsOffOnRelease() {
+        CompletableFuture<UpstreamConcurrencyLimiter.Permit> a = limiter.acquire("u");
+        CompletableFuture<UpstreamConcurrencyLimiter.Permit> b = limiter.acquire("u");
+        CompletableFuture<UpstreamConcurrencyLimiter.Permit> c = limiter.acquire("u");
+        assertTrue(a.isDone());
+        assertTrue(b.isDone());
+        assertFalse(c.isDone());
+
+        CompletableFuture<UpstreamConcurrencyLimiter.Permit> rejected = limiter.acquire("u");
+        assertTrue(rejected.isCompletedExceptionally());
+
+        a.join().release();
+        a.join().release();
+        assertTrue(c.isDone());
+        assertEquals(2, limiter.stats().get(0).active());
+
+        b.join().release();
+        c.join().release();
+        assertEquals(0, limiter.stats().get(0).active());
+    }
+
+    @Test
+    void lanesAreIndependentPerUpstream() {
+        limiter.acquire("a");
+        limiter.acquire("a");
+        assertTrue(limiter.acquire("b").isDone());
+    }
+}
@@ -0,0 +1,51 @@
+package com.ainovel.app.ai.telemetry;
+
+import com.ainovel.app.ai.LlmUpstreamException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LlmTelemetryTests {
+    @Test
+    void histogramPercentilesStayWithinBucketError() {
+        RollingHistogram h = new RollingHistogram(15);
+        long now = 1_700_000_000_000L;
+        for (int v = 1; v <= 1000; v++) h.record(v, now);
+
+        RollingHistogram.Snapshot s = h.snapshot(now);
+        assertEquals(1000, s.count());
+        assertEquals(500.5, s.mean(), 0.01);
+        assertEquals(500, s.p50(), 500 * 0.07);
+        assertEquals(950, s.p95(), 950 * 0.07);
+        assertEquals(990, s.p99(), 990 * 0.07);
+
+        assertEquals(1000, h.snapshot(now + 14 * 60_000).count());
+        assertEquals(0, h.snapshot(now + 15 * 60_000).count());
+    }
+
+    @Test
+    void countsErrorsByClassAndLatencyOnlyForSuccesses() {
+        LlmTelemetry telemetry = new LlmTelemetry();
+        telemetry.start("gpt-4o", "https://a/v1").success(100);
+        telemetry.start("gpt-4o", "https://a/v1").success(null);
+        telemetry.start("gpt-4o", "https://a/v1").failure(new LlmUpstreamException(429, "slow down"));
+        LlmTelemetry.Sample timedOut = telemetry.start("gpt-4o", "https://b/v1");
+        timedOut.failure(new LlmUpstreamException(0, "timeout", new HttpTimeoutException("request timed out")));
+        timedOut.success(10);
+
+        LlmTelemetry.Summary summary = telemetry.summary();
+        assertEquals(4, summary.calls());
+        assertEquals(2, summary.errors());
+        assertEquals(0.5, summary.errorRate());
+        assertEquals(2, summary.latencyMs().count());
+
+        LlmTelemetry.SeriesStats b = telemetry.series().get(1);
+        assertEquals("https://b/v1", b.endpoint());
+        assertEquals(1L, b.errorClasses().get(LlmTelemetry.ErrorClass.TIMEOUT));
+        assertEquals(LlmTelemetry.ErrorClass.NETWORK, LlmTelemetry.classify(new RuntimeException(new IOException("reset"))));
+        assertEquals(LlmTelemetry.ErrorClass.SERVER_ERROR, LlmTelemetry.classify(new LlmUpstreamException(502, "bad gateway")));
+    }
+}
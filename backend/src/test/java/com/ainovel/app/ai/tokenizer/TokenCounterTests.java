@@ -0,0 +1,39 @@
+package com.ainovel.app.ai.tokenizer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenCounterTests {
+    private static final TokenCounter counter = new TokenCounter();
+    private static final String CHINESE = "他抬起头，望向远方的群山。";
+
+    @Test
+    void matchesReferenceTokenIds() {
+        BpeEncoding cl100k = counter.encodingFor("gpt-4");
+        BpeEncoding o200k = counter.encodingFor("gpt-4o-mini");
+        assertEquals("cl100k_base", cl100k.name());
+        assertEquals("o200k_base", o200k.name());
+
+        assertArrayEquals(new int[]{15339, 1917}, cl100k.encode("hello world"));
+        assertArrayEquals(new int[]{24912, 2375}, o200k.encode("hello world"));
+        assertArrayEquals(new int[]{43511, 24326, 105, 72718, 65455, 3922, 4916, 249, 70141, 10287, 250, 24273, 9554, 47453, 97, 58911, 1811},
+                cl100k.encode(CHINESE));
+        assertEquals(14, o200k.count(CHINESE));
+    }
+
+    @Test
+    void countsMatchEncodeAndMessageOverhead() {
+        String text = "  第一章\r\n\r\n“你真的要走吗？”她问道。I'm fine, they'll see 12345678 tokens!!!   \n\t😀 end";
+        BpeEncoding cl100k = counter.encodingFor("deepseek-chat");
+        assertEquals(cl100k.encode(text).length, cl100k.count(text));
+        assertEquals(0, cl100k.count(""));
+
+        List<Map<String, Object>> messages = List.of(Map.of("role", "user", "content", "hello world"));
+        // 3(回复引导) + 3(每条消息) + 1("user") + 2("hello world")
+        assertEquals(9, counter.countMessages("gpt-4", messages));
+    }
+}
@@ -0,0 +1,84 @@
+package com.ainovel.app.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedTextConverterTests {
+    private final CompressedTextConverter converter = new CompressedTextConverter();
+
+    @Test
+    void compressesLongTextAndPassesLegacyRowsThrough() {
+        String chapter = chapter(5000, 1);
+        String stored = converter.convertToDatabaseColumn(chapter);
+        assertTrue(stored.startsWith("~z1:"));
+        assertTrue(stored.length() * 2 < chapter.getBytes(StandardCharsets.UTF_8).length, "stored: " + stored.length());
+        assertEquals(chapter, converter.convertToEntityAttribute(stored));
+
+        // 旧行（未压缩）原样读取；短文本不压缩
+        assertEquals(chapter, converter.convertToEntityAttribute(chapter));
+        assertEquals("<p>短</p>", converter.convertToDatabaseColumn("<p>短</p>"));
+        assertNull(converter.convertToDatabaseColumn(null));
+        assertNull(converter.convertToEntityAttribute(null));
+    }
+
+    @Test
+    void textThatLooksLikeHeaderStillRoundTrips() {
+        String tricky = "~z1:不是压缩数据";
+        String stored = converter.convertToDatabaseColumn(tricky);
+        assertNotEquals(tricky, stored);
+        assertEquals(tricky, converter.convertToEntityAttribute(stored));
+        assertThrows(IllegalStateException.class, () -> converter.convertToEntityAttribute("~z9:AAAA"));
+    }
+
+    @Test
+    void legacyRowsStartingWithPrefixButNoHeaderPassThrough() {
+        for (String legacy : new String[]{"~zh 开头的笔记", "~z", "~z1", "~z:abc", "~zx1:abc", "~z1234567890:abc"}) {
+            assertEquals(legacy, converter.convertToEntityAttribute(legacy));
+            assertEquals(legacy, converter.convertToEntityAttribute(converter.convertToDatabaseColumn(legacy)));
+        }
+        // 不像压缩头的短文本写入时也不必压缩
+        assertEquals("~zh 开头的笔记", converter.convertToDatabaseColumn("~zh 开头的笔记"));
+    }
+
+    /** 手动运行：mvn test -Dtest=CompressedTextConverterTests -Dbenchmark=true */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkChapterSizes() {
+        System.out.println("chars\tutf8 bytes\tstored bytes\tratio\tencode us\tdecode us");
+        for (int chars : new int[]{1000, 3000, 8000, 20000, 60000}) {
+            String text = chapter(chars, chars);
+            String stored = converter.convertToDatabaseColumn(text);
+            int rounds = Math.max(50, 2_000_000 / chars);
+            for (int i = 0; i < rounds; i++) converter.convertToEntityAttribute(converter.convertToDatabaseColumn(text));
+            long t0 = System.nanoTime();
+            for (int i = 0; i < rounds; i++) converter.convertToDatabaseColumn(text);
+            long t1 = System.nanoTime();
+            for (int i = 0; i < rounds; i++) converter.convertToEntityAttribute(stored);
+            long t2 = System.nanoTime();
+            int utf8 = text.getBytes(StandardCharsets.UTF_8).length;
+            System.out.printf("%d\t%d\t%d\t%.2f\t%.1f\t%.1f%n", chars, utf8, stored.length(), (double) stored.length() / utf8,
+                    (t1 - t0) / 1000.0 / rounds, (t2 - t1) / 1000.0 / rounds);
+        }
+    }
+
+    // 用常见词拼出的稿件正文，字频接近真实中文小说
+    private static String chapter(int chars, long seed) {
+        String[] subjects = {"他", "她", "林远", "苏晚", "老人", "少年", "那个男人", "我们"};
+        String[] verbs = {"看着", "想起", "走向", "听到", "握住", "推开", "望向", "点了点头，说道"};
+        String[] objects = {"窗外的雨", "桌上的信", "远处的山", "那扇门", "她的眼睛", "手中的剑", "城里的灯火", "昨夜的梦"};
+        String[] tails = {"，没有说话。", "，心里忽然有些发慌。", "。", "，良久才叹了口气。", "，仿佛什么都没有发生。", "：“走吧。”"};
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder("<p>");
+        while (sb.length() < chars) {
+            sb.append(subjects[random.nextInt(subjects.length)]).append(verbs[random.nextInt(verbs.length)])
+                    .append(objects[random.nextInt(objects.length)]).append(tails[random.nextInt(tails.length)]);
+            if (random.nextInt(4) == 0) sb.append("</p><p>");
+        }
+        return sb.append("</p>").toString();
+    }
+}
@@ -0,0 +1,39 @@
+package com.ainovel.app.common;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SseStreamsTests {
+    @Test
+    void rateLimitedCallsGetA429InsteadOfAStream() {
+        ResponseEntity<SseEmitter> response = SseStreams.stream(onDelta -> {
+            throw new TooManyRequestsException("请求过于频繁", 7);
+        });
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertEquals("7", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertNull(response.getBody());
+    }
+
+    @Test
+    void otherFailuresAreReportedOnTheStream() {
+        ResponseEntity<SseEmitter> response = SseStreams.<String>stream(onDelta -> {
+            throw new IllegalStateException("未配置 API Key");
+        });
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getBody());
+
+        ResponseEntity<SseEmitter> ok = SseStreams.stream(onDelta -> {
+            onDelta.accept("雨夜");
+            return CompletableFuture.completedFuture("done");
+        });
+        assertEquals(HttpStatus.OK, ok.getStatusCode());
+    }
+}
@@ -0,0 +1,58 @@
+package com.ainovel.app.economy;
+
+import com.ainovel.app.user.User;
+import com.ainovel.app.user.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CheckInStoreRebuildTests {
+    @Autowired
+    private EconomyService economyService;
+    @Autowired
+    private CreditLogWriter creditLogWriter;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void memoryStoreRebuildsFromDatabaseAfterRestart() {
+        User user = new User();
+        user.setUsername("checkin_rebuild");
+        user.setEmail("checkin_rebuild@example.com");
+        user.setPasswordHash("x");
+        user.setRoles(Set.of("ROLE_USER"));
+        userRepository.save(user);
+        assertTrue(economyService.checkIn(user).success());
+        creditLogWriter.flush();
+        // 前两天的签到只存在于日汇总中
+        LocalDate today = LocalDate.now(CreditUsageRollup.ZONE);
+        for (int i = 1; i <= 2; i++) {
+            jdbcTemplate.update("INSERT INTO credit_usage_daily (usage_date, user_id, model, reason, consumed, granted, entries) VALUES (?, ?, '', 'check_in', 0, 5, 1)",
+                    today.minusDays(i), user.getId().toString());
+        }
+
+        // 模拟重启：新的本机位图为空，重建后与数据库一致
+        CheckInStore restarted = new CheckInStore();
+        ReflectionTestUtils.setField(restarted, "storeType", "memory");
+        ReflectionTestUtils.setField(restarted, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(restarted, "userRepository", userRepository);
+        assertEquals(0, restarted.streak(user.getId(), today));
+        ReflectionTestUtils.invokeMethod(restarted, "rebuildLocal");
+
+        assertTrue(restarted.hasCheckedIn(user.getId(), today));
+        assertEquals(3, restarted.streak(user.getId(), today));
+        assertTrue(restarted.activeUsers(today.minusDays(2), today.minusDays(2)) >= 1);
+    }
+}
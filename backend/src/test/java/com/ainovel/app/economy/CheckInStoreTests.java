@@ -0,0 +1,44 @@
+package com.ainovel.app.economy;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckInStoreTests {
+    private final CheckInStore store = new CheckInStore();
+    private final LocalDate today = LocalDate.of(2026, 3, 10);
+
+    @Test
+    void marksOncePerDayAndUndoesOnClear() {
+        UUID user = UUID.randomUUID();
+        assertFalse(store.hasCheckedIn(user, today));
+        assertTrue(store.markIfAbsent(user, today));
+        assertFalse(store.markIfAbsent(user, today));
+        assertTrue(store.hasCheckedIn(user, today));
+
+        store.clear(user, today);
+        assertFalse(store.hasCheckedIn(user, today));
+        assertTrue(store.markIfAbsent(user, today));
+    }
+
+    @Test
+    void computesStreaksAndActiveUsers() {
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        for (int i = 0; i < 40; i++) store.markIfAbsent(a, today.minusDays(i));
+        store.markIfAbsent(b, today.minusDays(1));
+        store.markIfAbsent(b, today.minusDays(2));
+        store.markIfAbsent(b, today.minusDays(5));
+
+        assertEquals(40, store.streak(a, today));
+        // 今天还没签到时从昨天算起
+        assertEquals(2, store.streak(b, today));
+        assertEquals(0, store.streak(UUID.randomUUID(), today));
+
+        assertEquals(1, store.activeUsers(today, today));
+        assertEquals(2, store.activeUsers(today.minusDays(6), today));
+    }
+}
@@ -0,0 +1,67 @@
+package com.ainovel.app.economy;
+
+import com.ainovel.app.economy.model.CreditLog;
+import com.ainovel.app.user.User;
+import com.ainovel.app.user.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CreditLogPagingTests {
+    @Autowired
+    private EconomyService economyService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CreditLogWriter creditLogWriter;
+
+    @Test
+    void cursorPagesCoverHistoryOnceInOrder() {
+        User created = new User();
+        created.setUsername("paging_user");
+        created.setEmail("paging_user@example.com");
+        created.setPasswordHash("x");
+        created.setRoles(Set.of("ROLE_USER"));
+        created.setCredits(100);
+        User user = userRepository.save(created);
+        // 同一批写入的流水 createdAt 可能相同，靠 id 区分先后
+        for (int i = 0; i < 23; i++) {
+            if (i % 4 == 0) economyService.grant(user, 1, "g" + i);
+            else economyService.deduct(user, 0.5, "m", "d" + i);
+        }
+        creditLogWriter.flush();
+
+        List<CreditLog> all = new ArrayList<>();
+        String cursor = null;
+        do {
+            EconomyService.CreditLogPage page = economyService.creditLogs(user, null, null, null, cursor, 5);
+            assertTrue(page.items().size() <= 5);
+            all.addAll(page.items());
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertEquals(23, all.size());
+        Set<UUID> ids = new HashSet<>();
+        all.forEach(l -> ids.add(l.getId()));
+        assertEquals(23, ids.size());
+        for (int i = 1; i < all.size(); i++) {
+            assertFalse(all.get(i).getCreatedAt().isAfter(all.get(i - 1).getCreatedAt()));
+        }
+
+        EconomyService.CreditLogPage grants = economyService.creditLogs(user, "admin_grant", null, null, null, 100);
+        assertEquals(6, grants.items().size());
+        assertNull(grants.nextCursor());
+        assertThrows(RuntimeException.class, () -> economyService.creditLogs(user, null, null, null, "not-a-cursor", 5));
+    }
+}
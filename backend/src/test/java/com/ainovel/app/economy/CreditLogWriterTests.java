@@ -0,0 +1,98 @@
+package com.ainovel.app.economy;
+
+import com.ainovel.app.economy.model.CreditLog;
+import com.ainovel.app.economy.repo.CreditLogRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class CreditLogWriterTests {
+    private final CreditLogRepository repository = mock(CreditLogRepository.class);
+    private final List<Integer> batches = new ArrayList<>();
+    private final CreditLogWriter writer = new CreditLogWriter();
+
+    private void start(int capacity, long flushIntervalMs) {
+        when(repository.saveAll(anyList())).thenAnswer(inv -> {
+            List<?> batch = inv.getArgument(0);
+            synchronized (batches) {
+                batches.add(batch.size());
+            }
+            return batch;
+        });
+        ReflectionTestUtils.setField(writer, "creditLogRepository", repository);
+        ReflectionTestUtils.setField(writer, "usageRollup", mock(CreditUsageRollup.class));
+        ReflectionTestUtils.setField(writer, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(writer, "queueCapacity", capacity);
+        ReflectionTestUtils.setField(writer, "flushIntervalMs", flushIntervalMs);
+        ReflectionTestUtils.setField(writer, "offerTimeoutMs", 10L);
+        ReflectionTestUtils.invokeMethod(writer, "start");
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(writer, "stop");
+    }
+
+    private static CreditLog log(String details) {
+        CreditLog log = new CreditLog();
+        log.setAmount(-1);
+        log.setReason("generation");
+        log.setDetails(details);
+        return log;
+    }
+
+    @Test
+    void batchesQueuedRowsAndWritesInlineWhenQueueIsFull() {
+        start(2, 60_000);
+        writer.write(log("a"));
+        writer.write(log("b"));
+        assertEquals(2, writer.queueDepth());
+        assertTrue(batches.isEmpty());
+
+        writer.write(log("c"));
+        assertEquals(List.of(1), batches);
+
+        writer.flush();
+        assertEquals(List.of(1, 2), batches);
+        assertEquals(0, writer.queueDepth());
+    }
+
+    @Test
+    void fallsBackToSingleRowsWhenBatchFails() {
+        start(10, 60_000);
+        doThrow(new RuntimeException("batch failed")).when(repository).saveAll(anyList());
+        when(repository.save(argThat(l -> l != null && "bad".equals(l.getDetails())))).thenThrow(new RuntimeException("bad row"));
+        writer.write(log("ok-1"));
+        writer.write(log("bad"));
+        writer.write(log("ok-2"));
+
+        writer.flush();
+        verify(repository, times(3)).save(any(CreditLog.class));
+        assertEquals(1.0, ((LongAdder) ReflectionTestUtils.getField(writer, "failed")).sum());
+    }
+
+    @Test
+    void backgroundWorkerFlushesOnInterval() throws Exception {
+        start(100, 20);
+        for (int i = 0; i < 5; i++) writer.write(log("x" + i));
+        // 队列清空时批次可能仍在写入，以写入条数为准等待
+        for (int i = 0; i < 100 && written() < 5; i++) Thread.sleep(10);
+        assertEquals(0, writer.queueDepth());
+        assertEquals(5, written());
+    }
+
+    private int written() {
+        synchronized (batches) {
+            return batches.stream().mapToInt(Integer::intValue).sum();
+        }
+    }
+}
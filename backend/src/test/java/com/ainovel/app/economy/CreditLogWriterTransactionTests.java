@@ -0,0 +1,73 @@
+package com.ainovel.app.economy;
+
+import com.ainovel.app.economy.model.CreditLog;
+import com.ainovel.app.economy.repo.CreditLogRepository;
+import com.ainovel.app.user.User;
+import com.ainovel.app.user.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CreditLogWriterTransactionTests {
+    @Autowired
+    private CreditLogRepository creditLogRepository;
+    @Autowired
+    private CreditUsageRollup usageRollup;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private UserRepository userRepository;
+
+    private final CreditLogWriter writer = new CreditLogWriter();
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(writer, "stop");
+    }
+
+    @Test
+    void synchronousWriteAfterCommitIsPersisted() {
+        ReflectionTestUtils.setField(writer, "creditLogRepository", creditLogRepository);
+        ReflectionTestUtils.setField(writer, "usageRollup", usageRollup);
+        ReflectionTestUtils.setField(writer, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(writer, "async", false);
+        ReflectionTestUtils.invokeMethod(writer, "start");
+
+        User user = new User();
+        user.setUsername("log_after_commit");
+        user.setEmail("log_after_commit@example.com");
+        user.setPasswordHash("x");
+        user.setRoles(Set.of("ROLE_USER"));
+        userRepository.save(user);
+
+        // 在真实事务中写入：afterCommit 里的同步写入不能加入已结束的事务
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            CreditLog log = new CreditLog();
+            log.setUser(user);
+            log.setAmount(-2);
+            log.setReason("generation");
+            log.setModel("gpt-4o");
+            writer.write(log);
+            assertTrue(creditLogRepository.findByUser(user, Pageable.unpaged()).isEmpty());
+        });
+
+        List<CreditLog> logs = creditLogRepository.findByUser(user, Pageable.unpaged()).getContent();
+        assertEquals(1, logs.size());
+        assertEquals(-2, logs.get(0).getAmount());
+        assertEquals(1, ((LongAdder) ReflectionTestUtils.getField(writer, "written")).sum());
+    }
+}
@@ -0,0 +1,120 @@
+package com.ainovel.app.economy;
+
+import com.ainovel.app.user.User;
+import com.ainovel.app.user.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CreditReservationServiceTests {
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final CreditReservationService service = new CreditReservationService();
+    private final User user = new User();
+
+    CreditReservationServiceTests() {
+        ReflectionTestUtils.setField(service, "userRepository", userRepository);
+        ReflectionTestUtils.setField(service, "storeType", "memory");
+        ReflectionTestUtils.setField(user, "id", UUID.randomUUID());
+        when(userRepository.findCreditsById(user.getId())).thenReturn(Optional.of(1.0));
+    }
+
+    @Test
+    void holdsReduceAvailableCreditsUntilReleased() {
+        CreditReservationService.Reservation a = service.reserve(user, 0.6);
+        RuntimeException e = assertThrows(RuntimeException.class, () -> service.reserve(user, 0.6));
+        assertTrue(e.getMessage().contains("积分不足"));
+        assertEquals(0.6, service.reserved(user.getId()), 1e-9);
+
+        a.release();
+        a.release();
+        assertEquals(0, service.reserved(user.getId()));
+        service.reserve(user, 0.6).release();
+        assertSame(CreditReservationService.Reservation.NONE, service.reserve(user, 0));
+    }
+
+    @Test
+    void rereadsBalanceWhenSettlementLandsDuringTheRead() {
+        AtomicReference<Double> credits = new AtomicReference<>(1.0);
+        when(userRepository.findCreditsById(user.getId())).thenAnswer(inv -> Optional.of(credits.get()));
+        CreditReservationService.Reservation a = service.reserve(user, 0.6);
+
+        // 下一次读取返回旧余额，同时另一个调用结算完成：扣费后释放预占
+        AtomicBoolean settleDuringRead = new AtomicBoolean(true);
+        when(userRepository.findCreditsById(user.getId())).thenAnswer(inv -> {
+            double seen = credits.get();
+            if (settleDuringRead.getAndSet(false)) {
+                credits.set(0.4);
+                a.release();
+            }
+            return Optional.of(seen);
+        });
+        assertThrows(RuntimeException.class, () -> service.reserve(user, 0.6));
+        verify(userRepository, atLeast(3)).findCreditsById(user.getId());
+        assertEquals(0, service.reserved(user.getId()));
+    }
+
+    @Test
+    void parallelReservationsNeverExceedBalance() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    try {
+                        service.reserve(user, 0.1);
+                        granted.incrementAndGet();
+                    } catch (RuntimeException ignored) {
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) f.get(10, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(10, granted.get());
+        assertEquals(1.0, service.reserved(user.getId()), 1e-9);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void redisReserveStopsCheckingTheVersionAfterRepeatedSettlements() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        HashOperations<String, Object, Object> hash = mock(HashOperations.class);
+        doReturn(hash).when(redis).opsForHash();
+        AtomicInteger version = new AtomicInteger();
+        when(hash.get(anyString(), eq("#v"))).thenAnswer(inv -> String.valueOf(version.get()));
+        // 每次脚本执行前都有一次结算完成：带版本号的判断一直失败
+        List<String> versions = new ArrayList<>();
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenAnswer(inv -> {
+            String expected = inv.getRawArguments()[2] instanceof Object[] args ? args[4].toString() : null;
+            versions.add(expected);
+            version.incrementAndGet();
+            return "*".equals(expected) ? 1L : -1L;
+        });
+        ReflectionTestUtils.setField(service, "redis", redis);
+
+        CreditReservationService.Reservation r = service.reserve(user, 0.5);
+        assertNotSame(CreditReservationService.Reservation.NONE, r);
+        assertEquals(List.of("0", "1", "2", "*"), versions);
+        verify(userRepository, times(4)).findCreditsById(user.getId());
+    }
+}
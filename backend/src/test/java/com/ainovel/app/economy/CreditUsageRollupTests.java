@@ -0,0 +1,77 @@
+package com.ainovel.app.economy;
+
+import com.ainovel.app.economy.model.CreditUsageDaily;
+import com.ainovel.app.economy.model.CreditUsageDayTotal;
+import com.ainovel.app.economy.repo.CreditUsageDailyRepository;
+import com.ainovel.app.economy.repo.CreditUsageDayTotalRepository;
+import com.ainovel.app.user.User;
+import com.ainovel.app.user.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CreditUsageRollupTests {
+    @Autowired
+    private EconomyService economyService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CreditLogWriter creditLogWriter;
+    @Autowired
+    private CreditUsageDailyRepository dailyRepository;
+    @Autowired
+    private CreditUsageDayTotalRepository dayTotalRepository;
+
+    private User newUser(String name) {
+        User user = new User();
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPasswordHash("x");
+        user.setRoles(Set.of("ROLE_USER"));
+        user.setCredits(100);
+        return userRepository.save(user);
+    }
+
+    private CreditUsageDaily daily(User user, String model, String reason) {
+        LocalDate today = LocalDate.now(CreditUsageRollup.ZONE);
+        return dailyRepository.findById(new CreditUsageDaily.Key(today, user.getId().toString(), model, reason)).orElseThrow();
+    }
+
+    private double todayConsumed() {
+        return dayTotalRepository.findById(LocalDate.now(CreditUsageRollup.ZONE)).map(CreditUsageDayTotal::getConsumed).orElse(0.0);
+    }
+
+    @Test
+    void rollupsFollowWrittenLogsAndSurviveRebuild() {
+        creditLogWriter.flush();
+        double before = todayConsumed();
+        User user = newUser("rollup_user");
+
+        economyService.deduct(user, 1.5, "gpt-a", "a1");
+        economyService.deduct(user, 2.0, "gpt-a", "a2");
+        economyService.deduct(user, 0.25, "gpt-b", "b1");
+        economyService.grant(user, 10, "bonus");
+        creditLogWriter.flush();
+
+        CreditUsageDaily a = daily(user, "gpt-a", "generation");
+        assertEquals(3.5, a.getConsumed(), 1e-9);
+        assertEquals(2, a.getEntries());
+        assertEquals(0.25, daily(user, "gpt-b", "generation").getConsumed(), 1e-9);
+        assertEquals(10, daily(user, "", "admin_grant").getGranted(), 1e-9);
+        assertEquals(before + 3.75, todayConsumed(), 1e-9);
+
+        creditLogWriter.rebuildRollups();
+        assertEquals(3.5, daily(user, "gpt-a", "generation").getConsumed(), 1e-9);
+        assertEquals(2, daily(user, "gpt-a", "generation").getEntries());
+        assertEquals(dayTotalRepository.totalConsumed(), dailyRepository.sumByReasonSince(LocalDate.of(2000, 1, 1)).stream()
+                .mapToDouble(CreditUsageDailyRepository.Breakdown::consumed).sum(), 1e-9);
+    }
+}
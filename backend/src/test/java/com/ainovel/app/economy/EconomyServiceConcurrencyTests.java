@@ -0,0 +1,112 @@
+package com.ainovel.app.economy;
+
+import com.ainovel.app.economy.repo.CreditLogRepository;
+import com.ainovel.app.user.User;
+import com.ainovel.app.user.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class EconomyServiceConcurrencyTests {
+    private static final int THREADS = 16;
+
+    @Autowired
+    private EconomyService economyService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private CreditLogRepository creditLogRepository;
+    @Autowired
+    private CreditLogWriter creditLogWriter;
+
+    private User newUser(String name, double credits) {
+        User user = new User();
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPasswordHash("x");
+        user.setRoles(Set.of("ROLE_USER"));
+        user.setCredits(credits);
+        return userRepository.save(user);
+    }
+
+    // 每个线程各自持有一份（过期的）User 实体，模拟并发请求
+    private void runConcurrently(int tasksPerThread, Callable<?> task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < tasksPerThread; i++) task.call();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void parallelDeductionsAndGrantsKeepExactBalance() throws Exception {
+        User user = newUser("economy_stress_user", 1000);
+        AtomicInteger round = new AtomicInteger();
+
+        runConcurrently(25, () -> {
+            User stale = userRepository.findById(user.getId()).orElseThrow();
+            if (round.incrementAndGet() % 5 == 0) {
+                economyService.grant(stale, 2.5, "stress");
+            } else {
+                economyService.deduct(stale, 1.25, "stress");
+            }
+            return null;
+        });
+
+        int grants = THREADS * 25 / 5;
+        int deductions = THREADS * 25 - grants;
+        double expected = 1000 + grants * 2.5 - deductions * 1.25;
+        assertEquals(expected, userRepository.findCreditsById(user.getId()).orElseThrow(), 1e-9);
+        creditLogWriter.flush();
+        assertEquals(THREADS * 25L, creditLogRepository.findAll().stream().filter(l -> l.getUser().getId().equals(user.getId())).count());
+    }
+
+    @Test
+    void deductionReportsInsufficientBalanceButStillSettles() {
+        User user = newUser("economy_overdraft_user", 1);
+        assertTrue(economyService.deduct(user, 0.75, "first").success());
+        EconomyService.CreditChangeResult second = economyService.deduct(user, 0.75, "second");
+        assertFalse(second.success());
+        assertEquals(-0.5, second.newTotal(), 1e-9);
+        assertEquals(-0.5, user.getCredits(), 1e-9);
+    }
+
+    @Test
+    void concurrentCheckInsSucceedOnlyOnce() throws Exception {
+        User user = newUser("economy_checkin_user", 0);
+        AtomicInteger succeeded = new AtomicInteger();
+
+        runConcurrently(2, () -> {
+            User stale = userRepository.findById(user.getId()).orElseThrow();
+            if (economyService.checkIn(stale).success()) succeeded.incrementAndGet();
+            return null;
+        });
+
+        assertEquals(1, succeeded.get());
+        User reloaded = userRepository.findById(user.getId()).orElseThrow();
+        assertNotNull(reloaded.getLastCheckInAt());
+        assertTrue(reloaded.getCredits() >= 0);
+    }
+}
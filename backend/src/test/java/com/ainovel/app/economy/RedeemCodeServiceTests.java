@@ -0,0 +1,101 @@
+package com.ainovel.app.economy;
+
+import com.ainovel.app.economy.repo.RedeemCodeRepository;
+import com.ainovel.app.user.User;
+import com.ainovel.app.user.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class RedeemCodeServiceTests {
+    @Autowired
+    private RedeemCodeService redeemCodeService;
+    @Autowired
+    private RedeemCodeRepository redeemCodeRepository;
+    @Autowired
+    private EconomyService economyService;
+    @Autowired
+    private UserRepository userRepository;
+
+    private User newUser(String name) {
+        User user = new User();
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPasswordHash("x");
+        user.setRoles(Set.of("ROLE_USER"));
+        user.setCredits(0);
+        return userRepository.save(user);
+    }
+
+    @Test
+    void generatesUniqueCompactCodesAndExportsBatch() throws Exception {
+        RedeemCodeService.BatchResult batch = redeemCodeService.generateBatch(2500, 50, Instant.now().plusSeconds(3600));
+        assertEquals(2500, batch.count());
+        assertEquals(2500, redeemCodeRepository.countByBatchId(batch.batchId()));
+
+        StringWriter csv = new StringWriter();
+        redeemCodeService.exportBatch(batch.batchId(), csv);
+        List<String> lines = csv.toString().lines().skip(1).toList();
+        assertEquals(2500, lines.size());
+        Set<String> codes = new HashSet<>();
+        for (String line : lines) {
+            String code = line.split(",")[0];
+            assertTrue(code.matches("[0-9A-HJKMNP-TV-Z]{16}"), code);
+            codes.add(code);
+        }
+        assertEquals(2500, codes.size());
+    }
+
+    @Test
+    void concurrentRedemptionsOfOneCodeSucceedOnce() throws Exception {
+        RedeemCodeService.BatchResult batch = redeemCodeService.generateBatch(1, 30, null);
+        StringWriter csv = new StringWriter();
+        redeemCodeService.exportBatch(batch.batchId(), csv);
+        String code = csv.toString().lines().skip(1).findFirst().orElseThrow().split(",")[0];
+        // 用户输入小写并带连字符，也能匹配
+        String typed = (code.substring(0, 8) + "-" + code.substring(8)).toLowerCase();
+
+        int threads = 16;
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < threads; i++) users.add(newUser("redeem_race_" + i));
+        AtomicInteger succeeded = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (User user : users) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    try {
+                        if (economyService.redeem(user, typed).success()) succeeded.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        assertEquals("兑换码已使用", e.getMessage());
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) f.get(60, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(1, succeeded.get());
+        double total = users.stream().mapToDouble(u -> userRepository.findCreditsById(u.getId()).orElseThrow()).sum();
+        assertEquals(30, total, 1e-9);
+    }
+}
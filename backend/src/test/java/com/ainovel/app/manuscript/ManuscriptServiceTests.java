@@ -0,0 +1,264 @@
+package com.ainovel.app.manuscript;
+
+import com.ainovel.app.common.ConflictException;
+import com.ainovel.app.manuscript.dto.ManuscriptCreateRequest;
+import com.ainovel.app.manuscript.dto.ManuscriptDto;
+import com.ainovel.app.manuscript.dto.ManuscriptSectionDto;
+import com.ainovel.app.manuscript.dto.SectionDeltaRequest;
+import com.ainovel.app.manuscript.dto.SectionRevisionDto;
+import com.ainovel.app.manuscript.dto.SectionUpdateRequest;
+import com.ainovel.app.manuscript.model.Manuscript;
+import com.ainovel.app.manuscript.repo.ManuscriptRepository;
+import com.ainovel.app.manuscript.repo.ManuscriptSectionRepository;
+import com.ainovel.app.story.model.Outline;
+import com.ainovel.app.story.model.Story;
+import com.ainovel.app.story.repo.OutlineRepository;
+import com.ainovel.app.story.repo.StoryRepository;
+import com.ainovel.app.user.User;
+import com.ainovel.app.user.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class ManuscriptServiceTests {
+    @Autowired
+    private ManuscriptService manuscriptService;
+    @Autowired
+    private ManuscriptRepository manuscriptRepository;
+    @Autowired
+    private ManuscriptSectionRepository sectionRepository;
+    @Autowired
+    private SectionRevisionStore revisionStore;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private OutlineRepository outlineRepository;
+    @Autowired
+    private StoryRepository storyRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void sectionsAreStoredAndReturnedIndividually() {
+        User user = newUser("manuscript_rows");
+        Outline outline = newOutline(user);
+        ManuscriptDto created = manuscriptService.create(outline.getId(), new ManuscriptCreateRequest("稿件", null));
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID();
+
+        ManuscriptSectionDto saved = manuscriptService.updateSection(created.id(), a, new SectionUpdateRequest("<p>你好</p>"));
+        assertEquals(a, saved.sceneId());
+        assertEquals(2, saved.wordCount());
+        manuscriptService.updateSection(created.id(), b, new SectionUpdateRequest("<p>b</p>"));
+        manuscriptService.updateSection(created.id(), a, new SectionUpdateRequest("<p>你好世界</p>"));
+
+        assertEquals("<p>你好世界</p>", manuscriptService.getSection(created.id(), a).content());
+        assertEquals(2, sectionRepository.findByManuscript_Id(created.id()).size());
+        assertEquals(2, manuscriptService.get(created.id()).sections().size());
+        assertEquals(5, sectionRepository.sumWordCountByUser(user));
+
+        manuscriptService.delete(created.id());
+        assertTrue(sectionRepository.findByManuscript_Id(created.id()).isEmpty());
+    }
+
+    @Test
+    void deltaSaveAppliesOpsAgainstMatchingBase() {
+        Outline outline = newOutline(newUser("manuscript_delta"));
+        ManuscriptDto created = manuscriptService.create(outline.getId(), new ManuscriptCreateRequest("稿件", null));
+        UUID sceneId = UUID.randomUUID();
+        String emptyHash = manuscriptService.getSection(created.id(), sceneId).hash();
+
+        ManuscriptSectionDto first = manuscriptService.applyDelta(created.id(), sceneId,
+                new SectionDeltaRequest(emptyHash, List.of(new SectionDeltaRequest.Op(null, null, "<p>他走了。</p>"))));
+        assertNull(first.content());
+        ManuscriptSectionDto second = manuscriptService.applyDelta(created.id(), sceneId, new SectionDeltaRequest(first.hash(), List.of(
+                new SectionDeltaRequest.Op(3, null, null),
+                new SectionDeltaRequest.Op(null, 1, null),
+                new SectionDeltaRequest.Op(null, null, "她")
+        )));
+        assertEquals("<p>她走了。</p>", manuscriptService.getSection(created.id(), sceneId).content());
+        assertEquals(second.hash(), manuscriptService.getSection(created.id(), sceneId).hash());
+
+        // 基于旧版本的增量被拒绝，正文不变
+        assertThrows(ConflictException.class, () -> manuscriptService.applyDelta(created.id(), sceneId,
+                new SectionDeltaRequest(first.hash(), List.of(new SectionDeltaRequest.Op(null, null, "x")))));
+        assertThrows(RuntimeException.class, () -> manuscriptService.applyDelta(created.id(), sceneId,
+                new SectionDeltaRequest(second.hash(), List.of(new SectionDeltaRequest.Op(null, 999, null)))));
+        assertEquals("<p>她走了。</p>", manuscriptService.getSection(created.id(), sceneId).content());
+    }
+
+    @Test
+    void revisionsKeepHistoryWithPeriodicSnapshots() {
+        Outline outline = newOutline(newUser("manuscript_revisions"));
+        ManuscriptDto created = manuscriptService.create(outline.getId(), new ManuscriptCreateRequest("稿件", null));
+        UUID sceneId = UUID.randomUUID();
+        ReflectionTestUtils.setField(revisionStore, "coalesceSeconds", 0L);
+        ReflectionTestUtils.setField(revisionStore, "snapshotInterval", 4);
+        StringBuilder text = new StringBuilder("<p>开头。</p>");
+        try {
+            for (int i = 1; i <= 10; i++) {
+                text.append("<p>第").append(i).append("段。</p>");
+                manuscriptService.updateSection(created.id(), sceneId, new SectionUpdateRequest(text.toString()));
+            }
+            List<SectionRevisionDto> page = manuscriptService.listRevisions(created.id(), sceneId, null, null, 3);
+            assertEquals(List.of(10, 9, 8), page.stream().map(SectionRevisionDto::revision).toList());
+            assertNull(page.get(0).content());
+            List<SectionRevisionDto> all = manuscriptService.listRevisions(created.id(), sceneId, 8, null, 100);
+            assertEquals(7, all.size());
+            assertEquals(List.of(1, 5, 9), manuscriptService.listRevisions(created.id(), sceneId, null, null, 100).stream()
+                    .filter(SectionRevisionDto::snapshot).map(SectionRevisionDto::revision).sorted().toList());
+
+            assertEquals("<p>开头。</p><p>第1段。</p><p>第2段。</p><p>第3段。</p>",
+                    manuscriptService.getRevision(created.id(), sceneId, 3).content());
+            manuscriptService.restoreRevision(created.id(), sceneId, 2);
+            assertEquals("<p>开头。</p><p>第1段。</p><p>第2段。</p>", manuscriptService.getSection(created.id(), sceneId).content());
+            assertEquals(text.toString(), manuscriptService.getRevision(created.id(), sceneId, 10).content());
+            assertEquals(11, manuscriptService.listRevisions(created.id(), sceneId, null, null, 1).get(0).revision());
+        } finally {
+            ReflectionTestUtils.setField(revisionStore, "coalesceSeconds", 120L);
+            ReflectionTestUtils.setField(revisionStore, "snapshotInterval", 32);
+        }
+
+        // 窗口内的连续保存合并到刚才的修订 11
+        manuscriptService.updateSection(created.id(), sceneId, new SectionUpdateRequest("<p>a</p>"));
+        manuscriptService.updateSection(created.id(), sceneId, new SectionUpdateRequest("<p>ab</p>"));
+        assertEquals(11, manuscriptService.listRevisions(created.id(), sceneId, null, null, 1).get(0).revision());
+        assertEquals("<p>ab</p>", manuscriptService.getRevision(created.id(), sceneId, 11).content());
+        assertEquals(text.toString(), manuscriptService.getRevision(created.id(), sceneId, 10).content());
+
+        manuscriptService.delete(created.id());
+        assertTrue(sectionRepository.findByManuscript_Id(created.id()).isEmpty());
+    }
+
+    @Test
+    void sectionContentIsStoredCompressedAndLegacyRowsStillRead() {
+        Outline outline = newOutline(newUser("manuscript_compressed"));
+        ManuscriptDto created = manuscriptService.create(outline.getId(), new ManuscriptCreateRequest("稿件", null));
+        UUID sceneId = UUID.randomUUID();
+        String content = "<p>" + "他推开门，看着窗外的雨，没有说话。".repeat(100) + "</p>";
+        manuscriptService.updateSection(created.id(), sceneId, new SectionUpdateRequest(content));
+
+        UUID sectionId = sectionRepository.findByManuscript_IdAndSceneId(created.id(), sceneId).orElseThrow().getId();
+        String stored = jdbcTemplate.queryForObject("select content from manuscript_sections where id = ?", String.class, sectionId);
+        assertTrue(stored.startsWith("~z1:"));
+        assertTrue(stored.length() < content.length());
+        assertEquals(content, manuscriptService.getSection(created.id(), sceneId).content());
+
+        // 压缩上线前写入的明文行照常读取
+        jdbcTemplate.update("update manuscript_sections set content = ? where id = ?", "<p>旧的明文</p>", sectionId);
+        assertEquals("<p>旧的明文</p>", manuscriptService.getSection(created.id(), sceneId).content());
+    }
+
+    @Test
+    void sectionSavesDoNotLoadOrRewriteTheManuscriptRow() {
+        Outline outline = newOutline(newUser("manuscript_light_write"));
+        ManuscriptDto created = manuscriptService.create(outline.getId(), new ManuscriptCreateRequest("稿件", null));
+        UUID sceneId = UUID.randomUUID();
+        jdbcTemplate.update("update manuscripts set updated_at = ? where id = ?", Timestamp.valueOf("2000-01-01 00:00:00"), created.id());
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        boolean enabled = statistics.isStatisticsEnabled();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+        try {
+            ManuscriptSectionDto first = manuscriptService.updateSection(created.id(), sceneId, new SectionUpdateRequest("<p>a</p>"));
+            manuscriptService.applyDelta(created.id(), sceneId,
+                    new SectionDeltaRequest(first.hash(), List.of(new SectionDeltaRequest.Op(null, null, "<p>b</p>"))));
+            String entity = Manuscript.class.getName();
+            assertEquals(0, statistics.getEntityStatistics(entity).getLoadCount());
+            assertEquals(0, statistics.getEntityStatistics(entity).getUpdateCount());
+        } finally {
+            statistics.setStatisticsEnabled(enabled);
+        }
+        Timestamp updatedAt = jdbcTemplate.queryForObject("select updated_at from manuscripts where id = ?", Timestamp.class, created.id());
+        assertTrue(updatedAt.after(Timestamp.valueOf("2020-01-01 00:00:00")));
+        assertThrows(RuntimeException.class, () -> manuscriptService.updateSection(UUID.randomUUID(), sceneId, new SectionUpdateRequest("x")));
+    }
+
+    @Test
+    void concurrentFirstSavesOfASceneRetryInsteadOfFailing() throws Exception {
+        Outline outline = newOutline(newUser("manuscript_first_save_race"));
+        ManuscriptDto created = manuscriptService.create(outline.getId(), new ManuscriptCreateRequest("稿件", null));
+        UUID sceneId = UUID.randomUUID();
+        CountDownLatch inserted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // 另一个事务先插入该场景行但暂不提交，模拟与之并发的首次保存
+        CompletableFuture<Void> other = CompletableFuture.runAsync(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            manuscriptService.updateSection(created.id(), sceneId, new SectionUpdateRequest("<p>另一个标签页</p>"));
+            inserted.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(inserted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<ManuscriptSectionDto> mine = CompletableFuture.supplyAsync(() ->
+                manuscriptService.updateSection(created.id(), sceneId, new SectionUpdateRequest("<p>自动保存</p>")));
+        Thread.sleep(300);
+        release.countDown();
+        other.get(10, TimeUnit.SECONDS);
+
+        assertEquals("<p>自动保存</p>", mine.get(10, TimeUnit.SECONDS).content());
+        assertEquals(1, sectionRepository.findByManuscript_Id(created.id()).size());
+        assertEquals("<p>自动保存</p>", manuscriptService.getSection(created.id(), sceneId).content());
+    }
+
+    @Test
+    void legacySectionsJsonIsMigratedToRows() {
+        Outline outline = newOutline(newUser("manuscript_legacy"));
+        UUID sceneId = UUID.randomUUID();
+        Manuscript manuscript = new Manuscript();
+        manuscript.setOutline(outline);
+        manuscript.setTitle("旧稿件");
+        manuscript.setSectionsJson("{\"" + sceneId + "\":\"<p>旧正文</p>\",\"not-a-uuid\":\"x\"}");
+        manuscriptRepository.save(manuscript);
+
+        assertTrue(manuscriptService.migrateAllLegacy() >= 1);
+        assertNull(manuscriptRepository.findById(manuscript.getId()).orElseThrow().getSectionsJson());
+        assertEquals("<p>旧正文</p>", manuscriptService.getSection(manuscript.getId(), sceneId).content());
+        assertEquals(1, manuscriptService.get(manuscript.getId()).sections().size());
+    }
+
+    private User newUser(String name) {
+        User user = new User();
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPasswordHash("x");
+        user.setRoles(Set.of("ROLE_USER"));
+        return userRepository.save(user);
+    }
+
+    private Outline newOutline(User user) {
+        Story story = new Story();
+        story.setUser(user);
+        story.setTitle("故事");
+        storyRepository.save(story);
+        Outline outline = new Outline();
+        outline.setStory(story);
+        outline.setTitle("大纲");
+        return outlineRepository.save(outline);
+    }
+}
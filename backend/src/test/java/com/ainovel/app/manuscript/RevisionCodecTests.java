@@ -0,0 +1,47 @@
+package com.ainovel.app.manuscript;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RevisionCodecTests {
+
+    @Test
+    void diffRoundTripsAndStaysSmallForLocalEdits() {
+        StringBuilder doc = new StringBuilder();
+        Random random = new Random(7);
+        for (int i = 0; i < 400; i++) doc.append("<p>第").append(i).append("段，").append(random.nextInt()).append("。</p>");
+        String base = doc.toString();
+        // 开头、中间各改一处，并把一段挪到末尾
+        String target = "<p>序章</p>" + base.substring(0, 5000) + "她回头看了一眼。" + base.substring(5200) + base.substring(100, 300);
+
+        byte[] delta = RevisionCodec.diff(base, target);
+        assertEquals(target, RevisionCodec.patch(base, delta));
+        assertTrue(delta.length < 200, "delta bytes: " + delta.length);
+        assertTrue(RevisionCodec.snapshot(target).length > delta.length * 10);
+    }
+
+    @Test
+    void neverSplitsSurrogatePairs() {
+        assertEquals("他笑了😃。", RevisionCodec.patch("他笑了😀。", RevisionCodec.diff("他笑了😀。", "他笑了😃。")));
+        assertEquals("😀😃", RevisionCodec.patch("😀😀", RevisionCodec.diff("😀😀", "😀😃")));
+
+        // 中间段的复制块紧挨着被替换的 emoji
+        StringBuilder doc = new StringBuilder();
+        for (int i = 0; i < 50; i++) doc.append("😀第").append(i).append("段的内容写得足够长😀");
+        String base = doc.toString();
+        String target = "开头" + base.replace("第7段", "😃第7段").replace("第30段的内容写得足够长😀", "第30段的内容写得足够长😂") + "结尾";
+        assertEquals(target, RevisionCodec.patch(base, RevisionCodec.diff(base, target)));
+    }
+
+    @Test
+    void handlesEmptyAndUnrelatedTexts() {
+        assertEquals("", RevisionCodec.patch("abc", RevisionCodec.diff("abc", "")));
+        assertEquals("新正文😀", RevisionCodec.patch("", RevisionCodec.diff("", "新正文😀")));
+        assertEquals("xyz", RevisionCodec.patch("abc", RevisionCodec.diff("abc", "xyz")));
+        assertEquals("正文", RevisionCodec.restore(RevisionCodec.snapshot("正文")));
+        assertThrows(IllegalStateException.class, () -> RevisionCodec.patch("abcd", RevisionCodec.diff("abc", "xyz")));
+    }
+}
@@ -0,0 +1,216 @@
+package com.ainovel.app.manuscript;
+
+import com.ainovel.app.manuscript.dto.ManuscriptCreateRequest;
+import com.ainovel.app.manuscript.dto.ManuscriptDto;
+import com.ainovel.app.manuscript.dto.ManuscriptSectionDto;
+import com.ainovel.app.manuscript.dto.SceneGenerateDone;
+import com.ainovel.app.manuscript.dto.SceneGenerateRequest;
+import com.ainovel.app.manuscript.dto.SectionUpdateRequest;
+import com.ainovel.app.settings.SettingsService;
+import com.ainovel.app.settings.model.PromptTemplatesEntity;
+import com.ainovel.app.settings.model.SystemSettings;
+import com.ainovel.app.settings.repo.PromptTemplatesRepository;
+import com.ainovel.app.settings.repo.SystemSettingsRepository;
+import com.ainovel.app.story.OutlineService;
+import com.ainovel.app.story.dto.OutlineCreateRequest;
+import com.ainovel.app.story.dto.OutlineDto;
+import com.ainovel.app.story.dto.OutlineSaveRequest;
+import com.ainovel.app.story.model.CharacterCard;
+import com.ainovel.app.story.model.Story;
+import com.ainovel.app.story.repo.CharacterCardRepository;
+import com.ainovel.app.story.repo.StoryRepository;
+import com.ainovel.app.user.User;
+import com.ainovel.app.user.UserRepository;
+import com.ainovel.app.world.model.World;
+import com.ainovel.app.world.repo.WorldRepository;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class SceneGenerationTests {
+    @Autowired
+    private ManuscriptService manuscriptService;
+    @Autowired
+    private SceneContextAssembler contextAssembler;
+    @Autowired
+    private OutlineService outlineService;
+    @Autowired
+    private SettingsService settingsService;
+    @Autowired
+    private SystemSettingsRepository systemSettingsRepository;
+    @Autowired
+    private PromptTemplatesRepository promptTemplatesRepository;
+    @Autowired
+    private CharacterCardRepository characterCardRepository;
+    @Autowired
+    private WorldRepository worldRepository;
+    @Autowired
+    private StoryRepository storyRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    private HttpServer server;
+    private final List<String> upstreamBodies = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void startUpstream() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            upstreamBodies.add(body);
+            String response;
+            if (body.contains("\"stream\"")) {
+                exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+                response = String.join("\n",
+                        "data: {\"choices\":[{\"delta\":{\"content\":\"雨停了。\\n\"}}]}", "",
+                        "data: {\"choices\":[{\"delta\":{\"content\":\"林远推开门。\"}}]}", "",
+                        "data: {\"choices\":[],\"usage\":{\"prompt_tokens\":30,\"completion_tokens\":8}}", "",
+                        "data: [DONE]", "");
+            } else {
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                response = "{\"choices\":[{\"message\":{\"content\":\"他走进雨里。\\n\\n<她>没有回头。\"}}],"
+                        + "\"usage\":{\"prompt_tokens\":30,\"completion_tokens\":10}}";
+            }
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopUpstream() {
+        server.stop(0);
+    }
+
+    @Test
+    void assemblesSceneContextFromOutlineCharactersWorldAndPreviousScene() {
+        Fixture f = fixture("scene_context");
+        manuscriptService.updateSection(f.manuscriptId, f.firstScene, new SectionUpdateRequest("<p>第一段。</p><p>上一场景的结尾。</p>"));
+
+        SceneContextAssembler.SceneContext context = contextAssembler.assemble(f.user, f.manuscriptId, f.secondScene, "多写对话");
+        assertEquals(Map.of("title", "重逢", "summary", "林远在雨夜回到旧城"), context.context().get("scene"));
+        assertEquals("第一段。\n上一场景的结尾。", context.context().get("previousContent"));
+        assertEquals(Map.of("title", "第二章"), context.context().get("chapter"));
+        @SuppressWarnings("unchecked")
+        List<Map<String, String>> characters = (List<Map<String, String>>) context.context().get("characters");
+        assertEquals(List.of("林远", "路人甲"), characters.stream().map(c -> c.get("name")).toList());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> world = (Map<String, Object>) context.context().get("world");
+        assertEquals(Map.of("geography", Map.of("terrain", "群山环绕")), world.get("modules"));
+
+        assertTrue(context.prompt().startsWith("写《重逢》：林远在雨夜回到旧城，语气冷峻，{unknown}"), context.prompt());
+        assertTrue(context.prompt().endsWith("补充要求：多写对话"));
+
+        assertThrows(RuntimeException.class, () -> contextAssembler.assemble(f.user, f.manuscriptId, UUID.randomUUID(), null));
+    }
+
+    @Test
+    void previousSceneTailDoesNotStartInsideSurrogatePair() {
+        Fixture f = fixture("scene_tail_emoji");
+        manuscriptService.updateSection(f.manuscriptId, f.firstScene, new SectionUpdateRequest("<p>雨😀😀😀</p>"));
+        Object original = ReflectionTestUtils.getField(contextAssembler, "previousTailChars");
+        ReflectionTestUtils.setField(contextAssembler, "previousTailChars", 3);
+        try {
+            SceneContextAssembler.SceneContext context = contextAssembler.assemble(f.user, f.manuscriptId, f.secondScene, null);
+            assertEquals("😀", context.context().get("previousContent"));
+        } finally {
+            ReflectionTestUtils.setField(contextAssembler, "previousTailChars", original);
+        }
+    }
+
+    @Test
+    void generatesSceneThroughModelAndSavesIt() throws Exception {
+        Fixture f = fixture("scene_generate");
+        ManuscriptSectionDto saved = manuscriptService.generateForScene(f.user, f.manuscriptId, f.secondScene, new SceneGenerateRequest(null, null))
+                .get(10, TimeUnit.SECONDS);
+        assertEquals("<p>他走进雨里。</p><p>&lt;她&gt;没有回头。</p>", saved.content());
+        assertEquals(saved.content(), manuscriptService.getSection(f.manuscriptId, f.secondScene).content());
+        String body = upstreamBodies.get(upstreamBodies.size() - 1);
+        assertTrue(body.contains("林远在雨夜回到旧城"));
+        assertTrue(body.contains("群山环绕"));
+        assertTrue(userRepository.findById(f.user.getId()).orElseThrow().getCredits() < 500.0);
+    }
+
+    @Test
+    void streamsDeltasAndSavesWhenFinished() throws Exception {
+        Fixture f = fixture("scene_stream");
+        List<String> deltas = new ArrayList<>();
+        SceneGenerateDone done = manuscriptService.generateForSceneStream(f.user, f.manuscriptId, f.firstScene, null, deltas::add)
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(List.of("雨停了。\n", "林远推开门。"), deltas);
+        assertEquals("<p>雨停了。</p><p>林远推开门。</p>", done.section().content());
+        assertEquals(8, done.usage().outputTokens());
+        assertTrue(done.contextMicros() >= 0);
+        assertEquals(done.section().content(), manuscriptService.getSection(f.manuscriptId, f.firstScene).content());
+    }
+
+    private record Fixture(User user, UUID manuscriptId, UUID firstScene, UUID secondScene) {}
+
+    private Fixture fixture(String name) {
+        User user = new User();
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPasswordHash("x");
+        user.setRoles(Set.of("ROLE_USER"));
+        userRepository.save(user);
+        settingsService.getSettings(user);
+        SystemSettings settings = systemSettingsRepository.findByUser(user).orElseThrow();
+        settings.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        settings.setApiKeyEncrypted("k");
+        settings.setModelName("test-model");
+        systemSettingsRepository.save(settings);
+        PromptTemplatesEntity templates = new PromptTemplatesEntity();
+        templates.setUser(user);
+        templates.setManuscriptSection("写《{sceneTitle}》：{sceneSummary}，语气{tone}，{unknown}");
+        promptTemplatesRepository.save(templates);
+
+        World world = new World();
+        world.setUser(user);
+        world.setName("旧城");
+        world.setModulesJson("{\"geography\":{\"terrain\":\"群山环绕\",\"climate\":\"\"},\"society\":{}}");
+        worldRepository.save(world);
+
+        Story story = new Story();
+        story.setUser(user);
+        story.setTitle("雨夜");
+        story.setTone("冷峻");
+        storyRepository.save(story);
+        for (String character : List.of("路人甲", "林远")) {
+            CharacterCard card = new CharacterCard();
+            card.setStory(story);
+            card.setName(character);
+            card.setSynopsis(character + "的简介");
+            characterCardRepository.save(card);
+        }
+
+        UUID first = UUID.randomUUID(), second = UUID.randomUUID();
+        OutlineDto outline = outlineService.createOutline(story, new OutlineCreateRequest("大纲", null));
+        outlineService.saveOutline(outline.id(), new OutlineSaveRequest("大纲", null, List.of(
+                new OutlineSaveRequest.ChapterPayload(UUID.randomUUID(), "第一章", null, 1,
+                        List.of(new OutlineSaveRequest.ScenePayload(first, "离开", "林远离开旧城", null, 1))),
+                new OutlineSaveRequest.ChapterPayload(UUID.randomUUID(), "第二章", null, 2,
+                        List.of(new OutlineSaveRequest.ScenePayload(second, "重逢", "林远在雨夜回到旧城", null, 1)))
+        )));
+        ManuscriptDto manuscript = manuscriptService.create(outline.id(), new ManuscriptCreateRequest("稿件", world.getId().toString()));
+        return new Fixture(user, manuscript.id(), first, second);
+    }
+}
@@ -0,0 +1,45 @@
+package com.ainovel.app.story;
+
+import com.ainovel.app.story.dto.OutlineDto;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutlineCacheTests {
+    @Test
+    void hitsOnlyMatchingVersionAndEvictsLeastRecentlyUsed() {
+        OutlineCache cache = new OutlineCache();
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID();
+        cache.put(dto(a, 1));
+        cache.put(dto(b, 1));
+
+        assertNotNull(cache.get(a, 1));
+        assertNull(cache.get(a, 2));
+        cache.put(dto(a, 0));
+        assertNotNull(cache.get(a, 1), "较旧的版本不应覆盖");
+
+        cache.put(dto(c, 1));
+        assertNull(cache.get(b, 1), "最久未访问的 b 被淘汰");
+        assertNotNull(cache.get(c, 1));
+
+        cache.invalidate(a);
+        assertNull(cache.get(a, 1));
+
+        OutlineCache.Stats stats = cache.stats();
+        assertEquals(3, stats.hits());
+        assertEquals(3, stats.misses());
+        assertEquals(1, stats.evictions());
+        assertEquals(1, stats.size());
+        assertEquals(0.5, stats.hitRate());
+    }
+
+    private static OutlineDto dto(UUID id, long version) {
+        return new OutlineDto(id, UUID.randomUUID(), "t", null, List.of(), Instant.now(), version);
+    }
+}
@@ -0,0 +1,186 @@
+package com.ainovel.app.story;
+
+import com.ainovel.app.common.ConflictException;
+import com.ainovel.app.common.NotFoundException;
+import com.ainovel.app.story.dto.ChapterUpdateRequest;
+import com.ainovel.app.story.dto.OutlineCreateRequest;
+import com.ainovel.app.story.dto.OutlineDto;
+import com.ainovel.app.story.dto.OutlineSaveRequest;
+import com.ainovel.app.story.dto.SceneUpdateRequest;
+import com.ainovel.app.story.model.Outline;
+import com.ainovel.app.story.model.Story;
+import com.ainovel.app.story.repo.OutlineChapterRepository;
+import com.ainovel.app.story.repo.OutlineRepository;
+import com.ainovel.app.story.repo.OutlineSceneRepository;
+import com.ainovel.app.story.repo.StoryRepository;
+import com.ainovel.app.user.User;
+import com.ainovel.app.user.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class OutlineServiceTests {
+    @Autowired
+    private OutlineService outlineService;
+    @Autowired
+    private OutlineCache outlineCache;
+    @Autowired
+    private OutlineRepository outlineRepository;
+    @Autowired
+    private OutlineChapterRepository chapterRepository;
+    @Autowired
+    private OutlineSceneRepository sceneRepository;
+    @Autowired
+    private StoryRepository storyRepository;
+    @Autowired
+    private UserRepository userRepository;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void legacyJsonIsMigratedToRows() {
+        Story story = newStory("outline_legacy");
+        UUID chapterId = UUID.randomUUID();
+        UUID sceneId = UUID.randomUUID();
+        Outline outline = new Outline();
+        outline.setStory(story);
+        outline.setTitle("旧大纲");
+        outline.setContentJson("{\"chapters\":[{\"id\":\"" + chapterId + "\",\"title\":\"第一章\",\"summary\":\"s\",\"order\":1,"
+                + "\"scenes\":[{\"id\":\"" + sceneId + "\",\"title\":\"场景 1\",\"order\":1}]}]}");
+        outlineRepository.save(outline);
+
+        assertTrue(outlineService.migrateAllLegacy() >= 1);
+        assertNull(outlineRepository.findById(outline.getId()).orElseThrow().getContentJson());
+
+        OutlineDto dto = outlineService.updateScene(sceneId, new SceneUpdateRequest(null, null, "正文", null));
+        assertEquals(1, dto.chapters().size());
+        assertEquals(chapterId, dto.chapters().get(0).id());
+        assertEquals("正文", dto.chapters().get(0).scenes().get(0).content());
+
+        // 未知 id 直接 404，不会顺带扫描迁移其他旧大纲
+        Outline other = new Outline();
+        other.setStory(story);
+        other.setTitle("另一份旧大纲");
+        other.setContentJson("{\"chapters\":[]}");
+        outlineRepository.save(other);
+        assertThrows(NotFoundException.class, () -> outlineService.updateScene(UUID.randomUUID(), new SceneUpdateRequest(null, null, "x", null)));
+        assertThrows(NotFoundException.class, () -> outlineService.updateChapter(UUID.randomUUID(), new ChapterUpdateRequest("x", null, null)));
+        assertNotNull(outlineRepository.findById(other.getId()).orElseThrow().getContentJson());
+    }
+
+    @Test
+    void saveKeepsIdsReordersAndDeletesMissingRows() {
+        Story story = newStory("outline_save");
+        OutlineDto created = outlineService.createOutline(story, new OutlineCreateRequest("大纲", null));
+        UUID c1 = UUID.randomUUID(), c2 = UUID.randomUUID(), s1 = UUID.randomUUID(), s2 = UUID.randomUUID();
+        outlineService.saveOutline(created.id(), new OutlineSaveRequest("大纲", null, List.of(
+                new OutlineSaveRequest.ChapterPayload(c1, "一", null, 1, List.of(scene(s1, "a"), scene(s2, "b"))),
+                new OutlineSaveRequest.ChapterPayload(c2, "二", null, 2, List.of())
+        )));
+
+        // 对调章节、把 s2 移到第二章、删除 s1
+        OutlineDto saved = outlineService.saveOutline(created.id(), new OutlineSaveRequest("大纲", null, List.of(
+                new OutlineSaveRequest.ChapterPayload(c2, "二", null, 1, List.of(scene(s2, "b2"))),
+                new OutlineSaveRequest.ChapterPayload(c1, "一", null, 2, List.of())
+        )));
+        assertEquals(List.of(c2, c1), saved.chapters().stream().map(OutlineDto.ChapterDto::id).toList());
+        assertEquals(s2, saved.chapters().get(0).scenes().get(0).id());
+        assertEquals("b2", saved.chapters().get(0).scenes().get(0).title());
+        assertTrue(saved.chapters().get(1).scenes().isEmpty());
+        assertFalse(sceneRepository.existsById(s1));
+
+        // 另一个大纲粘贴相同 id 时换成新 id，不会抢走原大纲的行
+        OutlineDto other = outlineService.createOutline(story, new OutlineCreateRequest("副本", null));
+        OutlineDto copy = outlineService.saveOutline(other.id(), new OutlineSaveRequest("副本", null, List.of(
+                new OutlineSaveRequest.ChapterPayload(c2, "二", null, 1, List.of(scene(s2, "b2")))
+        )));
+        assertNotEquals(c2, copy.chapters().get(0).id());
+        assertNotEquals(s2, copy.chapters().get(0).scenes().get(0).id());
+        assertEquals(created.id(), chapterRepository.findById(c2).orElseThrow().getOutline().getId());
+
+        outlineService.deleteOutline(other.id());
+        assertTrue(chapterRepository.findByOutline_IdOrderByPositionAsc(other.id()).isEmpty());
+        assertEquals(2, outlineService.get(created.id()).chapters().size());
+    }
+
+    @Test
+    void patchAppliesOperationsAndChecksVersion() throws Exception {
+        Story story = newStory("outline_patch");
+        OutlineDto created = outlineService.createOutline(story, new OutlineCreateRequest("大纲", null));
+        UUID c1 = UUID.randomUUID(), c2 = UUID.randomUUID(), s1 = UUID.randomUUID();
+        OutlineDto saved = outlineService.saveOutline(created.id(), new OutlineSaveRequest("大纲", null, List.of(
+                new OutlineSaveRequest.ChapterPayload(c1, "一", null, 1, List.of(scene(s1, "a"))),
+                new OutlineSaveRequest.ChapterPayload(c2, "二", null, 2, List.of())
+        )));
+
+        JsonNode ops = objectMapper.readTree("""
+                [{"op":"test","path":"/chapters/0/id","value":"%s"},
+                 {"op":"replace","path":"/chapters/0/scenes/0/summary","value":"新摘要"},
+                 {"op":"move","from":"/chapters/0/scenes/0","path":"/chapters/1/scenes/-"},
+                 {"op":"add","path":"/chapters/-","value":{"title":"三"}}]
+                """.formatted(c1));
+        OutlineDto patched = outlineService.patchOutline(created.id(), ops, saved.version());
+        assertTrue(patched.version() > saved.version());
+        assertEquals(3, patched.chapters().size());
+        assertTrue(patched.chapters().get(0).scenes().isEmpty());
+        assertEquals(s1, patched.chapters().get(1).scenes().get(0).id());
+        assertEquals("新摘要", patched.chapters().get(1).scenes().get(0).summary());
+        assertEquals(3, patched.chapters().get(2).order());
+
+        OutlineDto merged = outlineService.patchOutline(created.id(), objectMapper.readTree("{\"title\":\"改名\"}"), null);
+        assertEquals("改名", merged.title());
+        assertEquals(3, merged.chapters().size());
+
+        assertThrows(ConflictException.class,
+                () -> outlineService.patchOutline(created.id(), objectMapper.readTree("{\"title\":\"x\"}"), saved.version()));
+        assertThrows(RuntimeException.class,
+                () -> outlineService.patchOutline(created.id(), objectMapper.readTree("[{\"op\":\"remove\",\"path\":\"/chapters/9\"}]"), null));
+    }
+
+    @Test
+    void repeatedGetIsServedFromCacheUntilWrite() {
+        Story story = newStory("outline_cache");
+        OutlineDto created = outlineService.createOutline(story, new OutlineCreateRequest("大纲", null));
+        UUID sceneId = UUID.randomUUID();
+        outlineService.saveOutline(created.id(), new OutlineSaveRequest("大纲", null, List.of(
+                new OutlineSaveRequest.ChapterPayload(UUID.randomUUID(), "一", null, 1, List.of(scene(sceneId, "a")))
+        )));
+
+        OutlineDto first = outlineService.get(created.id());
+        long hits = outlineCache.stats().hits();
+        assertSame(first, outlineService.get(created.id()));
+        assertEquals(hits + 1, outlineCache.stats().hits());
+
+        outlineService.updateScene(sceneId, new SceneUpdateRequest("b", null, null, null));
+        OutlineDto updated = outlineService.get(created.id());
+        assertEquals("b", updated.chapters().get(0).scenes().get(0).title());
+        assertTrue(updated.version() > first.version());
+    }
+
+    private static OutlineSaveRequest.ScenePayload scene(UUID id, String title) {
+        return new OutlineSaveRequest.ScenePayload(id, title, null, null, null);
+    }
+
+    private Story newStory(String name) {
+        User user = new User();
+        user.setUsername(name);
+        user.setEmail(name + "@example.com");
+        user.setPasswordHash("x");
+        user.setRoles(Set.of("ROLE_USER"));
+        userRepository.save(user);
+        Story story = new Story();
+        story.setUser(user);
+        story.setTitle(name);
+        return storyRepository.save(story);
+    }
+}
@@ -4,9 +4,11 @@ import {
   FileImportJob,
   Material,
   Manuscript,
+  ManuscriptSection,
   ModelConfig,
   Outline,
   PromptTemplates,
+  SectionRevision,
   Story,
   SystemSettings,
   UserSummary,
@@ -16,11 +18,19 @@ import {
   WorldModuleDefinition,
   WorldPromptTemplates,
 } from "@/types";
+import { TextOp } from "@/lib/text-delta";
 
 const API_BASE = "/api";
 
 const getToken = () => localStorage.getItem("token");
 
+// carries the HTTP status so callers can tell conflicts (409) from other failures
+export class ApiError extends Error {
+  constructor(message: string, public status: number) {
+    super(message);
+  }
+}
+
 async function requestJson<T>(path: string, init: RequestInit = {}, tokenOverride?: string): Promise<T> {
   const headers = new Headers(init.headers || {});
   headers.set("Content-Type", "application/json");
@@ -31,7 +41,7 @@ async function requestJson<T>(path: string, init: RequestInit = {}, tokenOverrid
   const resp = await fetch(`${API_BASE}${path}`, { ...init, headers });
   if (!resp.ok) {
     const msg = await safeErrorMessage(resp);
-    throw new Error(msg || `Request failed: ${resp.status}`);
+    throw new ApiError(msg || `Request failed: ${resp.status}`, resp.status);
   }
   return (await resp.json()) as T;
 }
@@ -44,7 +54,7 @@ async function requestForm<T>(path: string, form: FormData, tokenOverride?: stri
   const resp = await fetch(`${API_BASE}${path}`, { method: "POST", headers, body: form });
   if (!resp.ok) {
     const msg = await safeErrorMessage(resp);
-    throw new Error(msg || `Request failed: ${resp.status}`);
+    throw new ApiError(msg || `Request failed: ${resp.status}`, resp.status);
   }
   return (await resp.json()) as T;
 }
@@ -158,6 +168,29 @@ function toManuscript(dto: any): Manuscript {
   };
 }
 
+function toManuscriptSection(dto: any): ManuscriptSection {
+  return {
+    manuscriptId: dto.manuscriptId,
+    sceneId: dto.sceneId,
+    content: dto.content || "",
+    wordCount: dto.wordCount || 0,
+    hash: dto.hash || "",
+    updatedAt: dto.updatedAt || new Date().toISOString(),
+  };
+}
+
+function toSectionRevision(dto: any): SectionRevision {
+  return {
+    revision: dto.revision,
+    snapshot: !!dto.snapshot,
+    wordCount: dto.wordCount || 0,
+    storedBytes: dto.storedBytes || 0,
+    content: dto.content ?? undefined,
+    createdAt: dto.createdAt,
+    updatedAt: dto.updatedAt || dto.createdAt,
+  };
+}
+
 export const api = {
   user: {
     getProfile: async () => {
@@ -365,13 +398,40 @@ export const api = {
       await requestJson<any>(`/v1/manuscripts/${id}`, { method: "DELETE" });
       return true;
     },
-    generateScene: async (manuscriptId: string, sceneId: string): Promise<Manuscript> => {
+    generateScene: async (manuscriptId: string, sceneId: string): Promise<ManuscriptSection> => {
       const dto = await requestJson<any>(`/v1/manuscripts/${manuscriptId}/scenes/${sceneId}/generate`, { method: "POST", body: "{}" });
-      return toManuscript(dto);
+      return toManuscriptSection(dto);
     },
-    saveSection: async (manuscriptId: string, sceneId: string, content: string): Promise<Manuscript> => {
+    getSection: async (manuscriptId: string, sceneId: string): Promise<ManuscriptSection> => {
+      const dto = await requestJson<any>(`/v1/manuscripts/${manuscriptId}/sections/${sceneId}`, { method: "GET" });
+      return toManuscriptSection(dto);
+    },
+    saveSection: async (manuscriptId: string, sceneId: string, content: string): Promise<ManuscriptSection> => {
       const dto = await requestJson<any>(`/v1/manuscripts/${manuscriptId}/sections/${sceneId}`, { method: "PUT", body: JSON.stringify({ content }) });
-      return toManuscript(dto);
+      return toManuscriptSection(dto);
+    },
+    // send only the edit against the last saved revision; the response carries no content
+    saveSectionDelta: async (manuscriptId: string, sceneId: string, baseHash: string, ops: TextOp[]): Promise<ManuscriptSection> => {
+      const dto = await requestJson<any>(`/v1/manuscripts/${manuscriptId}/sections/${sceneId}`, { method: "PATCH", body: JSON.stringify({ baseHash, ops }) });
+      return toManuscriptSection(dto);
+    },
+    // newest first; pass `before` (last revision of the previous page) to page, `at` (ISO time) for "as of"
+    listRevisions: async (manuscriptId: string, sceneId: string, params: { before?: number; at?: string; limit?: number } = {}): Promise<SectionRevision[]> => {
+      const query = new URLSearchParams();
+      if (params.before != null) query.set("before", String(params.before));
+      if (params.at) query.set("at", params.at);
+      if (params.limit != null) query.set("limit", String(params.limit));
+      const qs = query.toString();
+      const data = await requestJson<any[]>(`/v1/manuscripts/${manuscriptId}/sections/${sceneId}/revisions${qs ? `?${qs}` : ""}`, { method: "GET" });
+      return data.map(toSectionRevision);
+    },
+    getRevision: async (manuscriptId: string, sceneId: string, revision: number): Promise<SectionRevision> => {
+      const dto = await requestJson<any>(`/v1/manuscripts/${manuscriptId}/sections/${sceneId}/revisions/${revision}`, { method: "GET" });
+      return toSectionRevision(dto);
+    },
+    restoreRevision: async (manuscriptId: string, sceneId: string, revision: number): Promise<ManuscriptSection> => {
+      const dto = await requestJson<any>(`/v1/manuscripts/${manuscriptId}/sections/${sceneId}/revisions/${revision}/restore`, { method: "POST" });
+      return toManuscriptSection(dto);
     },
   },
 
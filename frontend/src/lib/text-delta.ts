@@ -0,0 +1,37 @@
+export type TextOp = { retain: number } | { delete: number } | { insert: string };
+
+// Single-span diff (common prefix + common suffix). An autosave burst is usually one
+// contiguous edit, so this gives a tiny delta without a full diff algorithm.
+// Offsets are UTF-16 code units, matching the server.
+export function diffToOps(base: string, next: string): TextOp[] {
+  const max = Math.min(base.length, next.length);
+  let start = 0;
+  while (start < max && base.charCodeAt(start) === next.charCodeAt(start)) start++;
+  // never split a surrogate pair
+  if (start > 0 && isHighSurrogate(base.charCodeAt(start - 1))) start--;
+
+  let endBase = base.length;
+  let endNext = next.length;
+  while (endBase > start && endNext > start && base.charCodeAt(endBase - 1) === next.charCodeAt(endNext - 1)) {
+    endBase--;
+    endNext--;
+  }
+  if (endBase < base.length && isLowSurrogate(base.charCodeAt(endBase))) {
+    endBase++;
+    endNext++;
+  }
+
+  const ops: TextOp[] = [];
+  if (start > 0) ops.push({ retain: start });
+  if (endBase > start) ops.push({ delete: endBase - start });
+  if (endNext > start) ops.push({ insert: next.slice(start, endNext) });
+  return ops;
+}
+
+function isHighSurrogate(code: number) {
+  return code >= 0xd800 && code <= 0xdbff;
+}
+
+function isLowSurrogate(code: number) {
+  return code >= 0xdc00 && code <= 0xdfff;
+}
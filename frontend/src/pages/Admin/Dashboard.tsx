@@ -26,6 +26,7 @@ const Dashboard = () => {
           <CardContent>
             <div className="text-2xl font-bold">{stats.totalUsers}</div>
             <p className="text-xs text-zinc-500">今日新增 +{stats.todayNewUsers}</p>
+            <p className="text-xs text-zinc-500">今日签到 {stats.todayCheckIns} · 近 7 日签到 {stats.weeklyCheckInUsers} 人</p>
           </CardContent>
         </Card>
 
@@ -48,6 +49,9 @@ const Dashboard = () => {
           <CardContent>
             <div className="text-2xl font-bold">{(stats.apiErrorRate * 100).toFixed(1)}%</div>
             <p className="text-xs text-zinc-500">健康状态: {stats.apiErrorRate < 0.05 ? '良好' : '警告'}</p>
+            <p className="text-xs text-zinc-500">
+              近 15 分钟 {stats.apiCalls} 次 · P50/P95/P99 {stats.apiLatencyP50Ms}/{stats.apiLatencyP95Ms}/{stats.apiLatencyP99Ms} ms
+            </p>
           </CardContent>
         </Card>
 
@@ -20,6 +20,10 @@ type AdminSystemConfig = {
   llmBaseUrl?: string;
   llmModelName?: string;
   llmApiKeyIsSet?: boolean;
+  aiUserRatePerMinute: number;
+  aiUserBurst: number;
+  aiPoolRatePerMinute: number;
+  aiPoolBurst: number;
 };
 
 const SystemSettingsPage = () => {
@@ -47,6 +51,10 @@ const SystemSettingsPage = () => {
         smtpUsername: settings.smtpUsername,
         llmBaseUrl: settings.llmBaseUrl,
         llmModelName: settings.llmModelName,
+        aiUserRatePerMinute: settings.aiUserRatePerMinute,
+        aiUserBurst: settings.aiUserBurst,
+        aiPoolRatePerMinute: settings.aiPoolRatePerMinute,
+        aiPoolBurst: settings.aiPoolBurst,
         ...(smtpPassword ? { smtpPassword } : {}),
         ...(llmApiKey ? { llmApiKey } : {}),
       };
@@ -101,6 +109,53 @@ const SystemSettingsPage = () => {
         </CardContent>
       </Card>
 
+      <Card className="bg-zinc-900 border-zinc-800 text-zinc-100">
+        <CardHeader>
+          <CardTitle>AI 接口限流</CardTitle>
+          <CardDescription className="text-zinc-400">按用户与模型池限制 AI 请求频率，填 0 表示不限制。</CardDescription>
+        </CardHeader>
+        <CardContent className="space-y-4">
+          <div className="grid grid-cols-2 gap-4">
+            <div className="space-y-2">
+              <Label>每用户每分钟请求数</Label>
+              <Input 
+                type="number" 
+                value={settings.aiUserRatePerMinute}
+                onChange={(e) => setSettings({ ...settings, aiUserRatePerMinute: parseInt(e.target.value) })}
+                className="bg-zinc-950 border-zinc-800"
+              />
+            </div>
+            <div className="space-y-2">
+              <Label>每用户突发上限</Label>
+              <Input 
+                type="number" 
+                value={settings.aiUserBurst}
+                onChange={(e) => setSettings({ ...settings, aiUserBurst: parseInt(e.target.value) })}
+                className="bg-zinc-950 border-zinc-800"
+              />
+            </div>
+            <div className="space-y-2">
+              <Label>每模型池每分钟请求数</Label>
+              <Input 
+                type="number" 
+                value={settings.aiPoolRatePerMinute}
+                onChange={(e) => setSettings({ ...settings, aiPoolRatePerMinute: parseInt(e.target.value) })}
+                className="bg-zinc-950 border-zinc-800"
+              />
+            </div>
+            <div className="space-y-2">
+              <Label>每模型池突发上限</Label>
+              <Input 
+                type="number" 
+                value={settings.aiPoolBurst}
+                onChange={(e) => setSettings({ ...settings, aiPoolBurst: parseInt(e.target.value) })}
+                className="bg-zinc-950 border-zinc-800"
+              />
+            </div>
+          </div>
+        </CardContent>
+      </Card>
+
       <Card className="bg-zinc-900 border-zinc-800 text-zinc-100">
         <CardHeader>
           <CardTitle>LLM 配置（全局）</CardTitle>
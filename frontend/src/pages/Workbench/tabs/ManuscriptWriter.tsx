@@ -6,8 +6,9 @@ import { ScrollArea } from "@/components/ui/scroll-area";
 import { Save, History, PanelRightOpen, PanelRightClose, Sparkles, Loader2 } from "lucide-react";
 import CopilotSidebar from "@/components/ai/CopilotSidebar";
 import { cn } from "@/lib/utils";
-import { api } from "@/lib/mock-api";
-import { Manuscript, Outline, Story } from "@/types";
+import { api, ApiError } from "@/lib/mock-api";
+import { diffToOps } from "@/lib/text-delta";
+import { Manuscript, ManuscriptSection, Outline, Story } from "@/types";
 import { useToast } from "@/components/ui/use-toast";
 
 interface ManuscriptWriterProps {
@@ -30,6 +31,7 @@ const ManuscriptWriter = ({ initialStoryId }: ManuscriptWriterProps) => {
   const [lastSavedAt, setLastSavedAt] = useState<string>("");
   const [isGenerating, setIsGenerating] = useState(false);
   const saveTimer = useRef<number | null>(null);
+  const savedBase = useRef<{ key: string; content: string; hash: string } | null>(null);
 
   const selectedStory = useMemo(() => stories.find((s) => s.id === selectedStoryId) || null, [stories, selectedStoryId]);
   const selectedOutline = useMemo(() => outlines.find((o) => o.id === selectedOutlineId) || null, [outlines, selectedOutlineId]);
@@ -97,14 +99,48 @@ const ManuscriptWriter = ({ initialStoryId }: ManuscriptWriterProps) => {
     setContent(selectedManuscript.sections?.[selectedSceneId] || "");
   }, [selectedManuscriptId, selectedSceneId]);
 
+  // merge a saved section into local state; the API only returns the changed section
+  const applySection = (saved: ManuscriptSection) => {
+    setManuscripts((prev) =>
+      prev.map((m) =>
+        m.id === saved.manuscriptId ? { ...m, sections: { ...m.sections, [saved.sceneId]: saved.content }, updatedAt: saved.updatedAt } : m
+      )
+    );
+  };
+
+  // delta save against the last revision this editor saved; falls back to a full save on other errors.
+  // 409 means the section changed elsewhere: ask before overwriting, otherwise load the latest version
+  const persistSection = async (manuscriptId: string, sceneId: string, html: string) => {
+    const key = `${manuscriptId}:${sceneId}`;
+    const base = savedBase.current?.key === key ? savedBase.current : null;
+    let saved: ManuscriptSection;
+    if (base) {
+      try {
+        saved = await api.manuscripts.saveSectionDelta(manuscriptId, sceneId, base.hash, diffToOps(base.content, html));
+      } catch (e) {
+        if (e instanceof ApiError && e.status === 409 && !confirm("该场景已在别处修改。用当前内容覆盖吗？\n\n取消则载入最新内容，本次未保存的修改会丢失。")) {
+          const latest = await api.manuscripts.getSection(manuscriptId, sceneId);
+          savedBase.current = { key, content: latest.content, hash: latest.hash };
+          applySection(latest);
+          setContent(latest.content);
+          return;
+        }
+        saved = await api.manuscripts.saveSection(manuscriptId, sceneId, html);
+      }
+    } else {
+      saved = await api.manuscripts.saveSection(manuscriptId, sceneId, html);
+    }
+    savedBase.current = { key, content: html, hash: saved.hash };
+    applySection({ ...saved, content: html });
+  };
+
   const scheduleSave = (html: string) => {
     if (!selectedManuscriptId || !selectedSceneId) return;
     if (saveTimer.current) window.clearTimeout(saveTimer.current);
     saveTimer.current = window.setTimeout(async () => {
       setIsSaving(true);
       try {
-        const saved = await api.manuscripts.saveSection(selectedManuscriptId, selectedSceneId, html);
-        setManuscripts((prev) => prev.map((m) => (m.id === saved.id ? saved : m)));
+        await persistSection(selectedManuscriptId, selectedSceneId, html);
         setLastSavedAt(new Date().toLocaleTimeString());
       } catch (e: any) {
         toast({ variant: "destructive", title: "自动保存失败", description: e.message });
@@ -212,8 +248,7 @@ const ManuscriptWriter = ({ initialStoryId }: ManuscriptWriterProps) => {
                 if (!selectedManuscriptId || !selectedSceneId) return;
                 setIsSaving(true);
                 try {
-                  const saved = await api.manuscripts.saveSection(selectedManuscriptId, selectedSceneId, content);
-                  setManuscripts((prev) => prev.map((m) => (m.id === saved.id ? saved : m)));
+                  await persistSection(selectedManuscriptId, selectedSceneId, content);
                   setLastSavedAt(new Date().toLocaleTimeString());
                 } finally {
                   setIsSaving(false);
@@ -231,8 +266,9 @@ const ManuscriptWriter = ({ initialStoryId }: ManuscriptWriterProps) => {
                 setIsGenerating(true);
                 try {
                   const saved = await api.manuscripts.generateScene(selectedManuscriptId, selectedSceneId);
-                  setManuscripts((prev) => prev.map((m) => (m.id === saved.id ? saved : m)));
-                  setContent(saved.sections?.[selectedSceneId] || "");
+                  applySection(saved);
+                  savedBase.current = { key: `${saved.manuscriptId}:${saved.sceneId}`, content: saved.content, hash: saved.hash };
+                  setContent(saved.content);
                   toast({ title: "已生成场景正文" });
                 } catch (e: any) {
                   toast({ variant: "destructive", title: "生成失败", description: e.message });
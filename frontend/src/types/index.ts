@@ -76,6 +76,7 @@ export interface Outline {
   title: string;
   chapters: Chapter[];
   updatedAt: string;
+  version?: number;
 }
 
 export interface Manuscript {
@@ -87,6 +88,25 @@ export interface Manuscript {
   updatedAt: string;
 }
 
+export interface ManuscriptSection {
+  manuscriptId: string;
+  sceneId: string;
+  content: string; // html
+  wordCount: number;
+  hash: string; // base for delta saves
+  updatedAt: string;
+}
+
+export interface SectionRevision {
+  revision: number;
+  snapshot: boolean;
+  wordCount: number;
+  storedBytes: number;
+  content?: string; // only when fetching a single revision
+  createdAt: string;
+  updatedAt: string;
+}
+
 export interface UserSummary {
   novelCount: number;
   worldCount: number;
@@ -188,5 +208,11 @@ export interface AdminDashboardStats {
   totalCreditsConsumed: number;
   todayCreditsConsumed: number;
   apiErrorRate: number;
+  apiCalls: number;
+  apiLatencyP50Ms: number;
+  apiLatencyP95Ms: number;
+  apiLatencyP99Ms: number;
   pendingReviews: number;
+  todayCheckIns: number;
+  weeklyCheckInUsers: number;
 }
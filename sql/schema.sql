@@ -20,12 +20,31 @@ CREATE TABLE `credit_logs` (
   `amount` double NOT NULL,
   `created_at` datetime(6) DEFAULT NULL,
   `details` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `model` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
   `reason` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
   `user_id` binary(16) DEFAULT NULL,
   PRIMARY KEY (`id`),
   KEY `FKsfo24anott3tx20oavrgmr65l` (`user_id`),
+  KEY `idx_credit_logs_user_created` (`user_id`,`created_at`,`id`),
   CONSTRAINT `FKsfo24anott3tx20oavrgmr65l` FOREIGN KEY (`user_id`) REFERENCES `users` (`id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+CREATE TABLE `credit_usage_daily` (
+  `usage_date` date NOT NULL,
+  `user_id` varchar(36) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `model` varchar(128) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `reason` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL,
+  `consumed` double NOT NULL,
+  `entries` bigint NOT NULL,
+  `granted` double NOT NULL,
+  PRIMARY KEY (`usage_date`,`user_id`,`model`,`reason`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+CREATE TABLE `credit_usage_day_totals` (
+  `usage_date` date NOT NULL,
+  `consumed` double NOT NULL,
+  `entries` bigint NOT NULL,
+  `granted` double NOT NULL,
+  PRIMARY KEY (`usage_date`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 CREATE TABLE `email_verification_codes` (
   `id` binary(16) NOT NULL,
   `code` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
@@ -39,6 +58,10 @@ CREATE TABLE `email_verification_codes` (
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 CREATE TABLE `global_settings` (
   `id` binary(16) NOT NULL,
+  `ai_pool_burst` int NOT NULL,
+  `ai_pool_rate_per_minute` int NOT NULL,
+  `ai_user_burst` int NOT NULL,
+  `ai_user_rate_per_minute` int NOT NULL,
   `check_in_max_points` int NOT NULL,
   `check_in_min_points` int NOT NULL,
   `created_at` datetime(6) DEFAULT NULL,
@@ -54,6 +77,31 @@ CREATE TABLE `global_settings` (
   `llm_model_name` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
   PRIMARY KEY (`id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+CREATE TABLE `manuscript_section_revisions` (
+  `id` binary(16) NOT NULL,
+  `created_at` datetime(6) DEFAULT NULL,
+  `data` longblob NOT NULL,
+  `revision` int NOT NULL,
+  `snapshot` bit(1) NOT NULL,
+  `updated_at` datetime(6) DEFAULT NULL,
+  `word_count` int NOT NULL,
+  `section_id` binary(16) NOT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_manuscript_section_revisions_revision` (`section_id`,`revision`),
+  CONSTRAINT `fk_manuscript_section_revisions_section` FOREIGN KEY (`section_id`) REFERENCES `manuscript_sections` (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+CREATE TABLE `manuscript_sections` (
+  `id` binary(16) NOT NULL,
+  `content` longtext COLLATE utf8mb4_unicode_ci,
+  `created_at` datetime(6) DEFAULT NULL,
+  `scene_id` binary(16) NOT NULL,
+  `updated_at` datetime(6) DEFAULT NULL,
+  `word_count` int NOT NULL,
+  `manuscript_id` binary(16) NOT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_manuscript_sections_scene` (`manuscript_id`,`scene_id`),
+  CONSTRAINT `fk_manuscript_sections_manuscript` FOREIGN KEY (`manuscript_id`) REFERENCES `manuscripts` (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 CREATE TABLE `manuscripts` (
   `id` binary(16) NOT NULL,
   `character_logs_json` longtext COLLATE utf8mb4_unicode_ci,
@@ -96,6 +144,7 @@ CREATE TABLE `materials` (
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 CREATE TABLE `model_configs` (
   `id` binary(16) NOT NULL,
+  `context_token_budget` int DEFAULT NULL,
   `created_at` datetime(6) DEFAULT NULL,
   `display_name` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
   `enabled` bit(1) NOT NULL,
@@ -106,12 +155,52 @@ CREATE TABLE `model_configs` (
   `updated_at` datetime(6) DEFAULT NULL,
   PRIMARY KEY (`id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+CREATE TABLE `model_pool_endpoints` (
+  `id` binary(16) NOT NULL,
+  `api_key_encrypted` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `base_url` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `created_at` datetime(6) DEFAULT NULL,
+  `enabled` bit(1) NOT NULL,
+  `name` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `pool_id` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `updated_at` datetime(6) DEFAULT NULL,
+  `weight` int NOT NULL,
+  PRIMARY KEY (`id`),
+  KEY `idx_model_pool_endpoints_pool` (`pool_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+CREATE TABLE `outline_chapters` (
+  `id` binary(16) NOT NULL,
+  `position` int NOT NULL,
+  `sort_order` int DEFAULT NULL,
+  `summary` longtext COLLATE utf8mb4_unicode_ci,
+  `title` varchar(1024) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `outline_id` binary(16) NOT NULL,
+  PRIMARY KEY (`id`),
+  KEY `idx_outline_chapters_outline` (`outline_id`,`position`),
+  CONSTRAINT `fk_outline_chapters_outline` FOREIGN KEY (`outline_id`) REFERENCES `outlines` (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+CREATE TABLE `outline_scenes` (
+  `id` binary(16) NOT NULL,
+  `content` longtext COLLATE utf8mb4_unicode_ci,
+  `position` int NOT NULL,
+  `sort_order` int DEFAULT NULL,
+  `summary` longtext COLLATE utf8mb4_unicode_ci,
+  `title` varchar(1024) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
+  `chapter_id` binary(16) NOT NULL,
+  `outline_id` binary(16) NOT NULL,
+  PRIMARY KEY (`id`),
+  KEY `idx_outline_scenes_outline` (`outline_id`,`position`),
+  KEY `idx_outline_scenes_chapter` (`chapter_id`),
+  CONSTRAINT `fk_outline_scenes_chapter` FOREIGN KEY (`chapter_id`) REFERENCES `outline_chapters` (`id`),
+  CONSTRAINT `fk_outline_scenes_outline` FOREIGN KEY (`outline_id`) REFERENCES `outlines` (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 CREATE TABLE `outlines` (
   `id` binary(16) NOT NULL,
   `content_json` longtext COLLATE utf8mb4_unicode_ci,
   `created_at` datetime(6) DEFAULT NULL,
   `title` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
   `updated_at` datetime(6) DEFAULT NULL,
+  `version` bigint NOT NULL,
   `world_id` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
   `story_id` binary(16) DEFAULT NULL,
   PRIMARY KEY (`id`),
@@ -134,6 +223,7 @@ CREATE TABLE `prompt_templates` (
 CREATE TABLE `redeem_codes` (
   `id` binary(16) NOT NULL,
   `amount` int NOT NULL,
+  `batch_id` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
   `code` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL,
   `created_at` datetime(6) DEFAULT NULL,
   `expires_at` datetime(6) DEFAULT NULL,
@@ -141,6 +231,8 @@ CREATE TABLE `redeem_codes` (
   `used_at` datetime(6) DEFAULT NULL,
   `used_by_user_id` binary(16) DEFAULT NULL,
   PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_redeem_codes_code` (`code`),
+  KEY `idx_redeem_codes_batch` (`batch_id`,`code`),
   KEY `FKqemhvmg9mu0kpjlcvaiex3juw` (`used_by_user_id`),
   CONSTRAINT `FKqemhvmg9mu0kpjlcvaiex3juw` FOREIGN KEY (`used_by_user_id`) REFERENCES `users` (`id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;